@@ -183,6 +183,9 @@ public interface IExceptionMessage {
       "%s : Error : You must configure a reconciliation sequence for the company %s" /*)*/;
   static final String RECONCILE_7 = /*$$(*/
       "Reconciliation : Selected moves lines must concern the same company. Reconcile : %s company \n Debit move line : %s company \n Credit move line : %s company" /*)*/;
+  static final String RECONCILE_AUTO_LETTERING = /*$$(*/ "%s reconcile(s) created" /*)*/;
+  static final String ACCOUNT_AUTO_LETTERING_NO_COMPANY = /*$$(*/
+      "Please fill the company of the account %s" /*)*/;
 
   /** Reimbursement service and controller */
   static final String REIMBURSEMENT_1 = /*$$(*/
@@ -208,6 +211,8 @@ public interface IExceptionMessage {
       "Account balances of %s accounting situation has not been updated, you must run the contact account batch update." /*)*/;
   static final String BATCH_ACCOUNT_5 = /*$$(*/
       "Account balances from all accounts situations (%s) has been updated." /*)*/;
+  static final String BATCH_ACCOUNT_6 = /*$$(*/
+      "* %s Account(s) situation(s) with balances differing from the move lines" /*)*/;
 
   /** Batch doubtful customer */
   static final String BATCH_DOUBTFUL_1 = /*$$(*/
@@ -291,6 +296,15 @@ public interface IExceptionMessage {
   /** Batch realize fixed asset lines */
   static final String BATCH_REALIZED_FIXED_ASSET_LINE = /*$$(*/ "Realized fixed asset lines" /*)*/;
 
+  /** Batch automatic lettering */
+  static final String BATCH_AUTO_LETTERING_1 = /*$$(*/ "Partner(s) lettered" /*)*/;
+
+  static final String BATCH_AUTO_LETTERING_2 = /*$$(*/
+      "The automatic lettering batch %s has been started" /*)*/;
+
+  static final String BATCH_AUTO_LETTERING_3 = /*$$(*/
+      "%s : Please select the account to letter" /*)*/;
+
   /** Cfonb export service */
   static final String CFONB_EXPORT_1 = /*$$(*/
       "You must configure a RIB for the reimbursement" /*)*/;
@@ -564,6 +578,8 @@ public interface IExceptionMessage {
 
   static final String BATCH_VENTILATION_2 = /*$$(*/ "Invoice(s) ventilated" /*)*/;
 
+  static final String BATCH_VENTILATION_3 = /*$$(*/ "Invoice ventilation interrupted" /*)*/;
+
   /** Refund invoice */
   static final String REFUND_INVOICE_1 = /*$$(*/
       "%s : Payment mode must be filled either in the partner or in the company configuration." /*)*/;
@@ -61,6 +61,8 @@ import com.axelor.apps.account.service.AccountingSituationServiceImpl;
 import com.axelor.apps.account.service.AddressServiceAccountImpl;
 import com.axelor.apps.account.service.AnalyticMoveLineService;
 import com.axelor.apps.account.service.AnalyticMoveLineServiceImpl;
+import com.axelor.apps.account.service.AutoLetteringService;
+import com.axelor.apps.account.service.AutoLetteringServiceImpl;
 import com.axelor.apps.account.service.BankDetailsServiceAccountImpl;
 import com.axelor.apps.account.service.DepositSlipService;
 import com.axelor.apps.account.service.DepositSlipServiceImpl;
@@ -176,6 +178,8 @@ public class AccountModule extends AxelorModule {
 
     bind(ReconcileService.class).to(ReconcileServiceImpl.class);
 
+    bind(AutoLetteringService.class).to(AutoLetteringServiceImpl.class);
+
     bind(ReconcileRepository.class).to(ReconcileManagementRepository.class);
 
     bind(AppAccountService.class).to(AppAccountServiceImpl.class);
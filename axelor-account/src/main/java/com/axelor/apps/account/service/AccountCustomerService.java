@@ -20,6 +20,7 @@ package com.axelor.apps.account.service;
 import com.axelor.apps.account.db.Account;
 import com.axelor.apps.account.db.AccountConfig;
 import com.axelor.apps.account.db.AccountingSituation;
+import com.axelor.apps.account.db.Move;
 import com.axelor.apps.account.db.MoveLine;
 import com.axelor.apps.account.db.repo.AccountingSituationRepository;
 import com.axelor.apps.account.db.repo.MoveLineRepository;
@@ -37,9 +38,17 @@ import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.persistence.Query;
 import javax.persistence.TemporalType;
 import org.slf4j.Logger;
@@ -249,6 +258,162 @@ public class AccountCustomerService {
     return balance;
   }
 
+  /**
+   * Compute in a single query the balance and the balance due of all the partners of a company,
+   * with the filters of {@link #getBalance(Partner, Company)} and {@link #getBalanceDue(Partner,
+   * Company)}.
+   *
+   * @param company
+   * @return the balance and the balance due, by partner id, for the partners having move lines
+   */
+  public Map<Long, BigDecimal[]> getBalanceMap(Company company) {
+    return this.getBalanceMap(company, null);
+  }
+
+  /**
+   * Same as {@link #getBalanceMap(Company)}, restricted to some partners.
+   *
+   * @param company
+   * @param partnerIdList the ids of the partners, or null for all the partners
+   * @return the balance and the balance due, by partner id, for the partners having move lines
+   */
+  public Map<Long, BigDecimal[]> getBalanceMap(Company company, Collection<Long> partnerIdList) {
+
+    Query query =
+        JPA.em()
+            .createNativeQuery(
+                "SELECT ml.partner, "
+                    + "SUM(CASE WHEN ml.debit > 0 THEN ml.amount_remaining ELSE 0 END "
+                    + "- CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END), "
+                    + "SUM(CASE WHEN move.ignore_in_debt_recovery_ok IN ('false', null) THEN "
+                    + "(CASE WHEN ml.debit > 0 AND ((ml.due_date IS NULL AND ml.date_val <= ?1) "
+                    + "OR (ml.due_date IS NOT NULL AND ml.due_date <= ?1)) "
+                    + "THEN ml.amount_remaining ELSE 0 END "
+                    + "- CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END) "
+                    + "ELSE 0 END) "
+                    + "FROM public.account_move_line AS ml "
+                    + "JOIN public.account_account AS account ON (ml.account = account.id) "
+                    + "JOIN public.account_move AS move ON (ml.move = move.id) "
+                    + "WHERE ml.partner IS NOT NULL AND move.company = ?2 "
+                    + "AND move.ignore_in_accounting_ok IN ('false', null) "
+                    + "AND account.use_for_partner_balance = 'true' "
+                    + "AND (move.status_select = ?3 OR move.status_select = ?4) "
+                    + "AND ml.amount_remaining > 0 "
+                    + (partnerIdList != null ? "AND ml.partner IN (?5) " : "")
+                    + "GROUP BY ml.partner")
+            .setParameter(
+                1,
+                Date.from(
+                    appBaseService
+                        .getTodayDate()
+                        .atStartOfDay()
+                        .atZone(ZoneOffset.UTC)
+                        .toInstant()),
+                TemporalType.DATE)
+            .setParameter(2, company)
+            .setParameter(3, MoveRepository.STATUS_VALIDATED)
+            .setParameter(4, MoveRepository.STATUS_DAYBOOK);
+
+    if (partnerIdList != null) {
+      query.setParameter(5, partnerIdList);
+    }
+
+    Map<Long, BigDecimal[]> balanceMap = new HashMap<>();
+
+    for (Object result : query.getResultList()) {
+      Object[] row = (Object[]) result;
+      balanceMap.put(
+          ((Number) row[0]).longValue(),
+          new BigDecimal[] {
+            row[1] != null ? (BigDecimal) row[1] : BigDecimal.ZERO,
+            row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO
+          });
+    }
+
+    return balanceMap;
+  }
+
+  /**
+   * Compute in a single query the balance due debt recovery of all the partners of a company, with
+   * the filters of {@link #getBalanceDueDebtRecovery(Partner, Company)}.
+   *
+   * @param company
+   * @return the balance due debt recovery, by partner id, for the partners having move lines
+   */
+  public Map<Long, BigDecimal> getBalanceDueDebtRecoveryMap(Company company) {
+    return this.getBalanceDueDebtRecoveryMap(company, null);
+  }
+
+  /**
+   * Same as {@link #getBalanceDueDebtRecoveryMap(Company)}, restricted to some partners.
+   *
+   * @param company
+   * @param partnerIdList the ids of the partners, or null for all the partners
+   * @return the balance due debt recovery, by partner id, for the partners having move lines
+   */
+  public Map<Long, BigDecimal> getBalanceDueDebtRecoveryMap(
+      Company company, Collection<Long> partnerIdList) {
+
+    int mailTransitTime = 0;
+
+    AccountConfig accountConfig = company.getAccountConfig();
+
+    if (accountConfig != null) {
+      mailTransitTime = accountConfig.getMailTransitTime();
+    }
+
+    Query query =
+        JPA.em()
+            .createNativeQuery(
+                "SELECT ml.partner, "
+                    + "SUM(CASE WHEN ml.debit > 0 AND ("
+                    + "(ml.date_val = ml.due_date AND (ml.due_date + ?1) < ?2) "
+                    + "OR (ml.due_date IS NOT NULL AND ml.date_val != ml.due_date "
+                    + "AND ml.due_date < ?2) "
+                    + "OR (ml.due_date IS NULL AND ml.date_val < ?2)) "
+                    + "THEN ml.amount_remaining ELSE 0 END "
+                    + "- CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END) "
+                    + "FROM public.account_move_line AS ml "
+                    + "JOIN public.account_account AS account ON (ml.account = account.id) "
+                    + "JOIN public.account_move AS move ON (ml.move = move.id) "
+                    + "LEFT JOIN public.account_invoice AS invoice ON (move.invoice = invoice.id) "
+                    + "WHERE ml.partner IS NOT NULL AND move.company = ?3 "
+                    + "AND move.ignore_in_debt_recovery_ok IN ('false', null) "
+                    + "AND move.ignore_in_accounting_ok IN ('false', null) "
+                    + "AND account.use_for_partner_balance = 'true' "
+                    + "AND (move.status_select = ?4 OR move.status_select = ?5) "
+                    + "AND ml.amount_remaining > 0 AND invoice.debt_recovery_blocking_ok = FALSE "
+                    + (partnerIdList != null ? "AND ml.partner IN (?6) " : "")
+                    + "GROUP BY ml.partner")
+            .setParameter(1, mailTransitTime)
+            .setParameter(
+                2,
+                Date.from(
+                    appBaseService
+                        .getTodayDate()
+                        .atStartOfDay()
+                        .atZone(ZoneOffset.UTC)
+                        .toInstant()),
+                TemporalType.DATE)
+            .setParameter(3, company)
+            .setParameter(4, MoveRepository.STATUS_VALIDATED)
+            .setParameter(5, MoveRepository.STATUS_DAYBOOK);
+
+    if (partnerIdList != null) {
+      query.setParameter(6, partnerIdList);
+    }
+
+    Map<Long, BigDecimal> balanceMap = new HashMap<>();
+
+    for (Object result : query.getResultList()) {
+      Object[] row = (Object[]) result;
+      balanceMap.put(
+          ((Number) row[0]).longValue(), row[1] != null ? (BigDecimal) row[1] : BigDecimal.ZERO);
+    }
+
+    return balanceMap;
+  }
+
   /**
    * Méthode permettant de récupérer l'ensemble des lignes d'écriture pour une société et un tiers
    *
@@ -344,6 +509,198 @@ public class AccountCustomerService {
     return accountingSituation;
   }
 
+  /**
+   * Get the contribution of move lines to the balance and to the balance due of their partner, as
+   * computed by {@link #getBalance(Partner, Company)} and {@link #getBalanceDue(Partner, Company)}.
+   * To be taken before a change on the lines, then given to {@link #updateBalances(Map,
+   * Collection, Company)}.
+   *
+   * @param moveLineList
+   * @return the balance and balance due contributions, by move line instance
+   */
+  public Map<MoveLine, BigDecimal[]> getBalanceContributions(Collection<MoveLine> moveLineList) {
+
+    Map<MoveLine, BigDecimal[]> contributionMap = new IdentityHashMap<>();
+    LocalDate todayDate = appBaseService.getTodayDate();
+
+    if (moveLineList != null) {
+      for (MoveLine moveLine : moveLineList) {
+        contributionMap.put(moveLine, this.getBalanceContribution(moveLine, todayDate));
+      }
+    }
+
+    return contributionMap;
+  }
+
+  /**
+   * Same filters as the balance and balance due queries, applied to a single move line.
+   *
+   * @param moveLine
+   * @param todayDate
+   * @return the contribution to the balance, then to the balance due
+   */
+  protected BigDecimal[] getBalanceContribution(MoveLine moveLine, LocalDate todayDate) {
+
+    BigDecimal[] contribution = {BigDecimal.ZERO, BigDecimal.ZERO};
+    Move move = moveLine.getMove();
+    BigDecimal amountRemaining = moveLine.getAmountRemaining();
+
+    if (moveLine.getPartner() == null
+        || move == null
+        || move.getIgnoreInAccountingOk()
+        || moveLine.getAccount() == null
+        || !moveLine.getAccount().getUseForPartnerBalance()
+        || (move.getStatusSelect() != MoveRepository.STATUS_VALIDATED
+            && move.getStatusSelect() != MoveRepository.STATUS_DAYBOOK)
+        || amountRemaining.signum() <= 0) {
+      return contribution;
+    }
+
+    BigDecimal debitRemaining =
+        moveLine.getDebit().signum() > 0 ? amountRemaining : BigDecimal.ZERO;
+    BigDecimal creditRemaining =
+        moveLine.getCredit().signum() > 0 ? amountRemaining : BigDecimal.ZERO;
+
+    contribution[0] = debitRemaining.subtract(creditRemaining);
+
+    if (!move.getIgnoreInDebtRecoveryOk()) {
+      LocalDate dueDate =
+          moveLine.getDueDate() != null ? moveLine.getDueDate() : moveLine.getDate();
+      if (dueDate == null || dueDate.isAfter(todayDate)) {
+        debitRemaining = BigDecimal.ZERO;
+      }
+      contribution[1] = debitRemaining.subtract(creditRemaining);
+    }
+
+    return contribution;
+  }
+
+  /**
+   * Apply to the accounting situations the difference of the balance contributions of move lines
+   * since {@link #getBalanceContributions(Collection)}, instead of computing the balances again
+   * from all the move lines of the partners. A line of the before map missing from the after
+   * list, like a removed line, is taken off.
+   *
+   * <p>An accounting situation flagged to be updated is computed again entirely, as its balances
+   * are not up to date.
+   *
+   * @param beforeMap the contributions before the change
+   * @param moveLineList the move lines after the change
+   * @param company
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateBalances(
+      Map<MoveLine, BigDecimal[]> beforeMap, Collection<MoveLine> moveLineList, Company company)
+      throws AxelorException {
+
+    Map<Partner, BigDecimal[]> deltaMap = new LinkedHashMap<>();
+    Set<MoveLine> afterSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    LocalDate todayDate = appBaseService.getTodayDate();
+
+    if (moveLineList != null) {
+      for (MoveLine moveLine : moveLineList) {
+        afterSet.add(moveLine);
+        BigDecimal[] after = this.getBalanceContribution(moveLine, todayDate);
+        BigDecimal[] before = beforeMap.get(moveLine);
+        this.addDelta(deltaMap, moveLine.getPartner(), after, 1);
+        if (before != null) {
+          this.addDelta(deltaMap, moveLine.getPartner(), before, -1);
+        }
+      }
+    }
+    for (Map.Entry<MoveLine, BigDecimal[]> entry : beforeMap.entrySet()) {
+      if (!afterSet.contains(entry.getKey())) {
+        this.addDelta(deltaMap, entry.getKey().getPartner(), entry.getValue(), -1);
+      }
+    }
+
+    for (Map.Entry<Partner, BigDecimal[]> entry : deltaMap.entrySet()) {
+      BigDecimal[] delta = entry.getValue();
+      if (delta[0].signum() == 0 && delta[1].signum() == 0) {
+        continue;
+      }
+      AccountingSituation accountingSituation =
+          accountingSituationService.getAccountingSituation(entry.getKey(), company);
+      if (accountingSituation == null) {
+        accountingSituation =
+            accountingSituationService.createAccountingSituation(entry.getKey(), company);
+      }
+      if (accountingSituation == null) {
+        continue;
+      }
+      if (accountingSituation.getCustAccountMustBeUpdateOk()) {
+        this.updateAccountingSituationCustomerAccount(accountingSituation, true, true, false);
+      } else {
+        this.addToAccountingSituationBalances(accountingSituation, delta[0], delta[1]);
+      }
+    }
+  }
+
+  protected void addDelta(
+      Map<Partner, BigDecimal[]> deltaMap, Partner partner, BigDecimal[] contribution, int sign) {
+
+    if (partner == null || (contribution[0].signum() == 0 && contribution[1].signum() == 0)) {
+      return;
+    }
+    BigDecimal[] delta =
+        deltaMap.computeIfAbsent(
+            partner, key -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+    for (int i = 0; i < delta.length; i++) {
+      delta[i] = sign > 0 ? delta[i].add(contribution[i]) : delta[i].subtract(contribution[i]);
+    }
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public AccountingSituation addToAccountingSituationBalances(
+      AccountingSituation accountingSituation, BigDecimal balanceDelta, BigDecimal balanceDueDelta)
+      throws AxelorException {
+
+    log.debug(
+        "Add to customer account (Partner : {}, Company : {}, balance : {}, balance due : {})",
+        accountingSituation.getPartner().getName(),
+        accountingSituation.getCompany().getName(),
+        balanceDelta,
+        balanceDueDelta);
+
+    accountingSituation.setBalanceCustAccount(
+        accountingSituation.getBalanceCustAccount().add(balanceDelta));
+    accountingSituation.setBalanceDueCustAccount(
+        accountingSituation.getBalanceDueCustAccount().add(balanceDueDelta));
+    accSituationRepo.save(accountingSituation);
+
+    return accountingSituation;
+  }
+
+  /**
+   * Set balances already computed, like the ones of {@link #getBalanceMap(Company)}, on an
+   * accounting situation. The caller saves it.
+   *
+   * @param accountingSituation
+   * @param balance the balance, or null to keep it
+   * @param balanceDue the balance due, or null to keep it
+   * @param balanceDueDebtRecovery the balance due debt recovery, or null to keep it
+   * @throws AxelorException
+   */
+  public void setAccountingSituationBalances(
+      AccountingSituation accountingSituation,
+      BigDecimal balance,
+      BigDecimal balanceDue,
+      BigDecimal balanceDueDebtRecovery)
+      throws AxelorException {
+
+    if (balance != null) {
+      accountingSituation.setBalanceCustAccount(balance);
+    }
+    if (balanceDue != null) {
+      accountingSituation.setBalanceDueCustAccount(balanceDue);
+    }
+    if (balanceDueDebtRecovery != null) {
+      accountingSituation.setBalanceDueDebtRecoveryCustAccount(balanceDueDebtRecovery);
+    }
+    accountingSituation.setCustAccountMustBeUpdateOk(false);
+  }
+
   public Account getPartnerAccount(Partner partner, Company company, boolean isSupplierInvoice)
       throws AxelorException {
     return isSupplierInvoice
@@ -0,0 +1,78 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AccountingBatch;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.Reconcile;
+import com.axelor.apps.base.db.Company;
+import com.axelor.exception.AxelorException;
+import java.util.List;
+
+/**
+ * Automatic lettering of whole accounts: the open move lines of each company and partner are
+ * matched together and reconciled in bulk. A whole account is lettered by the automatic lettering
+ * accounting batch, partner by partner.
+ */
+public interface AutoLetteringService {
+
+  /**
+   * Get the partners having open move lines on an account in a company.
+   *
+   * @param account
+   * @param company
+   * @param lastPartnerId id of the last partner already returned, 0 at the beginning
+   * @param limit maximum number of ids
+   * @return the ids of the partners greater than lastPartnerId, in increasing order
+   */
+  public List<Long> getPartnerIdList(
+      Account account, Company company, long lastPartnerId, int limit);
+
+  /**
+   * Letter the open move lines of an account for a company and a partner, in a single
+   * transaction.
+   *
+   * @param accountId
+   * @param companyId
+   * @param partnerId the partner id, or null for the lines without partner
+   * @return the number of created reconciles
+   * @throws AxelorException
+   */
+  public int letter(Long accountId, Long companyId, Long partnerId) throws AxelorException;
+
+  /**
+   * Get the automatic lettering batch of a reconcilable account, created on the first call.
+   *
+   * @param account
+   * @return the batch
+   * @throws AxelorException if the account has no company
+   */
+  public AccountingBatch getAutoLetteringBatch(Account account) throws AxelorException;
+
+  /**
+   * Match debit and credit move lines of the same company, account and partner: first the lines
+   * with the same amount and origin, then the lines with the same amount, then the remaining
+   * lines chronologically.
+   *
+   * @param debitMoveLineList the debit lines, ordered by date
+   * @param creditMoveLineList the credit lines, ordered by date
+   * @return draft reconciles, not saved
+   */
+  public List<Reconcile> match(List<MoveLine> debitMoveLineList, List<MoveLine> creditMoveLineList);
+}
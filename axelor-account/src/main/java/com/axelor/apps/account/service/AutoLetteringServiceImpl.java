@@ -0,0 +1,307 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AccountingBatch;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.Reconcile;
+import com.axelor.apps.account.db.repo.AccountingBatchRepository;
+import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.account.db.repo.ReconcileRepository;
+import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.base.db.Company;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import com.google.common.base.Strings;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.TypedQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AutoLetteringServiceImpl implements AutoLetteringService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected static final String OPEN_MOVE_LINE_FILTER =
+      "self.account.id = :accountId "
+          + "AND self.move.statusSelect IN (:statusSelectList) "
+          + "AND self.amountRemaining > 0 "
+          + "AND ((self.debit > 0 AND self.credit = 0) OR (self.credit > 0 AND self.debit = 0))";
+
+  protected static final String AUTO_LETTERING_BATCH_CODE_PREFIX = "AUTO_LETTERING_";
+
+  protected static final List<Integer> STATUS_SELECT_LIST =
+      Arrays.asList(MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
+
+  protected ReconcileService reconcileService;
+
+  protected AccountingBatchRepository accountingBatchRepo;
+
+  @Inject
+  public AutoLetteringServiceImpl(
+      ReconcileService reconcileService, AccountingBatchRepository accountingBatchRepo) {
+    this.reconcileService = reconcileService;
+    this.accountingBatchRepo = accountingBatchRepo;
+  }
+
+  @Override
+  public List<Long> getPartnerIdList(
+      Account account, Company company, long lastPartnerId, int limit) {
+
+    return JPA.em()
+        .createQuery(
+            "SELECT DISTINCT partner.id FROM MoveLine self JOIN self.partner partner WHERE "
+                + OPEN_MOVE_LINE_FILTER
+                + " AND self.move.company.id = :companyId AND partner.id > :lastPartnerId "
+                + "ORDER BY partner.id",
+            Long.class)
+        .setParameter("accountId", account.getId())
+        .setParameter("statusSelectList", STATUS_SELECT_LIST)
+        .setParameter("companyId", company.getId())
+        .setParameter("lastPartnerId", lastPartnerId)
+        .setMaxResults(limit)
+        .getResultList();
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public int letter(Long accountId, Long companyId, Long partnerId) throws AxelorException {
+
+    TypedQuery<MoveLine> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM MoveLine self WHERE "
+                    + OPEN_MOVE_LINE_FILTER
+                    + " AND self.move.company.id = :companyId AND "
+                    + (partnerId != null ? "self.partner.id = :partnerId" : "self.partner IS NULL")
+                    + " ORDER BY self.date, self.id",
+                MoveLine.class)
+            .setParameter("accountId", accountId)
+            .setParameter("statusSelectList", STATUS_SELECT_LIST)
+            .setParameter("companyId", companyId);
+    if (partnerId != null) {
+      query.setParameter("partnerId", partnerId);
+    }
+
+    List<MoveLine> debitMoveLineList = new ArrayList<>();
+    List<MoveLine> creditMoveLineList = new ArrayList<>();
+    for (MoveLine moveLine : query.getResultList()) {
+      if (moveLine.getDebit().signum() > 0) {
+        debitMoveLineList.add(moveLine);
+      } else {
+        creditMoveLineList.add(moveLine);
+      }
+    }
+
+    List<Reconcile> reconcileList = this.match(debitMoveLineList, creditMoveLineList);
+
+    for (Reconcile reconcile : reconcileList) {
+      reconcile.getDebitMoveLine().setMaxAmountToReconcile(null);
+    }
+    reconcileService.confirmReconciles(reconcileList);
+
+    log.debug(
+        "{} reconciles created on account {} for partner {}",
+        reconcileList.size(),
+        accountId,
+        partnerId);
+
+    return reconcileList.size();
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public AccountingBatch getAutoLetteringBatch(Account account) throws AxelorException {
+
+    if (account.getCompany() == null) {
+      throw new AxelorException(
+          account,
+          TraceBackRepository.CATEGORY_MISSING_FIELD,
+          I18n.get(IExceptionMessage.ACCOUNT_AUTO_LETTERING_NO_COMPANY),
+          account.getLabel());
+    }
+
+    AccountingBatch accountingBatch =
+        accountingBatchRepo
+            .all()
+            .filter("self.actionSelect = :actionSelect AND self.account = :account")
+            .bind("actionSelect", AccountingBatchRepository.ACTION_AUTO_LETTERING)
+            .bind("account", account)
+            .fetchOne();
+
+    if (accountingBatch == null) {
+      accountingBatch = new AccountingBatch();
+      accountingBatch.setActionSelect(AccountingBatchRepository.ACTION_AUTO_LETTERING);
+      accountingBatch.setCode(AUTO_LETTERING_BATCH_CODE_PREFIX + account.getId());
+      accountingBatch.setCompany(account.getCompany());
+      accountingBatch.setAccount(account);
+      accountingBatchRepo.save(accountingBatch);
+    }
+
+    return accountingBatch;
+  }
+
+  @Override
+  public List<Reconcile> match(
+      List<MoveLine> debitMoveLineList, List<MoveLine> creditMoveLineList) {
+
+    Map<MoveLine, BigDecimal> amountMap = new IdentityHashMap<>();
+    for (MoveLine moveLine : debitMoveLineList) {
+      amountMap.put(moveLine, this.getAmountToReconcile(moveLine));
+    }
+    for (MoveLine moveLine : creditMoveLineList) {
+      amountMap.put(moveLine, this.getAmountToReconcile(moveLine));
+    }
+
+    List<Reconcile> reconcileList = new ArrayList<>();
+
+    this.matchSameAmount(debitMoveLineList, creditMoveLineList, amountMap, reconcileList, true);
+    this.matchSameAmount(debitMoveLineList, creditMoveLineList, amountMap, reconcileList, false);
+    this.matchByDate(debitMoveLineList, creditMoveLineList, amountMap, reconcileList);
+
+    return reconcileList;
+  }
+
+  /** The amount remaining, limited by the max amount to reconcile of the line if any. */
+  protected BigDecimal getAmountToReconcile(MoveLine moveLine) {
+
+    BigDecimal amount = moveLine.getAmountRemaining();
+    BigDecimal maxAmountToReconcile = moveLine.getMaxAmountToReconcile();
+
+    if (maxAmountToReconcile != null && maxAmountToReconcile.signum() > 0) {
+      amount = amount.min(maxAmountToReconcile);
+    }
+
+    return amount;
+  }
+
+  /**
+   * Match each credit line with the oldest debit line left with the same amount, and the same
+   * origin if required, through a hash lookup.
+   */
+  protected void matchSameAmount(
+      List<MoveLine> debitMoveLineList,
+      List<MoveLine> creditMoveLineList,
+      Map<MoveLine, BigDecimal> amountMap,
+      List<Reconcile> reconcileList,
+      boolean sameOrigin) {
+
+    Map<List<Object>, Deque<MoveLine>> debitMoveLineMap = new HashMap<>();
+    for (MoveLine debitMoveLine : debitMoveLineList) {
+      List<Object> key = this.getMatchKey(debitMoveLine, amountMap.get(debitMoveLine), sameOrigin);
+      if (key != null) {
+        debitMoveLineMap.computeIfAbsent(key, k -> new ArrayDeque<>()).add(debitMoveLine);
+      }
+    }
+
+    if (debitMoveLineMap.isEmpty()) {
+      return;
+    }
+
+    for (MoveLine creditMoveLine : creditMoveLineList) {
+      BigDecimal amount = amountMap.get(creditMoveLine);
+      List<Object> key = this.getMatchKey(creditMoveLine, amount, sameOrigin);
+      Deque<MoveLine> debitMoveLineDeque = key != null ? debitMoveLineMap.get(key) : null;
+      MoveLine debitMoveLine = debitMoveLineDeque != null ? debitMoveLineDeque.poll() : null;
+      if (debitMoveLine != null) {
+        this.addReconcile(debitMoveLine, creditMoveLine, amount, amountMap, reconcileList);
+      }
+    }
+  }
+
+  protected List<Object> getMatchKey(MoveLine moveLine, BigDecimal amount, boolean sameOrigin) {
+
+    if (amount.signum() <= 0) {
+      return null;
+    }
+    if (!sameOrigin) {
+      return Collections.singletonList(amount.stripTrailingZeros());
+    }
+    if (Strings.isNullOrEmpty(moveLine.getOrigin())) {
+      return null;
+    }
+    return Arrays.asList(amount.stripTrailingZeros(), moveLine.getOrigin());
+  }
+
+  /** Net the lines left, oldest first, with partial reconciles. */
+  protected void matchByDate(
+      List<MoveLine> debitMoveLineList,
+      List<MoveLine> creditMoveLineList,
+      Map<MoveLine, BigDecimal> amountMap,
+      List<Reconcile> reconcileList) {
+
+    int debitIndex = 0;
+    int creditIndex = 0;
+
+    while (debitIndex < debitMoveLineList.size() && creditIndex < creditMoveLineList.size()) {
+      MoveLine debitMoveLine = debitMoveLineList.get(debitIndex);
+      MoveLine creditMoveLine = creditMoveLineList.get(creditIndex);
+      BigDecimal debitAmount = amountMap.get(debitMoveLine);
+      BigDecimal creditAmount = amountMap.get(creditMoveLine);
+
+      if (debitAmount.signum() <= 0) {
+        debitIndex++;
+      } else if (creditAmount.signum() <= 0) {
+        creditIndex++;
+      } else {
+        this.addReconcile(
+            debitMoveLine,
+            creditMoveLine,
+            debitAmount.min(creditAmount),
+            amountMap,
+            reconcileList);
+      }
+    }
+  }
+
+  protected void addReconcile(
+      MoveLine debitMoveLine,
+      MoveLine creditMoveLine,
+      BigDecimal amount,
+      Map<MoveLine, BigDecimal> amountMap,
+      List<Reconcile> reconcileList) {
+
+    reconcileList.add(
+        new Reconcile(
+            debitMoveLine.getMove().getCompany(),
+            amount.setScale(2, RoundingMode.HALF_EVEN),
+            debitMoveLine,
+            creditMoveLine,
+            ReconcileRepository.STATUS_DRAFT,
+            false));
+
+    amountMap.put(debitMoveLine, amountMap.get(debitMoveLine).subtract(amount));
+    amountMap.put(creditMoveLine, amountMap.get(creditMoveLine).subtract(amount));
+  }
+}
@@ -17,6 +17,7 @@
  */
 package com.axelor.apps.account.service;
 
+import com.axelor.app.AppSettings;
 import com.axelor.apps.account.db.AccountingReport;
 import com.axelor.apps.account.db.AnalyticMoveLine;
 import com.axelor.apps.account.db.Journal;
@@ -40,6 +41,8 @@ import com.axelor.apps.base.db.repo.SequenceRepository;
 import com.axelor.apps.base.service.PartnerService;
 import com.axelor.apps.base.service.administration.SequenceService;
 import com.axelor.apps.tool.file.CsvTool;
+import com.axelor.auth.AuthUtils;
+import com.axelor.auth.db.User;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -49,19 +52,41 @@ import com.axelor.meta.MetaFiles;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import com.opencsv.CSVWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,6 +111,18 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
   protected static final String DATE_FORMAT_YYYYMMDD = "YYYYMMdd";
   protected static final String DATE_FORMAT_YYYYMMDDHHMMSS = "YYYYMMddHHmmss";
 
+  protected static final DateTimeFormatter DATE_FORMATTER_YYYYMMDD =
+      DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD);
+
+  /** Number of move lines read at once by the streamed exports. */
+  protected static final int EXPORT_CHUNK_SIZE = 1000;
+
+  /**
+   * Property of the number of threads sharing the journals or the dates of an export, the number
+   * of processors by default.
+   */
+  protected static final String EXPORT_THREAD_COUNT_PROPERTY = "account.export.thread.count";
+
   @Inject
   public MoveLineExportServiceImpl(
       AppAccountService appAccountService,
@@ -118,27 +155,68 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       LocalDate localDate,
       String exportToAgressoNumber) {
 
-    int i = 0;
+    List<Long> moveIdList = new ArrayList<>();
+    for (Move move : moveList) {
+      moveIdList.add(move.getId());
+    }
+
+    this.updateMoveIdList(moveIdList, accountingReport, localDate, exportToAgressoNumber);
+  }
 
-    int moveListSize = moveList.size();
+  public void updateMoveIdList(
+      Collection<Long> moveIdList,
+      AccountingReport accountingReport,
+      LocalDate localDate,
+      String exportToAgressoNumber) {
 
-    for (Move move : moveList) {
+    List<Long> idList = new ArrayList<>(moveIdList);
 
-      this.updateMove(
-          moveRepo.find(move.getId()),
-          accountingReportRepo.find(accountingReport.getId()),
+    for (int i = 0; i < idList.size(); i += EXPORT_CHUNK_SIZE) {
+      this.updateMoves(
+          idList.subList(i, Math.min(i + EXPORT_CHUNK_SIZE, idList.size())),
+          accountingReport,
           localDate,
           exportToAgressoNumber);
-
-      if (i % 10 == 0) {
-        JPA.clear();
-      }
-      if (i++ % 100 == 0) {
-        log.debug("Process : {} / {}", i, moveListSize);
-      }
+      log.debug("Process : {} / {}", Math.min(i + EXPORT_CHUNK_SIZE, idList.size()), idList.size());
     }
   }
 
+  /**
+   * Flag the exported moves with a single update, without loading them. The audit fields are set
+   * as the save of each move would.
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateMoves(
+      List<Long> moveIdList,
+      AccountingReport accountingReport,
+      LocalDate localDate,
+      String exportToAgressoNumber) {
+
+    User user = AuthUtils.getUser();
+
+    Query query =
+        JPA.em()
+            .createQuery(
+                "UPDATE Move self SET self.exportNumber = :exportNumber, "
+                    + "self.exportDate = :exportDate, self.accountingOk = true, "
+                    + "self.accountingReport = :accountingReport, "
+                    + "self.updatedOn = :updatedOn, "
+                    + (user != null ? "self.updatedBy = :updatedBy, " : "")
+                    + "self.version = self.version + 1 "
+                    + "WHERE self.id IN (:moveIdList)")
+            .setParameter("exportNumber", exportToAgressoNumber)
+            .setParameter("exportDate", localDate)
+            .setParameter(
+                "accountingReport",
+                JPA.em().getReference(AccountingReport.class, accountingReport.getId()))
+            .setParameter("updatedOn", LocalDateTime.now())
+            .setParameter("moveIdList", moveIdList);
+    if (user != null) {
+      query.setParameter("updatedBy", user);
+    }
+    query.executeUpdate();
+  }
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public Move updateMove(
       Move move,
@@ -311,200 +389,154 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void exportMoveLineTypeSelect1006FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
 
     log.info("In export service Type 1006 FILE 1 :");
 
-    Company company = accountingReport.getCompany();
-
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = dateQuery.getResultList();
-
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (company != null) {
-      companyCode = company.getCode();
-      moveQueryStr += String.format(" AND self.company = %s", company.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
-    }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
-    LocalDate interfaceDate = accountingReport.getDate();
-
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
-      }
-
-      for (Journal journal : journalList) {
-
-        List<? extends Move> moveList =
-            moveRepo
-                .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
+    this.exportHeaderFile(
+        accountingReport, replay, AccountingReportRepository.EXPORT_SALES, "ventes.dat");
+  }
 
-        String journalCode = journal.getExportCode();
+  /**
+   * Méthode réalisant l'export SI - Agresso pour les journaux de type avoir
+   *
+   * @param mlr
+   * @param replay
+   * @throws AxelorException
+   * @throws IOException
+   */
+  public void exportMoveLineTypeSelect1007(AccountingReport accountingReport, boolean replay)
+      throws AxelorException, IOException {
 
-        if (moveList.size() > 0) {
+    log.info("In Export type 1007 service : ");
 
-          BigDecimal sumDebit =
-              this.getSumDebit(
-                  "self.account.useForPartnerBalance = true AND self.debit != 0.00 AND self.move in ?1 "
-                      + moveLineQueryStr,
-                  moveList);
+    String fileName =
+        "detail"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + "avoirs.dat";
+    this.exportMoveLineTypeSelect1007FILE1(accountingReport, replay);
+    this.exportMoveLineAllTypeSelectFILE2(accountingReport, fileName);
+  }
 
-          if (sumDebit.compareTo(BigDecimal.ZERO) == 1) {
+  /**
+   * Méthode réalisant l'export SI - Agresso des en-têtes pour les journaux de type avoir
+   *
+   * @param mlr
+   * @param replay
+   * @throws AxelorException
+   * @throws IOException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void exportMoveLineTypeSelect1007FILE1(AccountingReport accountingReport, boolean replay)
+      throws AxelorException, IOException {
 
-            String exportNumber = this.getSaleExportNumber(company);
+    log.info("In export service 1007 FILE 1:");
 
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+    this.exportHeaderFile(
+        accountingReport, replay, AccountingReportRepository.EXPORT_REFUNDS, "avoirs.dat");
+  }
 
-            this.updateMoveList(
-                (List<Move>) moveList, accountingReport, interfaceDate, exportNumber);
+  /**
+   * Méthode réalisant l'export SI - Agresso pour les journaux de type trésorerie
+   *
+   * @param mlr
+   * @param replay
+   * @throws AxelorException
+   * @throws IOException
+   */
+  public void exportMoveLineTypeSelect1008(AccountingReport accountingReport, boolean replay)
+      throws AxelorException, IOException {
 
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = sumDebit.toString();
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
-          }
-        }
-      }
-    }
+    log.info("In Export type 1008 service : ");
 
     String fileName =
-        "entete"
+        "detail"
             + appAccountService
                 .getTodayDateTime()
                 .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "ventes.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
+            + "tresorerie.dat";
+    this.exportMoveLineTypeSelect1008FILE1(accountingReport, replay);
+    this.exportMoveLineAllTypeSelectFILE2(accountingReport, fileName);
   }
 
   /**
-   * Méthode réalisant l'export SI - Agresso pour les journaux de type avoir
+   * Méthode réalisant l'export SI - Agresso des en-têtes pour les journaux de type trésorerie
    *
    * @param mlr
    * @param replay
    * @throws AxelorException
    * @throws IOException
    */
-  public void exportMoveLineTypeSelect1007(AccountingReport accountingReport, boolean replay)
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void exportMoveLineTypeSelect1008FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
 
-    log.info("In Export type 1007 service : ");
+    log.info("In export service 1008 FILE 1:");
+
+    this.exportHeaderFile(
+        accountingReport, replay, AccountingReportRepository.EXPORT_TREASURY, "tresorerie.dat");
+  }
+
+  /**
+   * Méthode réalisant l'export SI - Agresso pour les journaux de type achat
+   *
+   * @param mlr
+   * @param replay
+   * @throws AxelorException
+   * @throws IOException
+   */
+  public void exportMoveLineTypeSelect1009(AccountingReport accountingReport, boolean replay)
+      throws AxelorException, IOException {
 
+    log.info("In Export type 1009 service : ");
     String fileName =
         "detail"
             + appAccountService
                 .getTodayDateTime()
                 .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "avoirs.dat";
-    this.exportMoveLineTypeSelect1007FILE1(accountingReport, replay);
+            + "achats.dat";
+    this.exportMoveLineTypeSelect1009FILE1(accountingReport, replay);
     this.exportMoveLineAllTypeSelectFILE2(accountingReport, fileName);
   }
 
   /**
-   * Méthode réalisant l'export SI - Agresso des en-têtes pour les journaux de type avoir
+   * Méthode réalisant l'export SI - Agresso des en-têtes pour les journaux de type achat
    *
    * @param mlr
    * @param replay
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  public void exportMoveLineTypeSelect1007FILE1(AccountingReport accountingReport, boolean replay)
+  public void exportMoveLineTypeSelect1009FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
 
-    log.info("In export service 1007 FILE 1:");
+    log.info("In export service 1009 FILE 1:");
+
+    this.exportHeaderFile(
+        accountingReport, replay, AccountingReportRepository.EXPORT_PURCHASES, "achats.dat");
+  }
+
+  /**
+   * Export the header file of the sales, refunds, treasury or purchases. The moves of each journal
+   * are read on a worker pool, then the export numbers are taken and the moves are flagged in the
+   * order of the dates and the journals, in the current transaction.
+   *
+   * @param accountingReport
+   * @param replay
+   * @param exportTypeSelect the type of export, from 1006 to 1009
+   * @param fileSuffix
+   * @throws AxelorException
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  protected void exportHeaderFile(
+      AccountingReport accountingReport, boolean replay, int exportTypeSelect, String fileSuffix)
+      throws AxelorException, IOException {
 
     Company company = accountingReport.getCompany();
 
@@ -539,25 +571,14 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
                     + dateQueryStr
                     + "group by self.date order by self.date");
 
-    List<LocalDate> allDates = new ArrayList<LocalDate>();
-    allDates = dateQuery.getResultList();
+    List<LocalDate> allDates = dateQuery.getResultList();
 
     log.debug("allDates : {}", allDates);
 
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
+    String companyCode = company.getCode();
+    String reference = accountingReport.getRef() != null ? accountingReport.getRef() : "";
+    String moveQueryStr = String.format(" AND self.company = %s", company.getId());
     String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (accountingReport.getCompany() != null) {
-      companyCode = accountingReport.getCompany().getCode();
-      moveQueryStr +=
-          String.format(" AND self.company = %s", accountingReport.getCompany().getId());
-    }
     if (accountingReport.getPeriod() != null) {
       moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
     }
@@ -584,481 +605,318 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
     moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
 
     LocalDate interfaceDate = accountingReport.getDate();
+    String interfaceDateStr = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
 
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
+    List<Journal> journalList;
+    if (accountingReport.getJournal() != null) {
+      journalList = new ArrayList<>();
+      journalList.add(accountingReport.getJournal());
+    } else {
+      journalList =
           journalRepo
               .all()
               .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
               .fetch();
+    }
+
+    List<Callable<List<ExportHeaderGroup>>> shardList = new ArrayList<>();
+    for (int journalIndex = 0; journalIndex < journalList.size(); journalIndex++) {
+      Long journalId = journalList.get(journalIndex).getId();
+      int index = journalIndex;
+      String queryStr = moveQueryStr;
+      String lineQueryStr = moveLineQueryStr;
+      shardList.add(
+          () ->
+              this.computeHeaderGroups(
+                  exportTypeSelect,
+                  journalId,
+                  index,
+                  allDates,
+                  queryStr,
+                  lineQueryStr,
+                  new String[] {companyCode, reference, interfaceDateStr}));
+    }
+
+    List<ExportHeaderGroup> groupList = new ArrayList<>();
+    for (List<ExportHeaderGroup> journalGroupList : this.runShards(shardList)) {
+      groupList.addAll(journalGroupList);
+    }
+    // the export numbers follow the dates, then the journals, as when the journals were read one
+    // after the other
+    groupList.sort(
+        Comparator.comparingInt((ExportHeaderGroup group) -> group.dateIndex)
+            .thenComparingInt(group -> group.journalIndex));
+
+    List<String[]> allMoveData = new ArrayList<>();
+    for (ExportHeaderGroup group : groupList) {
+      String exportNumber = this.getExportNumber(exportTypeSelect, company);
+      this.updateMoveIdList(group.moveIdList, accountingReport, interfaceDate, exportNumber);
+      group.items[2] = exportNumber;
+      allMoveData.add(group.items);
+    }
+
+    String fileName =
+        "entete"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + fileSuffix;
+    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
+  }
+
+  /**
+   * Read the moves of a journal to export in the header file. Called from a worker thread: only
+   * ids and values are returned.
+   *
+   * @param context the company code, the reference and the interface date of the rows
+   * @return the rows of the journal, without export number
+   */
+  protected List<ExportHeaderGroup> computeHeaderGroups(
+      int exportTypeSelect,
+      Long journalId,
+      int journalIndex,
+      List<LocalDate> allDates,
+      String moveQueryStr,
+      String moveLineQueryStr,
+      String[] context) {
+
+    List<ExportHeaderGroup> groupList = new ArrayList<>();
+    String journalCode = journalRepo.find(journalId).getExportCode();
+    DateTimeFormatter periodFormatter = DateTimeFormatter.ofPattern("yyyyMM");
+    DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    for (int dateIndex = 0; dateIndex < allDates.size(); dateIndex++) {
+
+      LocalDate dt = allDates.get(dateIndex);
+
+      List<Move> moveList =
+          moveRepo
+              .all()
+              .filter(
+                  "self.date = ?1 AND self.ignoreInAccountingOk = false "
+                      + "AND self.journal.notExportOk = false AND self.journal.id = ?2"
+                      + moveQueryStr,
+                  dt,
+                  journalId)
+              .fetch();
 
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
+      if (moveList.isEmpty()) {
+        continue;
       }
 
-      for (Journal journal : journalList) {
+      if (exportTypeSelect == AccountingReportRepository.EXPORT_PURCHASES) {
 
-        List<Move> moveList =
-            moveRepo
+        // each row has the amount and the account of the credit lines of all the moves of the
+        // date and journal
+        List<MoveLine> moveLineList =
+            moveLineRepo
                 .all()
                 .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
+                    "self.account.useForPartnerBalance = true AND self.credit != 0.00 "
+                        + "AND self.move in ?1"
+                        + moveLineQueryStr,
+                    moveList)
                 .fetch();
 
-        String journalCode = journal.getExportCode();
+        if (!moveLineList.isEmpty()) {
 
-        if (moveList.size() > 0) {
+          String accountCode = moveLineList.get(0).getAccount().getCode();
+          String totalCredit = this.getSumCredit(moveLineList).toString();
 
-          BigDecimal sumCredit =
-              this.getSumCredit(
-                  "self.account.useForPartnerBalance = true AND self.credit != 0.00 AND self.move in ?1 "
-                      + moveLineQueryStr,
-                  moveList);
+          for (Move move : moveList) {
 
-          if (sumCredit.compareTo(BigDecimal.ZERO) == 1) {
+            String invoiceId = "";
+            String dueDate = "";
+            if (move.getInvoice() != null) {
+              invoiceId = move.getInvoice().getInvoiceId();
+              dueDate = move.getInvoice().getDueDate().toString();
+            }
 
-            String exportNumber = this.getRefundExportNumber(company);
+            String items[] = new String[11];
+            items[0] = context[0];
+            items[1] = journalCode;
+            items[3] = context[2];
+            items[4] = invoiceId;
+            items[5] = dueDate;
+            items[6] = accountCode;
+            items[7] = totalCredit;
+            items[8] = context[1];
+            items[9] = dt.format(dateFormatter);
+            items[10] = move.getPeriod().getFromDate().format(periodFormatter);
+            groupList.add(
+                new ExportHeaderGroup(
+                    dateIndex, journalIndex, Collections.singletonList(move.getId()), items));
+          }
+        }
 
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+      } else {
 
-            this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
+        String amount = this.getHeaderAmount(exportTypeSelect, moveList, moveLineQueryStr);
 
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = sumCredit.toString();
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
+        if (amount != null) {
+          List<Long> moveIdList = new ArrayList<>();
+          for (Move move : moveList) {
+            moveIdList.add(move.getId());
           }
+
+          String items[] = new String[8];
+          items[0] = context[0];
+          items[1] = journalCode;
+          items[3] = context[2];
+          items[4] = amount;
+          items[5] = context[1];
+          items[6] = dt.format(dateFormatter);
+          items[7] = moveList.get(0).getPeriod().getFromDate().format(periodFormatter);
+          groupList.add(new ExportHeaderGroup(dateIndex, journalIndex, moveIdList, items));
         }
       }
+
+      JPA.clear();
     }
 
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "avoirs.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
+    return groupList;
   }
 
   /**
-   * Méthode réalisant l'export SI - Agresso pour les journaux de type trésorerie
-   *
-   * @param mlr
-   * @param replay
-   * @throws AxelorException
-   * @throws IOException
-   */
-  public void exportMoveLineTypeSelect1008(AccountingReport accountingReport, boolean replay)
-      throws AxelorException, IOException {
-
-    log.info("In Export type 1008 service : ");
-
-    String fileName =
-        "detail"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "tresorerie.dat";
-    this.exportMoveLineTypeSelect1008FILE1(accountingReport, replay);
-    this.exportMoveLineAllTypeSelectFILE2(accountingReport, fileName);
-  }
-
-  /**
-   * Méthode réalisant l'export SI - Agresso des en-têtes pour les journaux de type trésorerie
-   *
-   * @param mlr
-   * @param replay
-   * @throws AxelorException
-   * @throws IOException
+   * @return the amount of the header row of the moves, or null if the moves are not exported
    */
-  @SuppressWarnings("unchecked")
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  public void exportMoveLineTypeSelect1008FILE1(AccountingReport accountingReport, boolean replay)
-      throws AxelorException, IOException {
-
-    log.info("In export service 1008 FILE 1:");
-
-    Company company = accountingReport.getCompany();
-
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = new ArrayList<LocalDate>();
-    allDates = dateQuery.getResultList();
+  protected String getHeaderAmount(
+      int exportTypeSelect, List<Move> moveList, String moveLineQueryStr) {
 
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (company != null) {
-      companyCode = accountingReport.getCompany().getCode();
-      moveQueryStr += String.format(" AND self.company = %s", company.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
-    }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
-    LocalDate interfaceDate = accountingReport.getDate();
-
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
-      }
+    switch (exportTypeSelect) {
+      case AccountingReportRepository.EXPORT_SALES:
+        BigDecimal sumDebit =
+            this.getSumDebit(
+                "self.account.useForPartnerBalance = true AND self.debit != 0.00 "
+                    + "AND self.move in ?1 "
+                    + moveLineQueryStr,
+                moveList);
+        return sumDebit.compareTo(BigDecimal.ZERO) > 0 ? sumDebit.toString() : null;
 
-      for (Journal journal : journalList) {
+      case AccountingReportRepository.EXPORT_REFUNDS:
+        BigDecimal sumCredit =
+            this.getSumCredit(
+                "self.account.useForPartnerBalance = true AND self.credit != 0.00 "
+                    + "AND self.move in ?1 "
+                    + moveLineQueryStr,
+                moveList);
+        return sumCredit.compareTo(BigDecimal.ZERO) > 0 ? sumCredit.toString() : null;
 
-        List<Move> moveList =
-            moveRepo
+      case AccountingReportRepository.EXPORT_TREASURY:
+        long moveLineListSize =
+            moveLineRepo
                 .all()
                 .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
+                    "self.move in ?1 AND (self.debit > 0 OR self.credit > 0) " + moveLineQueryStr,
+                    moveList)
+                .count();
+        return moveLineListSize > 0 ? "0" : null;
 
-        String journalCode = journal.getExportCode();
-
-        if (moveList.size() > 0) {
-
-          long moveLineListSize =
-              moveLineRepo
-                  .all()
-                  .filter(
-                      "self.move in ?1 AND (self.debit > 0 OR self.credit > 0) " + moveLineQueryStr,
-                      moveList)
-                  .count();
-
-          if (moveLineListSize > 0) {
-
-            String exportNumber = this.getTreasuryExportNumber(company);
-
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
-
-            this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
-
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = "0";
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
-          }
-        }
-      }
+      default:
+        return null;
     }
-
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "tresorerie.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
   }
 
-  /**
-   * Méthode réalisant l'export SI - Agresso pour les journaux de type achat
-   *
-   * @param mlr
-   * @param replay
-   * @throws AxelorException
-   * @throws IOException
-   */
-  public void exportMoveLineTypeSelect1009(AccountingReport accountingReport, boolean replay)
-      throws AxelorException, IOException {
+  protected String getExportNumber(int exportTypeSelect, Company company) throws AxelorException {
 
-    log.info("In Export type 1009 service : ");
-    String fileName =
-        "detail"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "achats.dat";
-    this.exportMoveLineTypeSelect1009FILE1(accountingReport, replay);
-    this.exportMoveLineAllTypeSelectFILE2(accountingReport, fileName);
+    switch (exportTypeSelect) {
+      case AccountingReportRepository.EXPORT_SALES:
+        return this.getSaleExportNumber(company);
+      case AccountingReportRepository.EXPORT_REFUNDS:
+        return this.getRefundExportNumber(company);
+      case AccountingReportRepository.EXPORT_TREASURY:
+        return this.getTreasuryExportNumber(company);
+      default:
+        return this.getPurchaseExportNumber(company);
+    }
   }
 
   /**
-   * Méthode réalisant l'export SI - Agresso des en-têtes pour les journaux de type achat
+   * Run the shards of an export on a pool of {@link #getExportThreadCount()} threads, each shard in
+   * its own unit of work.
    *
-   * @param mlr
-   * @param replay
+   * @return the results of the shards, in the order of the shards
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  public void exportMoveLineTypeSelect1009FILE1(AccountingReport accountingReport, boolean replay)
+  protected <T> List<T> runShards(List<Callable<T>> shardList)
       throws AxelorException, IOException {
 
-    log.info("In export service 1009 FILE 1:");
-
-    Company company = accountingReport.getCompany();
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = new ArrayList<LocalDate>();
-    allDates = dateQuery.getResultList();
+    List<T> resultList = new ArrayList<>();
 
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (company != null) {
-      companyCode = company.getCode();
-      moveQueryStr += String.format(" AND self.company = %s", company.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
+    if (shardList.isEmpty()) {
+      return resultList;
     }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
-    LocalDate interfaceDate = accountingReport.getDate();
-
-    for (LocalDate dt : allDates) {
 
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(getExportThreadCount(), shardList.size()));
 
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
+    try {
+      List<Future<T>> futureList = new ArrayList<>();
+      for (Callable<T> shard : shardList) {
+        futureList.add(executor.submit(() -> this.runShardInThread(shard)));
       }
+      for (Future<T> future : futureList) {
+        resultList.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof AxelorException) {
+        throw (AxelorException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new AxelorException(cause, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } finally {
+      executor.shutdownNow();
+    }
 
-      for (Journal journal : journalList) {
-
-        List<Move> moveList =
-            moveRepo
-                .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
-
-        String journalCode = journal.getExportCode();
-
-        int moveListSize = moveList.size();
-
-        if (moveListSize > 0) {
+    return resultList;
+  }
 
-          int i = 0;
+  protected int getExportThreadCount() {
+    return Math.max(
+        1,
+        AppSettings.get()
+            .getInt(EXPORT_THREAD_COUNT_PROPERTY, Runtime.getRuntime().availableProcessors()));
+  }
 
-          for (Move move : moveList) {
+  protected <T> T runShardInThread(Callable<T> shard) throws Exception {
 
-            List<MoveLine> moveLineList =
-                moveLineRepo
-                    .all()
-                    .filter(
-                        "self.account.useForPartnerBalance = true AND self.credit != 0.00 AND self.move in ?1"
-                            + moveLineQueryStr,
-                        moveList)
-                    .fetch();
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
 
-            if (moveLineList.size() > 0) {
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      UnitOfWork unitOfWork = Beans.get(UnitOfWork.class);
+      unitOfWork.begin();
+      try {
+        return shard.call();
+      } finally {
+        unitOfWork.end();
+      }
+    }
+  }
 
-              String exportNumber = this.getPurchaseExportNumber(company);
+  /** A row of a header file, with the moves it covers. */
+  protected static class ExportHeaderGroup {
 
-              String periodCode =
-                  move.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+    protected final int dateIndex;
+    protected final int journalIndex;
+    protected final List<Long> moveIdList;
 
-              BigDecimal totalCredit = this.getSumCredit(moveLineList);
-              String invoiceId = "";
-              String dueDate = "";
-              if (move.getInvoice() != null) {
-                invoiceId = move.getInvoice().getInvoiceId();
-                dueDate = move.getInvoice().getDueDate().toString();
-              }
+    /** The row, whose export number is set when the moves are flagged. */
+    protected final String[] items;
 
-              MoveLine firstMoveLine = moveLineList.get(0);
-              String items[] = new String[11];
-              items[0] = companyCode;
-              items[1] = journalCode;
-              items[2] = exportNumber;
-              items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-              items[4] = invoiceId;
-              items[5] = dueDate;
-              items[6] = firstMoveLine.getAccount().getCode();
-              items[7] = totalCredit.toString();
-              items[8] = reference;
-              items[9] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-              items[10] = periodCode;
-              allMoveData.add(items);
-
-              this.updateMove(move, accountingReport, interfaceDate, exportNumber);
-
-              if (i % 10 == 0) {
-                JPA.clear();
-              }
-              if (i++ % 100 == 0) {
-                log.debug("Process : {} / {}", i, moveListSize);
-              }
-            }
-          }
-        }
-      }
+    protected ExportHeaderGroup(
+        int dateIndex, int journalIndex, List<Long> moveIdList, String[] items) {
+      this.dateIndex = dateIndex;
+      this.journalIndex = journalIndex;
+      this.moveIdList = moveIdList;
+      this.items = items;
     }
-
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "achats.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
   }
 
   @Override
@@ -1118,7 +976,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       throws AxelorException, IOException {
 
     log.info("In Export type 1000 service : ");
-    List<String[]> allMoveLineData = new ArrayList<>();
     Company company = accountingReport.getCompany();
 
     LocalDate interfaceDate = accountingReport.getDate();
@@ -1163,104 +1020,188 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       }
     }
 
-    List<MoveLine> moveLineList =
-        moveLineRepo
-            .all()
-            .filter(
-                "(self.move.statusSelect = ?1 OR self.move.statusSelect = ?2) " + moveLineQueryStr,
-                MoveRepository.STATUS_VALIDATED,
-                MoveRepository.STATUS_DAYBOOK)
-            .order("date")
-            .order("name")
-            .fetch();
-    if (!moveLineList.isEmpty()) {
-      List<Move> moveList = new ArrayList<>();
-      for (MoveLine moveLine : moveLineList) {
-        String[] items = new String[18];
-        Move move = moveLine.getMove();
-        if (!moveList.contains(move)) {
-          moveList.add(move);
-        }
-        Journal journal = move.getJournal();
-        items[0] = journal.getCode();
-        items[1] = journal.getName();
-        items[2] = moveLine.getName();
-        items[3] = moveLine.getDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
-        items[4] = moveLine.getAccount().getCode();
-        items[5] = moveLine.getAccount().getName();
-        items[6] = "";
-        items[7] = "";
-        Partner partner = moveLine.getPartner();
-        if (partner != null) {
-          items[6] = partner.getPartnerSeq();
-          items[7] = partner.getFullName();
-        }
-        items[8] = moveLine.getOrigin();
-        if (moveLine.getDate() != null) {
-          items[9] =
-              moveLine
-                  .getOriginDate()
-                  .format(
-                      DateTimeFormatter.ofPattern(
-                          DATE_FORMAT_YYYYMMDD)); // Pour le moment on va utiliser la date des
-          // lignes
-          // d'écriture.
-        }
-        items[10] = moveLine.getDescription();
-        items[11] = moveLine.getDebit().toString();
-        items[12] = moveLine.getCredit().toString();
-        if (moveLine.getDebit().compareTo(BigDecimal.ZERO) > 0) {
-          List<String> reconcileSeqList = new ArrayList<>();
-          List<String> reconcileDateList = new ArrayList<>();
-
-          for (Reconcile reconcile : moveLine.getDebitReconcileList()) {
-            reconcileSeqList.add(reconcile.getReconcileSeq());
-            reconcileDateList.add(
-                reconcile
-                    .getReconciliationDate()
-                    .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD)));
-          }
-          items[13] = StringUtils.join(reconcileSeqList, "; ");
-          items[14] = StringUtils.join(reconcileDateList, "; ");
-        } else {
-          List<String> reconcileSeqList = new ArrayList<>();
-          List<String> reconcileDateList = new ArrayList<>();
-          for (Reconcile reconcile : moveLine.getCreditReconcileList()) {
-            if (reconcile.getStatusSelect() == ReconcileRepository.STATUS_CONFIRMED) {
-              reconcileSeqList.add(reconcile.getReconcileSeq());
-              reconcileDateList.add(
-                  reconcile
-                      .getReconciliationDate()
-                      .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD)));
-            }
-          }
-          items[13] = StringUtils.join(reconcileSeqList, "; ");
-          items[14] = StringUtils.join(reconcileDateList, "; ");
-        }
-        if (move.getValidationDate() != null) {
-          items[15] =
-              move.getValidationDate().format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDD));
-        }
-        items[16] = moveLine.getCurrencyAmount().toString();
-        if (move.getCurrency() != null) {
-          items[17] = move.getCurrency().getCode();
+    String moveLineFilter =
+        "(self.move.statusSelect = :statusValidated OR self.move.statusSelect = :statusDaybook)"
+            + moveLineQueryStr;
+
+    String fileName = this.setFileName(accountingReport);
+    String filePath = this.getExportFilePath(company);
+    Set<Long> moveIdSet = new LinkedHashSet<>();
+
+    try (CSVWriter csvWriter = CsvTool.setCsvFile(filePath, fileName, '|')) {
+
+      List<MoveLine> moveLineList = this.fetchMoveLineChunk1000(moveLineFilter, null);
+
+      while (!moveLineList.isEmpty()) {
+        Map<Long, List<Reconcile>> debitReconcileMap = new HashMap<>();
+        Map<Long, List<Reconcile>> creditReconcileMap = new HashMap<>();
+        this.fetchReconcileMaps(moveLineList, debitReconcileMap, creditReconcileMap);
+
+        for (MoveLine moveLine : moveLineList) {
+          moveIdSet.add(moveLine.getMove().getId());
+          csvWriter.writeNext(
+              this.createItems1000(
+                  moveLine,
+                  debitReconcileMap.getOrDefault(moveLine.getId(), Collections.emptyList()),
+                  creditReconcileMap.getOrDefault(moveLine.getId(), Collections.emptyList())));
         }
-        allMoveLineData.add(items);
-      }
 
-      if (!administration) {
-        String exportNumber = this.getSaleExportNumber(company);
-        this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
+        MoveLine lastMoveLine = moveLineList.get(moveLineList.size() - 1);
+        JPA.clear();
+        moveLineList = this.fetchMoveLineChunk1000(moveLineFilter, lastMoveLine);
       }
     }
 
+    if (!administration && !moveIdSet.isEmpty()) {
+      String exportNumber = this.getSaleExportNumber(JPA.find(Company.class, company.getId()));
+      this.updateMoveIdList(moveIdSet, accountingReport, interfaceDate, exportNumber);
+    }
+
     accountingReport = accountingReportRepo.find(accountingReport.getId());
 
-    String fileName = this.setFileName(accountingReport);
-    writeMoveLineToCsvFile(company, fileName, allMoveLineData, accountingReport);
+    this.attachExportFile(filePath, fileName, accountingReport);
     accountingReportRepo.save(accountingReport);
   }
 
+  /**
+   * Fetch the next move lines of the FEC export, ordered by date, name and id. The lines are read
+   * by chunks following the last line of the previous chunk, so that the memory used does not
+   * depend on the size of the ledger.
+   *
+   * @param moveLineFilter the filter of the move lines
+   * @param lastMoveLine the last line of the previous chunk, null for the first chunk
+   * @return the next move lines, with their move, journal, account and partner
+   */
+  protected List<MoveLine> fetchMoveLineChunk1000(String moveLineFilter, MoveLine lastMoveLine) {
+
+    TypedQuery<MoveLine> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM MoveLine self "
+                    + "JOIN FETCH self.move move "
+                    + "JOIN FETCH move.journal "
+                    + "LEFT JOIN FETCH move.currency "
+                    + "JOIN FETCH self.account "
+                    + "LEFT JOIN FETCH self.partner "
+                    + "WHERE "
+                    + moveLineFilter
+                    + (lastMoveLine != null
+                        ? " AND (self.date > :lastDate OR (self.date = :lastDate"
+                            + " AND (COALESCE(self.name, '') > :lastName"
+                            + " OR (COALESCE(self.name, '') = :lastName AND self.id > :lastId))))"
+                        : "")
+                    + " ORDER BY self.date, COALESCE(self.name, ''), self.id",
+                MoveLine.class)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setParameter("statusDaybook", MoveRepository.STATUS_DAYBOOK)
+            .setMaxResults(EXPORT_CHUNK_SIZE);
+
+    if (lastMoveLine != null) {
+      query.setParameter("lastDate", lastMoveLine.getDate());
+      query.setParameter("lastName", StringUtils.defaultString(lastMoveLine.getName()));
+      query.setParameter("lastId", lastMoveLine.getId());
+    }
+
+    return query.getResultList();
+  }
+
+  /**
+   * Load the reconciles of a chunk of move lines with a single query: all the debit reconciles,
+   * and the confirmed credit reconciles.
+   */
+  protected void fetchReconcileMaps(
+      List<MoveLine> moveLineList,
+      Map<Long, List<Reconcile>> debitReconcileMap,
+      Map<Long, List<Reconcile>> creditReconcileMap) {
+
+    List<Long> moveLineIdList = new ArrayList<>();
+    for (MoveLine moveLine : moveLineList) {
+      moveLineIdList.add(moveLine.getId());
+    }
+
+    List<Reconcile> reconcileList =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM Reconcile self "
+                    + "WHERE self.debitMoveLine.id IN (:moveLineIdList) "
+                    + "OR (self.creditMoveLine.id IN (:moveLineIdList) "
+                    + "AND self.statusSelect = :statusConfirmed) "
+                    + "ORDER BY self.id",
+                Reconcile.class)
+            .setParameter("moveLineIdList", moveLineIdList)
+            .setParameter("statusConfirmed", ReconcileRepository.STATUS_CONFIRMED)
+            .getResultList();
+
+    Set<Long> moveLineIdSet = new HashSet<>(moveLineIdList);
+
+    for (Reconcile reconcile : reconcileList) {
+      MoveLine debitMoveLine = reconcile.getDebitMoveLine();
+      MoveLine creditMoveLine = reconcile.getCreditMoveLine();
+      if (debitMoveLine != null && moveLineIdSet.contains(debitMoveLine.getId())) {
+        debitReconcileMap
+            .computeIfAbsent(debitMoveLine.getId(), key -> new ArrayList<>())
+            .add(reconcile);
+      }
+      if (creditMoveLine != null
+          && moveLineIdSet.contains(creditMoveLine.getId())
+          && reconcile.getStatusSelect() == ReconcileRepository.STATUS_CONFIRMED) {
+        creditReconcileMap
+            .computeIfAbsent(creditMoveLine.getId(), key -> new ArrayList<>())
+            .add(reconcile);
+      }
+    }
+  }
+
+  protected String[] createItems1000(
+      MoveLine moveLine, List<Reconcile> debitReconcileList, List<Reconcile> creditReconcileList) {
+
+    String[] items = new String[18];
+    Move move = moveLine.getMove();
+    Journal journal = move.getJournal();
+    items[0] = journal.getCode();
+    items[1] = journal.getName();
+    items[2] = moveLine.getName();
+    items[3] = moveLine.getDate().format(DATE_FORMATTER_YYYYMMDD);
+    items[4] = moveLine.getAccount().getCode();
+    items[5] = moveLine.getAccount().getName();
+    items[6] = "";
+    items[7] = "";
+    Partner partner = moveLine.getPartner();
+    if (partner != null) {
+      items[6] = partner.getPartnerSeq();
+      items[7] = partner.getFullName();
+    }
+    items[8] = moveLine.getOrigin();
+    if (moveLine.getOriginDate() != null) {
+      items[9] = moveLine.getOriginDate().format(DATE_FORMATTER_YYYYMMDD);
+    }
+    items[10] = moveLine.getDescription();
+    items[11] = moveLine.getDebit().toString();
+    items[12] = moveLine.getCredit().toString();
+
+    List<String> reconcileSeqList = new ArrayList<>();
+    List<String> reconcileDateList = new ArrayList<>();
+    for (Reconcile reconcile :
+        moveLine.getDebit().compareTo(BigDecimal.ZERO) > 0
+            ? debitReconcileList
+            : creditReconcileList) {
+      reconcileSeqList.add(reconcile.getReconcileSeq());
+      reconcileDateList.add(reconcile.getReconciliationDate().format(DATE_FORMATTER_YYYYMMDD));
+    }
+    items[13] = StringUtils.join(reconcileSeqList, "; ");
+    items[14] = StringUtils.join(reconcileDateList, "; ");
+
+    if (move.getValidationDate() != null) {
+      items[15] = move.getValidationDate().format(DATE_FORMATTER_YYYYMMDD);
+    }
+    items[16] = moveLine.getCurrencyAmount().toString();
+    if (move.getCurrency() != null) {
+      items[17] = move.getCurrency().getCode();
+    }
+
+    return items;
+  }
+
   /**
    * Méthode réalisant l'export SI - Agresso des fichiers détails
    *
@@ -1337,134 +1278,182 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
     log.debug("dates : {}", dates);
 
-    List<String[]> allMoveLineData = new ArrayList<String[]>();
-
-    for (LocalDate localDate : dates) {
-
-      Query queryExportAgressoRef =
-          JPA.em()
-              .createQuery(
-                  "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
-                      + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                      + localDate.toString()
-                      + "'"
-                      + moveLineQueryStr);
-      List<String> exportAgressoRefs = new ArrayList<String>();
-      exportAgressoRefs = queryExportAgressoRef.getResultList();
-      for (String exportAgressoRef : exportAgressoRefs) {
-
-        if (exportAgressoRef != null && !exportAgressoRef.isEmpty()) {
-
-          int sequence = 1;
-
-          Query query =
-              JPA.em()
-                  .createQuery(
-                      "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
-                          + "AND self.date = '"
-                          + localDate.toString()
-                          + "' AND self.move.exportNumber = '"
-                          + exportAgressoRef
-                          + "'"
-                          + moveLineQueryStr
-                          + " group by self.account.id");
-
-          List<Long> accountIds = new ArrayList<Long>();
-          accountIds = query.getResultList();
-
-          log.debug("accountIds : {}", accountIds);
-
-          for (Long accountId : accountIds) {
-            if (accountId != null) {
-              String accountCode = accountRepo.find(accountId).getCode();
-              List<MoveLine> moveLines =
-                  moveLineRepo
-                      .all()
-                      .filter(
-                          "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                              + localDate.toString()
-                              + "' AND self.move.exportNumber = '"
-                              + exportAgressoRef
-                              + "'"
-                              + moveLineQueryStr,
-                          accountId)
-                      .fetch();
-
-              log.debug("movelines  : {} ", moveLines);
-
-              if (moveLines.size() > 0) {
-
-                List<MoveLine> moveLineList = moveLineService.consolidateMoveLines(moveLines);
-
-                List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
-
-                for (MoveLine moveLine3 : sortMoveLineList) {
-
-                  Journal journal = moveLine3.getMove().getJournal();
-                  LocalDate date = moveLine3.getDate();
-                  String items[] = null;
-
-                  if (typeSelect == 9) {
-                    items = new String[13];
-                  } else {
-                    items = new String[12];
-                  }
-
-                  items[0] = companyCode;
-                  items[1] = journal.getExportCode();
-                  items[2] = moveLine3.getMove().getExportNumber();
-                  items[3] = String.format("%s", sequence);
-                  sequence++;
-                  items[4] = accountCode;
-
-                  BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
-                  String moveLineSign = "C";
-                  if (totAmt.compareTo(BigDecimal.ZERO) == -1) {
-                    moveLineSign = "D";
-                    totAmt = totAmt.negate();
-                  }
-                  items[5] = moveLineSign;
-                  items[6] = totAmt.toString();
-
-                  String analyticAccounts = "";
-                  for (AnalyticMoveLine analyticDistributionLine :
-                      moveLine3.getAnalyticMoveLineList()) {
-                    analyticAccounts =
-                        analyticAccounts
-                            + analyticDistributionLine.getAnalyticAccount().getCode()
-                            + "/";
-                  }
-
-                  if (typeSelect == 9) {
-                    items[7] = "";
-                    items[8] = analyticAccounts;
-                    items[9] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  } else {
-                    items[7] = analyticAccounts;
-                    items[8] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  }
-
-                  allMoveLineData.add(items);
+    String filePath = this.getExportFilePath(company);
+    String detailQueryStr = moveLineQueryStr;
+    String detailCompanyCode = companyCode;
+
+    // one part file by date, written on the worker pool then appended in the order of the dates
+    List<Callable<File>> shardList = new ArrayList<>();
+    List<File> partFileList = new ArrayList<>();
+    for (int index = 0; index < dates.size(); index++) {
+      LocalDate localDate = dates.get(index);
+      String partFileName = fileName + "." + index + ".part";
+      partFileList.add(new File(filePath, partFileName));
+      shardList.add(
+          () -> {
+            try (CSVWriter csvWriter = CsvTool.setCsvFile(filePath, partFileName, '|')) {
+              this.exportDetailLines(
+                  csvWriter, localDate, detailQueryStr, detailCompanyCode, typeSelect);
+            }
+            return new File(filePath, partFileName);
+          });
+    }
+
+    try {
+      List<File> shardFileList = this.runShards(shardList);
+
+      try (OutputStream os =
+          new BufferedOutputStream(new FileOutputStream(new File(filePath, fileName)))) {
+        for (File partFile : shardFileList) {
+          Files.asByteSource(partFile).copyTo(os);
+        }
+      }
+    } finally {
+      // also drop the part files written before the failure of a shard
+      for (File partFile : partFileList) {
+        partFile.delete();
+      }
+    }
+
+    log.debug("Full path to export : {}{}", filePath, fileName);
+    this.attachExportFile(filePath, fileName, accountingReport);
+  }
+
+  /**
+   * Write the detail lines of a date. Called from a worker thread.
+   *
+   * @param csvWriter the part file of the date
+   * @param localDate
+   * @param moveLineQueryStr the filter of the exported move lines
+   * @param companyCode
+   * @param typeSelect
+   */
+  @SuppressWarnings("unchecked")
+  protected void exportDetailLines(
+      CSVWriter csvWriter,
+      LocalDate localDate,
+      String moveLineQueryStr,
+      String companyCode,
+      int typeSelect) {
+
+    Query queryExportAgressoRef =
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
+                    + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
+                    + localDate.toString()
+                    + "'"
+                    + moveLineQueryStr);
+    List<String> exportAgressoRefs = new ArrayList<String>();
+    exportAgressoRefs = queryExportAgressoRef.getResultList();
+    for (String exportAgressoRef : exportAgressoRefs) {
+
+      if (exportAgressoRef != null && !exportAgressoRef.isEmpty()) {
+
+        int sequence = 1;
+
+        Query query =
+            JPA.em()
+                .createQuery(
+                    "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
+                        + "AND self.date = '"
+                        + localDate.toString()
+                        + "' AND self.move.exportNumber = '"
+                        + exportAgressoRef
+                        + "'"
+                        + moveLineQueryStr
+                        + " group by self.account.id");
+
+        List<Long> accountIds = new ArrayList<Long>();
+        accountIds = query.getResultList();
+
+        log.debug("accountIds : {}", accountIds);
+
+        for (Long accountId : accountIds) {
+          if (accountId != null) {
+            String accountCode = accountRepo.find(accountId).getCode();
+            List<MoveLine> moveLines =
+                moveLineRepo
+                    .all()
+                    .filter(
+                        "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
+                            + localDate.toString()
+                            + "' AND self.move.exportNumber = '"
+                            + exportAgressoRef
+                            + "'"
+                            + moveLineQueryStr,
+                        accountId)
+                    .fetch();
+
+            log.debug("movelines  : {} ", moveLines);
+
+            if (moveLines.size() > 0) {
+
+              List<MoveLine> moveLineList = moveLineService.consolidateMoveLines(moveLines);
+
+              List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
+
+              for (MoveLine moveLine3 : sortMoveLineList) {
+
+                Journal journal = moveLine3.getMove().getJournal();
+                LocalDate date = moveLine3.getDate();
+                String items[] = null;
+
+                if (typeSelect == 9) {
+                  items = new String[13];
+                } else {
+                  items = new String[12];
+                }
+
+                items[0] = companyCode;
+                items[1] = journal.getExportCode();
+                items[2] = moveLine3.getMove().getExportNumber();
+                items[3] = String.format("%s", sequence);
+                sequence++;
+                items[4] = accountCode;
+
+                BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
+                String moveLineSign = "C";
+                if (totAmt.compareTo(BigDecimal.ZERO) == -1) {
+                  moveLineSign = "D";
+                  totAmt = totAmt.negate();
+                }
+                items[5] = moveLineSign;
+                items[6] = totAmt.toString();
+
+                String analyticAccounts = "";
+                for (AnalyticMoveLine analyticDistributionLine :
+                    moveLine3.getAnalyticMoveLineList()) {
+                  analyticAccounts =
+                      analyticAccounts
+                          + analyticDistributionLine.getAnalyticAccount().getCode()
+                          + "/";
+                }
+
+                if (typeSelect == 9) {
+                  items[7] = "";
+                  items[8] = analyticAccounts;
+                  items[9] =
+                      String.format(
+                          "%s DU %s",
+                          journal.getCode(),
+                          date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+                } else {
+                  items[7] = analyticAccounts;
+                  items[8] =
+                      String.format(
+                          "%s DU %s",
+                          journal.getCode(),
+                          date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
                 }
+
+                csvWriter.writeNext(items);
               }
             }
           }
         }
       }
     }
-
-    writeMoveLineToCsvFile(company, fileName, allMoveLineData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',  this.createHeaderForDetailFile(typeSelect),
-    // allMoveLineData);
   }
 
   private void writeMoveLineToCsvFile(
@@ -1473,14 +1462,24 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       List<String[]> allMoveData,
       AccountingReport accountingReport)
       throws AxelorException, IOException {
+    String filePath = this.getExportFilePath(company);
+    log.debug("Full path to export : {}{}", filePath, fileName);
+    CsvTool.csvWriter(filePath, fileName, '|', null, allMoveData);
+    this.attachExportFile(filePath, fileName, accountingReport);
+  }
+
+  protected String getExportFilePath(Company company) throws AxelorException {
     String filePath = accountConfigService.getAccountConfig(company).getExportPath();
     if (filePath == null) {
       filePath = Files.createTempDir().getAbsolutePath();
     } else {
       new File(filePath).mkdirs();
     }
-    log.debug("Full path to export : {}{}", filePath, fileName);
-    CsvTool.csvWriter(filePath, fileName, '|', null, allMoveData);
+    return filePath;
+  }
+
+  protected void attachExportFile(
+      String filePath, String fileName, AccountingReport accountingReport) throws IOException {
     Path path = Paths.get(filePath, fileName);
     try (InputStream is = new FileInputStream(path.toFile())) {
       Beans.get(MetaFiles.class).attach(is, fileName, accountingReport);
@@ -20,6 +20,7 @@ package com.axelor.apps.account.service;
 import com.axelor.apps.account.db.Reconcile;
 import com.axelor.apps.account.db.repo.ReconcileRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.base.db.Company;
 import com.axelor.apps.base.db.repo.SequenceRepository;
 import com.axelor.apps.base.service.administration.SequenceService;
 import com.axelor.auth.AuthUtils;
@@ -29,6 +30,10 @@ import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.google.common.base.Strings;
 import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ReconcileSequenceService {
 
@@ -44,6 +49,41 @@ public class ReconcileSequenceService {
     reconcile.setReconcileSeq(this.getSequence(reconcile));
   }
 
+  /**
+   * Set the sequence of several reconciles, taking the numbers of each company at once.
+   *
+   * @param reconcileList
+   * @throws AxelorException
+   */
+  public void setSequences(List<Reconcile> reconcileList) throws AxelorException {
+
+    Map<Company, List<Reconcile>> reconcileListByCompany = new LinkedHashMap<>();
+
+    for (Reconcile reconcile : reconcileList) {
+      reconcileListByCompany
+          .computeIfAbsent(
+              reconcile.getDebitMoveLine().getMove().getCompany(), company -> new ArrayList<>())
+          .add(reconcile);
+    }
+
+    for (Map.Entry<Company, List<Reconcile>> entry : reconcileListByCompany.entrySet()) {
+      List<Reconcile> companyReconcileList = entry.getValue();
+      List<String> seqList =
+          sequenceService.getSequenceNumbers(
+              SequenceRepository.RECONCILE, entry.getKey(), companyReconcileList.size());
+      if (seqList == null) {
+        throw new AxelorException(
+            TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+            I18n.get(IExceptionMessage.RECONCILE_6),
+            I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.EXCEPTION),
+            entry.getKey().getName());
+      }
+      for (int i = 0; i < companyReconcileList.size(); i++) {
+        companyReconcileList.get(i).setReconcileSeq(seqList.get(i));
+      }
+    }
+  }
+
   protected String getSequence(Reconcile reconcile) throws AxelorException {
 
     SequenceService sequenceService = Beans.get(SequenceService.class);
@@ -24,6 +24,7 @@ import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 public interface ReconcileService {
 
@@ -38,10 +39,31 @@ public interface ReconcileService {
   public Reconcile confirmReconcile(Reconcile reconcile, boolean updateInvoicePayments)
       throws AxelorException;
 
+  /**
+   * Confirm several draft reconciles at once, without write-off of the difference.
+   *
+   * @param reconcileList
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void confirmReconciles(List<Reconcile> reconcileList) throws AxelorException;
+
   public void reconcilePreconditions(Reconcile reconcile) throws AxelorException;
 
   public void updatePartnerAccountingSituation(Reconcile reconcile) throws AxelorException;
 
+  /**
+   * Update the partner balances by the difference of the contributions of the reconciled lines.
+   *
+   * @param reconcile
+   * @param balanceContributionMap the contributions of the lines before the change of their paid
+   *     amount
+   * @throws AxelorException
+   */
+  public void updatePartnerAccountingSituation(
+      Reconcile reconcile, Map<MoveLine, BigDecimal[]> balanceContributionMap)
+      throws AxelorException;
+
   public List<Partner> getPartners(Reconcile reconcile);
 
   public Reconcile reconcile(
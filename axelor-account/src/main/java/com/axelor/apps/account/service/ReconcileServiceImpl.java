@@ -45,7 +45,17 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -145,10 +155,17 @@ public class ReconcileServiceImpl implements ReconcileService {
     MoveLine debitMoveLine = reconcile.getDebitMoveLine();
     MoveLine creditMoveLine = reconcile.getCreditMoveLine();
 
+    Map<MoveLine, BigDecimal[]> balanceContributionMap =
+        accountCustomerService.getBalanceContributions(
+            Arrays.asList(debitMoveLine, creditMoveLine));
+
     // Add the reconciled amount to the reconciled amount in the move line
     creditMoveLine.setAmountPaid(creditMoveLine.getAmountPaid().add(reconcile.getAmount()));
     debitMoveLine.setAmountPaid(debitMoveLine.getAmountPaid().add(reconcile.getAmount()));
 
+    // Before the write-off of the difference, which updates the balances on its own
+    this.updatePartnerAccountingSituation(reconcile, balanceContributionMap);
+
     reconcile = reconcileRepository.save(reconcile);
 
     reconcile.setStatusSelect(ReconcileRepository.STATUS_CONFIRMED);
@@ -163,7 +180,6 @@ public class ReconcileServiceImpl implements ReconcileService {
 
     reconcileSequenceService.setSequence(reconcile);
 
-    this.updatePartnerAccountingSituation(reconcile);
     this.updateInvoiceCompanyInTaxTotalRemaining(reconcile);
     if (updateInvoicePayments) {
       this.updateInvoicePayments(reconcile);
@@ -173,6 +189,152 @@ public class ReconcileServiceImpl implements ReconcileService {
     return reconcileRepository.save(reconcile);
   }
 
+  /**
+   * Confirm reconciles created together, as {@link #confirmReconcile(Reconcile, boolean)} does,
+   * without write-off of the difference. The partner balances are updated once for all the lines,
+   * the sequences are taken at once and the reconcile group of each set of connected lines is
+   * built once.
+   *
+   * @param reconcileList draft reconciles
+   * @throws AxelorException
+   */
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void confirmReconciles(List<Reconcile> reconcileList) throws AxelorException {
+
+    if (reconcileList.isEmpty()) {
+      return;
+    }
+
+    Map<Company, Set<MoveLine>> moveLineMap = new LinkedHashMap<>();
+    for (Reconcile reconcile : reconcileList) {
+      Set<MoveLine> moveLineSet =
+          moveLineMap.computeIfAbsent(reconcile.getCompany(), company -> new LinkedHashSet<>());
+      moveLineSet.add(reconcile.getDebitMoveLine());
+      moveLineSet.add(reconcile.getCreditMoveLine());
+    }
+
+    Map<Company, Map<MoveLine, BigDecimal[]>> balanceContributionMap = new HashMap<>();
+    for (Map.Entry<Company, Set<MoveLine>> entry : moveLineMap.entrySet()) {
+      balanceContributionMap.put(
+          entry.getKey(), accountCustomerService.getBalanceContributions(entry.getValue()));
+    }
+
+    for (Reconcile reconcile : reconcileList) {
+      this.reconcilePreconditions(reconcile);
+
+      MoveLine debitMoveLine = reconcile.getDebitMoveLine();
+      MoveLine creditMoveLine = reconcile.getCreditMoveLine();
+      creditMoveLine.setAmountPaid(creditMoveLine.getAmountPaid().add(reconcile.getAmount()));
+      debitMoveLine.setAmountPaid(debitMoveLine.getAmountPaid().add(reconcile.getAmount()));
+
+      reconcile.setStatusSelect(ReconcileRepository.STATUS_CONFIRMED);
+      reconcile.setReconciliationDate(LocalDate.now());
+    }
+
+    reconcileSequenceService.setSequences(reconcileList);
+
+    for (Map.Entry<Company, Set<MoveLine>> entry : moveLineMap.entrySet()) {
+      if (AccountingService.getUpdateCustomerAccount()) {
+        accountCustomerService.updateBalances(
+            balanceContributionMap.get(entry.getKey()), entry.getValue(), entry.getKey());
+      } else {
+        Set<Partner> partnerSet = new LinkedHashSet<>();
+        entry
+            .getValue()
+            .stream()
+            .map(MoveLine::getPartner)
+            .filter(Objects::nonNull)
+            .forEach(partnerSet::add);
+        accountCustomerService.flagPartners(new ArrayList<>(partnerSet), entry.getKey());
+      }
+    }
+
+    for (Reconcile reconcile : reconcileList) {
+      reconcileRepository.save(reconcile);
+      this.updateInvoiceCompanyInTaxTotalRemaining(reconcile);
+      this.updateInvoicePayments(reconcile);
+    }
+
+    this.addToReconcileGroups(reconcileList);
+  }
+
+  /**
+   * Add confirmed reconciles to reconcile groups: the reconciles sharing move lines, directly or
+   * not, go to the same group, merged with the existing groups of their lines.
+   *
+   * @param reconcileList
+   * @throws AxelorException
+   */
+  protected void addToReconcileGroups(List<Reconcile> reconcileList) throws AxelorException {
+
+    ReconcileGroupService reconcileGroupService = Beans.get(ReconcileGroupService.class);
+
+    // Union-find of the move lines linked by the reconciles
+    Map<MoveLine, MoveLine> parentMap = new HashMap<>();
+    for (Reconcile reconcile : reconcileList) {
+      MoveLine debitRoot = findRoot(parentMap, reconcile.getDebitMoveLine());
+      MoveLine creditRoot = findRoot(parentMap, reconcile.getCreditMoveLine());
+      if (debitRoot != creditRoot) {
+        parentMap.put(creditRoot, debitRoot);
+      }
+    }
+
+    Map<MoveLine, List<Reconcile>> reconcileListByRoot = new LinkedHashMap<>();
+    for (Reconcile reconcile : reconcileList) {
+      reconcileListByRoot
+          .computeIfAbsent(
+              findRoot(parentMap, reconcile.getDebitMoveLine()), root -> new ArrayList<>())
+          .add(reconcile);
+    }
+
+    for (List<Reconcile> groupReconcileList : reconcileListByRoot.values()) {
+      List<ReconcileGroup> existingGroupList =
+          groupReconcileList
+              .stream()
+              .flatMap(
+                  reconcile ->
+                      Stream.of(reconcile.getDebitMoveLine(), reconcile.getCreditMoveLine()))
+              .map(MoveLine::getReconcileGroup)
+              .filter(Objects::nonNull)
+              .distinct()
+              .collect(Collectors.toList());
+
+      ReconcileGroup reconcileGroup;
+      if (existingGroupList.isEmpty()) {
+        reconcileGroup =
+            reconcileGroupService.createReconcileGroup(groupReconcileList.get(0).getCompany());
+      } else if (existingGroupList.size() == 1) {
+        reconcileGroup = existingGroupList.get(0);
+      } else {
+        reconcileGroup = reconcileGroupService.mergeReconcileGroups(existingGroupList);
+      }
+
+      List<Reconcile> allReconcileList =
+          reconcileRepository.findByReconcileGroup(reconcileGroup).fetch();
+      for (Reconcile reconcile : groupReconcileList) {
+        reconcileGroupService.addToReconcileGroup(reconcileGroup, reconcile);
+        allReconcileList.add(reconcile);
+      }
+      if (reconcileGroupService.isBalanced(allReconcileList)) {
+        reconcileGroupService.validate(reconcileGroup, allReconcileList);
+      }
+    }
+  }
+
+  protected MoveLine findRoot(Map<MoveLine, MoveLine> parentMap, MoveLine moveLine) {
+    MoveLine root = moveLine;
+    while (parentMap.containsKey(root)) {
+      root = parentMap.get(root);
+    }
+    while (moveLine != root) {
+      MoveLine parent = parentMap.get(moveLine);
+      parentMap.put(moveLine, root);
+      moveLine = parent;
+    }
+    return root;
+  }
+
   @Override
   public void addToReconcileGroup(Reconcile reconcile) throws AxelorException {
     ReconcileGroupService reconcileGroupService = Beans.get(ReconcileGroupService.class);
@@ -282,6 +444,21 @@ public class ReconcileServiceImpl implements ReconcileService {
     }
   }
 
+  public void updatePartnerAccountingSituation(
+      Reconcile reconcile, Map<MoveLine, BigDecimal[]> balanceContributionMap)
+      throws AxelorException {
+
+    if (!AccountingService.getUpdateCustomerAccount()) {
+      this.updatePartnerAccountingSituation(reconcile);
+      return;
+    }
+
+    accountCustomerService.updateBalances(
+        balanceContributionMap,
+        Arrays.asList(reconcile.getDebitMoveLine(), reconcile.getCreditMoveLine()),
+        reconcile.getDebitMoveLine().getMove().getCompany());
+  }
+
   public List<Partner> getPartners(Reconcile reconcile) {
 
     List<Partner> partnerList = Lists.newArrayList();
@@ -375,6 +552,10 @@ public class ReconcileServiceImpl implements ReconcileService {
     MoveLine debitMoveLine = reconcile.getDebitMoveLine();
     MoveLine creditMoveLine = reconcile.getCreditMoveLine();
 
+    Map<MoveLine, BigDecimal[]> balanceContributionMap =
+        accountCustomerService.getBalanceContributions(
+            Arrays.asList(debitMoveLine, creditMoveLine));
+
     // Change the state
     reconcile.setStatusSelect(ReconcileRepository.STATUS_CANCELED);
     // Add the reconciled amount to the reconciled amount in the move line
@@ -384,7 +565,7 @@ public class ReconcileServiceImpl implements ReconcileService {
     reconcileRepository.save(reconcile);
 
     // Update amount remaining on invoice or refund
-    this.updatePartnerAccountingSituation(reconcile);
+    this.updatePartnerAccountingSituation(reconcile, balanceContributionMap);
     this.updateInvoiceCompanyInTaxTotalRemaining(reconcile);
     this.updateInvoicePaymentsCanceled(reconcile);
 
@@ -70,6 +70,9 @@ public class AccountingBatchService extends AbstractBatchService {
       case AccountingBatchRepository.ACTION_REALIZE_FIXED_ASSET_LINES:
         batch = realizeFixedAssetLines(accountingBatch);
         break;
+      case AccountingBatchRepository.ACTION_AUTO_LETTERING:
+        batch = autoLettering(accountingBatch);
+        break;
       default:
         throw new AxelorException(
             TraceBackRepository.CATEGORY_INCONSISTENCY,
@@ -151,4 +154,9 @@ public class AccountingBatchService extends AbstractBatchService {
 
     return Beans.get(BatchRealizeFixedAssetLine.class).run(accountingBatch);
   }
+
+  public Batch autoLettering(AccountingBatch accountingBatch) {
+
+    return Beans.get(BatchAutoLettering.class).run(accountingBatch);
+  }
 }
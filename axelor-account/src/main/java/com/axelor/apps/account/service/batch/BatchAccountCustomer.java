@@ -29,8 +29,14 @@ import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import javax.persistence.LockModeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,8 +44,19 @@ public class BatchAccountCustomer extends BatchStrategy {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  protected static final int SITUATION_CHUNK_SIZE = 500;
+
   protected AccountingSituationRepository accountingSituationRepo;
 
+  /** Number of accounting situations whose stored balances differ from the move lines. */
+  protected int driftCount;
+
+  protected boolean updateCustAccountOk;
+  protected boolean updateDueCustAccountOk;
+  protected boolean updateDueDebtRecoveryCustAccountOk;
+
+  protected Long companyId;
+
   @Inject
   public BatchAccountCustomer(
       AccountCustomerService accountCustomerService,
@@ -64,57 +81,195 @@ public class BatchAccountCustomer extends BatchStrategy {
     AccountingBatch accountingBatch = batch.getAccountingBatch();
     Company company = accountingBatch.getCompany();
 
-    boolean updateCustAccountOk = accountingBatch.getUpdateCustAccountOk();
-    boolean updateDueCustAccountOk = accountingBatch.getUpdateDueCustAccountOk();
-    boolean updateDueDebtRecoveryCustAccountOk =
-        accountingBatch.getUpdateDueDebtRecoveryCustAccountOk();
+    updateCustAccountOk = accountingBatch.getUpdateCustAccountOk();
+    updateDueCustAccountOk = accountingBatch.getUpdateDueCustAccountOk();
+    updateDueDebtRecoveryCustAccountOk = accountingBatch.getUpdateDueDebtRecoveryCustAccountOk();
+    companyId = company.getId();
+
+    if (updateCustAccountOk || updateDueCustAccountOk) {
+      this.checkBalanceDrift(
+          company,
+          accountCustomerService.getBalanceMap(company),
+          updateCustAccountOk,
+          updateDueCustAccountOk);
+    }
 
-    List<AccountingSituation> accountingSituationList =
-        (List<AccountingSituation>)
-            accountingSituationRepo.all().filter("self.company = ?1", company).fetch();
-    int i = 0;
+    long lastId = 0;
+    List<Long> idList;
     JPA.clear();
-    for (AccountingSituation accountingSituation : accountingSituationList) {
-      try {
 
-        accountingSituation =
-            accountCustomerService.updateAccountingSituationCustomerAccount(
-                accountingSituationRepo.find(accountingSituation.getId()),
-                updateCustAccountOk,
-                updateDueCustAccountOk,
-                updateDueDebtRecoveryCustAccountOk);
+    while (!(idList = this.fetchAccountingSituationIds(company, lastId)).isEmpty()) {
 
-        if (accountingSituation != null) {
-          this.updateAccountingSituation(accountingSituation);
-          i++;
-        }
+      lastId = idList.get(idList.size() - 1);
 
-      } catch (Exception e) {
+      try {
 
-        TraceBackService.trace(
-            new Exception(
-                String.format(
-                    I18n.get(IExceptionMessage.BATCH_ACCOUNT_1),
-                    accountingSituationRepo.find(accountingSituation.getId()).getName()),
-                e),
-            IException.ACCOUNT_CUSTOMER,
-            batch.getId());
+        this.updateAccountingSituations(idList);
+        idList.forEach(id -> incrementDone());
 
-        incrementAnomaly();
+      } catch (Exception e) {
 
-        log.error(
-            "Bug(Anomalie) généré(e) pour la situation compable {}",
-            accountingSituationRepo.find(accountingSituation.getId()).getName());
+        // Update the situations of the chunk one by one to report the anomalies by partner
+        JPA.clear();
+        idList.forEach(this::updateAccountingSituation);
 
       } finally {
 
-        if (i % 1 == 0) {
-          JPA.clear();
-        }
+        JPA.clear();
+      }
+    }
+  }
+
+  protected List<Long> fetchAccountingSituationIds(Company company, long lastId) {
+
+    return JPA.em()
+        .createQuery(
+            "SELECT self.id FROM AccountingSituation self "
+                + "WHERE self.company = :company AND self.id > :lastId ORDER BY self.id",
+            Long.class)
+        .setParameter("company", company)
+        .setParameter("lastId", lastId)
+        .setMaxResults(SITUATION_CHUNK_SIZE)
+        .getResultList();
+  }
+
+  protected void updateAccountingSituation(Long id) {
+
+    try {
+
+      this.updateAccountingSituations(Collections.singletonList(id));
+      incrementDone();
+
+    } catch (Exception e) {
+
+      TraceBackService.trace(
+          new Exception(
+              String.format(
+                  I18n.get(IExceptionMessage.BATCH_ACCOUNT_1),
+                  accountingSituationRepo.find(id).getName()),
+              e),
+          IException.ACCOUNT_CUSTOMER,
+          batch.getId());
+
+      incrementAnomaly();
+
+      log.error(
+          "Bug(Anomalie) généré(e) pour la situation compable {}",
+          accountingSituationRepo.find(id).getName());
+
+    } finally {
+
+      JPA.clear();
+    }
+  }
+
+  /**
+   * Set the balances computed set-wise on the accounting situations, in a single transaction. The
+   * situations are locked before their balances are computed, so that the deltas posted meanwhile
+   * by the changes on the move lines are either counted in the balances or posted after them.
+   *
+   * @param idList the ids of the accounting situations
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void updateAccountingSituations(List<Long> idList) throws AxelorException {
+
+    List<AccountingSituation> accountingSituationList =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM AccountingSituation self WHERE self.id IN (:idList)",
+                AccountingSituation.class)
+            .setParameter("idList", idList)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .getResultList();
+
+    List<Long> partnerIdList = new ArrayList<>();
+    for (AccountingSituation accountingSituation : accountingSituationList) {
+      partnerIdList.add(accountingSituation.getPartner().getId());
+    }
+
+    Company company = JPA.find(Company.class, companyId);
+    Map<Long, BigDecimal[]> balanceMap =
+        updateCustAccountOk || updateDueCustAccountOk
+            ? accountCustomerService.getBalanceMap(company, partnerIdList)
+            : Collections.emptyMap();
+    Map<Long, BigDecimal> balanceDueDebtRecoveryMap =
+        updateDueDebtRecoveryCustAccountOk
+            ? accountCustomerService.getBalanceDueDebtRecoveryMap(company, partnerIdList)
+            : Collections.emptyMap();
+
+    for (AccountingSituation accountingSituation : accountingSituationList) {
+      Long partnerId = accountingSituation.getPartner().getId();
+      BigDecimal[] balance =
+          balanceMap.getOrDefault(partnerId, new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+
+      accountCustomerService.setAccountingSituationBalances(
+          accountingSituation,
+          updateCustAccountOk ? balance[0] : null,
+          updateDueCustAccountOk ? balance[1] : null,
+          updateDueDebtRecoveryCustAccountOk
+              ? balanceDueDebtRecoveryMap.getOrDefault(partnerId, BigDecimal.ZERO)
+              : null);
+      accountingSituation.addBatchSetItem(batchRepo.find(batch.getId()));
+      accountingSituationRepo.save(accountingSituation);
+    }
+  }
+
+  /**
+   * Compare the balances stored on the accounting situations, maintained by the deltas of the
+   * validated, reconciled and canceled moves, with the balances computed set-wise from the move
+   * lines, and count the situations which have drifted. The balance due drifts as well when lines
+   * become due.
+   *
+   * @param company
+   * @param balanceMap the balance and balance due by partner id
+   * @param checkBalance
+   * @param checkBalanceDue
+   */
+  protected void checkBalanceDrift(
+      Company company,
+      Map<Long, BigDecimal[]> balanceMap,
+      boolean checkBalance,
+      boolean checkBalanceDue) {
+
+    if (!checkBalance && !checkBalanceDue) {
+      return;
+    }
+
+    List<Object[]> storedBalanceList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.partner.id, self.balanceCustAccount, self.balanceDueCustAccount "
+                    + "FROM AccountingSituation self WHERE self.company = :company",
+                Object[].class)
+            .setParameter("company", company)
+            .getResultList();
+
+    for (Object[] storedBalance : storedBalanceList) {
+      BigDecimal[] balance =
+          balanceMap.getOrDefault(
+              (Long) storedBalance[0], new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+      boolean balanceDrift = checkBalance && !isEqual((BigDecimal) storedBalance[1], balance[0]);
+      boolean balanceDueDrift =
+          checkBalanceDue && !isEqual((BigDecimal) storedBalance[2], balance[1]);
+
+      if (balanceDrift || balanceDueDrift) {
+        driftCount++;
+        log.debug(
+            "Balance drift for partner {} : balance {} / {}, balance due {} / {}",
+            storedBalance[0],
+            storedBalance[1],
+            balance[0],
+            storedBalance[2],
+            balance[1]);
       }
     }
   }
 
+  protected boolean isEqual(BigDecimal storedBalance, BigDecimal balance) {
+    return (storedBalance != null ? storedBalance : BigDecimal.ZERO).compareTo(balance) == 0;
+  }
+
   /**
    * As {@code batch} entity can be detached from the session, call {@code Batch.find()} get the
    * entity in the persistant context. Warning : {@code batch} entity have to be saved before.
@@ -125,6 +280,8 @@ public class BatchAccountCustomer extends BatchStrategy {
     comment = I18n.get(IExceptionMessage.BATCH_ACCOUNT_2) + "\n";
     comment +=
         String.format("\t" + I18n.get(IExceptionMessage.BATCH_ACCOUNT_3) + "\n", batch.getDone());
+    comment +=
+        String.format("\t" + I18n.get(IExceptionMessage.BATCH_ACCOUNT_6) + "\n", driftCount);
     comment +=
         String.format(
             "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
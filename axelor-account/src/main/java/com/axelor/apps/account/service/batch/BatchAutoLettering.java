@@ -0,0 +1,116 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.batch;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AccountingBatch;
+import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.AutoLetteringService;
+import com.axelor.apps.base.db.Company;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Letter the open move lines of a reconcilable account, partner by partner, each partner in its
+ * own transaction. The partners are processed by chunks, so that an interrupted batch resumes
+ * after its last lettered chunk.
+ */
+public class BatchAutoLettering extends BatchStrategy {
+
+  protected AutoLetteringService autoLetteringService;
+
+  protected final AtomicInteger reconcileCount = new AtomicInteger();
+
+  @Inject
+  public BatchAutoLettering(AutoLetteringService autoLetteringService) {
+    this.autoLetteringService = autoLetteringService;
+  }
+
+  @Override
+  protected boolean isResumable() {
+    return true;
+  }
+
+  @Override
+  protected void process() {
+
+    AccountingBatch accountingBatch = batch.getAccountingBatch();
+    Account account = accountingBatch.getAccount();
+    Company company = accountingBatch.getCompany();
+
+    if (account == null) {
+      incrementAnomaly();
+      TraceBackService.trace(
+          new AxelorException(
+              accountingBatch,
+              TraceBackRepository.CATEGORY_MISSING_FIELD,
+              I18n.get(IExceptionMessage.BATCH_AUTO_LETTERING_3),
+              accountingBatch.getCode()),
+          null,
+          batch.getId());
+      return;
+    }
+
+    Long accountId = account.getId();
+    Long companyId = company.getId();
+
+    // the lines without partner are lettered before the first chunk, so once for all
+    if (lastProcessedId == 0) {
+      try {
+        reconcileCount.addAndGet(autoLetteringService.letter(accountId, companyId, null));
+      } catch (Exception e) {
+        incrementAnomaly();
+        TraceBackService.trace(e, null, batch.getId());
+      } finally {
+        JPA.clear();
+      }
+    }
+
+    processChunks(
+        (lastId, limit) -> autoLetteringService.getPartnerIdList(account, company, lastId, limit),
+        partnerId -> {
+          reconcileCount.addAndGet(autoLetteringService.letter(accountId, companyId, partnerId));
+          incrementDone();
+        });
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s " + I18n.get(IExceptionMessage.BATCH_AUTO_LETTERING_1) + "\n", batch.getDone());
+
+    comment +=
+        String.format(
+            "\t* " + I18n.get(IExceptionMessage.RECONCILE_AUTO_LETTERING) + "\n",
+            reconcileCount.get());
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+    addComment(comment);
+    super.stop();
+  }
+}
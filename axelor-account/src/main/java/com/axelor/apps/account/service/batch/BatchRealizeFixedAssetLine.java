@@ -23,9 +23,10 @@ import com.axelor.apps.account.db.repo.FixedAssetRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
 import com.axelor.apps.account.service.FixedAssetLineService;
 import com.axelor.apps.base.service.administration.AbstractBatch;
-import com.axelor.exception.service.TraceBackService;
+import com.axelor.exception.AxelorException;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import java.time.LocalDate;
 import java.util.List;
@@ -41,26 +42,33 @@ public class BatchRealizeFixedAssetLine extends AbstractBatch {
 
   @Override
   protected void process() {
-    List<FixedAssetLine> fixedAssetLineList =
-        Beans.get(FixedAssetLineRepository.class)
-            .all()
-            .filter(
-                "self.statusSelect = ?1 and self.depreciationDate < ?2",
-                FixedAssetLineRepository.STATUS_PLANNED,
-                LocalDate.now())
-            .fetch();
+    processChunks(this::fetchFixedAssetLineIds, this::realizeFixedAssetLine);
+  }
+
+  @Override
+  protected boolean isResumable() {
+    return true;
+  }
+
+  protected List<Long> fetchFixedAssetLineIds(long lastId, int limit) {
+    return fetchIds(
+        FixedAssetLine.class,
+        "self.statusSelect = :statusSelect AND self.depreciationDate < :date "
+            + "AND self.fixedAsset.statusSelect > :fixedAssetStatusSelect",
+        ImmutableMap.of(
+            "statusSelect",
+            FixedAssetLineRepository.STATUS_PLANNED,
+            "date",
+            LocalDate.now(),
+            "fixedAssetStatusSelect",
+            FixedAssetRepository.STATUS_DRAFT),
+        lastId,
+        limit);
+  }
 
-    for (FixedAssetLine fixedAssetLine : fixedAssetLineList) {
-      try {
-        if (fixedAssetLine.getFixedAsset().getStatusSelect() > FixedAssetRepository.STATUS_DRAFT) {
-          fixedAssetLineService.realize(fixedAssetLine);
-          incrementDone();
-        }
-      } catch (Exception e) {
-        incrementAnomaly();
-        TraceBackService.trace(e);
-      }
-    }
+  protected void realizeFixedAssetLine(Long id) throws AxelorException {
+    fixedAssetLineService.realize(Beans.get(FixedAssetLineRepository.class).find(id));
+    incrementDone();
   }
 
   @Override
@@ -17,63 +17,307 @@
  */
 package com.axelor.apps.account.service.invoice.generator.batch;
 
+import com.axelor.apps.account.db.AccountConfig;
 import com.axelor.apps.account.db.Invoice;
+import com.axelor.apps.account.db.Journal;
+import com.axelor.apps.account.db.repo.InvoiceRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.JournalService;
+import com.axelor.apps.account.service.config.AccountConfigService;
 import com.axelor.apps.account.service.invoice.InvoiceService;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Sequence;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
+import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Ventilate the invoices of an invoice batch.
+ *
+ * <p>The invoices are split into lanes: two invoices which take a number from the same invoice
+ * sequence, whose moves take a number from the same journal sequence, or which update the same
+ * accounting situation of a partner in a company are in the same lane. A lane is ventilated by a
+ * single thread in invoice date order, so that the numbers of a sequence follow the dates, and the
+ * lanes are ventilated concurrently, each invoice in its own transaction.
+ */
 public class BatchVentilation extends BatchWkf {
 
   static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  protected static final int VENTILATION_THREAD_COUNT = 4;
+
+  protected AccountConfigService accountConfigService;
+
+  protected JournalService journalService;
+
   @Inject
-  public BatchVentilation(InvoiceService invoiceService) {
+  public BatchVentilation(
+      InvoiceService invoiceService,
+      AccountConfigService accountConfigService,
+      JournalService journalService) {
 
     super(invoiceService);
+    this.accountConfigService = accountConfigService;
+    this.journalService = journalService;
   }
 
   @Override
   protected void process() {
 
-    for (Invoice invoice : invoices(batch.getInvoiceBatch(), true)) {
+    List<List<Long>> laneList = getLanes(invoices(batch.getInvoiceBatch(), true));
+    JPA.clear();
+
+    int threadCount = Math.min(getThreadCount(), laneList.size());
+
+    if (threadCount <= 1) {
+      for (List<Long> lane : laneList) {
+        for (List<Long> idList : Lists.partition(lane, getChunkSize())) {
+          processChunk(idList, this::ventilateInvoice);
+        }
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    try {
+      List<Future<?>> futureList = new ArrayList<>();
+      for (List<Long> lane : laneList) {
+        futureList.add(
+            executor.submit(
+                () -> {
+                  for (List<Long> idList : Lists.partition(lane, getChunkSize())) {
+                    processChunkInThread(idList, this::ventilateInvoice);
+                  }
+                }));
+      }
+      for (Future<?> future : futureList) {
+        waitForLane(future);
+      }
+    } catch (AxelorException e) {
+      TraceBackService.trace(e, IException.INVOICE_ORIGIN, batch.getId());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    findBatch();
+    flushProgress();
+  }
+
+  /**
+   * Wait for the end of a lane. A failed lane is traced and the other lanes go on.
+   *
+   * @throws AxelorException if the batch is interrupted while waiting
+   */
+  protected void waitForLane(Future<?> future) throws AxelorException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AxelorException(
+          e,
+          TraceBackRepository.CATEGORY_INCONSISTENCY,
+          I18n.get(IExceptionMessage.BATCH_VENTILATION_3));
+    } catch (ExecutionException e) {
+      TraceBackService.trace(
+          new AxelorException(e.getCause(), TraceBackRepository.CATEGORY_INCONSISTENCY),
+          IException.INVOICE_ORIGIN,
+          batch.getId());
+    }
+  }
+
+  @Override
+  protected int getThreadCount() {
+    return VENTILATION_THREAD_COUNT;
+  }
+
+  /**
+   * Split the invoices into lanes of invoices sharing a sequence or an accounting situation.
+   *
+   * @param invoices
+   * @return the ids of the invoices of each lane, sorted by invoice date then id
+   */
+  protected List<List<Long>> getLanes(Iterable<? extends Invoice> invoices) {
+
+    List<Invoice> invoiceList = new ArrayList<>();
+    Map<Object, Integer> laneByKey = new HashMap<>();
+    Map<Company, AccountConfig> accountConfigMap = new HashMap<>();
+
+    // Union-find of the lanes, a lane being identified by the index of its first invoice
+    Map<Integer, Integer> parentMap = new HashMap<>();
+
+    for (Invoice invoice : invoices) {
+
+      int lane = invoiceList.size();
+      invoiceList.add(invoice);
+
+      List<Object> keyList = getSequenceKeys(invoice, accountConfigMap);
+      keyList.add(getAccountingSituationKey(invoice));
+
+      for (Object key : keyList) {
+        Integer otherLane = laneByKey.putIfAbsent(key, lane);
+        if (otherLane == null) {
+          continue;
+        }
+        int root = findRoot(parentMap, lane);
+        int otherRoot = findRoot(parentMap, otherLane);
+        if (root != otherRoot) {
+          parentMap.put(root, otherRoot);
+        }
+      }
+    }
+
+    Map<Integer, List<Invoice>> lanes = new LinkedHashMap<>();
+    for (int index = 0; index < invoiceList.size(); index++) {
+      lanes
+          .computeIfAbsent(findRoot(parentMap, index), root -> new ArrayList<>())
+          .add(invoiceList.get(index));
+    }
 
-      try {
+    LocalDate todayDate = appBaseService.getTodayDate();
+    Comparator<Invoice> comparator =
+        Comparator.comparing(
+                (Invoice invoice) ->
+                    invoice.getInvoiceDate() != null ? invoice.getInvoiceDate() : todayDate)
+            .thenComparing(Invoice::getId);
 
-        invoiceService.ventilate(invoiceRepo.find(invoice.getId()));
-        updateInvoice(invoiceRepo.find(invoice.getId()));
+    List<List<Long>> laneList = new ArrayList<>();
+    for (List<Invoice> lane : lanes.values()) {
+      List<Long> idList = new ArrayList<>();
+      lane.stream().sorted(comparator).forEach(invoice -> idList.add(invoice.getId()));
+      laneList.add(idList);
+    }
 
-      } catch (AxelorException e) {
+    LOG.debug("{} invoices to ventilate on {} lanes", invoiceList.size(), laneList.size());
 
-        TraceBackService.trace(
-            new AxelorException(
-                e, e.getCategory(), I18n.get("Invoice") + " %s", invoice.getInvoiceId()),
-            IException.INVOICE_ORIGIN,
-            batch.getId());
-        incrementAnomaly();
+    return laneList;
+  }
 
-      } catch (Exception e) {
+  protected int findRoot(Map<Integer, Integer> parentMap, int lane) {
+    int root = lane;
+    while (parentMap.containsKey(root)) {
+      root = parentMap.get(root);
+    }
+    while (lane != root) {
+      int parent = parentMap.get(lane);
+      parentMap.put(lane, root);
+      lane = parent;
+    }
+    return root;
+  }
 
-        TraceBackService.trace(
-            new Exception(String.format(I18n.get("Invoice") + " %s", invoice.getInvoiceId()), e),
-            IException.INVOICE_ORIGIN,
-            batch.getId());
-        incrementAnomaly();
+  /**
+   * The keys of the invoice sequence and of the journal sequence used by the ventilation of an
+   * invoice. An invoice whose sequences can not be found is keyed on its operation type, its
+   * ventilation will fail anyway.
+   */
+  protected List<Object> getSequenceKeys(
+      Invoice invoice, Map<Company, AccountConfig> accountConfigMap) {
 
-      } finally {
+    List<Object> keyList = new ArrayList<>();
 
-        JPA.clear();
+    try {
+      AccountConfig accountConfig = accountConfigMap.get(invoice.getCompany());
+      if (accountConfig == null) {
+        accountConfig = accountConfigService.getAccountConfig(invoice.getCompany());
+        accountConfigMap.put(invoice.getCompany(), accountConfig);
       }
+      Sequence sequence = getInvoiceSequence(invoice, accountConfig);
+      keyList.add(sequence != null ? sequence : invoice.getOperationTypeSelect());
+
+      Journal journal =
+          invoice.getJournal() != null ? invoice.getJournal() : journalService.getJournal(invoice);
+      if (journal != null && journal.getSequence() != null) {
+        keyList.add(journal.getSequence());
+      }
+    } catch (AxelorException e) {
+      keyList.add(invoice.getOperationTypeSelect());
+    }
+
+    return keyList;
+  }
+
+  /**
+   * The key of the accounting situation updated by the ventilation of an invoice, so that two
+   * threads never update the balances of the same partner in the same company.
+   */
+  protected Object getAccountingSituationKey(Invoice invoice) {
+    return Arrays.asList(invoice.getPartner(), invoice.getCompany());
+  }
+
+  protected Sequence getInvoiceSequence(Invoice invoice, AccountConfig accountConfig) {
+
+    switch (invoice.getOperationTypeSelect()) {
+      case InvoiceRepository.OPERATION_TYPE_SUPPLIER_PURCHASE:
+        return accountConfig.getSuppInvSequence();
+      case InvoiceRepository.OPERATION_TYPE_SUPPLIER_REFUND:
+        return accountConfig.getSuppRefSequence();
+      case InvoiceRepository.OPERATION_TYPE_CLIENT_SALE:
+        return accountConfig.getCustInvSequence();
+      case InvoiceRepository.OPERATION_TYPE_CLIENT_REFUND:
+        return accountConfig.getCustRefSequence();
+      default:
+        return null;
     }
   }
 
+  protected void ventilateInvoice(Long id) {
+
+    Invoice invoice = invoiceRepo.find(id);
+
+    try {
+
+      ventilate(invoice);
+
+    } catch (AxelorException e) {
+
+      TraceBackService.trace(
+          new AxelorException(
+              e, e.getCategory(), I18n.get("Invoice") + " %s", invoice.getInvoiceId()),
+          IException.INVOICE_ORIGIN,
+          batch.getId());
+      incrementAnomaly();
+      JPA.clear();
+
+    } catch (Exception e) {
+
+      TraceBackService.trace(
+          new Exception(String.format(I18n.get("Invoice") + " %s", invoice.getInvoiceId()), e),
+          IException.INVOICE_ORIGIN,
+          batch.getId());
+      incrementAnomaly();
+      JPA.clear();
+    }
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void ventilate(Invoice invoice) throws AxelorException {
+
+    invoiceService.ventilate(invoice);
+    updateInvoice(invoice);
+  }
+
   @Override
   protected void stop() {
 
@@ -33,18 +33,24 @@ import com.axelor.inject.Beans;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
 
 public class MoveCancelService {
 
   protected MoveRepository moveRepository;
   protected AccountConfigService accountConfigService;
+  protected MoveCustAccountService moveCustAccountService;
 
   @Inject
   public MoveCancelService(
-      AccountConfigService accountConfigService, MoveRepository moveRepository) {
+      AccountConfigService accountConfigService,
+      MoveRepository moveRepository,
+      MoveCustAccountService moveCustAccountService) {
 
     this.accountConfigService = accountConfigService;
     this.moveRepository = moveRepository;
+    this.moveCustAccountService = moveCustAccountService;
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -75,6 +81,9 @@ public class MoveCancelService {
           I18n.get(IExceptionMessage.MOVE_CANCEL_2));
     }
 
+    Map<MoveLine, BigDecimal[]> balanceContributionMap =
+        moveCustAccountService.getBalanceContributions(move);
+
     try {
 
       if (move.getStatusSelect() == MoveRepository.STATUS_DAYBOOK
@@ -95,5 +104,9 @@ public class MoveCancelService {
           TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
           I18n.get(IExceptionMessage.MOVE_CANCEL_3));
     }
+
+    // A removed or canceled move is no longer part of the partner balances
+    moveCustAccountService.updateCustomerAccount(
+        move, balanceContributionMap, Collections.emptyList());
   }
 }
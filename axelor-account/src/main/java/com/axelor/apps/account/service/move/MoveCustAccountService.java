@@ -26,8 +26,13 @@ import com.axelor.apps.base.db.Partner;
 import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MoveCustAccountService {
 
@@ -50,6 +55,79 @@ public class MoveCustAccountService {
     this.updateCustomerAccount(this.getPartnerOfMove(move), move.getCompany());
   }
 
+  /**
+   * Get the contribution of the move lines to the partner balances, before a change on the move.
+   *
+   * @param move
+   * @return the contributions by move line
+   */
+  public Map<MoveLine, BigDecimal[]> getBalanceContributions(Move move) {
+
+    return accountCustomerService.getBalanceContributions(move.getMoveLineList());
+  }
+
+  /**
+   * Update the partner balances linked to the move by the difference of the contributions of its
+   * lines, rather than computing again the balances from all the lines of the partners.
+   *
+   * @param move
+   * @param balanceContributionMap the contributions of the lines before the change
+   * @throws AxelorException
+   */
+  public void updateCustomerAccount(Move move, Map<MoveLine, BigDecimal[]> balanceContributionMap)
+      throws AxelorException {
+
+    this.updateCustomerAccount(move, balanceContributionMap, move.getMoveLineList());
+  }
+
+  /**
+   * Update the partner balances linked to the move by the difference of the contributions of its
+   * lines, given the lines which remain after the change: none when the move is removed or
+   * canceled.
+   *
+   * @param move
+   * @param balanceContributionMap the contributions of the lines before the change
+   * @param moveLineList the lines after the change
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateCustomerAccount(
+      Move move,
+      Map<MoveLine, BigDecimal[]> balanceContributionMap,
+      Collection<MoveLine> moveLineList)
+      throws AxelorException {
+
+    if (AccountingService.getUpdateCustomerAccount()) {
+      accountCustomerService.updateBalances(
+          balanceContributionMap, moveLineList, move.getCompany());
+    } else {
+      this.flagPartners(this.getPartnerOfMove(move), move.getCompany());
+    }
+  }
+
+  /**
+   * Update the partner balances of a company for the lines of several moves at once: each partner
+   * is updated a single time.
+   *
+   * @param company
+   * @param balanceContributionMap the contributions of the lines before the change
+   * @param moveLineList the lines after the change
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateCustomerAccount(
+      Company company,
+      Map<MoveLine, BigDecimal[]> balanceContributionMap,
+      Collection<MoveLine> moveLineList)
+      throws AxelorException {
+
+    if (AccountingService.getUpdateCustomerAccount()) {
+      accountCustomerService.updateBalances(balanceContributionMap, moveLineList, company);
+    } else {
+      this.flagPartners(this.getPartnerOfMoveLines(moveLineList), company);
+    }
+  }
+
   /**
    * Update the partner balances for the company and partner list
    *
@@ -76,16 +154,25 @@ public class MoveCustAccountService {
    * @return A list of partner
    */
   public List<Partner> getPartnerOfMove(Move move) {
-    List<Partner> partnerList = new ArrayList<Partner>();
-    for (MoveLine moveLine : move.getMoveLineList()) {
+    return this.getPartnerOfMoveLines(move.getMoveLineList());
+  }
+
+  /**
+   * Get the distinct partners of move lines that impact the partner balances
+   *
+   * @param moveLineList
+   * @return A list of partner
+   */
+  public List<Partner> getPartnerOfMoveLines(Collection<MoveLine> moveLineList) {
+    Set<Partner> partnerSet = new LinkedHashSet<>();
+    for (MoveLine moveLine : moveLineList) {
       if (moveLine.getAccount() != null
           && moveLine.getAccount().getUseForPartnerBalance()
-          && moveLine.getPartner() != null
-          && !partnerList.contains(moveLine.getPartner())) {
-        partnerList.add(moveLine.getPartner());
+          && moveLine.getPartner() != null) {
+        partnerSet.add(moveLine.getPartner());
       }
     }
-    return partnerList;
+    return new ArrayList<>(partnerSet);
   }
 
   public void flagPartners(List<Partner> partnerList, Company company) throws AxelorException {
@@ -54,11 +54,13 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -582,72 +584,63 @@ public class MoveLineService {
 
   public MoveLine findConsolidateMoveLine(
       Map<List<Object>, MoveLine> map, MoveLine moveLine, List<Object> keys) {
-    if (map != null && !map.isEmpty()) {
 
-      Map<List<Object>, MoveLine> copyMap = new HashMap<List<Object>, MoveLine>(map);
-      while (!copyMap.isEmpty()) {
+    MoveLine moveLineIt = map != null ? map.get(keys) : null;
 
-        if (map.containsKey(keys)) {
-
-          MoveLine moveLineIt = map.get(keys);
-          int count = 0;
-          if (moveLineIt.getAnalyticMoveLineList() == null
-              && moveLine.getAnalyticMoveLineList() == null) {
-            return moveLineIt;
-          } else if (moveLineIt.getAnalyticMoveLineList() == null
-              || moveLine.getAnalyticMoveLineList() == null) {
-            break;
-          }
-          List<AnalyticMoveLine> list1 = moveLineIt.getAnalyticMoveLineList();
-          List<AnalyticMoveLine> list2 = moveLine.getAnalyticMoveLineList();
-          List<AnalyticMoveLine> copyList = new ArrayList<AnalyticMoveLine>(list1);
-          if (list1.size() == list2.size()) {
-            for (AnalyticMoveLine analyticDistributionLine : list2) {
-              for (AnalyticMoveLine analyticDistributionLineIt : copyList) {
-                if (analyticDistributionLine
-                        .getAnalyticAxis()
-                        .equals(analyticDistributionLineIt.getAnalyticAxis())
-                    && analyticDistributionLine
-                        .getAnalyticAccount()
-                        .equals(analyticDistributionLineIt.getAnalyticAccount())
-                    && analyticDistributionLine
-                        .getAccount()
-                        .equals(analyticDistributionLineIt.getAccount())
-                    && analyticDistributionLine
-                        .getPercentage()
-                        .equals(analyticDistributionLineIt.getPercentage())
-                    && ((analyticDistributionLine.getAnalyticJournal() == null
-                            && analyticDistributionLineIt.getAnalyticJournal() == null)
-                        || analyticDistributionLine
-                            .getAnalyticJournal()
-                            .equals(analyticDistributionLineIt.getAnalyticJournal()))) {
-                  copyList.remove(analyticDistributionLineIt);
-                  count++;
-                  break;
-                }
-              }
-            }
-            if (count == list1.size()) {
-              return moveLineIt;
-            }
-          }
-        } else {
-          return null;
-        }
-      }
+    if (moveLineIt != null
+        && Objects.equals(getAnalyticSignature(moveLineIt), getAnalyticSignature(moveLine))) {
+      return moveLineIt;
     }
 
     return null;
   }
 
+  /**
+   * Get a hashable signature of the analytic distribution of a move line: the number of analytic
+   * move lines by axis, analytic account, account, percentage and analytic journal. Two move lines
+   * can be consolidated when their signatures are equal, whatever the order of their analytic
+   * move lines.
+   *
+   * @param moveLine
+   * @return the signature, or null if the move line has no analytic move line list
+   */
+  protected Map<List<Object>, Integer> getAnalyticSignature(MoveLine moveLine) {
+
+    if (moveLine.getAnalyticMoveLineList() == null) {
+      return null;
+    }
+
+    Map<List<Object>, Integer> analyticSignature = new HashMap<>();
+    for (AnalyticMoveLine analyticMoveLine : moveLine.getAnalyticMoveLineList()) {
+      analyticSignature.merge(getAnalyticKey(analyticMoveLine), 1, Integer::sum);
+    }
+
+    return analyticSignature;
+  }
+
+  protected List<Object> getAnalyticKey(AnalyticMoveLine analyticMoveLine) {
+
+    return Arrays.asList(
+        analyticMoveLine.getAnalyticAxis(),
+        analyticMoveLine.getAnalyticAccount(),
+        analyticMoveLine.getAccount(),
+        analyticMoveLine.getPercentage(),
+        analyticMoveLine.getAnalyticJournal());
+  }
+
   /**
    * Consolider des lignes d'écritures par compte comptable.
    *
+   * <p>The lines are indexed by account, tax line, analytic distribution template and analytic
+   * signature, so that each line is consolidated in constant time.
+   *
    * @param moveLines
    */
   public List<MoveLine> consolidateMoveLines(List<MoveLine> moveLines) {
 
     Map<List<Object>, MoveLine> map = new HashMap<List<Object>, MoveLine>();
+    Map<List<Object>, MoveLine> analyticMap = new HashMap<List<Object>, MoveLine>();
+    List<MoveLine> otherMoveLineList = new ArrayList<>();
     MoveLine consolidateMoveLine = null;
 
     for (MoveLine moveLine : moveLines) {
@@ -658,7 +651,10 @@ public class MoveLineService {
       keys.add(moveLine.getTaxLine());
       keys.add(moveLine.getAnalyticDistributionTemplate());
 
-      consolidateMoveLine = this.findConsolidateMoveLine(map, moveLine, keys);
+      List<Object> analyticKeys = new ArrayList<Object>(keys);
+      analyticKeys.add(getAnalyticSignature(moveLine));
+
+      consolidateMoveLine = analyticMap.get(analyticKeys);
       if (consolidateMoveLine != null) {
 
         BigDecimal consolidateCurrencyAmount = BigDecimal.ZERO;
@@ -691,47 +687,40 @@ public class MoveLineService {
 
         if (consolidateMoveLine.getAnalyticMoveLineList() != null
             && !consolidateMoveLine.getAnalyticMoveLineList().isEmpty()) {
+          Map<List<Object>, AnalyticMoveLine> analyticMoveLineMap = new HashMap<>();
+          for (AnalyticMoveLine analyticDistributionLineIt : moveLine.getAnalyticMoveLineList()) {
+            analyticMoveLineMap.putIfAbsent(
+                getAnalyticKey(analyticDistributionLineIt), analyticDistributionLineIt);
+          }
           for (AnalyticMoveLine analyticDistributionLine :
               consolidateMoveLine.getAnalyticMoveLineList()) {
-            for (AnalyticMoveLine analyticDistributionLineIt : moveLine.getAnalyticMoveLineList()) {
-              if (analyticDistributionLine
-                      .getAnalyticAxis()
-                      .equals(analyticDistributionLineIt.getAnalyticAxis())
-                  && analyticDistributionLine
-                      .getAnalyticAccount()
-                      .equals(analyticDistributionLineIt.getAnalyticAccount())
-                  && analyticDistributionLine
-                      .getAccount()
-                      .equals(analyticDistributionLineIt.getAccount())
-                  && analyticDistributionLine
-                      .getPercentage()
-                      .equals(analyticDistributionLineIt.getPercentage())
-                  && ((analyticDistributionLine.getAnalyticJournal() == null
-                          && analyticDistributionLineIt.getAnalyticJournal() == null)
-                      || analyticDistributionLine
-                          .getAnalyticJournal()
-                          .equals(analyticDistributionLineIt.getAnalyticJournal()))) {
-                analyticDistributionLine.setAmount(
-                    analyticDistributionLine
-                        .getAmount()
-                        .add(analyticDistributionLineIt.getAmount()));
-                break;
-              }
+            AnalyticMoveLine analyticDistributionLineIt =
+                analyticMoveLineMap.get(getAnalyticKey(analyticDistributionLine));
+            if (analyticDistributionLineIt != null) {
+              analyticDistributionLine.setAmount(
+                  analyticDistributionLine.getAmount().add(analyticDistributionLineIt.getAmount()));
             }
           }
         }
       } else {
-        map.put(keys, moveLine);
+        analyticMap.put(analyticKeys, moveLine);
+        // Lines sharing the keys of a line with another analytic distribution are kept apart
+        if (map.putIfAbsent(keys, moveLine) != null) {
+          otherMoveLineList.add(moveLine);
+        }
       }
     }
 
+    List<MoveLine> consolidatedMoveLineList = new ArrayList<>(map.values());
+    consolidatedMoveLineList.addAll(otherMoveLineList);
+
     BigDecimal credit = null;
     BigDecimal debit = null;
 
     int moveLineId = 1;
     moveLines.clear();
 
-    for (MoveLine moveLine : map.values()) {
+    for (MoveLine moveLine : consolidatedMoveLineList) {
 
       credit = moveLine.getCredit();
       debit = moveLine.getDebit();
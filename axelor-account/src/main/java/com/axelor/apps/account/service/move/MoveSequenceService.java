@@ -21,21 +21,30 @@ import com.axelor.apps.account.db.Journal;
 import com.axelor.apps.account.db.Move;
 import com.axelor.apps.account.db.repo.MoveRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.base.db.Sequence;
 import com.axelor.apps.base.service.administration.SequenceService;
+import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
 import com.google.common.base.Strings;
 import com.google.inject.Inject;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class MoveSequenceService {
 
   private SequenceService sequenceService;
+  private AppBaseService appBaseService;
 
   @Inject
-  public MoveSequenceService(SequenceService sequenceService) {
+  public MoveSequenceService(SequenceService sequenceService, AppBaseService appBaseService) {
 
     this.sequenceService = sequenceService;
+    this.appBaseService = appBaseService;
   }
 
   public void setDraftSequence(Move move) throws AxelorException {
@@ -51,12 +60,48 @@ public class MoveSequenceService {
 
     Journal journal = move.getJournal();
 
+    this.checkSequence(journal);
+    move.setReference(sequenceService.getSequenceNumber(journal.getSequence()));
+  }
+
+  public void checkSequence(Journal journal) throws AxelorException {
+
     if (journal.getSequence() == null) {
       throw new AxelorException(
           TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
           I18n.get(IExceptionMessage.MOVE_5),
           journal.getName());
     }
-    move.setReference(sequenceService.getSequenceNumber(journal.getSequence()));
+  }
+
+  /**
+   * Set the reference of several moves, taking the numbers of each journal sequence at once. The
+   * moves get their numbers in the order of the list.
+   *
+   * @param moveList
+   * @throws AxelorException
+   */
+  public void setSequences(List<Move> moveList) throws AxelorException {
+
+    Map<Sequence, List<Move>> moveListBySequence = new LinkedHashMap<>();
+
+    for (Move move : moveList) {
+      Journal journal = move.getJournal();
+      this.checkSequence(journal);
+      moveListBySequence
+          .computeIfAbsent(journal.getSequence(), sequence -> new ArrayList<>())
+          .add(move);
+    }
+
+    LocalDate todayDate = appBaseService.getTodayDate();
+
+    for (Map.Entry<Sequence, List<Move>> entry : moveListBySequence.entrySet()) {
+      List<Move> sequenceMoveList = entry.getValue();
+      List<String> referenceList =
+          sequenceService.getSequenceNumbers(entry.getKey(), todayDate, sequenceMoveList.size());
+      for (int i = 0; i < sequenceMoveList.size(); i++) {
+        sequenceMoveList.get(i).setReference(referenceList.get(i));
+      }
+    }
   }
 }
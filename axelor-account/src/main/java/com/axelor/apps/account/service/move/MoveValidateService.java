@@ -35,6 +35,7 @@ import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
@@ -42,8 +43,12 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +56,8 @@ public class MoveValidateService {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  protected static final int VALIDATE_CHUNK_SIZE = 50;
+
   protected AccountConfigService accountConfigService;
   protected MoveSequenceService moveSequenceService;
   protected MoveCustAccountService moveCustAccountService;
@@ -169,6 +176,9 @@ public class MoveValidateService {
 
     this.checkPreconditions(move);
 
+    Map<MoveLine, BigDecimal[]> balanceContributionMap =
+        updateCustomerAccount ? moveCustAccountService.getBalanceContributions(move) : null;
+
     Boolean dayBookMode =
         accountConfigService.getAccountConfig(move.getCompany()).getAccountingDaybook();
 
@@ -189,7 +199,7 @@ public class MoveValidateService {
     moveRepository.save(move);
 
     if (updateCustomerAccount) {
-      moveCustAccountService.updateCustomerAccount(move);
+      moveCustAccountService.updateCustomerAccount(move, balanceContributionMap);
     }
   }
 
@@ -317,21 +327,126 @@ public class MoveValidateService {
   }
 
   public boolean validateMultiple(List<? extends Move> moveList) {
-    boolean error = false;
     if (moveList == null) {
-      return error;
+      return false;
     }
-    for (Move move : moveList) {
+    Map<Long, Exception> exceptionMap =
+        this.validateMultiple(
+            moveList.stream().map(Move::getId).collect(Collectors.toList()),
+            VALIDATE_CHUNK_SIZE);
+    exceptionMap.values().forEach(TraceBackService::trace);
+    return !exceptionMap.isEmpty();
+  }
+
+  /**
+   * Validate moves by chunks, each chunk in a single transaction. The sequence numbers of a chunk
+   * are taken at once, and the balance of each partner is updated once by chunk. A move which
+   * cannot be validated does not prevent the validation of the other moves of its chunk.
+   *
+   * @param moveIdList the ids of the moves to validate
+   * @param chunkSize the number of moves validated in a transaction
+   * @return the exceptions by id of the moves which have not been validated
+   */
+  public Map<Long, Exception> validateMultiple(List<Long> moveIdList, int chunkSize) {
+
+    Map<Long, Exception> exceptionMap = new LinkedHashMap<>();
+
+    for (List<Long> chunkIdList : Lists.partition(moveIdList, Math.max(1, chunkSize))) {
       try {
-        validate(moveRepository.find(move.getId()));
+        exceptionMap.putAll(this.validateChunk(chunkIdList));
       } catch (Exception e) {
-        TraceBackService.trace(e);
-        error = true;
+        // The chunk has been rolled back: validate its moves one by one
+        JPA.clear();
+        for (Long moveId : chunkIdList) {
+          try {
+            this.validate(moveRepository.find(moveId));
+          } catch (Exception moveException) {
+            exceptionMap.put(moveId, moveException);
+          } finally {
+            JPA.clear();
+          }
+        }
       } finally {
         JPA.clear();
       }
     }
-    return error;
+
+    return exceptionMap;
+  }
+
+  /**
+   * Validate a chunk of moves as {@link #validate(Move)} does for each of them. A move failing
+   * before it is saved is detached from the session and reported in the result.
+   *
+   * @param moveIdList
+   * @return the exceptions by id of the moves which have not been validated
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public Map<Long, Exception> validateChunk(List<Long> moveIdList) throws AxelorException {
+
+    Map<Long, Exception> exceptionMap = new LinkedHashMap<>();
+    List<Move> validatedMoveList = new ArrayList<>();
+    List<Move> sequenceMoveList = new ArrayList<>();
+    Map<Company, Map<MoveLine, BigDecimal[]>> balanceContributionMap = new LinkedHashMap<>();
+
+    for (Long moveId : moveIdList) {
+      Move move = moveRepository.find(moveId);
+      try {
+        this.checkPreconditions(move);
+
+        Boolean dayBookMode =
+            accountConfigService.getAccountConfig(move.getCompany()).getAccountingDaybook();
+        boolean setSequence =
+            !dayBookMode || move.getStatusSelect() == MoveRepository.STATUS_DAYBOOK;
+
+        if (setSequence) {
+          moveSequenceService.checkSequence(move.getJournal());
+        }
+
+        Map<MoveLine, BigDecimal[]> moveBalanceContributionMap =
+            moveCustAccountService.getBalanceContributions(move);
+
+        if (move.getPeriod().getStatusSelect() == PeriodRepository.STATUS_ADJUSTING) {
+          move.setAdjustingMove(true);
+        }
+
+        this.completeMoveLines(move);
+        this.freezeAccountAndPartnerFieldsOnMoveLines(move);
+        this.updateValidateStatus(move, dayBookMode);
+
+        validatedMoveList.add(move);
+        if (setSequence) {
+          sequenceMoveList.add(move);
+        }
+        balanceContributionMap
+            .computeIfAbsent(move.getCompany(), company -> new IdentityHashMap<>())
+            .putAll(moveBalanceContributionMap);
+
+      } catch (Exception e) {
+        if (move != null) {
+          JPA.em().detach(move);
+        }
+        exceptionMap.put(moveId, e);
+      }
+    }
+
+    moveSequenceService.setSequences(sequenceMoveList);
+
+    Map<Company, List<MoveLine>> moveLineMap = new LinkedHashMap<>();
+    for (Move move : validatedMoveList) {
+      moveRepository.save(move);
+      moveLineMap
+          .computeIfAbsent(move.getCompany(), company -> new ArrayList<>())
+          .addAll(move.getMoveLineList());
+    }
+
+    for (Map.Entry<Company, List<MoveLine>> entry : moveLineMap.entrySet()) {
+      moveCustAccountService.updateCustomerAccount(
+          entry.getKey(), balanceContributionMap.get(entry.getKey()), entry.getValue());
+    }
+
+    return exceptionMap;
   }
 
   private String getPartnerFullName(Partner partner) {
@@ -18,8 +18,12 @@
 package com.axelor.apps.account.web;
 
 import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AccountingBatch;
 import com.axelor.apps.account.db.repo.AccountRepository;
+import com.axelor.apps.account.exception.IExceptionMessage;
 import com.axelor.apps.account.service.AccountService;
+import com.axelor.apps.account.service.AutoLetteringService;
+import com.axelor.apps.account.service.batch.AccountingBatchService;
 import com.axelor.apps.account.translation.ITranslation;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
@@ -36,6 +40,10 @@ public class AccountController {
 
   @Inject private AccountService accountService;
 
+  @Inject private AutoLetteringService autoLetteringService;
+
+  @Inject private AccountingBatchService accountingBatchService;
+
   public void computeBalance(ActionRequest request, ActionResponse response) {
     try {
       Account account = request.getContext().asType(Account.class);
@@ -59,4 +67,20 @@ public class AccountController {
       TraceBackService.trace(response, e);
     }
   }
+
+  public void autoLetter(ActionRequest request, ActionResponse response) {
+    try {
+      Account account = request.getContext().asType(Account.class);
+      account = accountRepository.find(account.getId());
+
+      AccountingBatch accountingBatch = autoLetteringService.getAutoLetteringBatch(account);
+      accountingBatchService.runInBackground(accountingBatch.getCode());
+
+      response.setFlash(
+          String.format(
+              I18n.get(IExceptionMessage.BATCH_AUTO_LETTERING_2), accountingBatch.getCode()));
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+    }
+  }
 }
@@ -0,0 +1,339 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.test;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AnalyticAccount;
+import com.axelor.apps.account.db.AnalyticAxis;
+import com.axelor.apps.account.db.AnalyticMoveLine;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.TaxLine;
+import com.axelor.apps.account.service.move.MoveLineService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MoveLineConsolidationTest {
+
+  private static final int ACCOUNT_COUNT = 40;
+  private static final int TAX_LINE_COUNT = 4;
+  private static final int ANALYTIC_ACCOUNT_COUNT = 12;
+
+  private final MoveLineService moveLineService =
+      new MoveLineService(null, null, null, null, null, null, null);
+
+  private final List<Account> accounts = new ArrayList<>();
+  private final List<TaxLine> taxLines = new ArrayList<>();
+  private final List<AnalyticAxis> analyticAxes = new ArrayList<>();
+  private final List<AnalyticAccount> analyticAccounts = new ArrayList<>();
+
+  public MoveLineConsolidationTest() {
+    for (long id = 1; id <= ACCOUNT_COUNT; id++) {
+      Account account = new Account();
+      account.setId(id);
+      accounts.add(account);
+    }
+    for (long id = 1; id <= TAX_LINE_COUNT; id++) {
+      TaxLine taxLine = new TaxLine();
+      taxLine.setId(id);
+      taxLines.add(taxLine);
+    }
+    for (long id = 1; id <= 2; id++) {
+      AnalyticAxis analyticAxis = new AnalyticAxis();
+      analyticAxis.setId(id);
+      analyticAxes.add(analyticAxis);
+    }
+    for (long id = 1; id <= ANALYTIC_ACCOUNT_COUNT; id++) {
+      AnalyticAccount analyticAccount = new AnalyticAccount();
+      analyticAccount.setId(id);
+      analyticAccounts.add(analyticAccount);
+    }
+  }
+
+  /**
+   * A synthetic invoice: the analytic distribution of a line depends on its account and tax line,
+   * its analytic move lines come in any order.
+   */
+  private List<MoveLine> createMoveLines(int count, long seed) {
+
+    Random random = new Random(seed);
+    List<MoveLine> moveLines = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      int accountIndex = random.nextInt(ACCOUNT_COUNT);
+      int taxLineIndex = random.nextInt(TAX_LINE_COUNT);
+      BigDecimal amount = BigDecimal.valueOf(random.nextInt(100_000), 2);
+
+      MoveLine moveLine = new MoveLine();
+      moveLine.setAccount(accounts.get(accountIndex));
+      moveLine.setTaxLine(taxLines.get(taxLineIndex));
+      if (random.nextInt(10) == 0) {
+        moveLine.setDebit(amount);
+      } else {
+        moveLine.setCredit(amount);
+      }
+      moveLine.setCurrencyAmount(amount);
+
+      if (accountIndex % 4 != 0) {
+        List<AnalyticMoveLine> analyticMoveLineList = new ArrayList<>();
+        for (int j = 0; j < 3; j++) {
+          AnalyticMoveLine analyticMoveLine = new AnalyticMoveLine();
+          analyticMoveLine.setAnalyticAxis(analyticAxes.get(j % 2));
+          analyticMoveLine.setAnalyticAccount(
+              analyticAccounts.get((accountIndex + taxLineIndex + j) % ANALYTIC_ACCOUNT_COUNT));
+          analyticMoveLine.setAccount(moveLine.getAccount());
+          analyticMoveLine.setPercentage(BigDecimal.valueOf(j == 0 ? 50 : 25));
+          analyticMoveLine.setAmount(BigDecimal.valueOf(random.nextInt(10_000), 2));
+          analyticMoveLineList.add(analyticMoveLine);
+        }
+        Collections.shuffle(analyticMoveLineList, random);
+        moveLine.setAnalyticMoveLineList(analyticMoveLineList);
+      }
+
+      moveLines.add(moveLine);
+    }
+
+    return moveLines;
+  }
+
+  private List<String> describe(List<MoveLine> moveLines) {
+    List<String> descriptions = new ArrayList<>();
+    for (MoveLine moveLine : moveLines) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(moveLine.getCounter())
+          .append(' ')
+          .append(moveLine.getAccount().getId())
+          .append(' ')
+          .append(moveLine.getTaxLine().getId())
+          .append(' ')
+          .append(moveLine.getDebit())
+          .append(' ')
+          .append(moveLine.getCredit())
+          .append(' ')
+          .append(moveLine.getCurrencyAmount());
+      if (moveLine.getAnalyticMoveLineList() != null) {
+        for (AnalyticMoveLine analyticMoveLine : moveLine.getAnalyticMoveLineList()) {
+          sb.append(' ')
+              .append(analyticMoveLine.getAnalyticAccount().getId())
+              .append(':')
+              .append(analyticMoveLine.getAmount());
+        }
+      }
+      descriptions.add(sb.toString());
+    }
+    return descriptions;
+  }
+
+  @Test
+  public void testSameResultAsLegacy() {
+
+    for (long seed = 1; seed <= 5; seed++) {
+      List<MoveLine> legacyMoveLines = legacyConsolidate(createMoveLines(2_000, seed));
+      List<MoveLine> moveLines = moveLineService.consolidateMoveLines(createMoveLines(2_000, seed));
+
+      Assert.assertEquals(describe(legacyMoveLines), describe(moveLines));
+    }
+  }
+
+  @Test
+  public void testDifferentDistributionsAreKeptApart() {
+
+    List<MoveLine> moveLines = createMoveLines(2, 1);
+    MoveLine first = moveLines.get(0);
+    MoveLine second = moveLines.get(1);
+    second.setAccount(first.getAccount());
+    second.setTaxLine(first.getTaxLine());
+    second.setAnalyticMoveLineList(null);
+    first.setAnalyticMoveLineList(new ArrayList<>());
+    for (MoveLine moveLine : moveLines) {
+      moveLine.setDebit(BigDecimal.ZERO);
+      moveLine.setCredit(BigDecimal.TEN);
+    }
+
+    Assert.assertEquals(2, moveLineService.consolidateMoveLines(moveLines).size());
+  }
+
+  private MoveLine createMoveLine(int... analyticAccountIndexes) {
+
+    MoveLine moveLine = new MoveLine();
+    moveLine.setAccount(accounts.get(1));
+    moveLine.setTaxLine(taxLines.get(0));
+    moveLine.setDebit(BigDecimal.ZERO);
+    moveLine.setCredit(BigDecimal.TEN);
+    moveLine.setCurrencyAmount(BigDecimal.TEN);
+
+    List<AnalyticMoveLine> analyticMoveLineList = new ArrayList<>();
+    for (int j = 0; j < analyticAccountIndexes.length; j++) {
+      AnalyticMoveLine analyticMoveLine = new AnalyticMoveLine();
+      analyticMoveLine.setAnalyticAxis(analyticAxes.get(j % 2));
+      analyticMoveLine.setAnalyticAccount(analyticAccounts.get(analyticAccountIndexes[j]));
+      analyticMoveLine.setAccount(moveLine.getAccount());
+      analyticMoveLine.setPercentage(BigDecimal.valueOf(50));
+      analyticMoveLine.setAmount(BigDecimal.ONE);
+      analyticMoveLineList.add(analyticMoveLine);
+    }
+    moveLine.setAnalyticMoveLineList(analyticMoveLineList);
+
+    return moveLine;
+  }
+
+  @Test
+  public void testOtherAnalyticDistributionIsKeptApart() {
+
+    MoveLine first = createMoveLine(0, 1);
+    MoveLine other = createMoveLine(0, 2);
+    MoveLine sameAsFirst = createMoveLine(0, 1);
+    Collections.reverse(sameAsFirst.getAnalyticMoveLineList());
+
+    List<MoveLine> moveLines =
+        moveLineService.consolidateMoveLines(
+            new ArrayList<>(Arrays.asList(first, other, sameAsFirst)));
+
+    Assert.assertEquals(2, moveLines.size());
+    Assert.assertTrue(moveLines.contains(first));
+    Assert.assertTrue(moveLines.contains(other));
+    Assert.assertEquals(BigDecimal.valueOf(20), first.getCredit());
+    Assert.assertEquals(BigDecimal.TEN, other.getCredit());
+    for (AnalyticMoveLine analyticMoveLine : first.getAnalyticMoveLineList()) {
+      Assert.assertEquals(BigDecimal.valueOf(2), analyticMoveLine.getAmount());
+    }
+    for (AnalyticMoveLine analyticMoveLine : other.getAnalyticMoveLineList()) {
+      Assert.assertEquals(BigDecimal.ONE, analyticMoveLine.getAmount());
+    }
+  }
+
+  /** The way the move lines were consolidated before the analytic signatures. */
+  private List<MoveLine> legacyConsolidate(List<MoveLine> moveLines) {
+
+    Map<List<Object>, MoveLine> map = new HashMap<>();
+
+    for (MoveLine moveLine : moveLines) {
+
+      List<Object> keys = new ArrayList<>();
+      keys.add(moveLine.getAccount());
+      keys.add(moveLine.getTaxLine());
+      keys.add(moveLine.getAnalyticDistributionTemplate());
+
+      MoveLine consolidateMoveLine = legacyFind(map, moveLine, keys);
+      if (consolidateMoveLine == null) {
+        map.put(keys, moveLine);
+        continue;
+      }
+
+      BigDecimal consolidateCurrencyAmount;
+      if (moveLine.getDebit().subtract(moveLine.getCredit()).signum()
+          != consolidateMoveLine.getDebit().subtract(consolidateMoveLine.getCredit()).signum()) {
+        consolidateCurrencyAmount =
+            consolidateMoveLine.getCurrencyAmount().subtract(moveLine.getCurrencyAmount());
+      } else {
+        consolidateCurrencyAmount =
+            consolidateMoveLine.getCurrencyAmount().add(moveLine.getCurrencyAmount());
+      }
+      consolidateMoveLine.setCurrencyAmount(consolidateCurrencyAmount.abs());
+      consolidateMoveLine.setCredit(consolidateMoveLine.getCredit().add(moveLine.getCredit()));
+      consolidateMoveLine.setDebit(consolidateMoveLine.getDebit().add(moveLine.getDebit()));
+
+      if (consolidateMoveLine.getAnalyticMoveLineList() != null) {
+        for (AnalyticMoveLine line : consolidateMoveLine.getAnalyticMoveLineList()) {
+          for (AnalyticMoveLine lineIt : moveLine.getAnalyticMoveLineList()) {
+            if (isSameAnalytic(line, lineIt)) {
+              line.setAmount(line.getAmount().add(lineIt.getAmount()));
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    int moveLineId = 1;
+    moveLines.clear();
+
+    for (MoveLine moveLine : map.values()) {
+      BigDecimal credit = moveLine.getCredit();
+      BigDecimal debit = moveLine.getDebit();
+      moveLine.setCurrencyAmount(moveLine.getCurrencyAmount().abs());
+
+      if (debit.signum() > 0 && credit.signum() > 0) {
+        if (debit.compareTo(credit) > 0) {
+          moveLine.setDebit(debit.subtract(credit));
+          moveLine.setCredit(BigDecimal.ZERO);
+          moveLine.setCounter(moveLineId++);
+          moveLines.add(moveLine);
+        } else if (credit.compareTo(debit) > 0) {
+          moveLine.setCredit(credit.subtract(debit));
+          moveLine.setDebit(BigDecimal.ZERO);
+          moveLine.setCounter(moveLineId++);
+          moveLines.add(moveLine);
+        }
+      } else if (debit.signum() > 0 || credit.signum() > 0) {
+        moveLine.setCounter(moveLineId++);
+        moveLines.add(moveLine);
+      }
+    }
+
+    return moveLines;
+  }
+
+  private MoveLine legacyFind(
+      Map<List<Object>, MoveLine> map, MoveLine moveLine, List<Object> keys) {
+
+    if (map.isEmpty() || !map.containsKey(keys)) {
+      return null;
+    }
+    MoveLine moveLineIt = map.get(keys);
+    List<AnalyticMoveLine> list1 = moveLineIt.getAnalyticMoveLineList();
+    List<AnalyticMoveLine> list2 = moveLine.getAnalyticMoveLineList();
+    if (list1 == null && list2 == null) {
+      return moveLineIt;
+    } else if (list1 == null || list2 == null || list1.size() != list2.size()) {
+      // The lookup used to loop forever on different sizes, never met by the synthetic lines
+      return null;
+    }
+
+    List<AnalyticMoveLine> copyList = new ArrayList<>(list1);
+    int count = 0;
+    for (AnalyticMoveLine line : list2) {
+      for (AnalyticMoveLine lineIt : copyList) {
+        if (isSameAnalytic(line, lineIt)) {
+          copyList.remove(lineIt);
+          count++;
+          break;
+        }
+      }
+    }
+
+    return count == list1.size() ? moveLineIt : null;
+  }
+
+  private boolean isSameAnalytic(AnalyticMoveLine line, AnalyticMoveLine lineIt) {
+    return line.getAnalyticAxis().equals(lineIt.getAnalyticAxis())
+        && line.getAnalyticAccount().equals(lineIt.getAnalyticAccount())
+        && line.getAccount().equals(lineIt.getAccount())
+        && line.getPercentage().equals(lineIt.getPercentage())
+        && (line.getAnalyticJournal() == null
+            ? lineIt.getAnalyticJournal() == null
+            : line.getAnalyticJournal().equals(lineIt.getAnalyticJournal()));
+  }
+}
@@ -33,6 +33,12 @@ public interface IExceptionMessage {
   static final String BANK_STATEMENT_3 = /*$$(*/
       "%s : Bank statement line %s amount can't be null" /*)*/;
 
+  /** Bank reconciliation matching service */
+  static final String BANK_RECONCILIATION_MISSING_CASH_ACCOUNT = /*$$(*/
+      "Please select a cash account" /*)*/;
+
+  static final String BANK_RECONCILIATION_AUTO_MATCH = /*$$(*/ "%s line(s) matched" /*)*/;
+
   /** Account config Bank Payment Service */
   static final String ACCOUNT_CONFIG_41 = /*$$(*/
       "%s : Please, configure a default signer for the company %s" /*)*/;
@@ -0,0 +1,369 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankreconciliation;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.bankpayment.db.BankPaymentConfig;
+import com.axelor.apps.bankpayment.db.BankReconciliation;
+import com.axelor.apps.bankpayment.db.BankReconciliationLine;
+import com.axelor.apps.bankpayment.exception.IExceptionMessage;
+import com.axelor.apps.bankpayment.service.config.BankPaymentConfigService;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.TypedQuery;
+
+/**
+ * Automatic matching of the bank reconciliation lines with the cash move lines not reconciled yet.
+ *
+ * <p>A line matches the move lines of the same amount on the opposite side, whose date is within
+ * the date tolerance of the company around its effect date. Among them, the move line sharing the
+ * most reference tokens with the line wins, then the closest in date. The move lines are indexed
+ * by side and amount, and sorted by date, so that a line only scans the move lines of its amount
+ * within its date window.
+ */
+public class BankReconciliationMatchingService {
+
+  /** Shorter words of the labels and references are not significant. */
+  protected static final int MIN_TOKEN_LENGTH = 3;
+
+  protected BankPaymentConfigService bankPaymentConfigService;
+
+  @Inject
+  public BankReconciliationMatchingService(BankPaymentConfigService bankPaymentConfigService) {
+    this.bankPaymentConfigService = bankPaymentConfigService;
+  }
+
+  /**
+   * Match the lines of a bank reconciliation which have no move line yet. The matched move lines
+   * are only set on the lines, they are reconciled when the bank reconciliation is validated.
+   *
+   * @param bankReconciliation
+   * @return the number of matched lines
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public int autoMatch(BankReconciliation bankReconciliation) throws AxelorException {
+
+    if (bankReconciliation.getCashAccount() == null) {
+      throw new AxelorException(
+          bankReconciliation,
+          TraceBackRepository.CATEGORY_MISSING_FIELD,
+          I18n.get(IExceptionMessage.BANK_RECONCILIATION_MISSING_CASH_ACCOUNT));
+    }
+
+    BankPaymentConfig bankPaymentConfig =
+        bankPaymentConfigService.getBankPaymentConfig(bankReconciliation.getCompany());
+    int dayTolerance = bankPaymentConfig.getAutoReconcileDayTolerance();
+
+    List<BankReconciliationLine> bankReconciliationLineList = new ArrayList<>();
+    LocalDate fromDate = null;
+    LocalDate toDate = null;
+
+    for (BankReconciliationLine bankReconciliationLine :
+        bankReconciliation.getBankReconciliationLineList()) {
+      LocalDate effectDate = bankReconciliationLine.getEffectDate();
+      if (bankReconciliationLine.getIsPosted()
+          || bankReconciliationLine.getMoveLine() != null
+          || effectDate == null
+          || getAmount(bankReconciliationLine).signum() == 0) {
+        continue;
+      }
+      bankReconciliationLineList.add(bankReconciliationLine);
+      fromDate = fromDate == null || effectDate.isBefore(fromDate) ? effectDate : fromDate;
+      toDate = toDate == null || effectDate.isAfter(toDate) ? effectDate : toDate;
+    }
+
+    if (bankReconciliationLineList.isEmpty()) {
+      return 0;
+    }
+
+    List<MoveLine> moveLineList =
+        getUnreconciledMoveLines(
+            bankReconciliation, fromDate.minusDays(dayTolerance), toDate.plusDays(dayTolerance));
+
+    Map<BankReconciliationLine, MoveLine> matchMap =
+        match(
+            bankReconciliationLineList,
+            moveLineList,
+            dayTolerance,
+            bankPaymentConfig.getAutoReconcileReferenceRequired());
+
+    matchMap.forEach(BankReconciliationLine::setMoveLine);
+
+    return matchMap.size();
+  }
+
+  /**
+   * The cash move lines of the bank reconciliation with an amount left to reconcile, which are not
+   * already set on a line of a bank reconciliation not posted yet.
+   */
+  protected List<MoveLine> getUnreconciledMoveLines(
+      BankReconciliation bankReconciliation, LocalDate fromDate, LocalDate toDate) {
+
+    TypedQuery<MoveLine> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM MoveLine self "
+                    + "WHERE self.account = :cashAccount "
+                    + (bankReconciliation.getJournal() != null
+                        ? "AND self.move.journal = :journal "
+                        : "")
+                    + "AND self.move.statusSelect != :statusCanceled "
+                    + "AND self.date BETWEEN :fromDate AND :toDate "
+                    + "AND ((self.debit > 0 AND self.bankReconciledAmount < self.debit) "
+                    + "OR (self.credit > 0 AND self.bankReconciledAmount < self.credit)) "
+                    + "AND NOT EXISTS (SELECT line.id FROM BankReconciliationLine line "
+                    + "WHERE line.moveLine = self "
+                    + "AND (line.isPosted IS NULL OR line.isPosted = false))",
+                MoveLine.class)
+            .setParameter("cashAccount", bankReconciliation.getCashAccount())
+            .setParameter("statusCanceled", MoveRepository.STATUS_CANCELED)
+            .setParameter("fromDate", fromDate)
+            .setParameter("toDate", toDate);
+
+    if (bankReconciliation.getJournal() != null) {
+      query.setParameter("journal", bankReconciliation.getJournal());
+    }
+
+    return query.getResultList();
+  }
+
+  /**
+   * Match bank reconciliation lines with move lines. Each move line is matched at most once: the
+   * lines sharing a reference with a move line are matched first, then, if no common reference is
+   * required, the other lines by date.
+   *
+   * @param bankReconciliationLineList the lines to match
+   * @param moveLineList the candidate move lines
+   * @param dayTolerance maximum number of days between the effect date of a line and the date of
+   *     its move line
+   * @param referenceRequired whether a line and its move line must share a reference token
+   * @return the matched move line of each matched line
+   */
+  public Map<BankReconciliationLine, MoveLine> match(
+      List<BankReconciliationLine> bankReconciliationLineList,
+      List<MoveLine> moveLineList,
+      int dayTolerance,
+      boolean referenceRequired) {
+
+    Map<List<Object>, List<MoveLine>> moveLineIndex = new HashMap<>();
+    for (MoveLine moveLine : moveLineList) {
+      BigDecimal amount = getAmountToReconcile(moveLine);
+      if (amount.signum() > 0 && moveLine.getDate() != null) {
+        List<Object> key = getKey(moveLine.getDebit().signum() > 0, amount);
+        moveLineIndex.computeIfAbsent(key, k -> new ArrayList<>()).add(moveLine);
+      }
+    }
+    for (List<MoveLine> bucket : moveLineIndex.values()) {
+      bucket.sort(Comparator.comparing(MoveLine::getDate));
+    }
+
+    List<BankReconciliationLine> sortedLineList = new ArrayList<>(bankReconciliationLineList);
+    sortedLineList.sort(Comparator.comparing(BankReconciliationLine::getEffectDate));
+
+    Map<BankReconciliationLine, MoveLine> matchMap = new LinkedHashMap<>();
+    Set<MoveLine> matchedMoveLineSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    Map<MoveLine, Set<String>> tokenMap = new IdentityHashMap<>();
+
+    boolean[] passes = referenceRequired ? new boolean[] {true} : new boolean[] {true, false};
+
+    for (boolean withReference : passes) {
+      for (BankReconciliationLine bankReconciliationLine : sortedLineList) {
+        if (matchMap.containsKey(bankReconciliationLine)) {
+          continue;
+        }
+        List<MoveLine> bucket =
+            moveLineIndex.get(
+                getKey(
+                    bankReconciliationLine.getCredit().signum() > 0,
+                    getAmount(bankReconciliationLine)));
+        if (bucket == null) {
+          continue;
+        }
+        MoveLine moveLine =
+            findBestMoveLine(
+                bankReconciliationLine,
+                bucket,
+                dayTolerance,
+                withReference,
+                matchedMoveLineSet,
+                tokenMap);
+        if (moveLine != null) {
+          matchMap.put(bankReconciliationLine, moveLine);
+          matchedMoveLineSet.add(moveLine);
+        }
+      }
+    }
+
+    return matchMap;
+  }
+
+  /**
+   * Find the best move line of a bucket for a line, among the move lines within the date
+   * tolerance.
+   *
+   * @param withReference whether the move line must share a reference token with the line
+   * @return the best move line, or null if none
+   */
+  protected MoveLine findBestMoveLine(
+      BankReconciliationLine bankReconciliationLine,
+      List<MoveLine> bucket,
+      int dayTolerance,
+      boolean withReference,
+      Set<MoveLine> matchedMoveLineSet,
+      Map<MoveLine, Set<String>> tokenMap) {
+
+    LocalDate effectDate = bankReconciliationLine.getEffectDate();
+    LocalDate fromDate = effectDate.minusDays(dayTolerance);
+    LocalDate toDate = effectDate.plusDays(dayTolerance);
+
+    Set<String> lineTokens =
+        withReference
+            ? getTokens(bankReconciliationLine.getName(), bankReconciliationLine.getReference())
+            : Collections.emptySet();
+    if (withReference && lineTokens.isEmpty()) {
+      return null;
+    }
+
+    MoveLine bestMoveLine = null;
+    int bestScore = 0;
+    long bestDistance = Long.MAX_VALUE;
+
+    for (int i = findFirstIndex(bucket, fromDate); i < bucket.size(); i++) {
+      MoveLine moveLine = bucket.get(i);
+      if (moveLine.getDate().isAfter(toDate)) {
+        break;
+      }
+      if (matchedMoveLineSet.contains(moveLine)) {
+        continue;
+      }
+
+      int score = 0;
+      if (withReference) {
+        score =
+            countCommonTokens(
+                lineTokens, tokenMap.computeIfAbsent(moveLine, this::getMoveLineTokens));
+        if (score == 0) {
+          continue;
+        }
+      }
+      long distance = Math.abs(ChronoUnit.DAYS.between(effectDate, moveLine.getDate()));
+
+      if (bestMoveLine == null
+          || score > bestScore
+          || (score == bestScore && distance < bestDistance)) {
+        bestMoveLine = moveLine;
+        bestScore = score;
+        bestDistance = distance;
+      }
+    }
+
+    return bestMoveLine;
+  }
+
+  /** Index of the first move line of a bucket sorted by date whose date is not before a date. */
+  protected int findFirstIndex(List<MoveLine> bucket, LocalDate fromDate) {
+
+    int low = 0;
+    int high = bucket.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (bucket.get(middle).getDate().isBefore(fromDate)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  protected int countCommonTokens(Set<String> tokens, Set<String> otherTokens) {
+
+    int count = 0;
+    for (String token : tokens) {
+      if (otherTokens.contains(token)) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  protected Set<String> getMoveLineTokens(MoveLine moveLine) {
+
+    return getTokens(
+        moveLine.getOrigin(),
+        moveLine.getDescription(),
+        moveLine.getMove() != null ? moveLine.getMove().getReference() : null);
+  }
+
+  /** The upper case words of some labels, split on the characters which are not alphanumeric. */
+  protected Set<String> getTokens(String... values) {
+
+    Set<String> tokens = new HashSet<>();
+
+    for (String value : values) {
+      if (value == null) {
+        continue;
+      }
+      for (String token : value.toUpperCase().split("[^\\p{Alnum}]+")) {
+        if (token.length() >= MIN_TOKEN_LENGTH) {
+          tokens.add(token);
+        }
+      }
+    }
+
+    return tokens;
+  }
+
+  /** Key of the index: a debit move line matches a credit bank line, and conversely. */
+  protected List<Object> getKey(boolean debit, BigDecimal amount) {
+    return Arrays.asList(debit, amount.stripTrailingZeros());
+  }
+
+  protected BigDecimal getAmount(BankReconciliationLine bankReconciliationLine) {
+    return bankReconciliationLine.getDebit().add(bankReconciliationLine.getCredit());
+  }
+
+  /** The amount of a move line not bank reconciled yet. */
+  protected BigDecimal getAmountToReconcile(MoveLine moveLine) {
+    return moveLine.getDebit().signum() > 0
+        ? moveLine.getDebit().subtract(moveLine.getBankReconciledAmount())
+        : moveLine.getCredit().subtract(moveLine.getBankReconciledAmount());
+  }
+}
@@ -19,6 +19,7 @@ package com.axelor.apps.bankpayment.service.bankstatement.file.afb120;
 
 import com.axelor.apps.account.db.InterbankCodeLine;
 import com.axelor.apps.account.db.repo.InterbankCodeLineRepository;
+import com.axelor.apps.bankpayment.db.BankStatement;
 import com.axelor.apps.bankpayment.db.BankStatementLineAFB120;
 import com.axelor.apps.bankpayment.db.repo.BankStatementLineAFB120Repository;
 import com.axelor.apps.bankpayment.service.bankstatement.BankStatementService;
@@ -28,23 +29,29 @@ import com.axelor.apps.base.db.BankDetails;
 import com.axelor.apps.base.db.Currency;
 import com.axelor.apps.base.db.repo.BankDetailsRepository;
 import com.axelor.apps.base.db.repo.CurrencyRepository;
-import com.axelor.apps.tool.file.FileTool;
 import com.axelor.db.JPA;
+import com.axelor.db.Model;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.inject.Beans;
-import com.beust.jcommander.internal.Lists;
-import com.beust.jcommander.internal.Maps;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +73,35 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("ddMMyy");
 
+  /** Number of statement lines inserted by transaction, and by JDBC batch. */
+  protected static final int INSERT_BATCH_SIZE = 500;
+
+  /** Ids of the bank details, currencies and interbank codes found in the file, 0 for none. */
+  protected Map<List<String>, Long> bankDetailsIdMap;
+
+  protected Map<String, Long> currencyIdMap;
+  protected Map<String, Long> interbankCodeLineIdMap;
+
+  /** A record of the file, with the ids of the records it refers to. */
+  protected static class AFB120Record {
+
+    protected int lineType;
+    protected Long bankDetailsId;
+    protected Long currencyId;
+    protected Long operationInterbankCodeLineId;
+    protected Long rejectInterbankCodeLineId;
+    protected BigDecimal debit;
+    protected BigDecimal credit;
+    protected String description;
+    protected String additionalInformation;
+    protected LocalDate operationDate;
+    protected LocalDate valueDate;
+    protected String origin;
+    protected String reference;
+    protected String unavailabilityIndexSelect;
+    protected String commissionExemptionIndexSelect;
+  }
+
   @Inject
   public BankStatementFileAFB120Service(BankStatementService bankStatementService) {
 
@@ -84,151 +120,189 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
   public void process() throws IOException, AxelorException {
     super.process();
 
-    List<Map<String, Object>> structuredContentFile = readFile();
+    bankDetailsIdMap = new HashMap<>();
+    currencyIdMap = new HashMap<>();
+    interbankCodeLineIdMap = new HashMap<>();
 
-    int sequence = 0;
-    findBankStatement();
-
-    for (Map<String, Object> structuredContentLine : structuredContentFile) {
-
-      try {
-        createBankStatementLine(structuredContentLine, sequence++);
-      } catch (Exception e) {
-        TraceBackService.trace(
-            new Exception(String.format("Line %s : %s", sequence, e), e), IException.IMPORT);
-        findBankStatement();
-      } finally {
-        if (sequence % 10 == 0) {
-          JPA.clear();
-          findBankStatement();
+    // the whole file is read and checked before the first line is inserted, so that a malformed
+    // line does not leave a partial statement
+    List<AFB120Record> recordList = new ArrayList<>();
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+
+      AFB120Record pendingRecord = null;
+      String lineContent;
+
+      while ((lineContent = reader.readLine()) != null) {
+
+        log.trace("Read line : {}", lineContent);
+
+        AFB120Record record = readRecord(lineContent, pendingRecord);
+        if (record == null || record == pendingRecord) {
+          continue;
         }
+
+        // the previous record is complete once the next one is read
+        if (pendingRecord != null) {
+          recordList.add(pendingRecord);
+        }
+        pendingRecord = record;
+      }
+
+      if (pendingRecord != null) {
+        recordList.add(pendingRecord);
       }
     }
 
-    JPA.clear();
+    int sequence = 0;
+
+    for (List<AFB120Record> chunk : Lists.partition(recordList, INSERT_BATCH_SIZE)) {
+      insertBankStatementLines(chunk, sequence);
+      sequence += chunk.size();
+    }
   }
 
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  public void createBankStatementLine(Map<String, Object> structuredContentLine, int sequence) {
+  /**
+   * Read a line of the file.
+   *
+   * @param lineContent
+   * @param pendingRecord the last record read, which the line can complete
+   * @return the record of the line, the pending record if the line completes it, or null if the
+   *     line is ignored
+   * @throws AxelorException
+   */
+  protected AFB120Record readRecord(String lineContent, AFB120Record pendingRecord)
+      throws AxelorException {
+
+    // Code enregistrement
+    String operationCode =
+        cfonbToolService.readZone(
+            "Record code",
+            lineContent,
+            cfonbToolService.STATUS_MANDATORY,
+            cfonbToolService.FORMAT_NUMERIC,
+            1,
+            2);
 
-    String description = (String) structuredContentLine.get("description");
+    switch (operationCode) {
+      case PREVIOUS_BALANCE_OPERATION_CODE:
+        return readPreviousBalanceRecord(lineContent);
+      case MOVEMENT_OPERATION_CODE:
+        return readMovementRecord(lineContent);
+      case COMPLEMENT_MOVEMENT_OPERATION_CODE:
+        if (pendingRecord == null) {
+          return null;
+        }
+        String additionalInformation = "";
+        if (pendingRecord.additionalInformation != null) {
+          additionalInformation = pendingRecord.additionalInformation + "\n";
+        }
+        additionalInformation += readAdditionalMovementRecord(lineContent).additionalInformation;
 
-    if (structuredContentLine.containsKey("additionalInformation")
-        && structuredContentLine.get("additionalInformation") != null) {
-      description += "\n" + (String) structuredContentLine.get("additionalInformation");
-    }
+        pendingRecord.additionalInformation = additionalInformation;
 
-    BankDetails bankDetails = null;
-    if (structuredContentLine.containsKey("bankDetails")
-        && structuredContentLine.get("bankDetails") != null) {
-      bankDetails =
-          bankDetailsRepository.find(
-              ((BankDetails) structuredContentLine.get("bankDetails")).getId());
+        return pendingRecord;
+      case NEW_BALANCE_OPERATION_CODE:
+        return readNewBalanceRecord(lineContent);
+      default:
+        return null;
     }
+  }
 
-    Currency currency = null;
-    if (structuredContentLine.containsKey("currency")
-        && structuredContentLine.get("currency") != null) {
-      currency =
-          currencyRepository.find(((Currency) structuredContentLine.get("currency")).getId());
+  /**
+   * Insert the statement lines of a chunk of records in one transaction, with JDBC batches. If the
+   * chunk fails, its lines are inserted one by one so that only the failing lines are lost.
+   *
+   * @param recordList
+   * @param firstSequence sequence of the first line of the chunk
+   */
+  protected void insertBankStatementLines(List<AFB120Record> recordList, int firstSequence) {
+
+    if (recordList.isEmpty()) {
+      return;
     }
 
-    InterbankCodeLine operationInterbankCodeLine = null;
-    if (structuredContentLine.containsKey("operationInterbankCodeLine")
-        && structuredContentLine.get("operationInterbankCodeLine") != null) {
-      operationInterbankCodeLine =
-          interbankCodeLineRepository.find(
-              ((InterbankCodeLine) structuredContentLine.get("operationInterbankCodeLine"))
-                  .getId());
+    try {
+      createBankStatementLines(recordList, firstSequence);
+    } catch (Exception e) {
+      log.debug("Chunk of statement lines failed, inserting them one by one: {}", e.getMessage());
+      JPA.clear();
+
+      int sequence = firstSequence;
+      for (AFB120Record record : recordList) {
+        int lineSequence = sequence++;
+        try {
+          createBankStatementLine(record, lineSequence);
+        } catch (Exception lineException) {
+          TraceBackService.trace(
+              new Exception(
+                  String.format("Line %s : %s", lineSequence, lineException), lineException),
+              IException.IMPORT);
+          JPA.clear();
+        }
+      }
+    } finally {
+      JPA.clear();
     }
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void createBankStatementLines(List<AFB120Record> recordList, int firstSequence) {
+
+    JPA.em().unwrap(Session.class).setJdbcBatchSize(INSERT_BATCH_SIZE);
 
-    InterbankCodeLine rejectInterbankCodeLine = null;
-    if (structuredContentLine.containsKey("rejectInterbankCodeLine")
-        && structuredContentLine.get("rejectInterbankCodeLine") != null) {
-      rejectInterbankCodeLine =
-          interbankCodeLineRepository.find(
-              ((InterbankCodeLine) structuredContentLine.get("rejectInterbankCodeLine")).getId());
+    BankStatement bankStatement = findBankStatement();
+    int sequence = firstSequence;
+
+    for (AFB120Record record : recordList) {
+      JPA.em().persist(createBankStatementLine(bankStatement, record, sequence++));
     }
+  }
 
-    BankStatementLineAFB120 bankStatementLineAFB120 =
-        bankStatementLineAFB120Service.createBankStatementLine(
-            findBankStatement(),
-            sequence,
-            bankDetails,
-            (BigDecimal) structuredContentLine.get("debit"),
-            (BigDecimal) structuredContentLine.get("credit"),
-            currency,
-            description,
-            (LocalDate) structuredContentLine.get("operationDate"),
-            (LocalDate) structuredContentLine.get("valueDate"),
-            operationInterbankCodeLine,
-            rejectInterbankCodeLine,
-            (String) structuredContentLine.get("origin"),
-            (String) structuredContentLine.get("reference"),
-            (int) structuredContentLine.get("lineType"),
-            (String) structuredContentLine.get("unavailabilityIndexSelect"),
-            (String) structuredContentLine.get("commissionExemptionIndexSelect"));
-
-    bankStatementLineAFB120Repository.save(bankStatementLineAFB120);
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void createBankStatementLine(AFB120Record record, int sequence) {
+
+    bankStatementLineAFB120Repository.save(
+        createBankStatementLine(findBankStatement(), record, sequence));
   }
 
-  protected List<Map<String, Object>> readFile() throws IOException, AxelorException {
-
-    List<Map<String, Object>> structuredContent = Lists.newArrayList();
-
-    List<String> fileContent = FileTool.reader(file.getPath());
-
-    for (String lineContent : fileContent) {
-
-      log.info("Read line : {}", lineContent);
-
-      // Code enregistrement
-      String operationCode =
-          cfonbToolService.readZone(
-              "Record code",
-              lineContent,
-              cfonbToolService.STATUS_MANDATORY,
-              cfonbToolService.FORMAT_NUMERIC,
-              1,
-              2);
-
-      switch (operationCode) {
-        case PREVIOUS_BALANCE_OPERATION_CODE:
-          structuredContent.add(readPreviousBalanceRecord(lineContent));
-          break;
-        case MOVEMENT_OPERATION_CODE:
-          structuredContent.add(readMovementRecord(lineContent));
-          break;
-        case COMPLEMENT_MOVEMENT_OPERATION_CODE:
-          Map<String, Object> movementLine = structuredContent.get(structuredContent.size() - 1);
-          String additionalInformation = "";
-          if (movementLine.containsKey("additionalInformation")) {
-            additionalInformation = (String) movementLine.get("additionalInformation") + "\n";
-          }
-          additionalInformation +=
-              (String) readAdditionalMovementRecord(lineContent).get("additionalInformation");
-
-          movementLine.put("additionalInformation", additionalInformation);
-
-          break;
-        case NEW_BALANCE_OPERATION_CODE:
-          structuredContent.add(readNewBalanceRecord(lineContent));
-          break;
-        default:
-          break;
-      }
+  protected BankStatementLineAFB120 createBankStatementLine(
+      BankStatement bankStatement, AFB120Record record, int sequence) {
+
+    String description = record.description;
+
+    if (record.additionalInformation != null) {
+      description += "\n" + record.additionalInformation;
     }
 
-    return structuredContent;
+    return bankStatementLineAFB120Service.createBankStatementLine(
+        bankStatement,
+        sequence,
+        getReference(BankDetails.class, record.bankDetailsId),
+        record.debit,
+        record.credit,
+        getReference(Currency.class, record.currencyId),
+        description,
+        record.operationDate,
+        record.valueDate,
+        getReference(InterbankCodeLine.class, record.operationInterbankCodeLineId),
+        getReference(InterbankCodeLine.class, record.rejectInterbankCodeLineId),
+        record.origin,
+        record.reference,
+        record.lineType,
+        record.unavailabilityIndexSelect,
+        record.commissionExemptionIndexSelect);
   }
 
-  protected Map<String, Object> readPreviousBalanceRecord(String lineContent)
-      throws AxelorException {
+  protected <T extends Model> T getReference(Class<T> klass, Long id) {
+    return id != null ? JPA.em().getReference(klass, id) : null;
+  }
+
+  protected AFB120Record readPreviousBalanceRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    AFB120Record record = new AFB120Record();
 
-    structuredLineContent.put(
-        "lineType", BankStatementLineAFB120Repository.LINE_TYPE_INITIAL_BALANCE);
+    record.lineType = BankStatementLineAFB120Repository.LINE_TYPE_INITIAL_BALANCE;
 
     // Zone 1-B : Code banque
     String bankCode =
@@ -259,7 +333,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 1-F : Nombre de décimales du montant de l'ancien solde
     int decimalDigitNumber =
@@ -282,7 +356,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 1-J : Date de l'ancien solde (JJMMAA)
     String date =
@@ -293,7 +367,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(date));
+    record.operationDate = getDate(date);
 
     // Zone 1-L : Montant de l'ancien solde
     String amountStr =
@@ -308,21 +382,21 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     BigDecimal amount = getAmount(amountStr, decimalDigitNumber);
 
     if (amount.signum() == 1) {
-      structuredLineContent.put("debit", BigDecimal.ZERO);
-      structuredLineContent.put("credit", amount.abs());
+      record.debit = BigDecimal.ZERO;
+      record.credit = amount.abs();
     } else {
-      structuredLineContent.put("credit", BigDecimal.ZERO);
-      structuredLineContent.put("debit", amount.abs());
+      record.credit = BigDecimal.ZERO;
+      record.debit = amount.abs();
     }
 
-    return structuredLineContent;
+    return record;
   }
 
-  protected Map<String, Object> readMovementRecord(String lineContent) throws AxelorException {
+  protected AFB120Record readMovementRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    AFB120Record record = new AFB120Record();
 
-    structuredLineContent.put("lineType", BankStatementLineAFB120Repository.LINE_TYPE_MOVEMENT);
+    record.lineType = BankStatementLineAFB120Repository.LINE_TYPE_MOVEMENT;
 
     // Zone 2-B : Code banque
     String bankCode =
@@ -353,7 +427,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 2-F : Nombre de décimales du montant du mouvement
     int decimalDigitNumber =
@@ -376,7 +450,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 2-I : Code opération interbancaire
     String operationInterbankCode =
@@ -387,8 +461,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             33,
             2);
-    structuredLineContent.put(
-        "operationInterbankCodeLine", getInterbankCodeLine(operationInterbankCode));
+    record.operationInterbankCodeLineId = getInterbankCodeLineId(operationInterbankCode);
 
     // Zone 2-J : Date de comptabilisation de l'opération (JJMMAA)
     String movementDate =
@@ -399,7 +472,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(movementDate));
+    record.operationDate = getDate(movementDate);
 
     // Zone 2-K : Code motif de rejet
     String rejectInterbankCodeLine =
@@ -410,8 +483,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             41,
             2);
-    structuredLineContent.put(
-        "rejectInterbankCodeLine", getInterbankCodeLine(rejectInterbankCodeLine));
+    record.rejectInterbankCodeLineId = getInterbankCodeLineId(rejectInterbankCodeLine);
 
     // Zone 2-L : Date de valeur (JJMMAA)
     String valueDate =
@@ -422,51 +494,47 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             43,
             6);
-    structuredLineContent.put("valueDate", getDate(valueDate));
+    record.valueDate = getDate(valueDate);
 
     // Zone 2-M : Libellé
-    structuredLineContent.put(
-        "description",
+    record.description =
         cfonbToolService.readZone(
             "2-M : label",
             lineContent,
             cfonbToolService.STATUS_MANDATORY,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             49,
-            31));
+            31);
 
     // Zone 2-O : Numéro d'écriture
-    structuredLineContent.put(
-        "origin",
+    record.origin =
         cfonbToolService.readZone(
             "2-O : move number",
             lineContent,
             cfonbToolService.STATUS_MANDATORY,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             82,
-            7));
+            7);
 
     // Zone 2-P : Indice d'exonération de commission de mouvement de compte
-    structuredLineContent.put(
-        "commissionExemptionIndexSelect",
+    record.commissionExemptionIndexSelect =
         cfonbToolService.readZone(
             "2-P : turnover commission exemption index",
             lineContent,
             cfonbToolService.STATUS_OPTIONAL,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             89,
-            1));
+            1);
 
     // Zone 2-Q : Indice d'indisponibilité
-    structuredLineContent.put(
-        "unavailabilityIndexSelect",
+    record.unavailabilityIndexSelect =
         cfonbToolService.readZone(
             "2-Q : unavailability index",
             lineContent,
             cfonbToolService.STATUS_OPTIONAL,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             90,
-            1));
+            1);
 
     // Zone 2-R : Montant du mouvement
     String amountStr =
@@ -480,31 +548,29 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     BigDecimal amount = getAmount(amountStr, decimalDigitNumber);
 
     if (amount.signum() == 1) {
-      structuredLineContent.put("debit", BigDecimal.ZERO);
-      structuredLineContent.put("credit", amount.abs());
+      record.debit = BigDecimal.ZERO;
+      record.credit = amount.abs();
     } else {
-      structuredLineContent.put("credit", BigDecimal.ZERO);
-      structuredLineContent.put("debit", amount.abs());
+      record.credit = BigDecimal.ZERO;
+      record.debit = amount.abs();
     }
 
     // Zone 2-S : Zone référence
-    structuredLineContent.put(
-        "reference",
+    record.reference =
         cfonbToolService.readZone(
             "2-S : reference zone",
             lineContent,
             cfonbToolService.STATUS_OPTIONAL,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             105,
-            16));
+            16);
 
-    return structuredLineContent;
+    return record;
   }
 
-  protected Map<String, Object> readAdditionalMovementRecord(String lineContent)
-      throws AxelorException {
+  protected AFB120Record readAdditionalMovementRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    AFB120Record record = new AFB120Record();
 
     // Zone 2b-B : Code banque
     String bankCode =
@@ -535,7 +601,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 2b-F : Nombre de décimales du montant du mouvement
     cfonbToolService.readZone(
@@ -556,7 +622,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 2b-I : Code opération interbancaire
     String operationInterbankCode =
@@ -567,8 +633,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             33,
             2);
-    structuredLineContent.put(
-        "operationInterbankCodeLine", getInterbankCodeLine(operationInterbankCode));
+    record.operationInterbankCodeLineId = getInterbankCodeLineId(operationInterbankCode);
 
     // Zone 2b-J : Date de comptabilisation de l'opération (JJMMAA)
     String date =
@@ -579,7 +644,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(date));
+    record.operationDate = getDate(date);
 
     // Zone 2b-L : Qualifiant de la zone "Informations complémentaires"
     String additionalInformationType =
@@ -594,15 +659,14 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     switch (additionalInformationType) {
       case "LIB":
         // Zone 2b-M : Informations complémentaires
-        structuredLineContent.put(
-            "additionalInformation",
+        record.additionalInformation =
             cfonbToolService.readZone(
                 "2b-M : additional informations",
                 lineContent,
                 cfonbToolService.STATUS_MANDATORY,
                 cfonbToolService.FORMAT_ALPHA_NUMERIC,
                 49,
-                70));
+                70);
         break;
       case "MMO":
         // Zone 2b-M : Informations complémentaires
@@ -639,32 +703,29 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
         String decimalPartOfAmount =
             amountInCurrency.substring(amountInCurrency.length() - decimalDigitNumber);
         String correctAmount = integerPartOfAmount + "." + decimalPartOfAmount;
-        structuredLineContent.put(
-            "additionalInformation", correctAmount + " " + origineCurrencyCode);
+        record.additionalInformation = correctAmount + " " + origineCurrencyCode;
         break;
       default:
         // Zone 2b-M : Informations complémentaires
-        structuredLineContent.put(
-            "additionalInformation",
+        record.additionalInformation =
             cfonbToolService.readZone(
                 "2b-M : additional informations",
                 lineContent,
                 cfonbToolService.STATUS_MANDATORY,
                 cfonbToolService.FORMAT_ALPHA_NUMERIC,
                 49,
-                70));
+                70);
         break;
     }
 
-    return structuredLineContent;
+    return record;
   }
 
-  protected Map<String, Object> readNewBalanceRecord(String lineContent) throws AxelorException {
+  protected AFB120Record readNewBalanceRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    AFB120Record record = new AFB120Record();
 
-    structuredLineContent.put(
-        "lineType", BankStatementLineAFB120Repository.LINE_TYPE_FINAL_BALANCE);
+    record.lineType = BankStatementLineAFB120Repository.LINE_TYPE_FINAL_BALANCE;
 
     // Zone 1-B : Code banque
     String bankCode =
@@ -695,7 +756,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 1-F : Nombre de décimales du montant du nouveau solde
     int nbDecimalDigit =
@@ -718,7 +779,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 1-J : Date du nouveau solde (JJMMAA)
     String date =
@@ -729,7 +790,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(date));
+    record.operationDate = getDate(date);
 
     // Zone 1-L : Montant du nouveau solde
     String amountStr =
@@ -744,31 +805,58 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     BigDecimal amount = getAmount(amountStr, nbDecimalDigit);
 
     if (amount.signum() == 1) {
-      structuredLineContent.put("debit", BigDecimal.ZERO);
-      structuredLineContent.put("credit", amount.abs());
+      record.debit = BigDecimal.ZERO;
+      record.credit = amount.abs();
     } else {
-      structuredLineContent.put("credit", BigDecimal.ZERO);
-      structuredLineContent.put("debit", amount.abs());
+      record.credit = BigDecimal.ZERO;
+      record.debit = amount.abs();
     }
 
-    return structuredLineContent;
+    return record;
+  }
+
+  protected Long getCurrencyId(String isoCode) {
+
+    return getCachedId(currencyIdMap, isoCode, currencyRepository::findByCode);
   }
 
-  protected Currency getCurrency(String isoCode) {
+  protected Long getBankDetailsId(String accountNumber, String bankCode, String sortCode) {
+
+    return getCachedId(
+        bankDetailsIdMap,
+        Arrays.asList(accountNumber, bankCode, sortCode),
+        key ->
+            bankDetailsRepository
+                .all()
+                .filter(
+                    "self.accountNbr = ?1 and self.bankCode = ?2 and self.sortCode = ?3",
+                    accountNumber,
+                    bankCode,
+                    sortCode)
+                .fetchOne());
+  }
+
+  protected Long getInterbankCodeLineId(String code) {
 
-    return currencyRepository.findByCode(isoCode);
+    return getCachedId(interbankCodeLineIdMap, code, this::getInterbankCodeLine);
   }
 
-  protected BankDetails getBankDetails(String accountNumber, String bankCode, String sortCode) {
+  /**
+   * Find the id of a record through the cache of the file, the records not found are cached too.
+   *
+   * @return the id, or null if there is no record
+   */
+  protected <K> Long getCachedId(Map<K, Long> idMap, K key, Function<K, ? extends Model> finder) {
+
+    Long id = idMap.get(key);
+
+    if (id == null) {
+      Model model = finder.apply(key);
+      id = model != null ? model.getId() : 0L;
+      idMap.put(key, id);
+    }
 
-    return bankDetailsRepository
-        .all()
-        .filter(
-            "self.accountNbr = ?1 and self.bankCode = ?2 and self.sortCode = ?3",
-            accountNumber,
-            bankCode,
-            sortCode)
-        .fetchOne();
+    return id != 0 ? id : null;
   }
 
   protected LocalDate getDate(String date) {
@@ -20,11 +20,14 @@ package com.axelor.apps.bankpayment.web;
 import com.axelor.apps.ReportFactory;
 import com.axelor.apps.bankpayment.db.BankReconciliation;
 import com.axelor.apps.bankpayment.db.repo.BankReconciliationRepository;
+import com.axelor.apps.bankpayment.exception.IExceptionMessage;
 import com.axelor.apps.bankpayment.report.IReport;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMatchingService;
 import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationService;
 import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationValidateService;
 import com.axelor.apps.report.engine.ReportSettings;
 import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
 import com.axelor.meta.schema.actions.ActionView;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
@@ -38,6 +41,8 @@ public class BankReconciliationController {
 
   @Inject BankReconciliationValidateService bankReconciliationValidateService;
 
+  @Inject BankReconciliationMatchingService bankReconciliationMatchingService;
+
   @Inject BankReconciliationRepository bankReconciliationRepo;
 
   public void loadBankStatement(ActionRequest request, ActionResponse response) {
@@ -75,6 +80,21 @@ public class BankReconciliationController {
     }
   }
 
+  public void autoMatch(ActionRequest request, ActionResponse response) {
+
+    try {
+      BankReconciliation bankReconciliation = request.getContext().asType(BankReconciliation.class);
+      int count =
+          bankReconciliationMatchingService.autoMatch(
+              bankReconciliationRepo.find(bankReconciliation.getId()));
+      response.setFlash(
+          String.format(I18n.get(IExceptionMessage.BANK_RECONCILIATION_AUTO_MATCH), count));
+      response.setReload(true);
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+    }
+  }
+
   public void setBankDetailsDomain(ActionRequest request, ActionResponse response) {
     BankReconciliation bankReconciliation = request.getContext().asType(BankReconciliation.class);
     String domain = bankReconciliationService.createDomainForBankDetails(bankReconciliation);
@@ -0,0 +1,175 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.test;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.bankpayment.db.BankReconciliationLine;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationMatchingService;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BankReconciliationMatchingTest {
+
+  private static final LocalDate DATE = LocalDate.of(2018, 12, 3);
+
+  private final BankReconciliationMatchingService matchingService =
+      new BankReconciliationMatchingService(null);
+
+  private BankReconciliationLine createLine(
+      BigDecimal debit, BigDecimal credit, LocalDate effectDate, String name, String reference) {
+    BankReconciliationLine bankReconciliationLine = new BankReconciliationLine();
+    bankReconciliationLine.setDebit(debit);
+    bankReconciliationLine.setCredit(credit);
+    bankReconciliationLine.setEffectDate(effectDate);
+    bankReconciliationLine.setName(name);
+    bankReconciliationLine.setReference(reference);
+    return bankReconciliationLine;
+  }
+
+  private MoveLine createMoveLine(
+      long id, BigDecimal debit, BigDecimal credit, LocalDate date, String origin) {
+    MoveLine moveLine = new MoveLine();
+    moveLine.setId(id);
+    moveLine.setDebit(debit);
+    moveLine.setCredit(credit);
+    moveLine.setDate(date);
+    moveLine.setOrigin(origin);
+    return moveLine;
+  }
+
+  @Test
+  public void testReferenceWinsOverDate() {
+
+    BigDecimal amount = new BigDecimal("120.50");
+    BankReconciliationLine referencedLine =
+        createLine(BigDecimal.ZERO, amount, DATE, "VIR SEPA CLIENT", "INV-2018-0042");
+    BankReconciliationLine otherLine =
+        createLine(BigDecimal.ZERO, amount, DATE, "VIR SEPA", null);
+
+    MoveLine sameDateMoveLine = createMoveLine(1, amount, BigDecimal.ZERO, DATE, "CHQ-551");
+    MoveLine referencedMoveLine =
+        createMoveLine(2, new BigDecimal("120.5"), BigDecimal.ZERO, DATE.minusDays(3), "0042");
+
+    Map<BankReconciliationLine, MoveLine> matchMap =
+        matchingService.match(
+            Arrays.asList(otherLine, referencedLine),
+            Arrays.asList(sameDateMoveLine, referencedMoveLine),
+            5,
+            false);
+
+    Assert.assertSame(referencedMoveLine, matchMap.get(referencedLine));
+    Assert.assertSame(sameDateMoveLine, matchMap.get(otherLine));
+  }
+
+  @Test
+  public void testSideAndDateTolerance() {
+
+    BigDecimal amount = new BigDecimal("80");
+    BankReconciliationLine paidLine = createLine(amount, BigDecimal.ZERO, DATE, "CB SHOP", null);
+
+    MoveLine debitMoveLine = createMoveLine(1, amount, BigDecimal.ZERO, DATE, null);
+    MoveLine lateCreditMoveLine =
+        createMoveLine(2, BigDecimal.ZERO, amount, DATE.plusDays(6), null);
+
+    List<MoveLine> moveLineList = Arrays.asList(debitMoveLine, lateCreditMoveLine);
+
+    Assert.assertTrue(
+        matchingService.match(Arrays.asList(paidLine), moveLineList, 5, false).isEmpty());
+    Assert.assertSame(
+        lateCreditMoveLine,
+        matchingService.match(Arrays.asList(paidLine), moveLineList, 6, false).get(paidLine));
+  }
+
+  @Test
+  public void testReferenceRequired() {
+
+    BigDecimal amount = new BigDecimal("15.99");
+    BankReconciliationLine bankReconciliationLine =
+        createLine(BigDecimal.ZERO, amount, DATE, "PRLV", "SUB-778");
+
+    MoveLine moveLine = createMoveLine(1, amount, BigDecimal.ZERO, DATE, "ABO-779");
+
+    Assert.assertTrue(
+        matchingService
+            .match(
+                Collections.singletonList(bankReconciliationLine),
+                Collections.singletonList(moveLine),
+                5,
+                true)
+            .isEmpty());
+  }
+
+  /**
+   * Synthetic daily statements: many lines share the same few amounts, as subscriptions do, and
+   * every line has one move line with its reference a few days before.
+   */
+  @Test
+  public void testMatchByReference() {
+
+    int lineCount = 2_000;
+    Random random = new Random(42);
+    BigDecimal[] amounts = new BigDecimal[200];
+    for (int i = 0; i < amounts.length; i++) {
+      amounts[i] = BigDecimal.valueOf(500 + random.nextInt(100_000), 2);
+    }
+
+    List<BankReconciliationLine> lineList = new ArrayList<>();
+    List<MoveLine> moveLineList = new ArrayList<>();
+
+    for (int i = 0; i < lineCount; i++) {
+      BigDecimal amount = amounts[random.nextInt(amounts.length)];
+      LocalDate effectDate = DATE.plusDays(random.nextInt(30));
+      boolean cashed = random.nextBoolean();
+      String reference = "REF" + i;
+
+      lineList.add(
+          createLine(
+              cashed ? BigDecimal.ZERO : amount,
+              cashed ? amount : BigDecimal.ZERO,
+              effectDate,
+              "VIR " + reference,
+              null));
+      moveLineList.add(
+          createMoveLine(
+              i,
+              cashed ? amount : BigDecimal.ZERO,
+              cashed ? BigDecimal.ZERO : amount,
+              effectDate.minusDays(random.nextInt(4)),
+              reference));
+    }
+    Collections.shuffle(moveLineList, random);
+
+    Map<BankReconciliationLine, MoveLine> matchMap =
+        matchingService.match(lineList, moveLineList, 5, false);
+
+    Assert.assertEquals(lineCount, matchMap.size());
+    for (BankReconciliationLine bankReconciliationLine : lineList) {
+      Assert.assertEquals(
+          "VIR " + matchMap.get(bankReconciliationLine).getOrigin(),
+          bankReconciliationLine.getName());
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.db.repo;
+
+import com.axelor.apps.base.db.AppBase;
+import com.axelor.apps.base.service.CurrencyService;
+import com.axelor.apps.tool.TransactionTool;
+
+public class AppBaseBaseRepository extends AppBaseRepository {
+
+  /** The currency conversion lines are mostly edited from the app configuration form. */
+  @Override
+  public AppBase save(AppBase appBase) {
+    TransactionTool.runAfterCompletion(CurrencyService::invalidateRateTable);
+    return super.save(appBase);
+  }
+}
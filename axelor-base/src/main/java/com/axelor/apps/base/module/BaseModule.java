@@ -24,12 +24,16 @@ import com.axelor.apps.base.db.repo.AddressBaseRepository;
 import com.axelor.apps.base.db.repo.AddressRepository;
 import com.axelor.apps.base.db.repo.AlarmEngineBatchBaseRepository;
 import com.axelor.apps.base.db.repo.AlarmEngineBatchRepository;
+import com.axelor.apps.base.db.repo.AppBaseBaseRepository;
+import com.axelor.apps.base.db.repo.AppBaseRepository;
 import com.axelor.apps.base.db.repo.BankAddressBaseRepository;
 import com.axelor.apps.base.db.repo.BankAddressRepository;
 import com.axelor.apps.base.db.repo.BankBaseRepository;
 import com.axelor.apps.base.db.repo.BankRepository;
 import com.axelor.apps.base.db.repo.BaseBatchBaseRepository;
 import com.axelor.apps.base.db.repo.BaseBatchRepository;
+import com.axelor.apps.base.db.repo.CurrencyConversionLineBaseRepository;
+import com.axelor.apps.base.db.repo.CurrencyConversionLineRepository;
 import com.axelor.apps.base.db.repo.DurationBaseRepository;
 import com.axelor.apps.base.db.repo.DurationRepository;
 import com.axelor.apps.base.db.repo.ICalendarEventManagementRepository;
@@ -39,11 +43,17 @@ import com.axelor.apps.base.db.repo.MailBatchRepository;
 import com.axelor.apps.base.db.repo.PartnerAddressRepository;
 import com.axelor.apps.base.db.repo.PartnerBaseRepository;
 import com.axelor.apps.base.db.repo.PartnerRepository;
+import com.axelor.apps.base.db.repo.PriceListBaseRepository;
+import com.axelor.apps.base.db.repo.PriceListLineBaseRepository;
+import com.axelor.apps.base.db.repo.PriceListLineRepository;
+import com.axelor.apps.base.db.repo.PriceListRepository;
 import com.axelor.apps.base.db.repo.ProductBaseRepository;
 import com.axelor.apps.base.db.repo.ProductRepository;
 import com.axelor.apps.base.db.repo.SequenceBaseRepository;
 import com.axelor.apps.base.db.repo.SequenceRepository;
 import com.axelor.apps.base.db.repo.TaxBaseRepository;
+import com.axelor.apps.base.db.repo.UnitConversionBaseRepository;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
 import com.axelor.apps.base.db.repo.UserBaseRepository;
 import com.axelor.apps.base.db.repo.YearBaseRepository;
 import com.axelor.apps.base.db.repo.YearRepository;
@@ -78,6 +88,8 @@ import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.base.service.app.AppBaseServiceImpl;
 import com.axelor.apps.base.service.app.AppService;
 import com.axelor.apps.base.service.app.AppServiceImpl;
+import com.axelor.apps.base.service.expression.ExpressionService;
+import com.axelor.apps.base.service.expression.ExpressionServiceImpl;
 import com.axelor.apps.base.service.imports.ConvertDemoDataFileService;
 import com.axelor.apps.base.service.imports.ConvertDemoDataFileServiceImpl;
 import com.axelor.apps.base.service.imports.ImportCityService;
@@ -129,6 +141,11 @@ public class BaseModule extends AxelorModule {
     bind(MailServiceMessageImpl.class).to(MailServiceBaseImpl.class);
     bind(AddressRepository.class).to(AddressBaseRepository.class);
     bind(YearRepository.class).to(YearBaseRepository.class);
+    bind(CurrencyConversionLineRepository.class).to(CurrencyConversionLineBaseRepository.class);
+    bind(UnitConversionRepository.class).to(UnitConversionBaseRepository.class);
+    bind(PriceListRepository.class).to(PriceListBaseRepository.class);
+    bind(PriceListLineRepository.class).to(PriceListLineBaseRepository.class);
+    bind(AppBaseRepository.class).to(AppBaseBaseRepository.class);
     bind(AppServiceImpl.class).to(AppBaseServiceImpl.class);
     bind(AppService.class).to(AppServiceImpl.class);
     bind(BankService.class).to(BankServiceImpl.class);
@@ -152,6 +169,7 @@ public class BaseModule extends AxelorModule {
     bind(ConvertDemoDataFileService.class).to(ConvertDemoDataFileServiceImpl.class);
     bind(ImportDemoDataService.class).to(ImportDemoDataServiceImpl.class);
     bind(MapRestService.class).to(MapRestServiceImpl.class);
+    bind(ExpressionService.class).to(ExpressionServiceImpl.class);
     bind(TaxRepository.class).to(TaxBaseRepository.class);
   }
 }
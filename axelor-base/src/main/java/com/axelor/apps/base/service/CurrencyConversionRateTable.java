@@ -0,0 +1,174 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.CurrencyConversionLine;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the currency conversion lines, by pair of currency codes, then by from date.
+ *
+ * <p>When several lines of a pair match a date, the line which comes first in the conversion line
+ * list is returned, as the linear search of the list did.
+ */
+public class CurrencyConversionRateTable {
+
+  /** A conversion line, with its inverse rate computed once. */
+  public static class Rate {
+
+    protected final int index;
+    protected final LocalDate fromDate;
+    protected final LocalDate toDate;
+    protected final BigDecimal exchangeRate;
+    protected final BigDecimal inverseExchangeRate;
+
+    protected Rate(int index, CurrencyConversionLine currencyConversionLine) {
+      this.index = index;
+      this.fromDate = currencyConversionLine.getFromDate();
+      this.toDate = currencyConversionLine.getToDate();
+      this.exchangeRate = currencyConversionLine.getExchangeRate();
+      this.inverseExchangeRate =
+          exchangeRate == null || exchangeRate.compareTo(BigDecimal.ZERO) == 0
+              ? null
+              : BigDecimal.ONE.divide(exchangeRate, 10, RoundingMode.HALF_EVEN);
+    }
+
+    public BigDecimal getExchangeRate() {
+      return exchangeRate;
+    }
+
+    /** @return the inverse of the exchange rate, or null if the rate is null or zero */
+    public BigDecimal getInverseExchangeRate() {
+      return inverseExchangeRate;
+    }
+
+    protected boolean contains(LocalDate date) {
+      return !fromDate.isAfter(date) && (toDate == null || !toDate.isBefore(date));
+    }
+  }
+
+  protected static class RateInterval {
+
+    /** Rates sorted by from date. */
+    protected final Rate[] rates;
+
+    /**
+     * Greatest to date of the rates up to each index, null if one of them has no end: no rate
+     * before the index can match a date after it.
+     */
+    protected final LocalDate[] maxToDates;
+
+    protected RateInterval(List<Rate> rateList) {
+      rateList.sort(Comparator.comparing(rate -> rate.fromDate));
+      rates = rateList.toArray(new Rate[rateList.size()]);
+      maxToDates = new LocalDate[rates.length];
+
+      LocalDate maxToDate = LocalDate.MIN;
+      for (int i = 0; i < rates.length; i++) {
+        if (maxToDate != null) {
+          maxToDate =
+              rates[i].toDate == null || rates[i].toDate.isAfter(maxToDate)
+                  ? rates[i].toDate
+                  : maxToDate;
+        }
+        maxToDates[i] = maxToDate;
+      }
+    }
+
+    protected Rate find(LocalDate date) {
+
+      // First rate starting after the date
+      int low = 0;
+      int high = rates.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (rates[middle].fromDate.isAfter(date)) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+
+      Rate found = null;
+      for (int i = low - 1; i >= 0; i--) {
+        if (maxToDates[i] != null && maxToDates[i].isBefore(date)) {
+          break;
+        }
+        if (rates[i].contains(date) && (found == null || rates[i].index < found.index)) {
+          found = rates[i];
+        }
+      }
+
+      return found;
+    }
+  }
+
+  protected final Map<String, RateInterval> rateIntervalMap;
+
+  public CurrencyConversionRateTable(List<CurrencyConversionLine> currencyConversionLineList) {
+
+    Map<String, List<Rate>> rateListMap = new HashMap<>();
+
+    if (currencyConversionLineList != null) {
+      int index = 0;
+      for (CurrencyConversionLine ccl : currencyConversionLineList) {
+        if (ccl.getStartCurrency() != null
+            && ccl.getEndCurrency() != null
+            && ccl.getFromDate() != null) {
+          rateListMap
+              .computeIfAbsent(
+                  getKey(ccl.getStartCurrency().getCode(), ccl.getEndCurrency().getCode()),
+                  key -> new ArrayList<>())
+              .add(new Rate(index, ccl));
+        }
+        index++;
+      }
+    }
+
+    Map<String, RateInterval> map = new HashMap<>();
+    rateListMap.forEach((key, rateList) -> map.put(key, new RateInterval(rateList)));
+    this.rateIntervalMap = Collections.unmodifiableMap(map);
+  }
+
+  protected static String getKey(String startCode, String endCode) {
+    return startCode + "/" + endCode;
+  }
+
+  /**
+   * Find the conversion line from a currency to another at a date.
+   *
+   * @param startCode
+   * @param endCode
+   * @param date
+   * @return the rate, or null if there is no line for this date
+   */
+  public Rate find(String startCode, String endCode, LocalDate date) {
+
+    RateInterval rateInterval = rateIntervalMap.get(getKey(startCode, endCode));
+
+    return rateInterval != null ? rateInterval.find(date) : null;
+  }
+}
@@ -119,6 +119,9 @@ public class CurrencyConversionService {
         }
       }
     }
+
+    // the lines are saved in their own transactions: drop again a table read before the commits
+    CurrencyService.invalidateRateTable();
   }
 
   public BigDecimal convert(Currency currencyFrom, Currency currencyTo)
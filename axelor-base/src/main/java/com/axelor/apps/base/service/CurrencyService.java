@@ -18,9 +18,9 @@
 package com.axelor.apps.base.service;
 
 import com.axelor.apps.base.db.Currency;
-import com.axelor.apps.base.db.CurrencyConversionLine;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
+import com.axelor.apps.tool.VersionedCache;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -31,7 +31,6 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +43,9 @@ public class CurrencyService {
 
   private LocalDate today;
 
+  private static final VersionedCache<Void, CurrencyConversionRateTable> rateTableCache =
+      new VersionedCache<>();
+
   @Inject
   public CurrencyService(AppBaseService appBaseService) {
 
@@ -71,16 +73,23 @@ public class CurrencyService {
 
       LocalDate dateToConvert = this.getDateToConvert(date);
 
-      CurrencyConversionLine currencyConversionLine =
-          this.getCurrencyConversionLine(startCurrency, endCurrency, dateToConvert);
-      if (currencyConversionLine != null) {
-        return currencyConversionLine.getExchangeRate();
+      CurrencyConversionRateTable rateTable = this.getRateTable();
+
+      log.debug(
+          "Currency from: {}, Currency to: {}, localDate: {}",
+          startCurrency,
+          endCurrency,
+          dateToConvert);
+
+      CurrencyConversionRateTable.Rate rate =
+          rateTable.find(startCurrency.getCode(), endCurrency.getCode(), dateToConvert);
+      if (rate != null) {
+        return rate.getExchangeRate();
       } else {
-        currencyConversionLine =
-            this.getCurrencyConversionLine(endCurrency, startCurrency, dateToConvert);
+        rate = rateTable.find(endCurrency.getCode(), startCurrency.getCode(), dateToConvert);
       }
 
-      if (currencyConversionLine == null) {
+      if (rate == null) {
         throw new AxelorException(
             TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
             I18n.get(IExceptionMessage.CURRENCY_1),
@@ -89,9 +98,7 @@ public class CurrencyService {
             dateToConvert);
       }
 
-      BigDecimal exchangeRate = currencyConversionLine.getExchangeRate();
-
-      if (exchangeRate == null || exchangeRate.compareTo(BigDecimal.ZERO) == 0) {
+      if (rate.getInverseExchangeRate() == null) {
         throw new AxelorException(
             TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
             I18n.get(IExceptionMessage.CURRENCY_2),
@@ -100,44 +107,26 @@ public class CurrencyService {
             dateToConvert);
       }
 
-      return BigDecimal.ONE.divide(
-          currencyConversionLine.getExchangeRate(), 10, RoundingMode.HALF_EVEN);
+      return rate.getInverseExchangeRate();
     }
 
     return BigDecimal.ONE;
   }
 
-  private CurrencyConversionLine getCurrencyConversionLine(
-      Currency startCurrency, Currency endCurrency, LocalDate localDate) {
-
-    List<CurrencyConversionLine> currencyConversionLineList =
-        appBaseService.getCurrencyConfigurationLineList();
-
-    if (currencyConversionLineList == null) {
-      return null;
-    }
-
-    log.debug(
-        "Currency from: {}, Currency to: {}, localDate: {}", startCurrency, endCurrency, localDate);
-
-    for (CurrencyConversionLine ccl : currencyConversionLineList) {
-
-      String cclStartCode = ccl.getStartCurrency().getCode();
-      String cclEndCode = ccl.getEndCurrency().getCode();
-      String startCode = startCurrency.getCode();
-      String endCode = endCurrency.getCode();
-      LocalDate fromDate = ccl.getFromDate();
-      LocalDate toDate = ccl.getToDate();
-
-      if (cclStartCode.equals(startCode) && cclEndCode.equals(endCode)) {
-        if ((fromDate.isBefore(localDate) || fromDate.equals(localDate))
-            && (toDate == null || toDate.isAfter(localDate) || toDate.isEqual(localDate))) {
-          return ccl;
-        }
-      }
-    }
+  /**
+   * Get the index of the currency conversion lines, built from the app configuration on first use
+   * and kept until a line is saved or removed.
+   *
+   * @return the rate table
+   */
+  protected CurrencyConversionRateTable getRateTable() {
+    return rateTableCache.get(
+        () -> new CurrencyConversionRateTable(appBaseService.getCurrencyConfigurationLineList()));
+  }
 
-    return null;
+  /** Drop the index of the currency conversion lines, after an update of the rates. */
+  public static void invalidateRateTable() {
+    rateTableCache.invalidate();
   }
 
   /**
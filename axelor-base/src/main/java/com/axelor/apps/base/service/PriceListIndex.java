@@ -0,0 +1,138 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the lines of a price list, by product and by product category, each sorted by
+ * minimum quantity.
+ *
+ * <p>When several lines of a product or a category have the same minimum quantity, the line with
+ * the smallest id is returned.
+ */
+public class PriceListIndex {
+
+  /** Positions in a price list line row. */
+  public static final int ID = 0, PRODUCT_ID = 1, PRODUCT_CATEGORY_ID = 2, MIN_QTY = 3;
+
+  /** Minimum quantities of the lines of a product or a category, in ascending order. */
+  protected static class Breakpoints {
+
+    protected final BigDecimal[] minQtys;
+    protected final long[] priceListLineIds;
+
+    protected Breakpoints(List<Object[]> rowList) {
+      // equal quantities sorted by descending id, so that the last one has the smallest id
+      rowList.sort(
+          Comparator.comparing((Object[] row) -> (BigDecimal) row[MIN_QTY])
+              .thenComparing(row -> (Long) row[ID], Comparator.reverseOrder()));
+      minQtys = new BigDecimal[rowList.size()];
+      priceListLineIds = new long[rowList.size()];
+      for (int i = 0; i < minQtys.length; i++) {
+        minQtys[i] = (BigDecimal) rowList.get(i)[MIN_QTY];
+        priceListLineIds[i] = (Long) rowList.get(i)[ID];
+      }
+    }
+
+    /** @return the id of the line with the greatest minimum quantity lower than qty, or null */
+    protected Long find(BigDecimal qty) {
+
+      // First line with a minimum quantity greater than qty
+      int low = 0;
+      int high = minQtys.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (minQtys[middle].compareTo(qty) > 0) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+
+      return low > 0 ? priceListLineIds[low - 1] : null;
+    }
+  }
+
+  protected final Map<Long, Breakpoints> productBreakpointsMap;
+
+  protected final Map<Long, Breakpoints> productCategoryBreakpointsMap;
+
+  /**
+   * @param rows the lines of the price list, as arrays of their id, product id, product category
+   *     id and minimum quantity
+   */
+  public PriceListIndex(Collection<Object[]> rows) {
+
+    Map<Long, List<Object[]>> productRowListMap = new HashMap<>();
+    Map<Long, List<Object[]>> productCategoryRowListMap = new HashMap<>();
+
+    for (Object[] row : rows) {
+      if (row[MIN_QTY] == null) {
+        continue;
+      }
+      if (row[PRODUCT_ID] != null) {
+        productRowListMap
+            .computeIfAbsent((Long) row[PRODUCT_ID], key -> new ArrayList<>())
+            .add(row);
+      }
+      if (row[PRODUCT_CATEGORY_ID] != null) {
+        productCategoryRowListMap
+            .computeIfAbsent((Long) row[PRODUCT_CATEGORY_ID], key -> new ArrayList<>())
+            .add(row);
+      }
+    }
+
+    this.productBreakpointsMap = toBreakpointsMap(productRowListMap);
+    this.productCategoryBreakpointsMap = toBreakpointsMap(productCategoryRowListMap);
+  }
+
+  protected static Map<Long, Breakpoints> toBreakpointsMap(Map<Long, List<Object[]>> rowListMap) {
+    Map<Long, Breakpoints> map = new HashMap<>();
+    rowListMap.forEach((key, rowList) -> map.put(key, new Breakpoints(rowList)));
+    return map;
+  }
+
+  /**
+   * Find the line of a product for a quantity: the line of the product with the greatest minimum
+   * quantity lower than the quantity, else the line of the product category.
+   *
+   * @param productId
+   * @param productCategoryId can be null
+   * @param qty
+   * @return the id of the price list line, or null if no line matches
+   */
+  public Long find(Long productId, Long productCategoryId, BigDecimal qty) {
+
+    Breakpoints breakpoints = productBreakpointsMap.get(productId);
+    Long priceListLineId = breakpoints != null ? breakpoints.find(qty) : null;
+
+    if (priceListLineId == null && productCategoryId != null) {
+      breakpoints = productCategoryBreakpointsMap.get(productCategoryId);
+      priceListLineId = breakpoints != null ? breakpoints.find(qty) : null;
+    }
+
+    return priceListLineId;
+  }
+}
@@ -25,10 +25,11 @@ import com.axelor.apps.base.db.repo.PriceListLineRepository;
 import com.axelor.apps.base.db.repo.PriceListRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
+import com.axelor.apps.tool.VersionedCache;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
-import com.axelor.inject.Beans;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
@@ -46,34 +47,62 @@ public class PriceListService {
 
   @Inject protected AppBaseService appBaseService;
 
+  private static final VersionedCache<Long, PriceListIndex> priceListIndexCache =
+      new VersionedCache<>();
+
+  /**
+   * Find the line of the price list for a product: the line of the product with the greatest
+   * minimum quantity lower than the quantity, else the line of its product category.
+   *
+   * @param product
+   * @param qty
+   * @param priceList
+   * @return the price list line, or null if no line matches
+   */
   public PriceListLine getPriceListLine(Product product, BigDecimal qty, PriceList priceList) {
 
-    PriceListLine priceListLine = null;
-
-    if (product != null && priceList != null) {
-      priceListLine =
-          Beans.get(PriceListLineRepository.class)
-              .all()
-              .filter(
-                  "self.product = ?1 AND self.minQty <= ?2 AND self.priceList.id = ?3 ORDER BY self.minQty DESC",
-                  product,
-                  qty,
-                  priceList.getId())
-              .fetchOne();
-      if (priceListLine == null && product.getProductCategory() != null) {
-        priceListLine =
-            priceListLineRepo
-                .all()
-                .filter(
-                    "self.productCategory = ?1 AND self.minQty <= ?2 AND self.priceList.id = ?3 ORDER BY self.minQty DESC",
-                    product.getProductCategory(),
-                    qty,
-                    priceList.getId())
-                .fetchOne();
-      }
+    if (product == null || priceList == null || priceList.getId() == null || qty == null) {
+      return null;
     }
 
-    return priceListLine;
+    Long priceListLineId =
+        getPriceListIndex(priceList.getId())
+            .find(
+                product.getId(),
+                product.getProductCategory() != null ? product.getProductCategory().getId() : null,
+                qty);
+
+    return priceListLineId != null ? priceListLineRepo.find(priceListLineId) : null;
+  }
+
+  /**
+   * Get the index of the lines of a price list. The index is built on the first call, then kept
+   * until a price list or a price list line is saved or removed.
+   *
+   * @param priceListId
+   * @return the index
+   */
+  protected PriceListIndex getPriceListIndex(Long priceListId) {
+
+    return priceListIndexCache.get(
+        priceListId,
+        id ->
+            new PriceListIndex(
+                JPA.em()
+                    .createQuery(
+                        "SELECT self.id, product.id, productCategory.id, self.minQty "
+                            + "FROM PriceListLine self "
+                            + "LEFT JOIN self.product product "
+                            + "LEFT JOIN self.productCategory productCategory "
+                            + "WHERE self.priceList.id = :priceListId",
+                        Object[].class)
+                    .setParameter("priceListId", id)
+                    .getResultList()));
+  }
+
+  /** Drop the indexes of the price lists, after an update of a price list or of its lines. */
+  public static void invalidatePriceListIndexes() {
+    priceListIndexCache.invalidate();
   }
 
   public int getDiscountTypeSelect(PriceListLine priceListLine) {
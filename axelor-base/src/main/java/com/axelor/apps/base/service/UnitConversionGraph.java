@@ -0,0 +1,214 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
+import com.axelor.apps.base.service.expression.CompiledExpression;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable index of the unit conversions by pair of unit ids, with the inverse of each conversion
+ * computed once.
+ *
+ * <p>When several conversions link two units, the first one of the conversion list wins, either
+ * direct or inverse, as the linear search of the list did. Two units without any conversion are
+ * converted through the shortest path of coefficient conversions, if any.
+ */
+public class UnitConversionGraph {
+
+  public static final int COEFFICIENT_SCALE = 12;
+
+  /** A conversion from a unit to another, the inverse of a unit conversion if reversed. */
+  protected static class Edge {
+
+    protected final Long endUnitId;
+    protected final boolean reversed;
+
+    /** The coefficient, null for a formula. */
+    protected final BigDecimal coefficient;
+
+    protected final String formula;
+
+    /** The formula compiled on its first evaluation. */
+    protected volatile CompiledExpression expression;
+
+    protected Edge(Long endUnitId, boolean reversed, BigDecimal coefficient, String formula) {
+      this.endUnitId = endUnitId;
+      this.reversed = reversed;
+      this.coefficient = coefficient;
+      this.formula = formula;
+    }
+
+    protected BigDecimal evaluate(Product product) {
+
+      CompiledExpression compiledExpression = expression;
+      if (compiledExpression == null) {
+        compiledExpression = CompiledExpression.compile(formula);
+        expression = compiledExpression;
+      }
+
+      Object result =
+          compiledExpression.evaluate(Collections.<String, Object>singletonMap("Product", product));
+
+      return new BigDecimal(result.toString());
+    }
+  }
+
+  protected final Map<List<Long>, List<Edge>> edgeMap;
+
+  /** The coefficient edges of each unit, used to find the transitive conversions. */
+  protected final Map<Long, List<Edge>> coefficientEdgeMap;
+
+  protected final Map<List<Long>, Optional<BigDecimal>> pathCoefficientMap =
+      new ConcurrentHashMap<>();
+
+  public UnitConversionGraph(List<? extends UnitConversion> unitConversionList) {
+
+    Map<List<Long>, List<Edge>> edgeMap = new HashMap<>();
+    Map<Long, List<Edge>> coefficientEdgeMap = new HashMap<>();
+
+    for (UnitConversion unitConversion : unitConversionList) {
+      if (unitConversion.getStartUnit() == null
+          || unitConversion.getEndUnit() == null
+          || (unitConversion.getTypeSelect() != UnitConversionRepository.TYPE_COEFF
+              && unitConversion.getFormula() == null)) {
+        continue;
+      }
+      Long startUnitId = unitConversion.getStartUnit().getId();
+      Long endUnitId = unitConversion.getEndUnit().getId();
+
+      Edge edge;
+      Edge inverseEdge = null;
+
+      if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF) {
+        BigDecimal coef = unitConversion.getCoef();
+        edge = new Edge(endUnitId, false, coef, null);
+        if (coef.signum() != 0) {
+          inverseEdge =
+              new Edge(
+                  startUnitId,
+                  true,
+                  BigDecimal.ONE.divide(coef, COEFFICIENT_SCALE, RoundingMode.HALF_EVEN),
+                  null);
+        }
+      } else {
+        edge = new Edge(endUnitId, false, null, unitConversion.getFormula());
+        inverseEdge = new Edge(startUnitId, true, null, unitConversion.getFormula());
+      }
+
+      addEdge(edgeMap, coefficientEdgeMap, startUnitId, edge);
+      if (inverseEdge != null) {
+        addEdge(edgeMap, coefficientEdgeMap, endUnitId, inverseEdge);
+      }
+    }
+
+    this.edgeMap = edgeMap;
+    this.coefficientEdgeMap = coefficientEdgeMap;
+  }
+
+  protected static void addEdge(
+      Map<List<Long>, List<Edge>> edgeMap,
+      Map<Long, List<Edge>> coefficientEdgeMap,
+      Long startUnitId,
+      Edge edge) {
+
+    edgeMap
+        .computeIfAbsent(Arrays.asList(startUnitId, edge.endUnitId), key -> new ArrayList<>())
+        .add(edge);
+
+    if (edge.coefficient != null) {
+      coefficientEdgeMap.computeIfAbsent(startUnitId, key -> new ArrayList<>()).add(edge);
+    }
+  }
+
+  /**
+   * Get the conversion coefficient between two units.
+   *
+   * @param startUnitId
+   * @param endUnitId
+   * @param product Optional, the product used by the formula conversions
+   * @return the coefficient, or null if the units can not be converted
+   */
+  public BigDecimal getCoefficient(Long startUnitId, Long endUnitId, Product product) {
+
+    List<Edge> edgeList = edgeMap.get(Arrays.asList(startUnitId, endUnitId));
+
+    for (Edge edge : edgeList != null ? edgeList : Collections.<Edge>emptyList()) {
+      if (edge.coefficient != null) {
+        return edge.coefficient;
+      }
+      if (product == null) {
+        continue;
+      }
+      BigDecimal result = edge.evaluate(product);
+      if (!edge.reversed) {
+        return result;
+      }
+      if (result.signum() != 0) {
+        return BigDecimal.ONE.divide(result, COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
+      }
+    }
+
+    return pathCoefficientMap
+        .computeIfAbsent(
+            Arrays.asList(startUnitId, endUnitId),
+            key -> Optional.ofNullable(findPathCoefficient(startUnitId, endUnitId)))
+        .orElse(null);
+  }
+
+  /** Breadth first search of the shortest path of coefficient conversions between two units. */
+  protected BigDecimal findPathCoefficient(Long startUnitId, Long endUnitId) {
+
+    Map<Long, BigDecimal> coefficientMap = new HashMap<>();
+    Deque<Long> unitIdQueue = new ArrayDeque<>();
+    coefficientMap.put(startUnitId, BigDecimal.ONE);
+    unitIdQueue.add(startUnitId);
+
+    while (!unitIdQueue.isEmpty()) {
+      Long unitId = unitIdQueue.poll();
+      BigDecimal coefficient = coefficientMap.get(unitId);
+
+      for (Edge edge : coefficientEdgeMap.getOrDefault(unitId, Collections.emptyList())) {
+        if (coefficientMap.containsKey(edge.endUnitId)) {
+          continue;
+        }
+        BigDecimal pathCoefficient = coefficient.multiply(edge.coefficient);
+        if (edge.endUnitId.equals(endUnitId)) {
+          return pathCoefficient.setScale(COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
+        }
+        coefficientMap.put(edge.endUnitId, pathCoefficient);
+        unitIdQueue.add(edge.endUnitId);
+      }
+    }
+
+    return null;
+  }
+}
@@ -23,23 +23,16 @@ import com.axelor.apps.base.db.UnitConversion;
 import com.axelor.apps.base.db.repo.UnitConversionRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
+import com.axelor.apps.tool.VersionedCache;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
-import com.axelor.tool.template.TemplateMaker;
 import com.google.inject.Inject;
 import com.google.inject.servlet.RequestScoped;
-import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
-import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
-import java.util.Locale;
-import org.codehaus.groovy.control.CompilationFailedException;
-import org.codehaus.groovy.control.CompilerConfiguration;
-import org.codehaus.groovy.control.customizers.ImportCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,9 +41,9 @@ public class UnitConversionService {
   private static final Logger logger =
       LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private static final char TEMPLATE_DELIMITER = '$';
-  private static final int DEFAULT_COEFFICIENT_SCALE = 12;
-  protected TemplateMaker maker;
+  /** Conversions of all the units, rebuilt after a change of the unit conversions. */
+  private static final VersionedCache<Void, UnitConversionGraph> graphCache =
+      new VersionedCache<>();
 
   @Inject protected AppBaseService appBaseService;
 
@@ -77,23 +70,25 @@ public class UnitConversionService {
           I18n.get(IExceptionMessage.UNIT_CONVERSION_2));
 
     if (startUnit.equals(endUnit)) return value;
-    else {
-      try {
-        BigDecimal coefficient =
-            this.getCoefficient(unitConversionRepo.all().fetch(), startUnit, endUnit, product);
-
-        return value.multiply(coefficient).setScale(scale, RoundingMode.HALF_EVEN);
-      } catch (IOException | ClassNotFoundException e) {
-        e.printStackTrace();
-      }
-    }
-    return value;
+
+    BigDecimal coefficient = this.getCoefficient(getGraph(), startUnit, endUnit, product);
+
+    return value.multiply(coefficient).setScale(scale, RoundingMode.HALF_EVEN);
+  }
+
+  protected UnitConversionGraph getGraph() {
+    return graphCache.get(() -> new UnitConversionGraph(unitConversionRepo.all().fetch()));
+  }
+
+  /** Called when a unit conversion is saved or removed. */
+  public static void invalidateGraph() {
+    graphCache.invalidate();
   }
 
   /**
    * Get the conversion coefficient between two units from a conversion list. If the start unit and
    * the end unit can not be found in the list, then the units are swapped. If there still isn't any
-   * result, an Exception is thrown.
+   * result, the units are converted through the other units. Otherwise an Exception is thrown.
    *
    * @param unitConversionList A list of conversions between units
    * @param startUnit The start unit
@@ -101,70 +96,32 @@ public class UnitConversionService {
    * @param product Optionnal, a product used for complex conversions. INput null if needless.
    * @return A conversion coefficient to convert from startUnit to endUnit.
    * @throws AxelorException The required units are not found in the conversion list.
-   * @throws CompilationFailedException
-   * @throws ClassNotFoundException
-   * @throws IOException
    */
   public BigDecimal getCoefficient(
       List<? extends UnitConversion> unitConversionList,
       Unit startUnit,
       Unit endUnit,
       Product product)
-      throws AxelorException, CompilationFailedException, ClassNotFoundException, IOException {
-    /* Looking for the start unit and the end unit in the unitConversionList to get the coefficient */
-    if (product != null) {
-      this.maker = new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
-      this.maker.setContext(product, "Product");
-    }
-    String eval = null;
-    for (UnitConversion unitConversion : unitConversionList) {
-
-      if (unitConversion.getStartUnit().equals(startUnit)
-          && unitConversion.getEndUnit().equals(endUnit)) {
-        if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF) {
-          return unitConversion.getCoef();
-        } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          return new BigDecimal(shell.evaluate(eval).toString());
-        }
-      }
-
-      /* The endUnit become the start unit and the startUnit become the end unit */
-
-      if (unitConversion.getStartUnit().equals(endUnit)
-          && unitConversion.getEndUnit().equals(startUnit)) {
-        if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF
-            && unitConversion.getCoef().compareTo(BigDecimal.ZERO) != 0) {
-          return BigDecimal.ONE.divide(
-              unitConversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
-        } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          BigDecimal result = new BigDecimal(shell.evaluate(eval).toString());
-          if (result.compareTo(BigDecimal.ZERO) != 0) {
-            return BigDecimal.ONE.divide(result, DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
-          }
-        }
-      }
-    }
+      throws AxelorException {
+    return getCoefficient(new UnitConversionGraph(unitConversionList), startUnit, endUnit, product);
+  }
+
+  protected BigDecimal getCoefficient(
+      UnitConversionGraph unitConversionGraph, Unit startUnit, Unit endUnit, Product product)
+      throws AxelorException {
+
+    BigDecimal coefficient =
+        unitConversionGraph.getCoefficient(startUnit.getId(), endUnit.getId(), product);
+
     /* If there is no startUnit and endUnit in the UnitConversion list so we throw an exception */
-    throw new AxelorException(
-        TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
-        I18n.get(IExceptionMessage.UNIT_CONVERSION_1),
-        startUnit.getName(),
-        endUnit.getName());
+    if (coefficient == null) {
+      throw new AxelorException(
+          TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+          I18n.get(IExceptionMessage.UNIT_CONVERSION_1),
+          startUnit.getName(),
+          endUnit.getName());
+    }
+
+    return coefficient;
   }
 }
@@ -28,21 +28,56 @@ import com.axelor.db.Model;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
 import com.google.common.base.Preconditions;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
+import javax.persistence.TypedQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class AbstractBatch {
   private static final ThreadLocal<Long> threadBatchId = new ThreadLocal<>();
 
+  /** Counters of the chunk processed by the current worker thread of {@link #processChunks}. */
+  private static final ThreadLocal<ChunkProgress> threadChunkProgress = new ThreadLocal<>();
+
   public static final int FETCH_LIMIT = 10;
 
+  /** Default number of records processed in one chunk. */
+  public static final int CHUNK_SIZE = 100;
+
+  /** Minimum delay in milliseconds between two writes of the progress of the batch. */
+  protected static final long PROGRESS_FLUSH_INTERVAL = 2000;
+
+  /** Delay in seconds between two check points of a batch waiting for a chunk. */
+  protected static final long HEARTBEAT_INTERVAL = 60;
+
+  /**
+   * Number of heartbeats a running batch can miss before it is considered as dead, and can be
+   * resumed.
+   */
+  protected static final int MISSED_HEARTBEAT_COUNT = 5;
+
   @Inject protected AppBaseService appBaseService;
 
   protected static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -52,19 +87,24 @@ public abstract class AbstractBatch {
 
   @Inject protected BatchRepository batchRepo;
 
-  private int done;
-  private int anomaly;
+  private final AtomicInteger done = new AtomicInteger();
+  private final AtomicInteger anomaly = new AtomicInteger();
+
+  /** Thread running the batch, the only one allowed to update the batch entity. */
+  private Thread runningThread;
+
+  private long lastFlushTime;
+
+  /** Id of the last record of the last chunk committed by {@link #processChunks}. */
+  protected long lastProcessedId;
 
   protected AbstractBatch() {
     this.batch = new Batch();
 
     this.batch.setStartDate(ZonedDateTime.now());
 
-    this.done = 0;
-    this.anomaly = 0;
-
-    this.batch.setDone(this.done);
-    this.batch.setAnomaly(this.anomaly);
+    this.batch.setDone(0);
+    this.batch.setAnomaly(0);
 
     JPA.runInTransaction(() -> batch = JPA.persist(batch));
   }
@@ -100,21 +140,24 @@ public abstract class AbstractBatch {
     }
 
     if (isRunnable(model)) {
-      try {
-        threadBatchId.set(batch.getId());
-        start();
-        process();
-        stop();
-        return batch;
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      } finally {
-        threadBatchId.remove();
-        unarchived();
-      }
-    } else {
+      resumeInterruptedBatch(model);
+    } else if (!resumeInterruptedBatch(model)) {
       throw new RuntimeException(I18n.get(IExceptionMessage.ABSTRACT_BATCH_1));
     }
+
+    try {
+      runningThread = Thread.currentThread();
+      threadBatchId.set(batch.getId());
+      start();
+      process();
+      stop();
+      return batch;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      threadBatchId.remove();
+      unarchived();
+    }
   }
 
   protected abstract void process();
@@ -124,6 +167,295 @@ public abstract class AbstractBatch {
     return model.getArchived() != Boolean.TRUE;
   }
 
+  /**
+   * Whether an interrupted batch of the model can be resumed from its last check point. To be
+   * overridden by the batches processing their records with {@link #processChunks}.
+   */
+  protected boolean isResumable() {
+    return false;
+  }
+
+  /**
+   * Take over the last batch of the model if it has been interrupted while processing its chunks:
+   * the processing starts again after the last committed chunk of this batch. While the model is
+   * still archived, the interrupted batch may still be running, and it is taken over only if it has
+   * missed {@link #MISSED_HEARTBEAT_COUNT} heartbeats. Nothing is resumed if the batch is not
+   * {@link #isResumable() resumable}.
+   *
+   * @param model
+   * @return true if an interrupted batch has been taken over
+   */
+  protected boolean resumeInterruptedBatch(Model model) {
+    this.model = model;
+
+    if (!isResumable()) {
+      return false;
+    }
+
+    Field field = getAssociableField();
+    if (field == null) {
+      return false;
+    }
+
+    ZonedDateTime checkPointLimit =
+        model.getArchived() == Boolean.TRUE
+            ? ZonedDateTime.now().minusSeconds(HEARTBEAT_INTERVAL * MISSED_HEARTBEAT_COUNT)
+            : ZonedDateTime.now();
+
+    Batch interruptedBatch =
+        batchRepo
+            .all()
+            .filter(
+                "self."
+                    + field.getName()
+                    + " = ?1 AND self.id != ?2 AND self.endDate IS NULL "
+                    + "AND self.lastProcessedId > 0 AND self.checkPointDate < ?3",
+                model,
+                batch.getId(),
+                checkPointLimit)
+            .order("-id")
+            .fetchOne();
+
+    if (interruptedBatch == null) {
+      return false;
+    }
+
+    takeOver(interruptedBatch);
+    lastProcessedId = batch.getLastProcessedId();
+
+    LOG.info("Reprise batch {} ::: {} après {}", model, batch.getId(), lastProcessedId);
+
+    return true;
+  }
+
+  /**
+   * Continue an interrupted batch instead of the one created for this run, which is deleted.
+   *
+   * @param interruptedBatch
+   */
+  protected void takeOver(Batch interruptedBatch) {
+    final Long newBatchId = batch.getId();
+    JPA.runInTransaction(() -> batchRepo.remove(batchRepo.find(newBatchId)));
+
+    batch = interruptedBatch;
+    done.set(batch.getDone());
+    anomaly.set(batch.getAnomaly());
+  }
+
+  /** Source of the chunks of {@link AbstractBatch#processChunks}. */
+  @FunctionalInterface
+  protected interface ChunkSource {
+
+    /**
+     * Get the ids of the next chunk of records to process.
+     *
+     * @param lastId id of the last processed record, 0 at the beginning
+     * @param limit maximum number of ids
+     * @return the ids greater than lastId, in increasing order
+     */
+    List<Long> fetchChunkIds(long lastId, int limit);
+  }
+
+  /** Counters of a chunk, added to the counters of the batch once the chunk is committed. */
+  protected static class ChunkProgress {
+
+    protected final long lastId;
+    protected int done;
+    protected int anomaly;
+
+    protected ChunkProgress(long lastId) {
+      this.lastId = lastId;
+    }
+  }
+
+  /** Processing of one record of a chunk. */
+  @FunctionalInterface
+  protected interface ChunkItemProcessor {
+
+    /**
+     * Process one record, and call {@link AbstractBatch#incrementDone()} if it has been processed.
+     *
+     * @param id
+     * @throws Exception the record is counted as an anomaly
+     */
+    void process(Long id) throws Exception;
+  }
+
+  protected int getChunkSize() {
+    return CHUNK_SIZE;
+  }
+
+  protected int getThreadCount() {
+    return 1;
+  }
+
+  /**
+   * Process the records of a chunk one by one, counting an anomaly for each record whose
+   * processing fails, then clear the persistence context.
+   *
+   * @param idList
+   * @param processor
+   */
+  protected void processChunk(List<Long> idList, ChunkItemProcessor processor) {
+
+    for (Long id : idList) {
+      try {
+        processor.process(id);
+      } catch (Exception e) {
+        incrementAnomaly();
+        TraceBackService.trace(e, null, getCurrentBatchId());
+        LOG.error("Anomalie générée pour l'enregistrement {}", id);
+      }
+    }
+
+    JPA.clear();
+  }
+
+  /**
+   * Process a chunk from a worker thread, in its own unit of work.
+   *
+   * @param idList
+   * @param processor
+   * @return the id of the last record of the chunk
+   */
+  protected Long processChunkInThread(List<Long> idList, ChunkItemProcessor processor) {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      UnitOfWork unitOfWork = Beans.get(UnitOfWork.class);
+      unitOfWork.begin();
+      threadBatchId.set(batch.getId());
+      try {
+        processChunk(idList, processor);
+      } finally {
+        threadBatchId.remove();
+        unitOfWork.end();
+      }
+    }
+
+    return idList.get(idList.size() - 1);
+  }
+
+  /**
+   * Process the records returned by the source chunk by chunk, starting after {@link
+   * #lastProcessedId}. The chunks are processed by {@link #getThreadCount()} worker threads while
+   * the running thread commits them in their order, and saves a heartbeat check point while a chunk
+   * takes long, so that a running batch is never taken for dead. The counters of a chunk are only
+   * saved with its commit, so that a resumed batch does not count twice the chunks it processes
+   * again.
+   *
+   * @param source
+   * @param processor
+   */
+  protected void processChunks(ChunkSource source, ChunkItemProcessor processor) {
+
+    int chunkSize = getChunkSize();
+    int threadCount = Math.max(1, getThreadCount());
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    Deque<Future<ChunkProgress>> futureList = new ArrayDeque<>();
+    long lastFetchedId = lastProcessedId;
+
+    try {
+      List<Long> idList;
+      while (!(idList = source.fetchChunkIds(lastFetchedId, chunkSize)).isEmpty()) {
+        final List<Long> chunkIdList = idList;
+        lastFetchedId = idList.get(idList.size() - 1);
+        futureList.add(executor.submit(() -> processCountedChunk(chunkIdList, processor)));
+
+        if (futureList.size() >= threadCount * 2) {
+          commitChunk(waitForChunk(futureList.poll()));
+        }
+      }
+
+      while (!futureList.isEmpty()) {
+        commitChunk(waitForChunk(futureList.poll()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private ChunkProgress processCountedChunk(List<Long> idList, ChunkItemProcessor processor) {
+
+    ChunkProgress progress = new ChunkProgress(idList.get(idList.size() - 1));
+    threadChunkProgress.set(progress);
+
+    try {
+      processChunkInThread(idList, processor);
+    } finally {
+      threadChunkProgress.remove();
+    }
+
+    return progress;
+  }
+
+  /**
+   * Helper for a {@link ChunkSource}.
+   *
+   * @param klass the model of the records
+   * @param filter JPQL condition on <code>self</code>, with named parameters
+   * @param params values of the named parameters
+   * @param lastId
+   * @param limit
+   * @return the ids of the records matching the filter and greater than lastId
+   */
+  protected List<Long> fetchIds(
+      Class<? extends Model> klass,
+      String filter,
+      Map<String, Object> params,
+      long lastId,
+      int limit) {
+
+    TypedQuery<Long> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM "
+                    + klass.getSimpleName()
+                    + " self WHERE ("
+                    + filter
+                    + ") AND self.id > :lastId ORDER BY self.id",
+                Long.class);
+
+    if (params != null) {
+      params.forEach(query::setParameter);
+    }
+
+    return query.setParameter("lastId", lastId).setMaxResults(limit).getResultList();
+  }
+
+  /** Wait for a chunk, saving a heartbeat check point every {@link #HEARTBEAT_INTERVAL}. */
+  protected ChunkProgress waitForChunk(Future<ChunkProgress> future) {
+    while (true) {
+      try {
+        return future.get(HEARTBEAT_INTERVAL, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+        checkPoint();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Save the progress of the batch once all the records up to the last one of the chunk are
+   * processed, with the counters of this chunk only.
+   */
+  protected void commitChunk(ChunkProgress progress) {
+    lastProcessedId = progress.lastId;
+    done.addAndGet(progress.done);
+    anomaly.addAndGet(progress.anomaly);
+
+    findBatch();
+    batch.setLastProcessedId(lastProcessedId);
+    copyProgress();
+    checkPoint();
+  }
+
   protected void start() throws IllegalArgumentException, IllegalAccessException, AxelorException {
     LOG.info("Début batch {} ::: {}", new Object[] {model, batch.getStartDate()});
 
@@ -148,29 +480,69 @@ public abstract class AbstractBatch {
   }
 
   protected void incrementDone() {
-    findBatch();
+    if (isRunningThread()) {
+      findBatch();
+    }
     _incrementDone();
   }
 
   protected void _incrementDone() {
-    done += 1;
-    batch.setDone(done);
-    checkPoint();
+    ChunkProgress progress = threadChunkProgress.get();
+    if (progress != null) {
+      progress.done++;
+      return;
+    }
 
-    LOG.debug("Done ::: {}", done);
+    int value = done.incrementAndGet();
+    flushProgress();
+
+    LOG.debug("Done ::: {}", value);
   }
 
   protected void incrementAnomaly() {
-    findBatch();
+    if (isRunningThread()) {
+      findBatch();
+    }
     _incrementAnomaly();
   }
 
   protected void _incrementAnomaly() {
-    anomaly += 1;
-    batch.setAnomaly(anomaly);
-    checkPoint();
+    ChunkProgress progress = threadChunkProgress.get();
+    if (progress != null) {
+      progress.anomaly++;
+      return;
+    }
 
-    LOG.debug("Anomaly ::: {}", anomaly);
+    int value = anomaly.incrementAndGet();
+    flushProgress();
+
+    LOG.debug("Anomaly ::: {}", value);
+  }
+
+  /**
+   * Copy the counters into the batch, and save them if the last check point is old enough. The
+   * counters incremented from the worker threads are saved by the running thread.
+   */
+  protected void flushProgress() {
+    if (!isRunningThread()) {
+      return;
+    }
+
+    copyProgress();
+
+    if (System.currentTimeMillis() - lastFlushTime >= PROGRESS_FLUSH_INTERVAL) {
+      checkPoint();
+    }
+  }
+
+  /** Copy the counters into the batch. */
+  protected void copyProgress() {
+    batch.setDone(done.get());
+    batch.setAnomaly(anomaly.get());
+  }
+
+  private boolean isRunningThread() {
+    return runningThread == null || runningThread == Thread.currentThread();
   }
 
   protected void addComment(String comment) {
@@ -183,7 +555,10 @@ public abstract class AbstractBatch {
 
   @Transactional
   protected Batch checkPoint() {
-    return findBatch();
+    findBatch();
+    batch.setCheckPointDate(ZonedDateTime.now());
+    lastFlushTime = System.currentTimeMillis();
+    return batch;
   }
 
   @Transactional
@@ -205,21 +580,30 @@ public abstract class AbstractBatch {
   private void associateModel() throws IllegalArgumentException, IllegalAccessException {
     LOG.debug("ASSOCIATE batch:{} TO model:{}", new Object[] {batch, model});
 
-    for (Field field : batch.getClass().getDeclaredFields()) {
+    Field field = getAssociableField();
+
+    if (field != null) {
+
+      LOG.debug("FIELD ASSOCIATE TO MODEL");
+      field.setAccessible(true);
+      field.set(batch, model);
+      field.setAccessible(false);
+    }
+  }
+
+  protected Field getAssociableField() {
+
+    for (Field field : Batch.class.getDeclaredFields()) {
 
       LOG.debug(
           "TRY TO ASSOCIATE field:{} TO model:{}",
           new Object[] {field.getType().getName(), model.getClass().getName()});
       if (isAssociable(field)) {
-
-        LOG.debug("FIELD ASSOCIATE TO MODEL");
-        field.setAccessible(true);
-        field.set(batch, model);
-        field.setAccessible(false);
-
-        break;
+        return field;
       }
     }
+
+    return null;
   }
 
   private boolean isAssociable(Field field) {
@@ -229,6 +613,8 @@ public abstract class AbstractBatch {
   protected Batch findBatch() {
     if (!JPA.em().contains(batch)) {
       batch = JPA.find(Batch.class, batch.getId());
+      batch.setDone(done.get());
+      batch.setAnomaly(anomaly.get());
     }
 
     return batch;
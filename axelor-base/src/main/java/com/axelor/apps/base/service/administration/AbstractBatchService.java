@@ -23,10 +23,21 @@ import com.axelor.db.Model;
 import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public abstract class AbstractBatchService {
 
+  /** Threads of the batches run in background. */
+  private static final ExecutorService backgroundExecutor = Executors.newCachedThreadPool();
+
   /**
    * Get batch model class.
    *
@@ -63,6 +74,33 @@ public abstract class AbstractBatchService {
     return run(model);
   }
 
+  /**
+   * Run a batch from its code in a thread of its own, for the batches too long to be run within a
+   * request. The failure of the run is traced.
+   *
+   * @param code
+   */
+  public void runInBackground(String code) {
+    backgroundExecutor.submit(() -> runInThread(code));
+  }
+
+  private void runInThread(String code) {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      UnitOfWork unitOfWork = Beans.get(UnitOfWork.class);
+      unitOfWork.begin();
+      try {
+        run(code);
+      } catch (Exception e) {
+        TraceBackService.trace(e);
+      } finally {
+        unitOfWork.end();
+      }
+    }
+  }
+
   /**
    * Find batch model by its code.
    *
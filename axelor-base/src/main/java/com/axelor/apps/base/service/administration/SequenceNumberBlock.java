@@ -0,0 +1,72 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.administration;
+
+import java.time.LocalDate;
+
+/**
+ * A range of numbers of a sequence version reserved by this server. Not thread safe: the callers
+ * synchronize on the blocks of a sequence.
+ */
+public class SequenceNumberBlock {
+
+  protected final LocalDate startDate;
+  protected final LocalDate endDate;
+
+  protected final long lastNum;
+  protected final int toBeAdded;
+
+  protected long nextNum;
+
+  /**
+   * @param startDate start date of the sequence version
+   * @param endDate end date of the sequence version, can be null
+   * @param firstNum first reserved number
+   * @param size number of reserved numbers
+   * @param toBeAdded increment of the sequence
+   */
+  public SequenceNumberBlock(
+      LocalDate startDate, LocalDate endDate, long firstNum, int size, int toBeAdded) {
+    this.startDate = startDate;
+    this.endDate = endDate;
+    this.nextNum = firstNum;
+    this.toBeAdded = toBeAdded;
+    this.lastNum = firstNum + (long) (size - 1) * toBeAdded;
+  }
+
+  public LocalDate getStartDate() {
+    return startDate;
+  }
+
+  public LocalDate getEndDate() {
+    return endDate;
+  }
+
+  public boolean hasNext() {
+    return nextNum <= lastNum;
+  }
+
+  public long next() {
+    if (!hasNext()) {
+      throw new IllegalStateException("No more number in the reserved block");
+    }
+    long num = nextNum;
+    nextNum += toBeAdded;
+    return num;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.administration;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Prefix and suffix of a sequence parsed once into literal parts and date tags (%YYYY, %YY, %M,
+ * %FM, %D, %WY), so that a sequence number is built without any regular expression.
+ */
+public class SequencePattern {
+
+  protected static final String[] TAGS = {"%YYYY", "%YY", "%M", "%FM", "%D", "%WY"};
+
+  protected static final int FULL_YEAR = 0,
+      YEAR = 1,
+      MONTH = 2,
+      FULL_MONTH = 3,
+      DAY = 4,
+      WEEK = 5;
+
+  protected static final DateTimeFormatter YEAR_FORMATTER = DateTimeFormatter.ofPattern("yy");
+  protected static final DateTimeFormatter FULL_MONTH_FORMATTER = DateTimeFormatter.ofPattern("MM");
+
+  protected final String prefixe;
+  protected final String suffixe;
+
+  /** Parts of the prefix and the suffix: a {@link String} literal or an {@link Integer} tag. */
+  protected final List<Object> prefixeParts;
+
+  protected final List<Object> suffixeParts;
+
+  public SequencePattern(String prefixe, String suffixe) {
+    this.prefixe = StringUtils.defaultString(prefixe, "");
+    this.suffixe = StringUtils.defaultString(suffixe, "");
+    this.prefixeParts = parse(this.prefixe);
+    this.suffixeParts = parse(this.suffixe);
+  }
+
+  /**
+   * Check if the pattern has been built with the given prefix and suffix, to detect a change on
+   * the sequence.
+   */
+  public boolean isCompiledFrom(String prefixe, String suffixe) {
+    return Objects.equals(this.prefixe, StringUtils.defaultString(prefixe, ""))
+        && Objects.equals(this.suffixe, StringUtils.defaultString(suffixe, ""));
+  }
+
+  /**
+   * Build the sequence number.
+   *
+   * @param sequenceValue the padded number or the letters of the sequence
+   * @param refDate the date used to replace the tags
+   * @return the sequence number
+   */
+  public String format(String sequenceValue, LocalDate refDate) {
+    StringBuilder sb = new StringBuilder(prefixe.length() + sequenceValue.length() + 16);
+    append(sb, prefixeParts, refDate);
+    sb.append(sequenceValue);
+    append(sb, suffixeParts, refDate);
+    return sb.toString();
+  }
+
+  protected static List<Object> parse(String value) {
+    List<Object> parts = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+
+    int index = 0;
+    while (index < value.length()) {
+      int tag = value.charAt(index) == '%' ? findTag(value, index) : -1;
+      if (tag < 0) {
+        literal.append(value.charAt(index++));
+        continue;
+      }
+      if (literal.length() > 0) {
+        parts.add(literal.toString());
+        literal.setLength(0);
+      }
+      parts.add(tag);
+      index += TAGS[tag].length();
+    }
+
+    if (literal.length() > 0) {
+      parts.add(literal.toString());
+    }
+
+    return parts;
+  }
+
+  /** The tags are tried in the order they used to be replaced, %YYYY before %YY. */
+  protected static int findTag(String value, int index) {
+    for (int tag = 0; tag < TAGS.length; tag++) {
+      if (value.startsWith(TAGS[tag], index)) {
+        return tag;
+      }
+    }
+    return -1;
+  }
+
+  protected static void append(StringBuilder sb, List<Object> parts, LocalDate refDate) {
+    for (Object part : parts) {
+      if (part instanceof String) {
+        sb.append((String) part);
+        continue;
+      }
+      switch ((Integer) part) {
+        case FULL_YEAR:
+          sb.append(refDate.get(ChronoField.YEAR_OF_ERA));
+          break;
+        case YEAR:
+          sb.append(refDate.format(YEAR_FORMATTER));
+          break;
+        case MONTH:
+          sb.append(refDate.getMonthValue());
+          break;
+        case FULL_MONTH:
+          sb.append(refDate.format(FULL_MONTH_FORMATTER));
+          break;
+        case DAY:
+          sb.append(refDate.getDayOfMonth());
+          break;
+        case WEEK:
+          sb.append(refDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+          break;
+        default:
+          break;
+      }
+    }
+  }
+}
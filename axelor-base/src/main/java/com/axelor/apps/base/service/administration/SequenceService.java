@@ -27,6 +27,7 @@ import com.axelor.apps.base.db.repo.SequenceVersionRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.tool.StringTool;
+import com.axelor.db.JPA;
 import com.axelor.db.Model;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -40,10 +41,15 @@ import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoField;
-import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.concurrent.ThreadSafe;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +68,15 @@ public class SequenceService {
       PATTERN_WEEK = "%WY",
       PADDING_STRING = "0";
 
+  /** Attempts to reserve a block before the number is taken in the transaction of the caller. */
+  protected static final int RESERVE_BLOCK_ATTEMPT_COUNT = 3;
+
+  /** Time in milliseconds an attempt waits for the lock of the sequence version. */
+  protected static final int RESERVE_BLOCK_LOCK_TIMEOUT = 100;
+
+  /** Pause in milliseconds after a failed attempt, multiplied by the number of failed attempts. */
+  protected static final long RESERVE_BLOCK_BACKOFF = 50;
+
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private SequenceVersionRepository sequenceVersionRepository;
@@ -70,6 +85,11 @@ public class SequenceService {
 
   @Inject private SequenceRepository sequenceRepo;
 
+  private final Map<Long, SequencePattern> sequencePatternMap = new ConcurrentHashMap<>();
+
+  private final Map<Long, List<SequenceNumberBlock>> sequenceNumberBlockMap =
+      new ConcurrentHashMap<>();
+
   @Inject
   public SequenceService(
       SequenceVersionRepository sequenceVersionRepository, AppBaseService appBaseService) {
@@ -168,6 +188,25 @@ public class SequenceService {
     return this.getSequenceNumber(sequence, appBaseService.getTodayDate());
   }
 
+  /**
+   * Get several consecutive numbers of the sequence of a code and a company at once.
+   *
+   * @param code
+   * @param company
+   * @param count the number of sequence numbers
+   * @return the sequence numbers, or null if there is no sequence
+   */
+  public List<String> getSequenceNumbers(String code, Company company, int count) {
+
+    Sequence sequence = getSequence(code, company);
+
+    if (sequence == null) {
+      return null;
+    }
+
+    return this.getSequenceNumbers(sequence, appBaseService.getTodayDate(), count);
+  }
+
   /**
    * Retourne une sequence en fonction du code, de la sté
    *
@@ -191,51 +230,306 @@ public class SequenceService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public String getSequenceNumber(Sequence sequence, LocalDate refDate) {
 
+    long nextNum;
+
+    if (sequence.getGapTolerant()) {
+      nextNum = getReservedNum(sequence, refDate);
+    } else {
+      nextNum = getNextNum(sequence, refDate, 1);
+    }
+
+    String nextSeq = formatSequenceNumber(sequence, nextNum, refDate);
+
+    log.debug("nextSeq : : : : {}", nextSeq);
+
+    return nextSeq;
+  }
+
+  /**
+   * Get several consecutive numbers of a sequence at once: the sequence version is read and
+   * updated a single time for all of them.
+   *
+   * @param sequence
+   * @param refDate
+   * @param count the number of sequence numbers
+   * @return the sequence numbers, in order
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public List<String> getSequenceNumbers(Sequence sequence, LocalDate refDate, int count) {
+
+    List<String> sequenceNumberList = new ArrayList<>(count);
+
+    if (count <= 0) {
+      return sequenceNumberList;
+    }
+
+    if (sequence.getGapTolerant()) {
+      for (int i = 0; i < count; i++) {
+        sequenceNumberList.add(
+            formatSequenceNumber(sequence, getReservedNum(sequence, refDate), refDate));
+      }
+      return sequenceNumberList;
+    }
+
+    long nextNum = getNextNum(sequence, refDate, count);
+
+    for (int i = 0; i < count; i++) {
+      sequenceNumberList.add(
+          formatSequenceNumber(sequence, nextNum + (long) i * sequence.getToBeAdded(), refDate));
+    }
+
+    log.debug("{} numbers of sequence {} from {}", count, sequence.getCode(), nextNum);
+
+    return sequenceNumberList;
+  }
+
+  /**
+   * Take numbers from the sequence version, in the transaction of the caller.
+   *
+   * @param sequence
+   * @param refDate
+   * @param count the number of sequence numbers
+   * @return the first number
+   */
+  protected long getNextNum(Sequence sequence, LocalDate refDate, int count) {
+
     SequenceVersion sequenceVersion = getVersion(sequence, refDate);
+    long nextNum = sequenceVersion.getNextNum();
+    sequenceVersion.setNextNum(nextNum + (long) count * sequence.getToBeAdded());
+    sequenceVersionRepository.save(sequenceVersion);
 
-    String seqPrefixe = StringUtils.defaultString(sequence.getPrefixe(), ""),
-        seqSuffixe = StringUtils.defaultString(sequence.getSuffixe(), ""),
-        sequenceValue;
+    return nextNum;
+  }
+
+  protected String formatSequenceNumber(Sequence sequence, long num, LocalDate refDate) {
+
+    String sequenceValue;
 
     if (sequence.getSequenceTypeSelect() == SequenceTypeSelect.NUMBERS) {
       sequenceValue =
-          StringUtils.leftPad(
-              sequenceVersion.getNextNum().toString(), sequence.getPadding(), PADDING_STRING);
+          StringUtils.leftPad(Long.toString(num), sequence.getPadding(), PADDING_STRING);
     } else {
-      sequenceValue = findNextLetterSequence(sequenceVersion);
-    }
-    sequenceVersion.setNextNum(sequenceVersion.getNextNum() + sequence.getToBeAdded());
-    String nextSeq =
-        (seqPrefixe + sequenceValue + seqSuffixe)
-            .replaceAll(PATTERN_FULL_YEAR, Integer.toString(refDate.get(ChronoField.YEAR_OF_ERA)))
-            .replaceAll(PATTERN_YEAR, refDate.format(DateTimeFormatter.ofPattern("yy")))
-            .replaceAll(PATTERN_MONTH, Integer.toString(refDate.getMonthValue()))
-            .replaceAll(PATTERN_FULL_MONTH, refDate.format(DateTimeFormatter.ofPattern("MM")))
-            .replaceAll(PATTERN_DAY, Integer.toString(refDate.getDayOfMonth()))
-            .replaceAll(
-                PATTERN_WEEK, Integer.toString(refDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)));
-
-    log.debug("nextSeq : : : : {}", nextSeq);
+      sequenceValue = findNextLetterSequence(num, sequence.getSequenceLettersTypeSelect());
+    }
 
-    sequenceVersionRepository.save(sequenceVersion);
-    return nextSeq;
+    return getSequencePattern(sequence).format(sequenceValue, refDate);
   }
 
-  private String findNextLetterSequence(SequenceVersion sequenceVersion) {
-    long n = sequenceVersion.getNextNum();
+  private String findNextLetterSequence(
+      long n, SequenceLettersTypeSelect sequenceLettersTypeSelect) {
     char[] buf = new char[(int) Math.floor(Math.log(25 * (n + 1)) / Math.log(26))];
     for (int i = buf.length - 1; i >= 0; i--) {
       n--;
       buf[i] = (char) ('A' + n % 26);
       n /= 26;
     }
-    if (sequenceVersion.getSequence().getSequenceLettersTypeSelect()
-        == SequenceLettersTypeSelect.UPPERCASE) {
+    if (sequenceLettersTypeSelect == SequenceLettersTypeSelect.UPPERCASE) {
       return new String(buf);
     }
     return new String(buf).toLowerCase();
   }
 
+  /**
+   * Get the pattern of the sequence, parsed again only when its prefix or suffix has changed.
+   *
+   * @param sequence
+   * @return
+   */
+  protected SequencePattern getSequencePattern(Sequence sequence) {
+
+    SequencePattern sequencePattern =
+        sequence.getId() != null ? sequencePatternMap.get(sequence.getId()) : null;
+
+    if (sequencePattern == null
+        || !sequencePattern.isCompiledFrom(sequence.getPrefixe(), sequence.getSuffixe())) {
+      sequencePattern = new SequencePattern(sequence.getPrefixe(), sequence.getSuffixe());
+      if (sequence.getId() != null) {
+        sequencePatternMap.put(sequence.getId(), sequencePattern);
+      }
+    }
+
+    return sequencePattern;
+  }
+
+  /**
+   * Get the next number of a sequence which tolerates gaps, from a block of numbers reserved by
+   * this server. The numbers of a block not used before a restart are lost. If no block can be
+   * reserved, the number is taken in the transaction of the caller.
+   *
+   * @param sequence
+   * @param refDate
+   * @return
+   */
+  protected long getReservedNum(Sequence sequence, LocalDate refDate) {
+
+    List<SequenceNumberBlock> blockList =
+        sequenceNumberBlockMap.computeIfAbsent(sequence.getId(), id -> new ArrayList<>());
+
+    synchronized (blockList) {
+      for (SequenceNumberBlock block : blockList) {
+        if (isInVersion(sequence, block, refDate) && block.hasNext()) {
+          return block.next();
+        }
+      }
+
+      blockList.removeIf(block -> isInVersion(sequence, block, refDate));
+
+      SequenceNumberBlock block = reserveBlock(sequence, refDate);
+      if (block != null) {
+        blockList.add(block);
+        return block.next();
+      }
+    }
+
+    log.warn(
+        "No block reserved for sequence {}, the number is taken in the current transaction",
+        sequence.getCode());
+
+    return getNextNum(sequence, refDate, 1);
+  }
+
+  /** Same rules as the search of the version in {@link #getVersion(Sequence, LocalDate)}. */
+  protected boolean isInVersion(Sequence sequence, SequenceNumberBlock block, LocalDate refDate) {
+
+    LocalDate startDate = block.getStartDate();
+
+    if (sequence.getMonthlyResetOk()) {
+      return startDate.getMonthValue() == refDate.getMonthValue()
+          && startDate.getYear() == refDate.getYear();
+    }
+    if (sequence.getYearlyResetOk()) {
+      return startDate.getYear() == refDate.getYear();
+    }
+    return !startDate.isAfter(refDate)
+        && (block.getEndDate() == null || !block.getEndDate().isBefore(refDate));
+  }
+
+  /**
+   * Reserve a block of numbers, trying again after a pause while the sequence version is locked by
+   * another server or transaction.
+   *
+   * @param sequence
+   * @param refDate
+   * @return the reserved block, or null if no attempt succeeded
+   */
+  protected SequenceNumberBlock reserveBlock(Sequence sequence, LocalDate refDate) {
+
+    if (sequence.getId() == null) {
+      return null;
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      SequenceNumberBlock block = tryReserveBlock(sequence, refDate);
+      if (block != null || attempt >= RESERVE_BLOCK_ATTEMPT_COUNT) {
+        return block;
+      }
+
+      try {
+        Thread.sleep(RESERVE_BLOCK_BACKOFF * attempt);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Reserve a block of numbers in a transaction of its own, on a new entity manager of the current
+   * thread, so that the reservation is kept even if the transaction of the caller is rolled back.
+   *
+   * <p>The sequence version is locked with a short timeout, as the transaction of the caller may
+   * hold its lock already.
+   *
+   * @param sequence
+   * @param refDate
+   * @return the reserved block, or null if the sequence version is locked or can not be saved
+   */
+  protected SequenceNumberBlock tryReserveBlock(Sequence sequence, LocalDate refDate) {
+
+    EntityManager em = JPA.em().getEntityManagerFactory().createEntityManager();
+
+    try {
+      em.getTransaction().begin();
+      SequenceNumberBlock block = reserveBlock(em, sequence.getId(), refDate);
+      em.getTransaction().commit();
+      return block;
+    } catch (PersistenceException e) {
+      log.debug("No block reserved for sequence {}: {}", sequence.getCode(), e.getMessage());
+      return null;
+    } finally {
+      if (em.getTransaction().isActive()) {
+        em.getTransaction().rollback();
+      }
+      em.close();
+    }
+  }
+
+  protected SequenceNumberBlock reserveBlock(EntityManager em, Long sequenceId, LocalDate refDate) {
+
+    Sequence sequence = em.find(Sequence.class, sequenceId);
+    SequenceVersion sequenceVersion = findLockedVersion(em, sequence, refDate);
+
+    if (sequenceVersion == null) {
+      sequenceVersion = createVersion(sequence, refDate);
+      em.persist(sequenceVersion);
+    }
+
+    int size = Math.max(1, sequence.getReservedBlockSize());
+    long firstNum = sequenceVersion.getNextNum();
+
+    sequenceVersion.setNextNum(firstNum + (long) size * sequence.getToBeAdded());
+
+    log.debug(
+        "Reserved numbers {} to {} of sequence {}",
+        firstNum,
+        sequenceVersion.getNextNum() - 1,
+        sequence.getCode());
+
+    return new SequenceNumberBlock(
+        sequenceVersion.getStartDate(),
+        sequenceVersion.getEndDate(),
+        firstNum,
+        size,
+        sequence.getToBeAdded());
+  }
+
+  /** Same search as {@link #getVersion(Sequence, LocalDate)}, locking the version found. */
+  protected SequenceVersion findLockedVersion(
+      EntityManager em, Sequence sequence, LocalDate refDate) {
+
+    String filter;
+    if (sequence.getMonthlyResetOk()) {
+      filter = "MONTH(self.startDate) = :month AND YEAR(self.startDate) = :year";
+    } else if (sequence.getYearlyResetOk()) {
+      filter = "YEAR(self.startDate) = :year";
+    } else {
+      filter = "self.startDate <= :date AND (self.endDate IS NULL OR self.endDate >= :date)";
+    }
+
+    TypedQuery<SequenceVersion> query =
+        em.createQuery(
+                "SELECT self FROM SequenceVersion self WHERE self.sequence = :sequence AND "
+                    + filter,
+                SequenceVersion.class)
+            .setParameter("sequence", sequence)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .setHint("javax.persistence.lock.timeout", RESERVE_BLOCK_LOCK_TIMEOUT)
+            .setMaxResults(1);
+
+    if (sequence.getMonthlyResetOk()) {
+      query.setParameter("month", refDate.getMonthValue());
+    }
+    if (sequence.getMonthlyResetOk() || sequence.getYearlyResetOk()) {
+      query.setParameter("year", refDate.getYear());
+    } else {
+      query.setParameter("date", refDate);
+    }
+
+    List<SequenceVersion> sequenceVersionList = query.getResultList();
+
+    return sequenceVersionList.isEmpty() ? null : sequenceVersionList.get(0);
+  }
+
   protected SequenceVersion getVersion(Sequence sequence, LocalDate refDate) {
 
     log.debug("Reference date : : : : {}", refDate);
@@ -253,7 +547,7 @@ public class SequenceService {
 
     SequenceVersion sequenceVersion = sequenceVersionRepository.findByDate(sequence, refDate);
     if (sequenceVersion == null) {
-      sequenceVersion = new SequenceVersion(sequence, refDate, null, 1L);
+      sequenceVersion = createVersion(sequence, refDate);
     }
 
     return sequenceVersion;
@@ -264,12 +558,7 @@ public class SequenceService {
     SequenceVersion sequenceVersion =
         sequenceVersionRepository.findByMonth(sequence, refDate.getMonthValue(), refDate.getYear());
     if (sequenceVersion == null) {
-      sequenceVersion =
-          new SequenceVersion(
-              sequence,
-              refDate.withDayOfMonth(1),
-              refDate.withDayOfMonth(refDate.lengthOfMonth()),
-              1L);
+      sequenceVersion = createVersion(sequence, refDate);
     }
 
     return sequenceVersion;
@@ -280,17 +569,25 @@ public class SequenceService {
     SequenceVersion sequenceVersion =
         sequenceVersionRepository.findByYear(sequence, refDate.getYear());
     if (sequenceVersion == null) {
-      sequenceVersion =
-          new SequenceVersion(
-              sequence,
-              refDate.withDayOfMonth(1),
-              refDate.withDayOfMonth(refDate.lengthOfMonth()),
-              1L);
+      sequenceVersion = createVersion(sequence, refDate);
     }
 
     return sequenceVersion;
   }
 
+  /** Create the version of the sequence for the date, when there is none. */
+  protected SequenceVersion createVersion(Sequence sequence, LocalDate refDate) {
+
+    if (sequence.getMonthlyResetOk() || sequence.getYearlyResetOk()) {
+      return new SequenceVersion(
+          sequence,
+          refDate.withDayOfMonth(1),
+          refDate.withDayOfMonth(refDate.lengthOfMonth()),
+          1L);
+    }
+    return new SequenceVersion(sequence, refDate, null, 1L);
+  }
+
   public String getDefaultTitle(Sequence sequence) {
     MetaSelectItem item =
         Beans.get(MetaSelectItemRepository.class)
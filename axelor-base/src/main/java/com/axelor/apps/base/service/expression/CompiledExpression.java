@@ -0,0 +1,153 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.expression;
+
+import com.axelor.auth.AuthUtils;
+import com.axelor.tool.template.TemplateMaker;
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+/**
+ * A Groovy formula written as a template, whose $ tags are replaced by the values of the bindings
+ * before the evaluation, with the static methods of {@link Math} imported.
+ *
+ * <p>When all the tags of a formula are field paths, like $Employee.bonusCoef$, and the formula
+ * has no string literal, the tags are read from the bindings by the script, which is compiled once
+ * for all the evaluations. Otherwise the template is rendered and compiled at each evaluation.
+ */
+public class CompiledExpression {
+
+  public static final char TEMPLATE_DELIMITER = '$';
+
+  protected static final Pattern PATH_TAG_PATTERN =
+      Pattern.compile("\\$([A-Za-z_]\\w*)((\\.[A-Za-z_]\\w*)*)\\$");
+
+  protected static final String USER = "__user__",
+      DATE = "__date__",
+      TIME = "__time__",
+      DATETIME = "__datetime__";
+
+  protected static final CompilerConfiguration COMPILER_CONFIGURATION;
+
+  static {
+    COMPILER_CONFIGURATION = new CompilerConfiguration();
+    ImportCustomizer customizer = new ImportCustomizer();
+    customizer.addStaticStars("java.lang.Math");
+    COMPILER_CONFIGURATION.addCompilationCustomizers(customizer);
+  }
+
+  protected final String template;
+
+  /** The compiled script, or null if the template has to be rendered for each evaluation. */
+  protected final Class<? extends Script> scriptClass;
+
+  /** Names of the bindings read by the compiled script. */
+  protected final Set<String> variableNames;
+
+  protected CompiledExpression(
+      String template, Class<? extends Script> scriptClass, Set<String> variableNames) {
+    this.template = template;
+    this.scriptClass = scriptClass;
+    this.variableNames = variableNames;
+  }
+
+  public static CompiledExpression compile(String template) {
+
+    if (template.indexOf('\'') >= 0 || template.indexOf('"') >= 0) {
+      return new CompiledExpression(template, null, Collections.emptySet());
+    }
+
+    Set<String> variableNames = new HashSet<>();
+    StringBuffer source = new StringBuffer();
+    Matcher matcher = PATH_TAG_PATTERN.matcher(template);
+    while (matcher.find()) {
+      variableNames.add(matcher.group(1));
+      matcher.appendReplacement(source, "$1$2");
+    }
+    matcher.appendTail(source);
+
+    if (source.indexOf(String.valueOf(TEMPLATE_DELIMITER)) >= 0) {
+      return new CompiledExpression(template, null, Collections.emptySet());
+    }
+
+    Class<? extends Script> scriptClass =
+        new GroovyShell(COMPILER_CONFIGURATION).parse(source.toString()).getClass();
+
+    return new CompiledExpression(template, scriptClass, variableNames);
+  }
+
+  public boolean isCompiled() {
+    return scriptClass != null;
+  }
+
+  /**
+   * Evaluate the formula.
+   *
+   * @param bindings values of the tags, by name of the first element of their path
+   * @return the result of the script
+   */
+  public Object evaluate(Map<String, Object> bindings) {
+
+    if (scriptClass == null) {
+      TemplateMaker maker =
+          new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
+      maker.addInContext(bindings);
+      maker.setTemplate(template);
+      return new GroovyShell(new Binding(), COMPILER_CONFIGURATION).evaluate(maker.make());
+    }
+
+    Binding binding = new Binding();
+    for (String variableName : variableNames) {
+      binding.setVariable(variableName, getValue(variableName, bindings));
+    }
+    return InvokerHelper.createScript(scriptClass, binding).run();
+  }
+
+  /** The values of the internal tags are only fetched when the formula reads them. */
+  protected Object getValue(String variableName, Map<String, Object> bindings) {
+    if (bindings.containsKey(variableName)) {
+      return bindings.get(variableName);
+    }
+    switch (variableName) {
+      case USER:
+        return AuthUtils.getUser();
+      case DATE:
+        return LocalDate.now();
+      case TIME:
+        return LocalTime.now();
+      case DATETIME:
+        return LocalDateTime.now();
+      default:
+        return null;
+    }
+  }
+}
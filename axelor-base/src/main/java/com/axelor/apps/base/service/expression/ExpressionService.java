@@ -0,0 +1,53 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.expression;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public interface ExpressionService {
+
+  /**
+   * Get the compiled formula of a template, compiled on the first call then kept in a bounded
+   * cache.
+   *
+   * @param template a Groovy formula with $ tags
+   * @return the compiled formula
+   */
+  CompiledExpression compile(String template);
+
+  Object evaluate(String template, Map<String, Object> bindings);
+
+  /** @return true if the formula returns true */
+  boolean evaluateBoolean(String template, Map<String, Object> bindings);
+
+  /** @return the result of the formula as a decimal */
+  BigDecimal evaluateDecimal(String template, Map<String, Object> bindings);
+
+  /**
+   * Replace the variables of a formula by the tags of a binding, in the order of the map, so that
+   * the formula is the same for all the values of the variables. An empty variable name is
+   * ignored.
+   *
+   * @param formula the formula
+   * @param bindingNames the binding name of each variable name
+   * @return the template to evaluate with the values of the variables
+   */
+  String replaceVariables(String formula, LinkedHashMap<String, String> bindingNames);
+}
@@ -0,0 +1,90 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.expression;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Singleton;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+@Singleton
+public class ExpressionServiceImpl implements ExpressionService {
+
+  protected static final int CACHE_SIZE = 500;
+
+  protected final Cache<String, CompiledExpression> compiledExpressionCache =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+  @Override
+  public CompiledExpression compile(String template) {
+    try {
+      return compiledExpressionCache.get(template, () -> CompiledExpression.compile(template));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public Object evaluate(String template, Map<String, Object> bindings) {
+    return compile(template).evaluate(bindings);
+  }
+
+  @Override
+  public boolean evaluateBoolean(String template, Map<String, Object> bindings) {
+    return String.valueOf(evaluate(template, bindings)).equals("true");
+  }
+
+  @Override
+  public BigDecimal evaluateDecimal(String template, Map<String, Object> bindings) {
+    return new BigDecimal(evaluate(template, bindings).toString());
+  }
+
+  @Override
+  public String replaceVariables(String formula, LinkedHashMap<String, String> bindingNames) {
+
+    // the variables are first replaced by placeholders, so that a variable name found in the tag
+    // of a previous variable is not replaced
+    List<String> tags = new ArrayList<>();
+    for (Map.Entry<String, String> entry : bindingNames.entrySet()) {
+      if (Strings.isNullOrEmpty(entry.getKey())) {
+        continue;
+      }
+      formula = formula.replace(entry.getKey(), getPlaceholder(tags.size()));
+      tags.add(
+          CompiledExpression.TEMPLATE_DELIMITER
+              + entry.getValue()
+              + CompiledExpression.TEMPLATE_DELIMITER);
+    }
+
+    for (int i = 0; i < tags.size(); i++) {
+      formula = formula.replace(getPlaceholder(i), tags.get(i));
+    }
+
+    return formula;
+  }
+
+  protected String getPlaceholder(int index) {
+    return "\u0000" + (char) ('\uE000' + index) + "\u0000";
+  }
+}
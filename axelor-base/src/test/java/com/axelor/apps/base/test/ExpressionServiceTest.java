@@ -0,0 +1,64 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.service.expression.ExpressionServiceImpl;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExpressionServiceTest {
+
+  private final ExpressionServiceImpl expressionService = new ExpressionServiceImpl();
+
+  @Test
+  public void testReplaceVariables() {
+
+    LinkedHashMap<String, String> bindingNames = new LinkedHashMap<>();
+    bindingNames.put("AGE", "__age__");
+    // not replaced in the tag of the previous variable
+    bindingNames.put("age", "__years__");
+    bindingNames.put(null, "__none__");
+
+    Assert.assertEquals(
+        "$__age__$ > 30 && $__years__$ < 2",
+        expressionService.replaceVariables("AGE > 30 && age < 2", bindingNames));
+  }
+
+  @Test
+  public void testCompiledOnce() {
+
+    String template = "$__age__$ > 30 ? ceil($Line.coef$) * 10 : 0";
+    Map<String, Object> line = new HashMap<>();
+    line.put("coef", new BigDecimal("2.5"));
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("__age__", 42);
+    bindings.put("Line", line);
+
+    Assert.assertTrue(expressionService.compile(template).isCompiled());
+    Assert.assertSame(expressionService.compile(template), expressionService.compile(template));
+    Assert.assertEquals(
+        0, new BigDecimal("30").compareTo(expressionService.evaluateDecimal(template, bindings)));
+
+    bindings.put("__age__", 20);
+    Assert.assertFalse(expressionService.evaluateBoolean("$__age__$ > 30", bindings));
+  }
+}
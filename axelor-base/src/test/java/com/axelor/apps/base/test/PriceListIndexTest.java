@@ -0,0 +1,68 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.service.PriceListIndex;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PriceListIndexTest {
+
+  private static Object[] line(long id, Long productId, Long productCategoryId, String minQty) {
+    return new Object[] {
+      id, productId, productCategoryId, minQty != null ? new BigDecimal(minQty) : null
+    };
+  }
+
+  private static Long find(PriceListIndex index, Long productId, Long categoryId, String qty) {
+    return index.find(productId, categoryId, new BigDecimal(qty));
+  }
+
+  @Test
+  public void testFind() {
+
+    PriceListIndex index =
+        new PriceListIndex(
+            Arrays.asList(
+                line(1, 10L, null, "0"),
+                line(2, 10L, null, "10"),
+                line(3, 10L, null, "100"),
+                line(4, null, 50L, "5"),
+                line(5, 11L, null, "20"),
+                line(6, 12L, null, null)));
+
+    Assert.assertEquals(Long.valueOf(1), find(index, 10L, 50L, "9.99"));
+    Assert.assertEquals(Long.valueOf(2), find(index, 10L, 50L, "10"));
+    Assert.assertEquals(Long.valueOf(3), find(index, 10L, null, "1000"));
+    // below the minimum quantity of the product, the category line is used
+    Assert.assertEquals(Long.valueOf(4), find(index, 11L, 50L, "5"));
+    Assert.assertNull(find(index, 11L, 50L, "4"));
+    Assert.assertNull(find(index, 12L, null, "1"));
+  }
+
+  @Test
+  public void testSameMinQty() {
+
+    PriceListIndex index =
+        new PriceListIndex(Arrays.asList(line(8, 10L, null, "5"), line(7, 10L, null, "5.00")));
+
+    Assert.assertEquals(Long.valueOf(7), find(index, 10L, null, "6"));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.service.administration.SequenceNumberBlock;
+import com.axelor.apps.base.service.administration.SequencePattern;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequencePatternTest {
+
+  private static final String[][] PREFIXES_SUFFIXES = {
+    {"INV%YYYY-", "/%FM"},
+    {"%YY%M%D-", ""},
+    {"SO%YY%WY", "%%YYYY"},
+    {"", ""},
+    {null, "-%D-%FM-%YYYY"},
+    {"%YYY%MM", "%F%W"},
+  };
+
+  /** The way the sequence numbers were built before the patterns. */
+  private String legacyFormat(String prefixe, String value, String suffixe, LocalDate refDate) {
+    return ((prefixe == null ? "" : prefixe) + value + (suffixe == null ? "" : suffixe))
+        .replaceAll("%YYYY", Integer.toString(refDate.get(ChronoField.YEAR_OF_ERA)))
+        .replaceAll("%YY", refDate.format(DateTimeFormatter.ofPattern("yy")))
+        .replaceAll("%M", Integer.toString(refDate.getMonthValue()))
+        .replaceAll("%FM", refDate.format(DateTimeFormatter.ofPattern("MM")))
+        .replaceAll("%D", Integer.toString(refDate.getDayOfMonth()))
+        .replaceAll("%WY", Integer.toString(refDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)));
+  }
+
+  @Test
+  public void testSameResultAsReplaceAll() {
+
+    LocalDate refDate = LocalDate.of(2018, 1, 1);
+
+    for (int day = 0; day < 400; day += 7) {
+      LocalDate date = refDate.plusDays(day);
+      for (String[] prefixeSuffixe : PREFIXES_SUFFIXES) {
+        SequencePattern pattern = new SequencePattern(prefixeSuffixe[0], prefixeSuffixe[1]);
+        Assert.assertEquals(
+            legacyFormat(prefixeSuffixe[0], "00042", prefixeSuffixe[1], date),
+            pattern.format("00042", date));
+      }
+    }
+  }
+
+  @Test
+  public void testIsCompiledFrom() {
+
+    SequencePattern pattern = new SequencePattern("INV%YYYY-", null);
+
+    Assert.assertTrue(pattern.isCompiledFrom("INV%YYYY-", ""));
+    Assert.assertFalse(pattern.isCompiledFrom("INV%YY-", null));
+  }
+
+  @Test
+  public void testBlock() {
+
+    SequenceNumberBlock block = new SequenceNumberBlock(LocalDate.now(), null, 11, 3, 2);
+
+    Assert.assertEquals(11, block.next());
+    Assert.assertEquals(13, block.next());
+    Assert.assertEquals(15, block.next());
+    Assert.assertFalse(block.hasNext());
+  }
+}
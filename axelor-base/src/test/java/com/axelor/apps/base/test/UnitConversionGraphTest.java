@@ -0,0 +1,155 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
+import com.axelor.apps.base.service.UnitConversionGraph;
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UnitConversionGraphTest {
+
+  private static final Unit PIECE = unit(1L), DOZEN = unit(2L), BOX = unit(3L), METER = unit(4L);
+
+  private static Unit unit(Long id) {
+    Unit unit = new Unit();
+    unit.setId(id);
+    return unit;
+  }
+
+  private static UnitConversion coefficient(Unit startUnit, Unit endUnit, String coef) {
+    UnitConversion unitConversion = new UnitConversion();
+    unitConversion.setStartUnit(startUnit);
+    unitConversion.setEndUnit(endUnit);
+    unitConversion.setTypeSelect(UnitConversionRepository.TYPE_COEFF);
+    unitConversion.setCoef(new BigDecimal(coef));
+    return unitConversion;
+  }
+
+  private static UnitConversion formula(Unit startUnit, Unit endUnit, String formula) {
+    UnitConversion unitConversion = new UnitConversion();
+    unitConversion.setStartUnit(startUnit);
+    unitConversion.setEndUnit(endUnit);
+    unitConversion.setTypeSelect(UnitConversionRepository.TYPE_FORMULA);
+    unitConversion.setFormula(formula);
+    return unitConversion;
+  }
+
+  private static Product product(String length) {
+    Product product = new Product();
+    product.setLength(new BigDecimal(length));
+    return product;
+  }
+
+  private static BigDecimal getCoefficient(UnitConversionGraph graph, Unit start, Unit end) {
+    return graph.getCoefficient(start.getId(), end.getId(), null);
+  }
+
+  @Test
+  public void testCoefficient() {
+
+    UnitConversionGraph graph =
+        new UnitConversionGraph(Arrays.asList(coefficient(DOZEN, PIECE, "12")));
+
+    Assert.assertEquals(new BigDecimal("12"), getCoefficient(graph, DOZEN, PIECE));
+    Assert.assertEquals(new BigDecimal("0.083333333333"), getCoefficient(graph, PIECE, DOZEN));
+    Assert.assertNull(getCoefficient(graph, PIECE, BOX));
+  }
+
+  @Test
+  public void testFirstConversionWins() {
+
+    UnitConversionGraph graph =
+        new UnitConversionGraph(
+            Arrays.asList(coefficient(PIECE, DOZEN, "0.08"), coefficient(DOZEN, PIECE, "12")));
+
+    Assert.assertEquals(new BigDecimal("0.08"), getCoefficient(graph, PIECE, DOZEN));
+    Assert.assertEquals(new BigDecimal("12.500000000000"), getCoefficient(graph, DOZEN, PIECE));
+  }
+
+  @Test
+  public void testPath() {
+
+    UnitConversionGraph graph =
+        new UnitConversionGraph(
+            Arrays.asList(coefficient(DOZEN, PIECE, "12"), coefficient(BOX, DOZEN, "10")));
+
+    Assert.assertEquals(new BigDecimal("120.000000000000"), getCoefficient(graph, BOX, PIECE));
+    Assert.assertEquals(new BigDecimal("0.008333333333"), getCoefficient(graph, PIECE, BOX));
+  }
+
+  @Test
+  public void testFormula() {
+
+    UnitConversionGraph graph =
+        new UnitConversionGraph(
+            Arrays.asList(
+                formula(PIECE, METER, "$Product.length$ * 2"), coefficient(BOX, PIECE, "4")));
+
+    Assert.assertNull(getCoefficient(graph, PIECE, METER));
+    Assert.assertEquals(
+        0, new BigDecimal("3").compareTo(graph.getCoefficient(1L, 4L, product("1.5"))));
+    Assert.assertEquals(
+        0, new BigDecimal("0.25").compareTo(graph.getCoefficient(4L, 1L, product("2"))));
+    // the transitive conversions only go through coefficients
+    Assert.assertNull(graph.getCoefficient(3L, 4L, product("2")));
+  }
+
+  @Test
+  public void testNullFormula() {
+
+    UnitConversionGraph graph =
+        new UnitConversionGraph(
+            Arrays.asList(formula(PIECE, METER, null), formula(PIECE, METER, "$Product.length$")));
+
+    // a conversion without formula is ignored
+    Assert.assertEquals(
+        0, new BigDecimal("1.5").compareTo(graph.getCoefficient(1L, 4L, product("1.5"))));
+  }
+
+  /** The compiled formula gives the result of the evaluation of the rendered formula. */
+  @Test
+  public void testCompiledFormula() {
+
+    CompilerConfiguration conf = new CompilerConfiguration();
+    ImportCustomizer customizer = new ImportCustomizer();
+    customizer.addStaticStars("java.lang.Math");
+    conf.addCompilationCustomizers(customizer);
+
+    UnitConversionGraph graph =
+        new UnitConversionGraph(
+            Arrays.asList(formula(PIECE, METER, "ceil($Product.length$ * 2)")));
+
+    for (int i = 0; i < 10; i++) {
+      Product product = product(i + ".3");
+      GroovyShell shell = new GroovyShell(new Binding(), conf);
+      Object result = shell.evaluate("ceil(" + product.getLength() + " * 2)");
+      Assert.assertEquals(
+          0, new BigDecimal(result.toString()).compareTo(graph.getCoefficient(1L, 4L, product)));
+    }
+  }
+}
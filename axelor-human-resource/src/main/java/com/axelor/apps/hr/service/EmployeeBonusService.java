@@ -18,6 +18,7 @@
 package com.axelor.apps.hr.service;
 
 import com.axelor.apps.base.db.Period;
+import com.axelor.apps.base.service.expression.ExpressionService;
 import com.axelor.apps.hr.db.Employee;
 import com.axelor.apps.hr.db.EmployeeBonusMgt;
 import com.axelor.apps.hr.db.EmployeeBonusMgtLine;
@@ -29,19 +30,13 @@ import com.axelor.apps.hr.service.employee.EmployeeServiceImpl;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.inject.Beans;
-import com.axelor.tool.template.TemplateMaker;
 import com.google.common.base.Strings;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
-import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
-import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import org.codehaus.groovy.control.CompilerConfiguration;
-import org.codehaus.groovy.control.customizers.ImportCustomizer;
 
 public class EmployeeBonusService {
 
@@ -51,7 +46,12 @@ public class EmployeeBonusService {
 
   @Inject EmployeeServiceImpl employeeService;
 
-  private static final char TEMPLATE_DELIMITER = '$';
+  @Inject ExpressionService expressionService;
+
+  protected static final String AGE = "__age__",
+      SENIORITY = "__seniority__",
+      WORKING_DAYS = "__workingDays__",
+      TOTAL_WORKING_DAYS = "__totalWorkingDays__";
 
   @Transactional
   public void compute(EmployeeBonusMgt bonus) throws AxelorException {
@@ -65,14 +65,12 @@ public class EmployeeBonusService {
             .all()
             .filter("self.mainEmploymentContract.payCompany = ?1", bonus.getCompany())
             .fetch();
-    TemplateMaker maker = new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
-    String eval;
-    CompilerConfiguration conf = new CompilerConfiguration();
-    ImportCustomizer customizer = new ImportCustomizer();
-    customizer.addStaticStars("java.lang.Math");
-    conf.addCompilationCustomizers(customizer);
-    Binding binding = new Binding();
-    GroovyShell shell = new GroovyShell(binding, conf);
+
+    // the formulas are the same for all the employees, so that they are only compiled once
+    HRConfig hrConfig = bonus.getCompany().getHrConfig();
+    String applicationCondition =
+        getFormulaTemplate(bonus.getEmployeeBonusType().getApplicationCondition(), hrConfig);
+    String formula = getFormulaTemplate(bonus.getEmployeeBonusType().getFormula(), hrConfig);
 
     Integer employeeBonusStatus = EmployeeBonusMgtRepository.STATUS_CALCULATED;
     for (Employee employee : allEmployee) {
@@ -89,52 +87,34 @@ public class EmployeeBonusService {
         }
       }
 
-      maker.setContext(employee, "Employee");
       EmployeeBonusMgtLine line = new EmployeeBonusMgtLine();
       line.setEmployeeBonusMgt(bonus);
       line.setEmployee(employee);
-      maker.addInContext("EmployeeBonusMgtLine", line);
-      String formula = bonus.getEmployeeBonusType().getApplicationCondition();
-      Integer lineStatus = EmployeeBonusMgtLineRepository.STATUS_CALCULATED;
+      Map<String, Object> bindings = null;
       try {
-        formula =
-            replaceExpressionInFormula(
-                formula, bonus.getCompany().getHrConfig(), employee, bonus.getPayPeriod());
+        bindings = getFormulaBindings(hrConfig, employee, bonus.getPayPeriod());
+        bindings.put("EmployeeBonusMgtLine", line);
       } catch (Exception e) {
         TraceBackService.trace(e);
-        formula = "true";
-        lineStatus = EmployeeBonusMgtLineRepository.STATUS_ANOMALY;
+        bindings = null;
       }
-      maker.setTemplate(formula);
-      eval = maker.make();
-
-      if (shell.evaluate(eval).toString().equals("true")) {
-        try {
-          formula =
-              replaceExpressionInFormula(
-                  bonus.getEmployeeBonusType().getFormula(),
-                  bonus.getCompany().getHrConfig(),
-                  employee,
-                  bonus.getPayPeriod());
-        } catch (Exception e) {
-          lineStatus = EmployeeBonusMgtLineRepository.STATUS_ANOMALY;
-        }
 
-        line.setStatusSelect(lineStatus);
+      // nothing can be evaluated without the bindings or the formulas
+      if (bindings == null || applicationCondition == null || formula == null) {
+        line.setStatusSelect(EmployeeBonusMgtLineRepository.STATUS_ANOMALY);
+        employeeBonusStatus = EmployeeBonusMgtRepository.STATUS_ANOMALY;
+        employeeBonusMgtLineRepo.save(line);
+        continue;
+      }
 
-        if (lineStatus.equals(EmployeeBonusMgtLineRepository.STATUS_ANOMALY)) {
-          employeeBonusStatus = EmployeeBonusMgtRepository.STATUS_ANOMALY;
-          employeeBonusMgtLineRepo.save(line);
-          continue;
-        }
+      if (expressionService.evaluateBoolean(applicationCondition, bindings)) {
+        line.setStatusSelect(EmployeeBonusMgtLineRepository.STATUS_CALCULATED);
 
         line.setSeniorityDate(employee.getSeniorityDate());
         line.setCoef(employee.getBonusCoef());
         line.setWeeklyPlanning(employee.getWeeklyPlanning());
 
-        maker.setTemplate(formula);
-        eval = maker.make();
-        line.setAmount(new BigDecimal(shell.evaluate(eval).toString()));
+        line.setAmount(expressionService.evaluateDecimal(formula, bindings));
 
         employeeBonusMgtLineRepo.save(line);
       }
@@ -143,37 +123,51 @@ public class EmployeeBonusService {
     employeeBonusMgtRepo.save(bonus);
   }
 
-  public String replaceExpressionInFormula(
-      String formula, HRConfig hrConfig, Employee employee, Period period) throws AxelorException {
+  /**
+   * Replace the variables of the HR configuration in a formula by the tags of their value.
+   *
+   * @return the formula to evaluate with {@link #getFormulaBindings(HRConfig, Employee, Period)},
+   *     or null if the formula is null
+   */
+  public String getFormulaTemplate(String formula, HRConfig hrConfig) {
+
+    if (formula == null) {
+      return null;
+    }
+
+    LinkedHashMap<String, String> bindingNames = new LinkedHashMap<>();
+    bindingNames.put(hrConfig.getAgeVariableName(), AGE);
+    bindingNames.put(hrConfig.getSeniorityVariableName(), SENIORITY);
+    bindingNames.put(hrConfig.getWorkingDaysVariableName(), WORKING_DAYS);
+    bindingNames.put(hrConfig.getTotalWorkingDaysVariableName(), TOTAL_WORKING_DAYS);
+
+    return expressionService.replaceVariables(formula, bindingNames);
+  }
+
+  public Map<String, Object> getFormulaBindings(HRConfig hrConfig, Employee employee, Period period)
+      throws AxelorException {
+
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("Employee", employee);
 
     if (!Strings.isNullOrEmpty(hrConfig.getAgeVariableName())) {
-      formula =
-          formula.replace(
-              hrConfig.getAgeVariableName(),
-              String.valueOf(employeeService.getAge(employee, period.getFromDate())));
+      bindings.put(AGE, employeeService.getAge(employee, period.getFromDate()));
     }
     if (!Strings.isNullOrEmpty(hrConfig.getSeniorityVariableName())) {
-      formula =
-          formula.replace(
-              hrConfig.getSeniorityVariableName(),
-              String.valueOf(employeeService.getLengthOfService(employee, period.getFromDate())));
+      bindings.put(SENIORITY, employeeService.getLengthOfService(employee, period.getFromDate()));
     }
     if (!Strings.isNullOrEmpty(hrConfig.getWorkingDaysVariableName())) {
-      formula =
-          formula.replace(
-              hrConfig.getWorkingDaysVariableName(),
-              String.valueOf(
-                  employeeService.getDaysWorkedInPeriod(
-                      employee, period.getFromDate(), period.getToDate())));
+      bindings.put(
+          WORKING_DAYS,
+          employeeService.getDaysWorkedInPeriod(
+              employee, period.getFromDate(), period.getToDate()));
     }
     if (!Strings.isNullOrEmpty(hrConfig.getTotalWorkingDaysVariableName())) {
-      formula =
-          formula.replace(
-              hrConfig.getTotalWorkingDaysVariableName(),
-              String.valueOf(
-                  employeeService.getDaysWorksInPeriod(
-                      employee, period.getFromDate(), period.getToDate())));
+      bindings.put(
+          TOTAL_WORKING_DAYS,
+          employeeService.getDaysWorksInPeriod(
+              employee, period.getFromDate(), period.getToDate()));
     }
-    return formula;
+    return bindings;
   }
 }
@@ -32,6 +32,7 @@
  */
 package com.axelor.apps.hr.service.batch;
 
+import com.axelor.apps.base.service.expression.ExpressionService;
 import com.axelor.apps.hr.db.Employee;
 import com.axelor.apps.hr.db.HRConfig;
 import com.axelor.apps.hr.db.HrBatch;
@@ -52,18 +53,15 @@ import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
-import com.axelor.tool.template.TemplateMaker;
 import com.beust.jcommander.internal.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
-import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
-import org.codehaus.groovy.control.CompilerConfiguration;
-import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,22 +73,25 @@ public class BatchSeniorityLeaveManagement extends BatchStrategy {
   int noValueAnomaly;
   int confAnomaly;
 
-  private static final char TEMPLATE_DELIMITER = '$';
-  protected TemplateMaker maker;
+  protected static final String SENIORITY = "__seniority__", AGE = "__age__";
+
   protected HRConfig hrConfig;
 
   protected LeaveLineRepository leaveLineRepository;
   protected LeaveManagementRepository leaveManagementRepository;
+  protected ExpressionService expressionService;
 
   @Inject
   public BatchSeniorityLeaveManagement(
       LeaveManagementService leaveManagementService,
       LeaveLineRepository leaveLineRepository,
-      LeaveManagementRepository leaveManagementRepository) {
+      LeaveManagementRepository leaveManagementRepository,
+      ExpressionService expressionService) {
 
     super(leaveManagementService);
     this.leaveLineRepository = leaveLineRepository;
     this.leaveManagementRepository = leaveManagementRepository;
+    this.expressionService = expressionService;
   }
 
   @Override
@@ -110,7 +111,6 @@ public class BatchSeniorityLeaveManagement extends BatchStrategy {
     total = 0;
     noValueAnomaly = 0;
     confAnomaly = 0;
-    this.maker = new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
     hrConfig =
         Beans.get(HRConfigRepository.class)
             .all()
@@ -167,7 +167,6 @@ public class BatchSeniorityLeaveManagement extends BatchStrategy {
 
     batch = batchRepo.find(batch.getId());
     int count = 0;
-    String eval = null;
     LeaveLine leaveLine = null;
     BigDecimal quantity = BigDecimal.ZERO;
 
@@ -208,29 +207,23 @@ public class BatchSeniorityLeaveManagement extends BatchStrategy {
 
         if (rule.getExecutiveStatusSelect()
             == employee.getMainEmploymentContract().getExecutiveStatusSelect()) {
-          maker.setContext(employee, "Employee");
-          String formula = rule.getFormula();
-          formula =
-              formula.replace(
-                  hrConfig.getSeniorityVariableName(),
-                  String.valueOf(
-                      Beans.get(EmployeeService.class)
-                          .getLengthOfService(employee, batch.getHrBatch().getReferentialDate())));
-          formula =
-              formula.replace(
-                  hrConfig.getAgeVariableName(),
-                  String.valueOf(
-                      Beans.get(EmployeeService.class)
-                          .getAge(employee, batch.getHrBatch().getReferentialDate())));
-          maker.setTemplate(formula);
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          if (shell.evaluate(eval).toString().equals("true")) {
+          // the formula of a rule is the same for all the employees, compiled once for the batch
+          LinkedHashMap<String, String> bindingNames = new LinkedHashMap<>();
+          bindingNames.put(hrConfig.getSeniorityVariableName(), SENIORITY);
+          bindingNames.put(hrConfig.getAgeVariableName(), AGE);
+          String formula = expressionService.replaceVariables(rule.getFormula(), bindingNames);
+
+          Map<String, Object> bindings = new HashMap<>();
+          bindings.put("Employee", employee);
+          bindings.put(
+              SENIORITY,
+              Beans.get(EmployeeService.class)
+                  .getLengthOfService(employee, batch.getHrBatch().getReferentialDate()));
+          bindings.put(
+              AGE,
+              Beans.get(EmployeeService.class)
+                  .getAge(employee, batch.getHrBatch().getReferentialDate()));
+          if (expressionService.evaluateBoolean(formula, bindings)) {
             quantity = rule.getLeaveDayNumber();
             break;
           }
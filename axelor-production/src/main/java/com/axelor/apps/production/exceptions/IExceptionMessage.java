@@ -39,6 +39,13 @@ public interface IExceptionMessage {
   /** Batch Compute work in progress valuation */
   static final String BATCH_COMPUTE_VALUATION = /*$$(*/ "Computed work in progress valuation" /*)*/;
 
+  /** Batch Compute bill of material cost price */
+  static final String BATCH_COMPUTE_BILL_OF_MATERIAL_COST_PRICE = /*$$(*/
+      "Bill(s) of material costed" /*)*/;
+
+  static final String BATCH_BILL_OF_MATERIAL_CYCLE = /*$$(*/
+      "The bill of material %s contains itself through its sub bills of material" /*)*/;
+
   static final String IN_OR_OUT_INVALID_ARG = /*$$(*/ "inOrOut is invalid" /*)*/;
 
   /** Bill of Material Service */
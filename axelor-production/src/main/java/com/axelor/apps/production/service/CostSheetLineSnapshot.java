@@ -0,0 +1,157 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.production.db.CostSheetGroup;
+import com.axelor.apps.production.db.CostSheetLine;
+import com.axelor.apps.production.db.WorkCenter;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy of the lines computed under a cost sheet line, referencing the related records by id so
+ * that it stays valid once the persistence context is cleared. Used to explode a sub bill of
+ * material only once during a costing run.
+ */
+public class CostSheetLineSnapshot {
+
+  protected final String code;
+  protected final String name;
+
+  /** Level relative to the line the snapshot has been taken from. */
+  protected final int bomLevel;
+
+  protected final BigDecimal consumptionQty;
+  protected final BigDecimal costPrice;
+  protected final Integer typeSelect;
+  protected final Long costSheetGroupId;
+  protected final Long productId;
+  protected final Long unitId;
+  protected final Long workCenterId;
+
+  /**
+   * Snapshots of the sub-lines. A line appearing twice in the list of its parent, as the indirect
+   * cost lines do, gives the same snapshot twice.
+   */
+  protected final List<CostSheetLineSnapshot> subLineList;
+
+  /**
+   * Take a snapshot of the lines under a cost sheet line.
+   *
+   * @param costSheetLine
+   */
+  public CostSheetLineSnapshot(CostSheetLine costSheetLine) {
+    this(costSheetLine, getBomLevel(costSheetLine), new IdentityHashMap<>());
+  }
+
+  protected CostSheetLineSnapshot(
+      CostSheetLine costSheetLine,
+      int rootBomLevel,
+      Map<CostSheetLine, CostSheetLineSnapshot> snapshotMap) {
+
+    this.code = costSheetLine.getCode();
+    this.name = costSheetLine.getName();
+    this.bomLevel = getBomLevel(costSheetLine) - rootBomLevel;
+    this.consumptionQty = costSheetLine.getConsumptionQty();
+    this.costPrice = costSheetLine.getCostPrice();
+    this.typeSelect = costSheetLine.getTypeSelect();
+    this.costSheetGroupId = getId(costSheetLine.getCostSheetGroup());
+    this.productId = getId(costSheetLine.getProduct());
+    this.unitId = getId(costSheetLine.getUnit());
+    this.workCenterId = getId(costSheetLine.getWorkCenter());
+
+    snapshotMap.put(costSheetLine, this);
+
+    if (costSheetLine.getCostSheetLineList() == null
+        || costSheetLine.getCostSheetLineList().isEmpty()) {
+      this.subLineList = Collections.emptyList();
+      return;
+    }
+
+    List<CostSheetLineSnapshot> snapshotList = new ArrayList<>();
+    for (CostSheetLine subLine : costSheetLine.getCostSheetLineList()) {
+      CostSheetLineSnapshot snapshot = snapshotMap.get(subLine);
+      snapshotList.add(
+          snapshot != null
+              ? snapshot
+              : new CostSheetLineSnapshot(subLine, rootBomLevel, snapshotMap));
+    }
+    this.subLineList = Collections.unmodifiableList(snapshotList);
+  }
+
+  /**
+   * Add a copy of the lines of the snapshot under a cost sheet line, at the levels they had under
+   * the original line.
+   *
+   * @param parentCostSheetLine
+   */
+  public void copySubLines(CostSheetLine parentCostSheetLine) {
+    Map<CostSheetLineSnapshot, CostSheetLine> copyMap = new IdentityHashMap<>();
+    int rootBomLevel = getBomLevel(parentCostSheetLine);
+    for (CostSheetLineSnapshot snapshot : subLineList) {
+      snapshot.copy(parentCostSheetLine, rootBomLevel, copyMap);
+    }
+  }
+
+  protected void copy(
+      CostSheetLine parentCostSheetLine,
+      int rootBomLevel,
+      Map<CostSheetLineSnapshot, CostSheetLine> copyMap) {
+
+    CostSheetLine costSheetLine = copyMap.get(this);
+
+    if (costSheetLine == null) {
+      costSheetLine = new CostSheetLine(code, name);
+      costSheetLine.setBomLevel(rootBomLevel + bomLevel);
+      costSheetLine.setConsumptionQty(consumptionQty);
+      costSheetLine.setCostPrice(costPrice);
+      costSheetLine.setTypeSelect(typeSelect);
+      costSheetLine.setCostSheetGroup(getReference(CostSheetGroup.class, costSheetGroupId));
+      costSheetLine.setProduct(getReference(Product.class, productId));
+      costSheetLine.setUnit(getReference(Unit.class, unitId));
+      costSheetLine.setWorkCenter(getReference(WorkCenter.class, workCenterId));
+      copyMap.put(this, costSheetLine);
+
+      for (CostSheetLineSnapshot snapshot : subLineList) {
+        snapshot.copy(costSheetLine, rootBomLevel, copyMap);
+      }
+    }
+
+    parentCostSheetLine.addCostSheetLineListItem(costSheetLine);
+  }
+
+  protected static int getBomLevel(CostSheetLine costSheetLine) {
+    return costSheetLine.getBomLevel() != null ? costSheetLine.getBomLevel() : 0;
+  }
+
+  protected static Long getId(Model model) {
+    return model != null ? model.getId() : null;
+  }
+
+  protected static <T> T getReference(Class<T> klass, Long id) {
+    return id != null ? JPA.em().getReference(klass, id) : null;
+  }
+}
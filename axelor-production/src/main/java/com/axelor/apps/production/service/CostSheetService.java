@@ -30,4 +30,13 @@ public interface CostSheetService {
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public CostSheet computeCostPrice(ManufOrder manufOrder) throws AxelorException;
+
+  /**
+   * Start a costing run: until {@link #endCostingRun()}, a bill of material is exploded only the
+   * first time it is costed, and its lines are copied in the next cost sheets. The costs of its
+   * components and operations must not change after that during the run.
+   */
+  public void startCostingRun();
+
+  public void endCostingRun();
 }
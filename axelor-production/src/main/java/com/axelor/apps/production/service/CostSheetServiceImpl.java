@@ -34,7 +34,9 @@ import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +56,12 @@ public class CostSheetServiceImpl implements CostSheetService {
   protected boolean manageResidualProductOnBom;
   protected CostSheet costSheet;
 
+  /**
+   * Lines of the bills of material exploded during the costing run, by bill of material id. Null
+   * outside of a costing run.
+   */
+  protected Map<Long, CostSheetLineSnapshot> costSheetLineSnapshotMap;
+
   @Inject
   public CostSheetServiceImpl(
       AppProductionService appProductionService,
@@ -79,7 +87,7 @@ public class CostSheetServiceImpl implements CostSheetService {
 
     costSheet.addCostSheetLineListItem(producedCostSheetLine);
 
-    this._computeCostPrice(billOfMaterial, 0, producedCostSheetLine);
+    this._computeOrCopyCostPrice(billOfMaterial, 0, producedCostSheetLine);
 
     this.computeResidualProduct(billOfMaterial);
 
@@ -92,6 +100,16 @@ public class CostSheetServiceImpl implements CostSheetService {
     return costSheet;
   }
 
+  @Override
+  public void startCostingRun() {
+    costSheetLineSnapshotMap = new HashMap<>();
+  }
+
+  @Override
+  public void endCostingRun() {
+    costSheetLineSnapshotMap = null;
+  }
+
   protected void init() {
 
     AppProduction appProduction = appProductionService.getAppProduction();
@@ -202,6 +220,32 @@ public class CostSheetServiceImpl implements CostSheetService {
         parentCostSheetLine);
   }
 
+  /**
+   * Explode the bill of material under the cost sheet line, or copy the lines it has already been
+   * exploded into during the costing run.
+   */
+  protected void _computeOrCopyCostPrice(
+      BillOfMaterial billOfMaterial, int bomLevel, CostSheetLine parentCostSheetLine)
+      throws AxelorException {
+
+    if (costSheetLineSnapshotMap == null || billOfMaterial.getId() == null) {
+      this._computeCostPrice(billOfMaterial, bomLevel, parentCostSheetLine);
+      return;
+    }
+
+    CostSheetLineSnapshot snapshot = costSheetLineSnapshotMap.get(billOfMaterial.getId());
+
+    if (snapshot != null) {
+      snapshot.copySubLines(parentCostSheetLine);
+      return;
+    }
+
+    this._computeCostPrice(billOfMaterial, bomLevel, parentCostSheetLine);
+
+    costSheetLineSnapshotMap.put(
+        billOfMaterial.getId(), new CostSheetLineSnapshot(parentCostSheetLine));
+  }
+
   protected void _computeToConsumeProduct(
       BillOfMaterial billOfMaterial, int bomLevel, CostSheetLine parentCostSheetLine)
       throws AxelorException {
@@ -235,7 +279,7 @@ public class CostSheetServiceImpl implements CostSheetService {
           }
 
           if (billOfMaterialLine.getDefineSubBillOfMaterial()) {
-            this._computeCostPrice(billOfMaterialLine, bomLevel, costSheetLine);
+            this._computeOrCopyCostPrice(billOfMaterialLine, bomLevel, costSheetLine);
           }
         }
       }
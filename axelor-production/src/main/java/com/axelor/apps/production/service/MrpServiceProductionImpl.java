@@ -52,7 +52,15 @@ import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,13 +106,97 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
   }
 
   @Override
-  protected void completeMrp(Mrp mrp) throws AxelorException {
+  protected void createMrpLines() throws AxelorException {
 
-    super.completeMrp(mrp);
+    super.createMrpLines();
 
     this.createManufOrderMrpLines();
   }
 
+  @Override
+  protected Set<Long> getNetChangeProductIdSet(LocalDateTime lastCalculationDateT) {
+
+    Set<Long> productIdSet = super.getNetChangeProductIdSet(lastCalculationDateT);
+
+    productIdSet.addAll(
+        this.getModifiedProductIdList("ManufOrder", "self.product", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("ProdProduct", "self.product", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList(
+            "ProdProduct", "self.product", "self.toProduceManufOrder", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList(
+            "ProdProduct", "self.product", "self.toConsumeManufOrder", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList(
+            "ProdProduct", "self.product", "self.toConsumeOperationOrder", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("BillOfMaterial", "self.product", lastCalculationDateT));
+
+    // A modified component of a bill of material impacts the product of the bill of material
+    productIdSet.addAll(
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.product.id FROM BillOfMaterial self "
+                    + "JOIN self.billOfMaterialSet subBillOfMaterial "
+                    + "WHERE self.product.id IN (:productIdSet) "
+                    + "AND COALESCE(subBillOfMaterial.updatedOn, subBillOfMaterial.createdOn) "
+                    + ">= :sinceDateT",
+                Long.class)
+            .setParameter("productIdSet", this.productMap.keySet())
+            .setParameter("sinceDateT", lastCalculationDateT)
+            .getResultList());
+
+    return productIdSet;
+  }
+
+  /**
+   * Add the products linked to the products of the set by a default bill of material, in both
+   * directions. The needs of a component come from the proposals of all the products using it, so
+   * the whole group of products linked by their bills of materials has to be computed again.
+   */
+  @Override
+  protected void addRelatedProducts(Set<Long> productIdSet) {
+
+    if (productIdSet.isEmpty()) {
+      return;
+    }
+
+    Map<Long, Set<Long>> relatedProductMap = new HashMap<>();
+
+    List<Object[]> componentList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, subBillOfMaterial.product.id FROM Product self "
+                    + "JOIN self.defaultBillOfMaterial billOfMaterial "
+                    + "JOIN billOfMaterial.billOfMaterialSet subBillOfMaterial "
+                    + "WHERE self.id IN (:productIdSet)",
+                Object[].class)
+            .setParameter("productIdSet", this.productMap.keySet())
+            .getResultList();
+
+    for (Object[] component : componentList) {
+      Long productId = (Long) component[0];
+      Long subProductId = (Long) component[1];
+      if (this.productMap.containsKey(subProductId)) {
+        relatedProductMap.computeIfAbsent(productId, id -> new HashSet<>()).add(subProductId);
+        relatedProductMap.computeIfAbsent(subProductId, id -> new HashSet<>()).add(productId);
+      }
+    }
+
+    Deque<Long> productIdQueue = new ArrayDeque<>(productIdSet);
+
+    while (!productIdQueue.isEmpty()) {
+      for (Long relatedProductId :
+          relatedProductMap.getOrDefault(productIdQueue.poll(), Collections.emptySet())) {
+        if (productIdSet.add(relatedProductId)) {
+          productIdQueue.add(relatedProductId);
+        }
+      }
+    }
+  }
+
   // Manufacturing order AND manufacturing order need
   protected void createManufOrderMrpLines() throws AxelorException {
 
@@ -127,7 +219,7 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
                 "self.product.id in (?1) AND self.prodProcess.stockLocation in (?2) "
                     + "AND self.statusSelect NOT IN (?3) AND self.plannedStartDateT > ?4",
                 this.productMap.keySet(),
-                this.stockLocationList,
+                this.getStockLocationList(),
                 statusList, // TODO ETRANGE ICI : DEVRAIT ETRE
                 // L'INVERSE.!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
                 today.atStartOfDay())
@@ -0,0 +1,247 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.batch;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.apps.production.db.BillOfMaterial;
+import com.axelor.apps.production.db.repo.BillOfMaterialRepository;
+import com.axelor.apps.production.exceptions.IExceptionMessage;
+import com.axelor.apps.production.service.BillOfMaterialService;
+import com.axelor.apps.production.service.CostSheetService;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.persistence.TypedQuery;
+
+/**
+ * Compute the cost sheets of the bills of material, and the cost price of the products they are
+ * the default bill of material of.
+ *
+ * <p>The bills of material are costed from the sub-assemblies up, so that the cost price of a sub
+ * bill of material product is updated before it is used, and each bill of material is exploded
+ * once for the whole run. The cost sheets are written by chunks, in one transaction per chunk.
+ */
+public class BatchComputeBillOfMaterialCostPrice extends AbstractBatch {
+
+  protected CostSheetService costSheetService;
+  protected BillOfMaterialService billOfMaterialService;
+  protected BillOfMaterialRepository billOfMaterialRepo;
+
+  @Inject
+  public BatchComputeBillOfMaterialCostPrice(
+      CostSheetService costSheetService,
+      BillOfMaterialService billOfMaterialService,
+      BillOfMaterialRepository billOfMaterialRepo) {
+    this.costSheetService = costSheetService;
+    this.billOfMaterialService = billOfMaterialService;
+    this.billOfMaterialRepo = billOfMaterialRepo;
+  }
+
+  @Override
+  protected void process() {
+
+    List<Long> idList = new ArrayList<>();
+    List<Long> cyclicIdList = new ArrayList<>();
+    this.sortBillOfMaterials(idList, cyclicIdList);
+
+    for (Long id : cyclicIdList) {
+      incrementAnomaly();
+      TraceBackService.trace(
+          new AxelorException(
+              TraceBackRepository.CATEGORY_INCONSISTENCY,
+              I18n.get(IExceptionMessage.BATCH_BILL_OF_MATERIAL_CYCLE),
+              billOfMaterialRepo.find(id).getFullName()),
+          null,
+          batch.getId());
+    }
+    JPA.clear();
+
+    costSheetService.startCostingRun();
+    try {
+      for (List<Long> chunkIdList : Lists.partition(idList, getChunkSize())) {
+        this.computeCostPrices(chunkIdList);
+        checkPoint();
+      }
+    } finally {
+      costSheetService.endCostingRun();
+    }
+  }
+
+  /**
+   * Sort the bills of material to cost after their sub bills of material.
+   *
+   * @param idList filled with the ids of the bills of material to cost, in costing order
+   * @param cyclicIdList filled with the ids of the bills of material to cost that contain
+   *     themselves, directly or through a sub bill of material, and cannot be costed
+   */
+  protected void sortBillOfMaterials(List<Long> idList, List<Long> cyclicIdList) {
+
+    Map<Long, List<Long>> subIdListMap = new HashMap<>();
+
+    for (Object[] row :
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, subBillOfMaterial.id FROM BillOfMaterial self "
+                    + "JOIN self.billOfMaterialSet subBillOfMaterial "
+                    + "WHERE subBillOfMaterial.defineSubBillOfMaterial = true",
+                Object[].class)
+            .getResultList()) {
+      subIdListMap.computeIfAbsent((Long) row[0], key -> new ArrayList<>()).add((Long) row[1]);
+    }
+
+    Set<Long> idSet = new HashSet<>(fetchIdsToCost());
+    Map<Long, Boolean> sortedMap = new HashMap<>();
+
+    for (Long id : new TreeSet<>(idSet)) {
+      this.sortBillOfMaterial(id, subIdListMap, idSet, sortedMap, idList, cyclicIdList);
+    }
+  }
+
+  /**
+   * Depth first visit of the sub bills of material, adding the bill of material to the list once
+   * all of them have been added.
+   *
+   * @param sortedMap false for the bills of material being visited or that are part of a cycle,
+   *     true for the sorted ones
+   * @return false if the bill of material is part of a cycle, or contains one
+   */
+  protected boolean sortBillOfMaterial(
+      Long id,
+      Map<Long, List<Long>> subIdListMap,
+      Set<Long> idSet,
+      Map<Long, Boolean> sortedMap,
+      List<Long> idList,
+      List<Long> cyclicIdList) {
+
+    Boolean sorted = sortedMap.get(id);
+    if (sorted != null) {
+      return sorted;
+    }
+
+    sortedMap.put(id, false);
+
+    boolean acyclic = true;
+    for (Long subId : subIdListMap.getOrDefault(id, Collections.emptyList())) {
+      acyclic &=
+          this.sortBillOfMaterial(subId, subIdListMap, idSet, sortedMap, idList, cyclicIdList);
+    }
+
+    sortedMap.put(id, acyclic);
+
+    if (idSet.contains(id)) {
+      (acyclic ? idList : cyclicIdList).add(id);
+    }
+
+    return acyclic;
+  }
+
+  protected List<Long> fetchIdsToCost() {
+
+    Company company = batch.getProductionBatch().getCompany();
+
+    TypedQuery<Long> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM BillOfMaterial self "
+                    + "WHERE self.defineSubBillOfMaterial = true AND self.personalized = false"
+                    + (company != null ? " AND self.company.id = :companyId" : ""),
+                Long.class);
+
+    if (company != null) {
+      query.setParameter("companyId", company.getId());
+    }
+
+    return query.getResultList();
+  }
+
+  /**
+   * Cost the bills of material of the chunk in one transaction. If one of them fails, the chunk is
+   * costed again one bill of material at a time, to keep the others.
+   */
+  protected void computeCostPrices(List<Long> idList) {
+
+    try {
+      this.saveCostPrices(idList);
+    } catch (Exception e) {
+      JPA.clear();
+      processChunk(idList, this::computeCostPrice);
+      return;
+    }
+
+    for (int i = 0; i < idList.size(); i++) {
+      incrementDone();
+    }
+
+    JPA.clear();
+  }
+
+  protected void computeCostPrice(Long id) throws AxelorException {
+    this.saveCostPrices(Collections.singletonList(id));
+    incrementDone();
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void saveCostPrices(List<Long> idList) throws AxelorException {
+
+    for (Long id : idList) {
+      BillOfMaterial billOfMaterial = billOfMaterialRepo.find(id);
+      costSheetService.computeCostPrice(billOfMaterial);
+
+      Product product = billOfMaterial.getProduct();
+      if (product.getCostTypeSelect() == ProductRepository.COST_TYPE_STANDARD
+          && billOfMaterial.equals(product.getDefaultBillOfMaterial())) {
+        billOfMaterialService.updateProductCostPrice(billOfMaterial);
+      }
+    }
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s "
+                + I18n.get(IExceptionMessage.BATCH_COMPUTE_BILL_OF_MATERIAL_COST_PRICE)
+                + "\n",
+            batch.getDone());
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+
+    addComment(comment);
+    super.stop();
+  }
+}
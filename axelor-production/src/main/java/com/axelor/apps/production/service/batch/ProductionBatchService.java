@@ -45,6 +45,9 @@ public class ProductionBatchService extends AbstractBatchService {
       case ProductionBatchRepository.ACTION_COMPUTE_WORK_IN_PROGRESS_VALUATION:
         batch = computeValuation(productionBatch);
         break;
+      case ProductionBatchRepository.ACTION_COMPUTE_BILL_OF_MATERIAL_COST_PRICE:
+        batch = computeBillOfMaterialCostPrice(productionBatch);
+        break;
       default:
         throw new AxelorException(
             TraceBackRepository.CATEGORY_INCONSISTENCY,
@@ -58,4 +61,8 @@ public class ProductionBatchService extends AbstractBatchService {
   public Batch computeValuation(ProductionBatch productionBatch) {
     return Beans.get(BatchComputeWorkInProgressValuation.class).run(productionBatch);
   }
+
+  public Batch computeBillOfMaterialCostPrice(ProductionBatch productionBatch) {
+    return Beans.get(BatchComputeBillOfMaterialCostPrice.class).run(productionBatch);
+  }
 }
@@ -53,6 +53,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -339,9 +340,17 @@ public class ConfiguratorCreatorServiceImpl implements ConfiguratorCreatorServic
    */
   protected void updateIndicatorsAttrs(
       ConfiguratorCreator creator, List<? extends ConfiguratorFormula> formulas) {
+    Map<String, List<ConfiguratorFormula>> formulaListMap = new HashMap<>();
+    for (ConfiguratorFormula formula : formulas) {
+      formulaListMap
+          .computeIfAbsent(formula.getMetaField().getName(), key -> new ArrayList<>())
+          .add(formula);
+    }
     List<MetaJsonField> indicators = creator.getIndicators();
     for (MetaJsonField indicator : indicators) {
-      for (ConfiguratorFormula formula : formulas) {
+      String fieldName = indicator.getName().substring(0, indicator.getName().indexOf('_'));
+      for (ConfiguratorFormula formula :
+          formulaListMap.getOrDefault(fieldName, Collections.emptyList())) {
         updateIndicatorAttrs(creator, indicator, formula);
       }
     }
@@ -0,0 +1,152 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.sale.service.configurator;
+
+import com.axelor.apps.sale.db.ConfiguratorCreator;
+import com.axelor.apps.sale.db.ConfiguratorFormula;
+import com.axelor.meta.db.MetaJsonField;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Formulas of a configurator creator indexed by indicator field name, with the attributes read by
+ * each formula, so that a change of an attribute only recomputes the indicators depending on it.
+ *
+ * <p>The attributes read by a formula are the identifiers of its source matching an attribute
+ * name. An identifier of a string literal or of a comment adds a useless dependency, never misses
+ * one.
+ */
+public class ConfiguratorFormulaGraph {
+
+  protected static final Pattern IDENTIFIER_PATTERN = Pattern.compile("[A-Za-z_$][\\w$]*");
+
+  /** The creator values the graph has been built from, to detect a change of the creator. */
+  protected final List<Object> source;
+
+  /**
+   * Formula of each indicator field name, the first formula of a field wins, even without formula
+   * text: the field is then computed to null.
+   */
+  protected final Map<String, String> formulaMap;
+
+  protected final Set<String> attributeNames;
+
+  protected final Map<String, Set<String>> dependentFieldNameMap;
+
+  public ConfiguratorFormulaGraph(ConfiguratorCreator creator) {
+
+    this.source = getSource(creator);
+
+    Set<String> attributeNames = new HashSet<>();
+    if (creator.getAttributes() != null) {
+      for (MetaJsonField attribute : creator.getAttributes()) {
+        attributeNames.add(attribute.getName());
+      }
+    }
+
+    Map<String, String> formulaMap = new LinkedHashMap<>();
+    Map<String, Set<String>> dependentFieldNameMap = new HashMap<>();
+
+    for (ConfiguratorFormula formula : getFormulas(creator)) {
+      String fieldName = formula.getMetaField().getName();
+      if (formulaMap.containsKey(fieldName)) {
+        continue;
+      }
+      formulaMap.put(fieldName, formula.getFormula());
+      if (formula.getFormula() == null) {
+        continue;
+      }
+
+      Matcher matcher = IDENTIFIER_PATTERN.matcher(formula.getFormula());
+      while (matcher.find()) {
+        if (attributeNames.contains(matcher.group())) {
+          dependentFieldNameMap
+              .computeIfAbsent(matcher.group(), key -> new LinkedHashSet<>())
+              .add(fieldName);
+        }
+      }
+    }
+
+    this.attributeNames = attributeNames;
+    this.formulaMap = formulaMap;
+    this.dependentFieldNameMap = dependentFieldNameMap;
+  }
+
+  protected static List<? extends ConfiguratorFormula> getFormulas(ConfiguratorCreator creator) {
+    List<? extends ConfiguratorFormula> formulas =
+        creator.getGenerateProduct()
+            ? creator.getConfiguratorProductFormulaList()
+            : creator.getConfiguratorSOLineFormulaList();
+    return formulas != null ? formulas : Collections.emptyList();
+  }
+
+  protected static List<Object> getSource(ConfiguratorCreator creator) {
+    List<Object> source = new ArrayList<>();
+    source.add(creator.getGenerateProduct());
+    for (ConfiguratorFormula formula : getFormulas(creator)) {
+      source.add(formula.getMetaField() != null ? formula.getMetaField().getName() : null);
+      source.add(formula.getFormula());
+    }
+    if (creator.getAttributes() != null) {
+      for (MetaJsonField attribute : creator.getAttributes()) {
+        source.add(attribute.getName());
+      }
+    }
+    return source;
+  }
+
+  /** Check if the graph has been built with the current formulas and attributes of the creator. */
+  public boolean isBuiltFrom(ConfiguratorCreator creator) {
+    return source.equals(getSource(creator));
+  }
+
+  /**
+   * @param fieldName name of the field computed by the formula, without the creator id suffix
+   * @return the formula, or null if the field has no formula
+   */
+  public String getFormula(String fieldName) {
+    return formulaMap.get(fieldName);
+  }
+
+  /** @return the names of the fields whose formula reads one of the attributes */
+  public Set<String> getDependentFieldNames(Set<String> attributeNames) {
+    Set<String> fieldNames = new HashSet<>();
+    for (String attributeName : attributeNames) {
+      fieldNames.addAll(dependentFieldNameMap.getOrDefault(attributeName, Collections.emptySet()));
+    }
+    return fieldNames;
+  }
+
+  /** @return true if the name is the name of an attribute of the creator */
+  public boolean hasAttribute(String name) {
+    return attributeNames.contains(name);
+  }
+
+  public Set<String> getAttributeNames() {
+    return dependentFieldNameMap.keySet();
+  }
+}
@@ -35,8 +35,14 @@ public interface ConfiguratorService {
    * @param configurator
    * @param attributes
    * @param indicators @return the new values of indicators
+   * @param changedAttributeName name of the attribute whose change triggered the update, only the
+   *     indicators depending on it are computed, or null to compute all of them
    */
-  void updateIndicators(Configurator configurator, JsonContext attributes, JsonContext indicators)
+  void updateIndicators(
+      Configurator configurator,
+      JsonContext attributes,
+      JsonContext indicators,
+      String changedAttributeName)
       throws AxelorException;
 
   /**
@@ -21,7 +21,6 @@ import com.axelor.apps.base.db.Product;
 import com.axelor.apps.base.db.repo.ProductRepository;
 import com.axelor.apps.sale.db.Configurator;
 import com.axelor.apps.sale.db.ConfiguratorCreator;
-import com.axelor.apps.sale.db.ConfiguratorFormula;
 import com.axelor.apps.sale.db.ConfiguratorSOLineFormula;
 import com.axelor.apps.sale.db.SaleOrder;
 import com.axelor.apps.sale.db.SaleOrderLine;
@@ -48,24 +47,50 @@ import com.axelor.script.GroovyScriptHelper;
 import com.axelor.script.ScriptHelper;
 import com.google.inject.persist.Transactional;
 import groovy.lang.MissingPropertyException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ConfiguratorServiceImpl implements ConfiguratorService {
 
+  /** Formula graph of each configurator creator, by creator id. */
+  private static final Map<Long, ConfiguratorFormulaGraph> formulaGraphMap =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Only the indicators whose formula reads the changed attribute are computed. All of them are
+   * computed when the changed attribute is unknown.
+   */
   @Override
   public void updateIndicators(
-      Configurator configurator, JsonContext jsonAttributes, JsonContext jsonIndicators)
+      Configurator configurator,
+      JsonContext jsonAttributes,
+      JsonContext jsonIndicators,
+      String changedAttributeName)
       throws AxelorException {
     if (configurator.getConfiguratorCreator() == null) {
       return;
     }
+    ConfiguratorFormulaGraph formulaGraph = getFormulaGraph(configurator.getConfiguratorCreator());
+    Set<String> fieldNamesToUpdate = getFieldNamesToUpdate(formulaGraph, changedAttributeName);
+    ScriptHelper scriptHelper =
+        jsonAttributes != null ? new GroovyScriptHelper(jsonAttributes) : null;
+
     List<MetaJsonField> indicators = configurator.getConfiguratorCreator().getIndicators();
     for (MetaJsonField indicator : indicators) {
+      String fieldName = indicator.getName().substring(0, indicator.getName().indexOf('_'));
+      if (fieldNamesToUpdate != null && !fieldNamesToUpdate.contains(fieldName)) {
+        continue;
+      }
       try {
+        String groovyFormula = formulaGraph.getFormula(fieldName);
         Object calculatedValue =
-            computeIndicatorValue(configurator, indicator.getName(), jsonAttributes);
+            groovyFormula != null && scriptHelper != null
+                ? scriptHelper.eval(groovyFormula)
+                : null;
         checkType(calculatedValue, indicator);
         jsonIndicators.put(indicator.getName(), calculatedValue);
       } catch (MissingPropertyException e) {
@@ -75,6 +100,28 @@ public class ConfiguratorServiceImpl implements ConfiguratorService {
     }
   }
 
+  /** Get the formula graph of the creator, built again if the creator has changed. */
+  protected ConfiguratorFormulaGraph getFormulaGraph(ConfiguratorCreator creator) {
+    ConfiguratorFormulaGraph formulaGraph =
+        creator.getId() != null ? formulaGraphMap.get(creator.getId()) : null;
+    if (formulaGraph == null || !formulaGraph.isBuiltFrom(creator)) {
+      formulaGraph = new ConfiguratorFormulaGraph(creator);
+      if (creator.getId() != null) {
+        formulaGraphMap.put(creator.getId(), formulaGraph);
+      }
+    }
+    return formulaGraph;
+  }
+
+  /** @return the names of the fields to compute, or null to compute all of them */
+  protected Set<String> getFieldNamesToUpdate(
+      ConfiguratorFormulaGraph formulaGraph, String changedAttributeName) {
+    if (changedAttributeName == null || !formulaGraph.hasAttribute(changedAttributeName)) {
+      return null;
+    }
+    return formulaGraph.getDependentFieldNames(Collections.singleton(changedAttributeName));
+  }
+
   @Override
   public void checkType(Object calculatedValue, MetaJsonField indicator) throws AxelorException {
     if (calculatedValue == null) {
@@ -260,23 +307,9 @@ public class ConfiguratorServiceImpl implements ConfiguratorService {
    */
   protected Object computeIndicatorValue(
       Configurator configurator, String indicatorName, JsonContext jsonAttributes) {
-    ConfiguratorCreator creator = configurator.getConfiguratorCreator();
-    List<? extends ConfiguratorFormula> formulas;
-    if (creator.getGenerateProduct()) {
-      formulas = creator.getConfiguratorProductFormulaList();
-    } else {
-      formulas = creator.getConfiguratorSOLineFormulaList();
-    }
-    String groovyFormula = null;
-    for (ConfiguratorFormula formula : formulas) {
-      String fieldName = indicatorName;
-      fieldName = fieldName.substring(0, fieldName.indexOf('_'));
-      MetaField metaField = formula.getMetaField();
-      if (metaField.getName().equals(fieldName)) {
-        groovyFormula = formula.getFormula();
-        break;
-      }
-    }
+    String groovyFormula =
+        getFormulaGraph(configurator.getConfiguratorCreator())
+            .getFormula(indicatorName.substring(0, indicatorName.indexOf('_')));
     if (groovyFormula == null || jsonAttributes == null) {
       return null;
     }
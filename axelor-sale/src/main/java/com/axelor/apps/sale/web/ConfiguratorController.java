@@ -49,7 +49,8 @@ public class ConfiguratorController {
 
   /**
    * Called from configurator form view, set values for the indicators JSON field. call {@link
-   * ConfiguratorService#updateIndicators(Configurator, JsonContext, JsonContext)}
+   * ConfiguratorService#updateIndicators(Configurator, JsonContext, JsonContext, String)} with the
+   * attribute whose onChange triggered the action, if any.
    *
    * @param request
    * @param response
@@ -60,13 +61,30 @@ public class ConfiguratorController {
     JsonContext jsonIndicators = (JsonContext) request.getContext().get("$indicators");
     configurator = configuratorRepository.find(configurator.getId());
     try {
-      configuratorService.updateIndicators(configurator, jsonAttributes, jsonIndicators);
+      configuratorService.updateIndicators(
+          configurator,
+          jsonAttributes,
+          jsonIndicators,
+          getChangedAttributeName(request.getContext().get("_source")));
       response.setValue("indicators", request.getContext().get("indicators"));
     } catch (Exception e) {
       TraceBackService.trace(response, e);
     }
   }
 
+  /**
+   * @param source the name of the field whose onChange triggered the action, an attribute field is
+   *     prefixed by its json field name
+   * @return the name of the attribute, or null if the action was not triggered by a field
+   */
+  protected String getChangedAttributeName(Object source) {
+    if (!(source instanceof String)) {
+      return null;
+    }
+    String name = (String) source;
+    return name.substring(Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) + 1);
+  }
+
   /**
    * Called from configurator form view, call {@link
    * ConfiguratorService#generateProduct(Configurator, JsonContext, JsonContext)}
@@ -0,0 +1,98 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.sale.test;
+
+import com.axelor.apps.sale.db.ConfiguratorCreator;
+import com.axelor.apps.sale.db.ConfiguratorProductFormula;
+import com.axelor.apps.sale.service.configurator.ConfiguratorFormulaGraph;
+import com.axelor.meta.db.MetaField;
+import com.axelor.meta.db.MetaJsonField;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfiguratorFormulaGraphTest {
+
+  private static ConfiguratorCreator creator(String... attributeNames) {
+    ConfiguratorCreator creator = new ConfiguratorCreator();
+    creator.setGenerateProduct(true);
+    for (String attributeName : attributeNames) {
+      MetaJsonField attribute = new MetaJsonField();
+      attribute.setName(attributeName);
+      creator.addAttribute(attribute);
+    }
+    return creator;
+  }
+
+  private static void addFormula(ConfiguratorCreator creator, String fieldName, String formula) {
+    MetaField metaField = new MetaField();
+    metaField.setName(fieldName);
+    ConfiguratorProductFormula productFormula = new ConfiguratorProductFormula();
+    productFormula.setMetaField(metaField);
+    productFormula.setFormula(formula);
+    creator.addConfiguratorProductFormulaListItem(productFormula);
+  }
+
+  @Test
+  public void testDependentFieldNames() {
+
+    ConfiguratorCreator creator = creator("width", "height", "color");
+    addFormula(creator, "name", "'Panel ' + width + 'x' + height");
+    addFormula(creator, "salePrice", "width * height * 0.5");
+    addFormula(creator, "code", "'PNL-' + color?.code");
+    addFormula(creator, "code", "'IGNORED-' + width");
+
+    ConfiguratorFormulaGraph graph = new ConfiguratorFormulaGraph(creator);
+
+    Assert.assertEquals(
+        Sets.newHashSet("name", "salePrice"),
+        graph.getDependentFieldNames(Collections.singleton("width")));
+    Assert.assertEquals(
+        Collections.singleton("code"),
+        graph.getDependentFieldNames(Collections.singleton("color")));
+    Assert.assertEquals("'PNL-' + color?.code", graph.getFormula("code"));
+    Assert.assertNull(graph.getFormula("description"));
+  }
+
+  @Test
+  public void testFirstFormulaWithoutText() {
+
+    ConfiguratorCreator creator = creator("width");
+    addFormula(creator, "salePrice", null);
+    addFormula(creator, "salePrice", "width * 2");
+
+    ConfiguratorFormulaGraph graph = new ConfiguratorFormulaGraph(creator);
+
+    Assert.assertNull(graph.getFormula("salePrice"));
+    Assert.assertTrue(graph.getDependentFieldNames(Collections.singleton("width")).isEmpty());
+  }
+
+  @Test
+  public void testIsBuiltFrom() {
+
+    ConfiguratorCreator creator = creator("width");
+    addFormula(creator, "salePrice", "width * 2");
+
+    ConfiguratorFormulaGraph graph = new ConfiguratorFormulaGraph(creator);
+    Assert.assertTrue(graph.isBuiltFrom(creator));
+
+    creator.getConfiguratorProductFormulaList().get(0).setFormula("width * 3");
+    Assert.assertFalse(graph.isBuiltFrom(creator));
+  }
+}
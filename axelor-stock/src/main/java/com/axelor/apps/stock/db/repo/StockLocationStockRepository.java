@@ -19,6 +19,8 @@ package com.axelor.apps.stock.db.repo;
 
 import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.apps.stock.service.StockLocationSaveService;
+import com.axelor.apps.stock.service.StockLocationServiceImpl;
+import com.axelor.apps.tool.TransactionTool;
 import com.axelor.inject.Beans;
 
 public class StockLocationStockRepository extends StockLocationRepository {
@@ -32,6 +34,13 @@ public class StockLocationStockRepository extends StockLocationRepository {
   @Override
   public StockLocation save(StockLocation entity) {
     Beans.get(StockLocationSaveService.class).removeForbiddenDefaultStockLocation(entity);
+    TransactionTool.runAfterCompletion(StockLocationServiceImpl::invalidateStockLocationTree);
     return super.save(entity);
   }
+
+  @Override
+  public void remove(StockLocation entity) {
+    TransactionTool.runAfterCompletion(StockLocationServiceImpl::invalidateStockLocationTree);
+    super.remove(entity);
+  }
 }
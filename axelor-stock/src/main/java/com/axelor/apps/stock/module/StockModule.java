@@ -43,6 +43,8 @@ import com.axelor.apps.stock.service.PartnerProductQualityRatingService;
 import com.axelor.apps.stock.service.PartnerProductQualityRatingServiceImpl;
 import com.axelor.apps.stock.service.PartnerStockSettingsService;
 import com.axelor.apps.stock.service.PartnerStockSettingsServiceImpl;
+import com.axelor.apps.stock.service.ProductStockQtyService;
+import com.axelor.apps.stock.service.ProductStockQtyServiceImpl;
 import com.axelor.apps.stock.service.StockLocationLineService;
 import com.axelor.apps.stock.service.StockLocationLineServiceImpl;
 import com.axelor.apps.stock.service.StockLocationService;
@@ -76,6 +78,7 @@ public class StockModule extends AxelorModule {
     bind(StockMoveLineService.class).to(StockMoveLineServiceImpl.class);
     bind(StockMoveService.class).to(StockMoveServiceImpl.class);
     bind(StockLocationService.class).to(StockLocationServiceImpl.class);
+    bind(ProductStockQtyService.class).to(ProductStockQtyServiceImpl.class);
     bind(ProductBaseRepository.class).to(ProductStockRepository.class);
     bind(PartnerProductQualityRatingService.class).to(PartnerProductQualityRatingServiceImpl.class);
     bind(LogisticalFormService.class).to(LogisticalFormServiceImpl.class);
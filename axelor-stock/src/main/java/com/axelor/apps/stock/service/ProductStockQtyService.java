@@ -0,0 +1,70 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.stock.db.StockLocationLine;
+import com.axelor.exception.AxelorException;
+import java.math.BigDecimal;
+
+/**
+ * Maintain the current and future quantities of each product by company, over the non virtual
+ * stock locations, so that they can be read without going through all the stock location lines.
+ */
+public interface ProductStockQtyService {
+
+  /**
+   * Get the quantity of a product in the non virtual stock locations, in the unit of the product.
+   *
+   * @param product A product
+   * @param company A company, or null for all the companies
+   * @param current true for the current quantity, false for the future quantity
+   * @return The quantity
+   * @throws AxelorException
+   */
+  public BigDecimal getQty(Product product, Company company, boolean current)
+      throws AxelorException;
+
+  /**
+   * Report a change of quantity of a stock location line. Must be called before the quantity of
+   * the line is updated.
+   *
+   * @param stockLocationLine The stock location line to update
+   * @param qty The quantity, in the unit of the line
+   * @param current true to update the current quantity
+   * @param future true to update the future quantity
+   * @param isIncrement true if the quantity is added, false if it is subtracted
+   * @throws AxelorException
+   */
+  public void updateQty(
+      StockLocationLine stockLocationLine,
+      BigDecimal qty,
+      boolean current,
+      boolean future,
+      boolean isIncrement)
+      throws AxelorException;
+
+  /**
+   * Compute again the quantities of all the products from the stock location lines. Once done, the
+   * quantities are maintained by the stock location line updates.
+   *
+   * @throws AxelorException
+   */
+  public void computeAll() throws AxelorException;
+}
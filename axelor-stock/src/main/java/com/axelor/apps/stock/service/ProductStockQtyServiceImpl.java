@@ -0,0 +1,280 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import com.axelor.apps.base.db.AppStock;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.service.UnitConversionService;
+import com.axelor.apps.stock.db.ProductStockQty;
+import com.axelor.apps.stock.db.StockLocation;
+import com.axelor.apps.stock.db.StockLocationLine;
+import com.axelor.apps.stock.db.repo.ProductStockQtyRepository;
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
+import com.axelor.apps.stock.service.app.AppStockService;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.persistence.LockModeType;
+import javax.persistence.TypedQuery;
+
+public class ProductStockQtyServiceImpl implements ProductStockQtyService {
+
+  protected ProductStockQtyRepository productStockQtyRepo;
+  protected AppStockService appStockService;
+  protected UnitConversionService unitConversionService;
+
+  @Inject
+  public ProductStockQtyServiceImpl(
+      ProductStockQtyRepository productStockQtyRepo,
+      AppStockService appStockService,
+      UnitConversionService unitConversionService) {
+    this.productStockQtyRepo = productStockQtyRepo;
+    this.appStockService = appStockService;
+    this.unitConversionService = unitConversionService;
+  }
+
+  @Override
+  public BigDecimal getQty(Product product, Company company, boolean current)
+      throws AxelorException {
+
+    if (!isComputed()) {
+      return computeQtyFromLines(product, company)[current ? 0 : 1];
+    }
+
+    List<ProductStockQty> productStockQtyList =
+        productStockQtyRepo
+            .all()
+            .filter(
+                "self.product.id = :productId"
+                    + (company != null ? " AND self.company.id = :companyId" : ""))
+            .bind("productId", product.getId())
+            .bind("companyId", company != null ? company.getId() : null)
+            .fetch();
+
+    BigDecimal qty = BigDecimal.ZERO;
+
+    for (ProductStockQty productStockQty : productStockQtyList) {
+      // the unit of the product has changed since the last update
+      if (!Objects.equals(productStockQty.getUnit(), product.getUnit())) {
+        return computeQtyFromLines(product, company)[current ? 0 : 1];
+      }
+      qty = qty.add(current ? productStockQty.getCurrentQty() : productStockQty.getFutureQty());
+    }
+
+    return qty;
+  }
+
+  @Override
+  public void updateQty(
+      StockLocationLine stockLocationLine,
+      BigDecimal qty,
+      boolean current,
+      boolean future,
+      boolean isIncrement)
+      throws AxelorException {
+
+    StockLocation stockLocation = stockLocationLine.getStockLocation();
+    Product product = stockLocationLine.getProduct();
+
+    if (!isComputed()
+        || stockLocation == null
+        || stockLocation.getTypeSelect() == StockLocationRepository.TYPE_VIRTUAL
+        || (!current && !future)) {
+      return;
+    }
+
+    ProductStockQty productStockQty =
+        getOrCreateProductStockQty(product, stockLocation.getCompany());
+
+    BigDecimal productQty =
+        convert(stockLocationLine.getUnit(), product.getUnit(), qty, product);
+    if (!isIncrement) {
+      productQty = productQty.negate();
+    }
+
+    if (current) {
+      productStockQty.setCurrentQty(productStockQty.getCurrentQty().add(productQty));
+    }
+    if (future) {
+      productStockQty.setFutureQty(productStockQty.getFutureQty().add(productQty));
+    }
+
+    productStockQtyRepo.save(productStockQty);
+  }
+
+  /**
+   * Get the quantities of a product and a company, locked until the end of the transaction so that
+   * concurrent updates are not lost. A missing or outdated record is initialized from the stock
+   * location lines, which must not include the change being reported yet.
+   */
+  protected ProductStockQty getOrCreateProductStockQty(Product product, Company company)
+      throws AxelorException {
+
+    ProductStockQty productStockQty = findLockedProductStockQty(product, company);
+
+    if (productStockQty == null) {
+      // a single transaction at a time creates the record of the product
+      JPA.em().find(Product.class, product.getId(), LockModeType.PESSIMISTIC_WRITE);
+      productStockQty = findLockedProductStockQty(product, company);
+    }
+
+    if (productStockQty == null) {
+      productStockQty = new ProductStockQty();
+      productStockQty.setProduct(product);
+      productStockQty.setCompany(company);
+    } else if (Objects.equals(productStockQty.getUnit(), product.getUnit())) {
+      return productStockQty;
+    }
+
+    BigDecimal[] qties = computeQtyFromLines(product, company);
+    productStockQty.setUnit(product.getUnit());
+    productStockQty.setCurrentQty(qties[0]);
+    productStockQty.setFutureQty(qties[1]);
+
+    return productStockQty;
+  }
+
+  protected ProductStockQty findLockedProductStockQty(Product product, Company company) {
+
+    ProductStockQty productStockQty =
+        productStockQtyRepo.findByProductAndCompany(product, company);
+
+    if (productStockQty != null) {
+      JPA.em().refresh(productStockQty, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    return productStockQty;
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeAll() throws AxelorException {
+
+    JPA.em().createQuery("DELETE FROM ProductStockQty").executeUpdate();
+
+    List<Object[]> results =
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, self.stockLocation.company.id, self.unit.id, "
+                    + "SUM(self.currentQty), SUM(self.futureQty) "
+                    + "FROM StockLocationLine self LEFT JOIN self.unit "
+                    + "WHERE self.stockLocation.typeSelect != :typeSelect "
+                    + "GROUP BY self.product.id, self.stockLocation.company.id, self.unit.id",
+                Object[].class)
+            .setParameter("typeSelect", StockLocationRepository.TYPE_VIRTUAL)
+            .getResultList();
+
+    Map<String, ProductStockQty> productStockQtyMap = new HashMap<>();
+
+    for (Object[] result : results) {
+      Product product = JPA.find(Product.class, (Long) result[0]);
+      Company company = JPA.find(Company.class, (Long) result[1]);
+      Unit unit = result[2] != null ? JPA.find(Unit.class, (Long) result[2]) : null;
+
+      ProductStockQty productStockQty =
+          productStockQtyMap.computeIfAbsent(
+              product.getId() + "-" + company.getId(),
+              key -> {
+                ProductStockQty newProductStockQty = new ProductStockQty();
+                newProductStockQty.setProduct(product);
+                newProductStockQty.setCompany(company);
+                newProductStockQty.setUnit(product.getUnit());
+                newProductStockQty.setCurrentQty(BigDecimal.ZERO);
+                newProductStockQty.setFutureQty(BigDecimal.ZERO);
+                return newProductStockQty;
+              });
+
+      productStockQty.setCurrentQty(
+          productStockQty
+              .getCurrentQty()
+              .add(convert(unit, product.getUnit(), (BigDecimal) result[3], product)));
+      productStockQty.setFutureQty(
+          productStockQty
+              .getFutureQty()
+              .add(convert(unit, product.getUnit(), (BigDecimal) result[4], product)));
+    }
+
+    for (ProductStockQty productStockQty : productStockQtyMap.values()) {
+      productStockQtyRepo.save(productStockQty);
+    }
+
+    AppStock appStock = appStockService.getAppStock();
+    appStock.setProductStockQtyComputed(true);
+  }
+
+  /**
+   * Sum the quantities of the stock location lines of a product, in the unit of the product.
+   *
+   * @return the current and the future quantities
+   */
+  protected BigDecimal[] computeQtyFromLines(Product product, Company company)
+      throws AxelorException {
+
+    TypedQuery<Object[]> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.unit.id, SUM(self.currentQty), SUM(self.futureQty) "
+                    + "FROM StockLocationLine self LEFT JOIN self.unit "
+                    + "WHERE self.product.id = :productId "
+                    + "AND self.stockLocation.typeSelect != :typeSelect "
+                    + (company != null ? "AND self.stockLocation.company.id = :companyId " : "")
+                    + "GROUP BY self.unit.id",
+                Object[].class)
+            .setParameter("productId", product.getId())
+            .setParameter("typeSelect", StockLocationRepository.TYPE_VIRTUAL);
+    if (company != null) {
+      query.setParameter("companyId", company.getId());
+    }
+
+    BigDecimal[] qties = {BigDecimal.ZERO, BigDecimal.ZERO};
+
+    for (Object[] result : query.getResultList()) {
+      Unit unit = result[0] != null ? JPA.find(Unit.class, (Long) result[0]) : null;
+      qties[0] = qties[0].add(convert(unit, product.getUnit(), (BigDecimal) result[1], product));
+      qties[1] = qties[1].add(convert(unit, product.getUnit(), (BigDecimal) result[2], product));
+    }
+
+    return qties;
+  }
+
+  protected BigDecimal convert(Unit startUnit, Unit endUnit, BigDecimal qty, Product product)
+      throws AxelorException {
+
+    if (qty == null) {
+      return BigDecimal.ZERO;
+    }
+    if (startUnit == null || endUnit == null || startUnit.equals(endUnit)) {
+      return qty;
+    }
+
+    return unitConversionService.convert(startUnit, endUnit, qty, qty.scale(), product);
+  }
+
+  protected boolean isComputed() {
+    AppStock appStock = appStockService.getAppStock();
+    return appStock != null && appStock.getProductStockQtyComputed();
+  }
+}
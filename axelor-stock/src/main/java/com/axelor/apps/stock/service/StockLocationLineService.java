@@ -26,6 +26,7 @@ import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 public interface StockLocationLineService {
@@ -186,6 +187,20 @@ public interface StockLocationLineService {
   public StockLocationLine createDetailLocationLine(
       StockLocation stockLocation, Product product, TrackingNumber trackingNumber);
 
+  /**
+   * Load in one query the location lines and the detailed location lines of the given products in
+   * the given locations. Until {@link #clearLoadedStockLocationLines()}, these lines are found in
+   * memory, and the created lines are added to them.
+   *
+   * @param stockLocations The locations
+   * @param products The products
+   */
+  public void loadStockLocationLines(
+      Collection<StockLocation> stockLocations, Collection<Product> products);
+
+  /** Forget the lines loaded by {@link #loadStockLocationLines(Collection, Collection)}. */
+  public void clearLoadedStockLocationLines();
+
   /**
    * Allow to get the available qty of product in a given location.
    *
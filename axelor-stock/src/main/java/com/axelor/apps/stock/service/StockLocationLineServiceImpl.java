@@ -40,7 +40,12 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +58,17 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
 
   @Inject protected StockRulesService stockRulesService;
 
+  @Inject protected ProductStockQtyService productStockQtyService;
+
+  /** Lines loaded by {@link #loadStockLocationLines(Collection, Collection)}, by location key. */
+  protected Map<String, StockLocationLine> loadedStockLocationLineMap;
+
+  /** Detail lines loaded by {@link #loadStockLocationLines(Collection, Collection)}, by key. */
+  protected Map<String, StockLocationLine> loadedDetailLocationLineMap;
+
+  protected Set<Long> loadedStockLocationIdSet;
+  protected Set<Long> loadedProductIdSet;
+
   @Override
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void updateLocation(
@@ -139,6 +155,8 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
       maxStockRules(product, qty, stockLocationLine, current, future);
     }
 
+    productStockQtyService.updateQty(stockLocationLine, qty, current, future, isIncrement);
+
     stockLocationLine =
         this.updateLocation(
             stockLocationLine,
@@ -433,6 +451,10 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
       return null;
     }
 
+    if (isLoaded(stockLocation, product, null)) {
+      return loadedStockLocationLineMap.get(getLoadedKey(stockLocation, product, null));
+    }
+
     return stockLocationLineRepo
         .all()
         .filter("self.stockLocation.id = :_stockLocationId " + "AND self.product.id = :_productId")
@@ -458,6 +480,11 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
   @Override
   public StockLocationLine getDetailLocationLine(
       StockLocation stockLocation, Product product, TrackingNumber trackingNumber) {
+
+    if (isLoaded(stockLocation, product, trackingNumber)) {
+      return loadedDetailLocationLineMap.get(getLoadedKey(stockLocation, product, trackingNumber));
+    }
+
     return stockLocationLineRepo
         .all()
         .filter(
@@ -487,6 +514,10 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
     stockLocationLine.setCurrentQty(BigDecimal.ZERO);
     stockLocationLine.setFutureQty(BigDecimal.ZERO);
 
+    if (isLoaded(stockLocation, product, null)) {
+      loadedStockLocationLineMap.put(getLoadedKey(stockLocation, product, null), stockLocationLine);
+    }
+
     return stockLocationLine;
   }
 
@@ -510,9 +541,95 @@ public class StockLocationLineServiceImpl implements StockLocationLineService {
     detailLocationLine.setFutureQty(BigDecimal.ZERO);
     detailLocationLine.setTrackingNumber(trackingNumber);
 
+    if (isLoaded(stockLocation, product, trackingNumber)) {
+      loadedDetailLocationLineMap.put(
+          getLoadedKey(stockLocation, product, trackingNumber), detailLocationLine);
+    }
+
     return detailLocationLine;
   }
 
+  @Override
+  public void loadStockLocationLines(
+      Collection<StockLocation> stockLocations, Collection<Product> products) {
+
+    loadedStockLocationIdSet = new HashSet<>();
+    loadedProductIdSet = new HashSet<>();
+    loadedStockLocationLineMap = new HashMap<>();
+    loadedDetailLocationLineMap = new HashMap<>();
+
+    for (StockLocation stockLocation : stockLocations) {
+      if (stockLocation != null && stockLocation.getId() != null) {
+        loadedStockLocationIdSet.add(stockLocation.getId());
+      }
+    }
+    for (Product product : products) {
+      if (product != null && product.getId() != null) {
+        loadedProductIdSet.add(product.getId());
+      }
+    }
+
+    if (loadedStockLocationIdSet.isEmpty() || loadedProductIdSet.isEmpty()) {
+      return;
+    }
+
+    List<StockLocationLine> stockLocationLineList =
+        stockLocationLineRepo
+            .all()
+            .filter(
+                "(self.stockLocation.id IN (:_stockLocationIds) "
+                    + "OR self.detailsStockLocation.id IN (:_stockLocationIds)) "
+                    + "AND self.product.id IN (:_productIds)")
+            .bind("_stockLocationIds", loadedStockLocationIdSet)
+            .bind("_productIds", loadedProductIdSet)
+            .order("id")
+            .fetch();
+
+    for (StockLocationLine stockLocationLine : stockLocationLineList) {
+      if (stockLocationLine.getStockLocation() != null) {
+        loadedStockLocationLineMap.putIfAbsent(
+            getLoadedKey(
+                stockLocationLine.getStockLocation(), stockLocationLine.getProduct(), null),
+            stockLocationLine);
+      }
+      if (stockLocationLine.getDetailsStockLocation() != null
+          && stockLocationLine.getTrackingNumber() != null) {
+        loadedDetailLocationLineMap.putIfAbsent(
+            getLoadedKey(
+                stockLocationLine.getDetailsStockLocation(),
+                stockLocationLine.getProduct(),
+                stockLocationLine.getTrackingNumber()),
+            stockLocationLine);
+      }
+    }
+  }
+
+  @Override
+  public void clearLoadedStockLocationLines() {
+    loadedStockLocationLineMap = null;
+    loadedDetailLocationLineMap = null;
+    loadedStockLocationIdSet = null;
+    loadedProductIdSet = null;
+  }
+
+  protected boolean isLoaded(
+      StockLocation stockLocation, Product product, TrackingNumber trackingNumber) {
+    return loadedStockLocationLineMap != null
+        && stockLocation != null
+        && product != null
+        && loadedStockLocationIdSet.contains(stockLocation.getId())
+        && loadedProductIdSet.contains(product.getId())
+        && (trackingNumber == null || trackingNumber.getId() != null);
+  }
+
+  protected String getLoadedKey(
+      StockLocation stockLocation, Product product, TrackingNumber trackingNumber) {
+    return stockLocation.getId()
+        + "-"
+        + product.getId()
+        + (trackingNumber != null ? "-" + trackingNumber.getId() : "");
+  }
+
   @Override
   public BigDecimal getAvailableQty(StockLocation stockLocation, Product product) {
     StockLocationLine stockLocationLine = getStockLocationLine(stockLocation, product);
@@ -23,6 +23,7 @@ import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -55,6 +56,14 @@ public interface StockLocationService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void computeAvgPriceForProduct(Product product);
 
+  /**
+   * Same as {@link #computeAvgPriceForProduct(Product)} for several products, with one query.
+   *
+   * @param products
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeAvgPriceForProducts(Collection<Product> products);
+
   public List<Long> getBadStockLocationLineId();
 
   public Set<Long> getContentStockLocationIds(StockLocation stockLocation);
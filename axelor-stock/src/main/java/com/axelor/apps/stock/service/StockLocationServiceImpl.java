@@ -27,11 +27,9 @@ import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.stock.db.StockConfig;
 import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.apps.stock.db.StockLocationLine;
-import com.axelor.apps.stock.db.StockRules;
-import com.axelor.apps.stock.db.repo.StockLocationLineRepository;
 import com.axelor.apps.stock.db.repo.StockLocationRepository;
-import com.axelor.apps.stock.db.repo.StockRulesRepository;
 import com.axelor.apps.stock.service.config.StockConfigService;
+import com.axelor.apps.tool.VersionedCache;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.inject.Beans;
@@ -40,9 +38,14 @@ import com.google.inject.persist.Transactional;
 import com.google.inject.servlet.RequestScoped;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @RequestScoped
 public class StockLocationServiceImpl implements StockLocationService {
@@ -53,8 +56,13 @@ public class StockLocationServiceImpl implements StockLocationService {
 
   protected ProductRepository productRepo;
 
+  @Inject protected ProductStockQtyService productStockQtyService;
+
   protected Set<Long> locationIdSet = new HashSet<>();
 
+  private static final VersionedCache<Void, StockLocationTree> stockLocationTreeCache =
+      new VersionedCache<>();
+
   @Inject
   public StockLocationServiceImpl(
       StockLocationRepository stockLocationRepo,
@@ -102,35 +110,15 @@ public class StockLocationServiceImpl implements StockLocationService {
       UnitConversionService unitConversionService = Beans.get(UnitConversionService.class);
 
       if (locationId == null) {
-        List<StockLocation> stockLocations = getNonVirtualStockLocations();
-        if (!stockLocations.isEmpty()) {
-          BigDecimal qty = BigDecimal.ZERO;
-          for (StockLocation stockLocation : stockLocations) {
-            StockLocationLine stockLocationLine =
-                stockLocationLineService.getOrCreateStockLocationLine(
-                    stockLocationRepo.find(stockLocation.getId()), productRepo.find(productId));
-
-            if (stockLocationLine != null) {
-              Unit stockLocationLineUnit = stockLocationLine.getUnit();
-              qty =
-                  qty.add(
-                      qtyType.equals("real")
-                          ? stockLocationLine.getCurrentQty()
-                          : stockLocationLine.getFutureQty());
-
-              if (productUnit != null && !productUnit.equals(stockLocationLineUnit)) {
-                qty =
-                    unitConversionService.convert(
-                        stockLocationLineUnit, productUnit, qty, qty.scale(), product);
-              }
-            }
-          }
-          return qty;
-        }
+        return productStockQtyService.getQty(product, null, qtyType.equals("real"));
       } else {
         StockLocationLine stockLocationLine =
-            stockLocationLineService.getOrCreateStockLocationLine(
-                stockLocationRepo.find(locationId), productRepo.find(productId));
+            stockLocationLineService.getStockLocationLine(
+                stockLocationRepo.find(locationId), product);
+
+        if (stockLocationLine == null && product.getStockManaged()) {
+          return BigDecimal.ZERO;
+        }
 
         if (stockLocationLine != null) {
           Unit stockLocationLineUnit = stockLocationLine.getUnit();
@@ -174,7 +162,6 @@ public class StockLocationServiceImpl implements StockLocationService {
             + productId
             + " AND self.stockLocation.typeSelect != "
             + StockLocationRepository.TYPE_VIRTUAL;
-    int scale = Beans.get(AppBaseService.class).getNbDecimalDigitForUnitPrice();
     BigDecimal productAvgPrice = BigDecimal.ZERO;
     BigDecimal qtyTot = BigDecimal.ZERO;
     List<List<Object>> results = JPA.em().createQuery(query).getResultList();
@@ -187,10 +174,45 @@ public class StockLocationServiceImpl implements StockLocationService {
       productAvgPrice = productAvgPrice.add(avgPrice.multiply(qty));
       qtyTot = qtyTot.add(qty);
     }
-    if (qtyTot.compareTo(BigDecimal.ZERO) == 0) {
+    this.updateAvgPrice(product, productAvgPrice, qtyTot);
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void computeAvgPriceForProducts(Collection<Product> products) {
+    Map<Long, Product> productMap = new HashMap<>();
+    for (Product product : products) {
+      productMap.put(product.getId(), product);
+    }
+    if (productMap.isEmpty()) {
       return;
     }
-    productAvgPrice = productAvgPrice.divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP);
+
+    List<Object[]> results =
+        JPA.em()
+            .createQuery(
+                "SELECT self.product.id, SUM(self.avgPrice * self.currentQty), "
+                    + "SUM(self.currentQty) FROM StockLocationLine as self "
+                    + "WHERE self.product.id IN (:productIds) "
+                    + "AND self.stockLocation.typeSelect != :typeSelect "
+                    + "GROUP BY self.product.id",
+                Object[].class)
+            .setParameter("productIds", productMap.keySet())
+            .setParameter("typeSelect", StockLocationRepository.TYPE_VIRTUAL)
+            .getResultList();
+
+    for (Object[] result : results) {
+      Product product = productMap.get(result[0]);
+      this.updateAvgPrice(product, (BigDecimal) result[1], (BigDecimal) result[2]);
+    }
+  }
+
+  protected void updateAvgPrice(Product product, BigDecimal totalAmount, BigDecimal qtyTot) {
+    if (totalAmount == null || qtyTot == null || qtyTot.compareTo(BigDecimal.ZERO) == 0) {
+      return;
+    }
+    int scale = Beans.get(AppBaseService.class).getNbDecimalDigitForUnitPrice();
+    BigDecimal productAvgPrice = totalAmount.divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP);
     product.setAvgPrice(productAvgPrice);
     if (product.getCostTypeSelect() == ProductRepository.COST_TYPE_AVERAGE_PRICE) {
       product.setCostPrice(productAvgPrice);
@@ -203,30 +225,12 @@ public class StockLocationServiceImpl implements StockLocationService {
 
   public List<Long> getBadStockLocationLineId() {
 
-    List<StockLocationLine> stockLocationLineList =
-        Beans.get(StockLocationLineRepository.class)
-            .all()
-            .filter("self.stockLocation.typeSelect = 1 OR self.stockLocation.typeSelect = 2")
-            .fetch();
-
-    List<Long> idList = new ArrayList<>();
-
-    StockRulesRepository stockRulesRepository = Beans.get(StockRulesRepository.class);
-
-    for (StockLocationLine stockLocationLine : stockLocationLineList) {
-      StockRules stockRules =
-          stockRulesRepository
-              .all()
-              .filter(
-                  "self.stockLocation = ?1 AND self.product = ?2",
-                  stockLocationLine.getStockLocation(),
-                  stockLocationLine.getProduct())
-              .fetchOne();
-      if (stockRules != null
-          && stockLocationLine.getFutureQty().compareTo(stockRules.getMinQty()) < 0) {
-        idList.add(stockLocationLine.getId());
-      }
-    }
+    List<Long> idList =
+        Beans.get(StockRulesService.class)
+            .findShortfalls(null)
+            .map(StockRulesShortfall::getStockLocationLineId)
+            .distinct()
+            .collect(Collectors.toList());
 
     if (idList.isEmpty()) {
       idList.add(0L);
@@ -239,10 +243,8 @@ public class StockLocationServiceImpl implements StockLocationService {
   public Set<Long> getContentStockLocationIds(StockLocation stockLocation) {
     locationIdSet = new HashSet<>();
     if (stockLocation != null) {
-      List<StockLocation> stockLocations = getAllLocationAndSubLocation(stockLocation, true);
-      for (StockLocation item : stockLocations) {
-        locationIdSet.add(item.getId());
-      }
+      locationIdSet.addAll(
+          getStockLocationTree().getLocationAndSubLocationIds(stockLocation.getId(), true));
     } else {
       locationIdSet.add(0L);
     }
@@ -253,33 +255,53 @@ public class StockLocationServiceImpl implements StockLocationService {
   public List<StockLocation> getAllLocationAndSubLocation(
       StockLocation stockLocation, boolean isVirtualInclude) {
 
-    List<StockLocation> resultList = new ArrayList<>();
+    if (stockLocation.getId() == null) {
+      return new ArrayList<>(Collections.singletonList(stockLocation));
+    }
 
-    if (isVirtualInclude) {
-      for (StockLocation subLocation :
-          stockLocationRepo
-              .all()
-              .filter("self.parentStockLocation.id = :stockLocationId")
-              .bind("stockLocationId", stockLocation.getId())
-              .fetch()) {
+    List<Long> idList =
+        getStockLocationTree()
+            .getLocationAndSubLocationIds(stockLocation.getId(), isVirtualInclude);
 
-        resultList.addAll(this.getAllLocationAndSubLocation(subLocation, isVirtualInclude));
-      }
-    } else {
+    Map<Long, StockLocation> stockLocationMap = new HashMap<>();
+    if (idList.size() > 1) {
       for (StockLocation subLocation :
-          stockLocationRepo
-              .all()
-              .filter(
-                  "self.parentStockLocation.id = :stockLocationId AND self.typeSelect != :virtual")
-              .bind("stockLocationId", stockLocation.getId())
-              .bind("virtual", StockLocationRepository.TYPE_VIRTUAL)
-              .fetch()) {
-
-        resultList.addAll(this.getAllLocationAndSubLocation(subLocation, isVirtualInclude));
+          stockLocationRepo.all().filter("self.id IN (:idList)").bind("idList", idList).fetch()) {
+        stockLocationMap.put(subLocation.getId(), subLocation);
+      }
+    }
+    stockLocationMap.put(stockLocation.getId(), stockLocation);
+
+    List<StockLocation> resultList = new ArrayList<>();
+    for (Long id : idList) {
+      if (stockLocationMap.containsKey(id)) {
+        resultList.add(stockLocationMap.get(id));
       }
     }
-    resultList.add(stockLocation);
 
     return resultList;
   }
+
+  /**
+   * Get the tree of the stock locations, loaded with a single query and kept until a stock location
+   * is saved or removed.
+   *
+   * @return the stock location tree
+   */
+  protected StockLocationTree getStockLocationTree() {
+    return stockLocationTreeCache.get(
+        () ->
+            new StockLocationTree(
+                JPA.em()
+                    .createQuery(
+                        "SELECT self.id, parent.id, self.typeSelect FROM StockLocation self "
+                            + "LEFT JOIN self.parentStockLocation parent ORDER BY self.id",
+                        Object[].class)
+                    .getResultList()));
+  }
+
+  /** Drop the tree of the stock locations, after a change of a stock location. */
+  public static void invalidateStockLocationTree() {
+    stockLocationTreeCache.invalidate();
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the parent stock location links, so that the sub-locations of a stock
+ * location are found without one query per level of the tree.
+ */
+public class StockLocationTree {
+
+  /** Children ids by parent id, in the order of the ids. */
+  protected final Map<Long, List<Long>> childIdListMap;
+
+  protected final Map<Long, Integer> typeSelectMap;
+
+  /** @param rows id, parent id and type of every stock location, ordered by id */
+  public StockLocationTree(List<Object[]> rows) {
+
+    Map<Long, List<Long>> childIdMap = new HashMap<>();
+    Map<Long, Integer> typeMap = new HashMap<>();
+
+    for (Object[] row : rows) {
+      Long id = (Long) row[0];
+      Long parentId = (Long) row[1];
+      typeMap.put(id, row[2] != null ? (Integer) row[2] : 0);
+      if (parentId != null) {
+        childIdMap.computeIfAbsent(parentId, key -> new ArrayList<>()).add(id);
+      }
+    }
+
+    this.childIdListMap = Collections.unmodifiableMap(childIdMap);
+    this.typeSelectMap = Collections.unmodifiableMap(typeMap);
+  }
+
+  /**
+   * Get a stock location and all its sub-locations, children before their parent.
+   *
+   * @param stockLocationId
+   * @param isVirtualInclude false to skip the virtual sub-locations and their own children
+   * @return the ids, the given stock location last
+   */
+  public List<Long> getLocationAndSubLocationIds(Long stockLocationId, boolean isVirtualInclude) {
+
+    List<Long> idList = new ArrayList<>();
+    addLocationAndSubLocationIds(idList, stockLocationId, isVirtualInclude);
+
+    return idList;
+  }
+
+  protected void addLocationAndSubLocationIds(
+      List<Long> idList, Long stockLocationId, boolean isVirtualInclude) {
+
+    for (Long childId : childIdListMap.getOrDefault(stockLocationId, Collections.emptyList())) {
+      if (isVirtualInclude || typeSelectMap.get(childId) != StockLocationRepository.TYPE_VIRTUAL) {
+        addLocationAndSubLocationIds(idList, childId, isVirtualInclude);
+      }
+    }
+    idList.add(stockLocationId);
+  }
+}
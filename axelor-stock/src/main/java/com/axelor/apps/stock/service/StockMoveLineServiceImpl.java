@@ -55,10 +55,13 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -420,7 +423,12 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
     return newStockMoveLine;
   }
 
+  /**
+   * The location lines of the products are loaded at once, and the average price of each product
+   * is computed once, after all the lines are updated.
+   */
   @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void updateLocations(
       StockLocation fromStockLocation,
       StockLocation toStockLocation,
@@ -431,9 +439,11 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
       boolean realQty)
       throws AxelorException {
 
-    StockLocationServiceImpl stockLocationServiceImpl = Beans.get(StockLocationServiceImpl.class);
     stockMoveLineList = MoreObjects.firstNonNull(stockMoveLineList, Collections.emptyList());
 
+    List<StockMoveLine> storableStockMoveLineList = new ArrayList<>();
+    Set<Product> productSet = new LinkedHashSet<>();
+
     for (StockMoveLine stockMoveLine : stockMoveLineList) {
 
       Product product = stockMoveLine.getProduct();
@@ -441,6 +451,20 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
       if (product != null
           && stockMoveLine.getLineTypeSelect() != StockMoveLineRepository.TYPE_PACK
           && product.getProductTypeSelect().equals(ProductRepository.PRODUCT_TYPE_STORABLE)) {
+        storableStockMoveLineList.add(stockMoveLine);
+        productSet.add(product);
+      }
+    }
+
+    if (storableStockMoveLineList.isEmpty()) {
+      return;
+    }
+
+    stockLocationLineService.loadStockLocationLines(
+        Arrays.asList(fromStockLocation, toStockLocation), productSet);
+
+    try {
+      for (StockMoveLine stockMoveLine : storableStockMoveLineList) {
 
         BigDecimal qty;
         if (realQty) {
@@ -463,9 +487,12 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
             lastFutureStockMoveDate,
             stockMoveLine.getTrackingNumber(),
             BigDecimal.ZERO);
-        stockLocationServiceImpl.computeAvgPriceForProduct(stockMoveLine.getProduct());
       }
+    } finally {
+      stockLocationLineService.clearLoadedStockLocationLines();
     }
+
+    Beans.get(StockLocationService.class).computeAvgPriceForProducts(productSet);
   }
 
   @Override
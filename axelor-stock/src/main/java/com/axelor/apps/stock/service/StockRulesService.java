@@ -24,6 +24,7 @@ import com.axelor.apps.stock.db.StockRules;
 import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.stream.Stream;
 
 public interface StockRulesService {
   void generateOrder(Product product, BigDecimal qty, StockLocationLine stockLocationLine, int type)
@@ -48,4 +49,14 @@ public interface StockRulesService {
 
   BigDecimal getQtyToOrder(
       BigDecimal qty, StockLocationLine stockLocationLine, int type, StockRules stockRules);
+
+  /**
+   * Find the stock location lines of the internal and external stock locations whose future
+   * quantity is below the minimum quantity of a stock rule of the same location and product. The
+   * lines and the rules are joined in the database and read by pages, as the stream is consumed.
+   *
+   * @param useCaseSelect the use case of the stock rules, null for all the stock rules
+   * @return the shortfalls, ordered by stock location line, one for each rule not respected
+   */
+  Stream<StockRulesShortfall> findShortfalls(Integer useCaseSelect);
 }
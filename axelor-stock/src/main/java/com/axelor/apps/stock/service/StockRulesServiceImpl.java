@@ -21,14 +21,28 @@ import com.axelor.apps.base.db.Product;
 import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.apps.stock.db.StockLocationLine;
 import com.axelor.apps.stock.db.StockRules;
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
 import com.axelor.apps.stock.db.repo.StockRulesRepository;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.persistence.TypedQuery;
 
 public class StockRulesServiceImpl implements StockRulesService {
 
+  protected static final int SHORTFALL_PAGE_SIZE = 500;
+
   protected StockRulesRepository stockRuleRepo;
 
   @Inject
@@ -185,4 +199,88 @@ public class StockRulesServiceImpl implements StockRulesService {
     // TODO , plusieurs régles min de stock par produit (achat a 500 et production a 100)...
 
   }
+
+  @Override
+  public Stream<StockRulesShortfall> findShortfalls(Integer useCaseSelect) {
+
+    Iterator<StockRulesShortfall> iterator =
+        new Iterator<StockRulesShortfall>() {
+
+          private List<StockRulesShortfall> page = Collections.emptyList();
+          private int index;
+          private boolean lastPage;
+
+          @Override
+          public boolean hasNext() {
+            if (index >= page.size() && !lastPage) {
+              StockRulesShortfall last = page.isEmpty() ? null : page.get(page.size() - 1);
+              page = fetchShortfalls(useCaseSelect, last, SHORTFALL_PAGE_SIZE);
+              index = 0;
+              lastPage = page.size() < SHORTFALL_PAGE_SIZE;
+            }
+            return index < page.size();
+          }
+
+          @Override
+          public StockRulesShortfall next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            return page.get(index++);
+          }
+        };
+
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+        false);
+  }
+
+  /**
+   * Fetch a page of shortfalls, ordered by stock location line then stock rule.
+   *
+   * @param useCaseSelect the use case of the stock rules, can be null
+   * @param last the last shortfall of the previous page, null for the first page
+   * @param limit the size of the page
+   * @return the shortfalls following the last one
+   */
+  protected List<StockRulesShortfall> fetchShortfalls(
+      Integer useCaseSelect, StockRulesShortfall last, int limit) {
+
+    TypedQuery<StockRulesShortfall> query =
+        JPA.em()
+            .createQuery(
+                "SELECT NEW com.axelor.apps.stock.service.StockRulesShortfall("
+                    + "line.id, rules.id, stockLocation.id, product.id, "
+                    + "line.futureQty, rules.minQty) "
+                    + "FROM StockLocationLine line "
+                    + "JOIN line.stockLocation stockLocation "
+                    + "JOIN line.product product, "
+                    + "StockRules rules "
+                    + "WHERE rules.stockLocation = stockLocation "
+                    + "AND rules.product = product "
+                    + "AND stockLocation.typeSelect IN (:typeSelectList) "
+                    + "AND line.futureQty < rules.minQty "
+                    + (useCaseSelect != null ? "AND rules.useCaseSelect = :useCaseSelect " : "")
+                    + (last != null
+                        ? "AND (line.id > :lastLineId "
+                            + "OR (line.id = :lastLineId AND rules.id > :lastRulesId)) "
+                        : "")
+                    + "ORDER BY line.id, rules.id",
+                StockRulesShortfall.class)
+            .setParameter(
+                "typeSelectList",
+                Arrays.asList(
+                    StockLocationRepository.TYPE_INTERNAL, StockLocationRepository.TYPE_EXTERNAL))
+            .setMaxResults(limit);
+
+    if (useCaseSelect != null) {
+      query.setParameter("useCaseSelect", useCaseSelect);
+    }
+    if (last != null) {
+      query.setParameter("lastLineId", last.getStockLocationLineId());
+      query.setParameter("lastRulesId", last.getStockRulesId());
+    }
+
+    return query.getResultList();
+  }
 }
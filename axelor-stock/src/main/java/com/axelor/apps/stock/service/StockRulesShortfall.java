@@ -0,0 +1,75 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import java.math.BigDecimal;
+
+/** A stock location line whose future quantity is below the minimum quantity of a stock rule. */
+public class StockRulesShortfall {
+
+  protected final Long stockLocationLineId;
+  protected final Long stockRulesId;
+  protected final Long stockLocationId;
+  protected final Long productId;
+  protected final BigDecimal futureQty;
+  protected final BigDecimal minQty;
+
+  public StockRulesShortfall(
+      Long stockLocationLineId,
+      Long stockRulesId,
+      Long stockLocationId,
+      Long productId,
+      BigDecimal futureQty,
+      BigDecimal minQty) {
+    this.stockLocationLineId = stockLocationLineId;
+    this.stockRulesId = stockRulesId;
+    this.stockLocationId = stockLocationId;
+    this.productId = productId;
+    this.futureQty = futureQty;
+    this.minQty = minQty;
+  }
+
+  public Long getStockLocationLineId() {
+    return stockLocationLineId;
+  }
+
+  public Long getStockRulesId() {
+    return stockRulesId;
+  }
+
+  public Long getStockLocationId() {
+    return stockLocationId;
+  }
+
+  public Long getProductId() {
+    return productId;
+  }
+
+  public BigDecimal getFutureQty() {
+    return futureQty;
+  }
+
+  public BigDecimal getMinQty() {
+    return minQty;
+  }
+
+  /** @return the quantity missing to reach the minimum quantity */
+  public BigDecimal getMissingQty() {
+    return minQty.subtract(futureQty);
+  }
+}
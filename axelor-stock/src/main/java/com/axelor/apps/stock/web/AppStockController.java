@@ -17,7 +17,10 @@
  */
 package com.axelor.apps.stock.web;
 
+import com.axelor.apps.stock.service.ProductStockQtyService;
 import com.axelor.apps.stock.service.app.AppStockService;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.inject.Beans;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
 import com.google.inject.Inject;
@@ -34,4 +37,13 @@ public class AppStockController {
 
     response.setReload(true);
   }
+
+  public void computeProductStockQties(ActionRequest request, ActionResponse response) {
+    try {
+      Beans.get(ProductStockQtyService.class).computeAll();
+      response.setReload(true);
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+    }
+  }
 }
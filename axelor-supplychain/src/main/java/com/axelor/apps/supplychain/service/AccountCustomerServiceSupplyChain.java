@@ -25,6 +25,7 @@ import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
 
 public class AccountCustomerServiceSupplyChain extends AccountCustomerService {
 
@@ -58,4 +59,37 @@ public class AccountCustomerServiceSupplyChain extends AccountCustomerService {
 
     return accountingSituation;
   }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public AccountingSituation addToAccountingSituationBalances(
+      AccountingSituation accountingSituation, BigDecimal balanceDelta, BigDecimal balanceDueDelta)
+      throws AxelorException {
+
+    accountingSituation =
+        super.addToAccountingSituationBalances(
+            accountingSituation, balanceDelta, balanceDueDelta);
+
+    if (balanceDelta.signum() != 0) {
+      accountingSituationService.updateCustomerCredit(accountingSituation.getPartner());
+    }
+
+    return accountingSituation;
+  }
+
+  @Override
+  public void setAccountingSituationBalances(
+      AccountingSituation accountingSituation,
+      BigDecimal balance,
+      BigDecimal balanceDue,
+      BigDecimal balanceDueDebtRecovery)
+      throws AxelorException {
+
+    super.setAccountingSituationBalances(
+        accountingSituation, balance, balanceDue, balanceDueDebtRecovery);
+
+    if (balance != null) {
+      accountingSituationService.updateCustomerCredit(accountingSituation.getPartner());
+    }
+  }
 }
@@ -0,0 +1,198 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.supplychain.service;
+
+import com.axelor.apps.stock.db.StockLocation;
+import com.axelor.apps.supplychain.db.MrpLine;
+import com.axelor.apps.supplychain.db.MrpLineType;
+import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The mrp lines of one product, kept in memory in the same order as the MRP calculation reads them
+ * from the database: maturity date, type, type sequence, then creation order.
+ *
+ * <p>The timeline remembers the first line whose cumulative qty is no longer up to date, so that
+ * the cumulative qty is only recomputed from this line after an insertion or an update.
+ */
+public class MrpLineTimeline {
+
+  protected static final Comparator<MrpLine> MRP_LINE_COMPARATOR =
+      Comparator.comparing(
+              MrpLine::getMaturityDate, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+          .thenComparing(
+              mrpLine -> mrpLine.getMrpLineType().getTypeSelect(),
+              Comparator.nullsLast(Comparator.<Integer>naturalOrder()))
+          .thenComparing(
+              mrpLine -> mrpLine.getMrpLineType().getSequence(),
+              Comparator.nullsLast(Comparator.<Integer>naturalOrder()));
+
+  protected List<MrpLine> mrpLineList = new ArrayList<>();
+
+  protected int firstDirtyIndex = 0;
+
+  public int size() {
+    return mrpLineList.size();
+  }
+
+  public MrpLine get(int index) {
+    return mrpLineList.get(index);
+  }
+
+  public List<MrpLine> getMrpLineList() {
+    return mrpLineList;
+  }
+
+  /**
+   * Append a line loaded from the database. The lines have to be appended in the calculation order.
+   *
+   * @param mrpLine
+   */
+  public void append(MrpLine mrpLine) {
+    mrpLineList.add(mrpLine);
+  }
+
+  /**
+   * Insert a new line after all the lines with the same maturity date, type and sequence, as a
+   * line created during the calculation gets a greater id than the existing ones.
+   *
+   * @param mrpLine
+   * @return the index of the inserted line
+   */
+  public int add(MrpLine mrpLine) {
+
+    int low = 0;
+    int high = mrpLineList.size();
+
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (MRP_LINE_COMPARATOR.compare(mrpLineList.get(middle), mrpLine) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    mrpLineList.add(low, mrpLine);
+    firstDirtyIndex = Math.min(firstDirtyIndex, low);
+
+    return low;
+  }
+
+  /**
+   * Flag a line whose qty has been updated.
+   *
+   * @param mrpLine
+   */
+  public void markDirty(MrpLine mrpLine) {
+
+    for (int index = 0; index < mrpLineList.size() && index < firstDirtyIndex; index++) {
+      if (mrpLineList.get(index) == mrpLine) {
+        firstDirtyIndex = index;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Compute the cumulative qty from the first line updated since the last computation.
+   *
+   * @return the index from which the cumulative qty has been recomputed, or the size of the
+   *     timeline if nothing has changed
+   */
+  public int computeCumulativeQty() {
+
+    int startIndex = firstDirtyIndex;
+
+    BigDecimal previousCumulativeQty =
+        startIndex > 0 && startIndex <= mrpLineList.size()
+            ? mrpLineList.get(startIndex - 1).getCumulativeQty()
+            : BigDecimal.ZERO;
+
+    for (int index = startIndex; index < mrpLineList.size(); index++) {
+
+      MrpLine mrpLine = mrpLineList.get(index);
+
+      if (mrpLine.getMrpLineType().getElementSelect()
+          == MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK) {
+
+        mrpLine.setCumulativeQty(mrpLine.getQty());
+      } else {
+
+        mrpLine.setCumulativeQty(previousCumulativeQty.add(mrpLine.getQty()));
+      }
+
+      previousCumulativeQty = mrpLine.getCumulativeQty();
+    }
+
+    firstDirtyIndex = mrpLineList.size();
+
+    return Math.min(startIndex, mrpLineList.size());
+  }
+
+  /**
+   * Find a proposal with the given type and stock location whose maturity date is in the interval
+   * ]startPeriodDate, maturityDate].
+   *
+   * @param mrpLineType
+   * @param stockLocation
+   * @param startPeriodDate
+   * @param maturityDate
+   * @return the first matching line, or null if there is none
+   */
+  public MrpLine findProposal(
+      MrpLineType mrpLineType,
+      StockLocation stockLocation,
+      LocalDate startPeriodDate,
+      LocalDate maturityDate) {
+
+    int low = 0;
+    int high = mrpLineList.size();
+
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      LocalDate middleDate = mrpLineList.get(middle).getMaturityDate();
+      if (middleDate != null && !middleDate.isAfter(startPeriodDate)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    for (int index = low; index < mrpLineList.size(); index++) {
+
+      MrpLine mrpLine = mrpLineList.get(index);
+
+      if (mrpLine.getMaturityDate() == null || mrpLine.getMaturityDate().isAfter(maturityDate)) {
+        break;
+      }
+
+      if (Objects.equals(mrpLine.getMrpLineType(), mrpLineType)
+          && Objects.equals(mrpLine.getStockLocation(), stockLocation)) {
+        return mrpLine;
+      }
+    }
+
+    return null;
+  }
+}
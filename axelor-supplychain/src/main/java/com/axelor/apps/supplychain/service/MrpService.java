@@ -25,6 +25,15 @@ public interface MrpService {
 
   public void runCalculation(Mrp mrp) throws AxelorException;
 
+  /**
+   * Compute again only the products impacted by the changes made since the last calculation of the
+   * same day. A full calculation is made if the mrp has not been computed today.
+   *
+   * @param mrp
+   * @throws AxelorException
+   */
+  public void runNetChangeCalculation(Mrp mrp) throws AxelorException;
+
   public void generateProposals(Mrp mrp) throws AxelorException;
 
   public void reset(Mrp mrp);
@@ -51,6 +51,7 @@ import com.axelor.apps.supplychain.db.repo.MrpLineRepository;
 import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
 import com.axelor.apps.supplychain.db.repo.MrpRepository;
 import com.axelor.apps.supplychain.exception.IExceptionMessage;
+import com.axelor.apps.supplychain.service.app.AppSupplychainService;
 import com.axelor.apps.tool.StringTool;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
@@ -63,14 +64,25 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,6 +110,33 @@ public class MrpServiceImpl implements MrpService {
   protected Map<Long, Integer> productMap;
   protected Mrp mrp;
   protected LocalDate today;
+  protected LocalDateTime calculationDateT;
+
+  /** Number of mrp lines persisted between two flushes of the in memory calculation. */
+  protected static final int MRP_LINE_BATCH_SIZE = 100;
+
+  /** Mrp lines by product id, only filled while the calculation is made in memory. */
+  protected Map<Long, MrpLineTimeline> mrpLineTimelineMap;
+
+  protected List<MrpLine> createdMrpLineList;
+
+  /**
+   * Proposals on other products created by the products computed in parallel, by computed product
+   * id. They are created once all the products of the level are computed.
+   */
+  protected Map<Long, List<DeferredProposal>> deferredProposalMap;
+
+  /** Id of the product computed by the current thread of a parallel calculation. */
+  protected final ThreadLocal<Long> threadProductId = new ThreadLocal<>();
+
+  /** Mrp of the current thread of a parallel calculation, loaded in the session of the thread. */
+  protected final ThreadLocal<Mrp> threadMrp = new ThreadLocal<>();
+
+  /**
+   * Stock locations of the current thread of a parallel calculation, loaded in the session of the
+   * thread.
+   */
+  protected final ThreadLocal<List<StockLocation>> threadStockLocationList = new ThreadLocal<>();
 
   @Inject
   public MrpServiceImpl(
@@ -138,10 +177,56 @@ public class MrpServiceImpl implements MrpService {
 
     this.startMrp(mrpRepository.find(mrp.getId()));
     this.completeMrp(mrpRepository.find(mrp.getId()));
-    this.doCalulation(mrpRepository.find(mrp.getId()));
+    this.calculate(mrpRepository.find(mrp.getId()));
+    this.finish(mrpRepository.find(mrp.getId()));
+  }
+
+  @Override
+  public void runNetChangeCalculation(Mrp mrp) throws AxelorException {
+
+    LocalDateTime lastCalculationDateT = mrp.getLastCalculationDateT();
+
+    if (mrp.getStatusSelect() != MrpRepository.STATUS_CALCULATION_ENDED
+        || lastCalculationDateT == null
+        || !lastCalculationDateT.toLocalDate().equals(appBaseService.getTodayDate())) {
+
+      this.runCalculation(mrp);
+      return;
+    }
+
+    this.startMrp(mrpRepository.find(mrp.getId()));
+    this.initializeMrp(mrpRepository.find(mrp.getId()));
+
+    Set<Long> productIdSet = this.getNetChangeProductIdSet(lastCalculationDateT);
+    this.addRelatedProducts(productIdSet);
+
+    log.debug("Net change MRP on {} products", productIdSet.size());
+
+    this.removeMrpLines(mrpRepository.find(mrp.getId()), productIdSet);
+    this.productMap.keySet().retainAll(productIdSet);
+
+    if (!productIdSet.isEmpty()) {
+      this.mrp = mrpRepository.find(mrp.getId());
+      this.createMrpLines();
+      this.calculate(mrpRepository.find(mrp.getId()));
+    }
+
     this.finish(mrpRepository.find(mrp.getId()));
   }
 
+  protected void calculate(Mrp mrp) throws AxelorException {
+
+    if (this.isInMemoryCalculation()) {
+      this.doInMemoryCalculation(mrp);
+    } else {
+      this.doCalulation(mrp);
+    }
+  }
+
+  protected boolean isInMemoryCalculation() {
+    return Beans.get(AppSupplychainService.class).getAppSupplychain().getMrpInMemoryCalculation();
+  }
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected void startMrp(Mrp mrp) {
 
@@ -153,6 +238,9 @@ public class MrpServiceImpl implements MrpService {
     // TODO check that all types exist + override the method on production module
 
     today = appBaseService.getTodayDate();
+    // compared with the real update dates of the orders by the next net change calculation, so
+    // never the configured test date
+    calculationDateT = LocalDateTime.now();
 
     mrpRepository.save(mrp);
   }
@@ -172,11 +260,20 @@ public class MrpServiceImpl implements MrpService {
 
     log.debug("Complete MRP");
 
-    // Initialize
+    this.initializeMrp(mrp);
+
+    this.createMrpLines();
+  }
+
+  protected void initializeMrp(Mrp mrp) throws AxelorException {
+
     this.mrp = mrp;
     this.stockLocationList =
         stockLocationService.getAllLocationAndSubLocation(mrp.getStockLocation(), false);
     this.assignProductAndLevel(this.getProductList());
+  }
+
+  protected void createMrpLines() throws AxelorException {
 
     // Get the stock for each product on each stock location
     this.createAvailableStockMrpLines();
@@ -200,17 +297,308 @@ public class MrpServiceImpl implements MrpService {
 
   }
 
+  /**
+   * Same calculation as {@link #doCalulation(Mrp)}, but all the mrp lines are loaded once in per
+   * product timelines, the cumulative qty and the proposals are computed in memory and the result
+   * is written at the end in batches.
+   *
+   * @param mrp
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void doInMemoryCalculation(Mrp mrp) throws AxelorException {
+
+    log.debug("Do in memory calculation");
+
+    this.mrp = mrp;
+
+    try {
+      this.loadMrpLineTimelines();
+
+      for (int level = 0; level <= this.getMaxLevel(); level++) {
+
+        for (Product product : this.getProductList(level)) {
+
+          this.checkInsufficientCumulativeQtyInMemory(product);
+        }
+      }
+
+      this.saveMrpLineTimelines();
+
+    } finally {
+      this.mrpLineTimelineMap = null;
+      this.createdMrpLineList = null;
+    }
+  }
+
+  protected void loadMrpLineTimelines() {
+
+    mrpLineTimelineMap = Maps.newHashMap();
+    createdMrpLineList = Lists.newArrayList();
+
+    List<MrpLine> mrpLineList =
+        mrpLineRepository
+            .all()
+            .filter(
+                "self.mrp.id = ?1 AND self.product.id IN (?2)",
+                mrp.getId(),
+                this.productMap.keySet())
+            .order("maturityDate")
+            .order("mrpLineType.typeSelect")
+            .order("mrpLineType.sequence")
+            .order("id")
+            .fetch();
+
+    for (MrpLine mrpLine : mrpLineList) {
+      this.getMrpLineTimeline(mrpLine.getProduct()).append(mrpLine);
+    }
+  }
+
+  protected MrpLineTimeline getMrpLineTimeline(Product product) {
+    return mrpLineTimelineMap.computeIfAbsent(product.getId(), productId -> new MrpLineTimeline());
+  }
+
+  /**
+   * Walk the timeline of the product and create the proposals needed, as {@link
+   * #checkInsufficientCumulativeQty(Product, boolean)} does. After a proposal, the check starts
+   * again from the first line whose cumulative qty has changed, since the previous lines are not
+   * impacted by the proposal.
+   *
+   * @param product
+   * @throws AxelorException
+   */
+  protected void checkInsufficientCumulativeQtyInMemory(Product product) throws AxelorException {
+
+    MrpLineTimeline mrpLineTimeline = this.getMrpLineTimeline(product);
+
+    mrpLineTimeline.computeCumulativeQty();
+
+    boolean firstPass = true;
+    int index = 0;
+
+    while (index < mrpLineTimeline.size()) {
+
+      if (this.checkInsufficientCumulativeQty(mrpLineTimeline.get(index), product, firstPass)) {
+
+        firstPass = false;
+
+        int updatedIndex = mrpLineTimeline.computeCumulativeQty();
+
+        if (updatedIndex <= index) {
+          index = updatedIndex;
+          continue;
+        }
+      }
+
+      index++;
+    }
+  }
+
+  /**
+   * Write the result of the in memory calculation: the cumulative qty of the loaded lines is
+   * flushed, then the created lines are inserted in batches.
+   */
+  protected void saveMrpLineTimelines() {
+
+    JPA.flush();
+    JPA.clear();
+
+    int count = 0;
+
+    for (MrpLine mrpLine : createdMrpLineList) {
+
+      mrpLine.setMrp(mrpRepository.find(mrp.getId()));
+      mrpLine.setProduct(productRepository.find(mrpLine.getProduct().getId()));
+      mrpLine.setMrpLineType(mrpLineTypeRepository.find(mrpLine.getMrpLineType().getId()));
+      mrpLine.setStockLocation(stockLocationRepository.find(mrpLine.getStockLocation().getId()));
+      if (mrpLine.getPartner() != null) {
+        mrpLine.setPartner(JPA.find(Partner.class, mrpLine.getPartner().getId()));
+      }
+
+      mrpLineRepository.save(mrpLine);
+
+      if (++count % MRP_LINE_BATCH_SIZE == 0) {
+        JPA.flush();
+        JPA.clear();
+      }
+    }
+
+    JPA.flush();
+    JPA.clear();
+
+    log.debug("{} mrp lines created by the in memory calculation", count);
+  }
+
+  /**
+   * Save a line created during the calculation. When the calculation is made in memory, the line
+   * is only added to the timeline of its product and will be persisted at the end.
+   *
+   * @param mrpLine
+   * @return the saved line
+   */
+  protected MrpLine saveMrpLine(MrpLine mrpLine) {
+
+    if (mrpLineTimelineMap == null) {
+      return mrpLineRepository.save(mrpLine);
+    }
+
+    this.getMrpLineTimeline(mrpLine.getProduct()).add(mrpLine);
+    createdMrpLineList.add(mrpLine);
+
+    return mrpLine;
+  }
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected void finish(Mrp mrp) {
 
     log.debug("Finish MRP");
 
     mrp.setStatusSelect(MrpRepository.STATUS_CALCULATION_ENDED);
+    mrp.setLastCalculationDateT(calculationDateT);
     mrpRepository.save(mrp);
   }
 
+  /**
+   * Get the products to compute again since the last calculation: the products whose orders, order
+   * lines, forecasts, stock or stock rules have been created or updated, and the products which
+   * were not in the MRP yet.
+   *
+   * @param lastCalculationDateT
+   * @return the set of product ids
+   */
+  protected Set<Long> getNetChangeProductIdSet(LocalDateTime lastCalculationDateT) {
+
+    Set<Long> productIdSet = Sets.newHashSet();
+
+    productIdSet.addAll(this.getModifiedProductIdList("Product", "self", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("SaleOrderLine", "self.product", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList(
+            "SaleOrderLine", "self.product", "self.saleOrder", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("PurchaseOrderLine", "self.product", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList(
+            "PurchaseOrderLine", "self.product", "self.purchaseOrder", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("MrpForecast", "self.product", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("StockLocationLine", "self.product", lastCalculationDateT));
+    productIdSet.addAll(
+        this.getModifiedProductIdList("StockRules", "self.product", lastCalculationDateT));
+
+    Set<Long> computedProductIdSet =
+        Sets.newHashSet(
+            JPA.em()
+                .createQuery(
+                    "SELECT DISTINCT self.product.id FROM MrpLine self WHERE self.mrp.id = :mrpId",
+                    Long.class)
+                .setParameter("mrpId", mrp.getId())
+                .getResultList());
+
+    for (Long productId : this.productMap.keySet()) {
+      if (!computedProductIdSet.contains(productId)) {
+        productIdSet.add(productId);
+      }
+    }
+
+    return productIdSet;
+  }
+
+  /**
+   * Get the ids of the products of the MRP referenced by records of an entity created or updated
+   * since the given date.
+   *
+   * @param entityName
+   * @param productPath the path of the product from the entity, for instance "self.product"
+   * @param sinceDateT
+   * @return the list of product ids
+   */
+  protected List<Long> getModifiedProductIdList(
+      String entityName, String productPath, LocalDateTime sinceDateT) {
+
+    return this.getModifiedProductIdList(entityName, productPath, "self", sinceDateT);
+  }
+
+  /**
+   * Get the ids of the products of the MRP referenced by records of an entity whose related record
+   * has been created or updated since the given date, for instance the sale order of a sale order
+   * line.
+   *
+   * @param entityName
+   * @param productPath the path of the product from the entity, for instance "self.product"
+   * @param recordPath the path of the related record from the entity, for instance
+   *     "self.saleOrder"
+   * @param sinceDateT
+   * @return the list of product ids
+   */
+  protected List<Long> getModifiedProductIdList(
+      String entityName, String productPath, String recordPath, LocalDateTime sinceDateT) {
+
+    return JPA.em()
+        .createQuery(
+            "SELECT DISTINCT "
+                + productPath
+                + ".id FROM "
+                + entityName
+                + " self WHERE "
+                + productPath
+                + ".id IN (:productIdSet) "
+                + "AND COALESCE("
+                + recordPath
+                + ".updatedOn, "
+                + recordPath
+                + ".createdOn) >= :sinceDateT",
+            Long.class)
+        .setParameter("productIdSet", this.productMap.keySet())
+        .setParameter("sinceDateT", sinceDateT)
+        .getResultList();
+  }
+
+  /**
+   * Add to the set the products whose lines depend on the lines of the products of the set. There
+   * are none without bill of materials.
+   *
+   * @param productIdSet
+   */
+  protected void addRelatedProducts(Set<Long> productIdSet) {}
+
+  /**
+   * Remove the lines of the products to compute again, and the lines of the products which are
+   * not in the MRP anymore.
+   *
+   * @param mrp
+   * @param productIdSet
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void removeMrpLines(Mrp mrp, Set<Long> productIdSet) {
+
+    if (!productIdSet.isEmpty()) {
+      mrpLineRepository
+          .all()
+          .filter("self.mrp.id = ?1 AND self.product.id IN (?2)", mrp.getId(), productIdSet)
+          .remove();
+    }
+
+    mrpLineRepository
+        .all()
+        .filter(
+            "self.mrp.id = ?1 AND self.product.id NOT IN (?2)",
+            mrp.getId(),
+            this.productMap.keySet())
+        .remove();
+  }
+
   protected void checkInsufficientCumulativeQty() throws AxelorException {
 
+    int threadCount = this.getThreadCount();
+
+    if (threadCount > 1) {
+      this.checkInsufficientCumulativeQtyInParallel(threadCount);
+      return;
+    }
+
     for (int level = 0; level <= this.getMaxLevel(); level++) {
 
       for (Product product : this.getProductList(level)) {
@@ -220,6 +608,196 @@ public class MrpServiceImpl implements MrpService {
     }
   }
 
+  protected int getThreadCount() {
+    return Beans.get(AppSupplychainService.class).getAppSupplychain().getMrpThreadCount();
+  }
+
+  /**
+   * Compute the products of a same level on a pool of threads, each product in its own session.
+   * The next level is computed once all the products of the level are done, so that the
+   * requirements of a lower level take into account the proposals of the upper levels.
+   *
+   * @param threadCount
+   * @throws AxelorException
+   */
+  protected void checkInsufficientCumulativeQtyInParallel(int threadCount)
+      throws AxelorException {
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    deferredProposalMap = new ConcurrentHashMap<>();
+
+    Long mrpId = this.mrp.getId();
+    List<Long> stockLocationIdList =
+        this.stockLocationList.stream().map(StockLocation::getId).collect(Collectors.toList());
+
+    try {
+      for (int level = 0; level <= this.getMaxLevel(); level++) {
+
+        List<Long> productIdList = this.getProductIdList(level);
+        List<Future<Void>> futureList = new ArrayList<>();
+
+        log.debug("Compute {} products of level {} in parallel", productIdList.size(), level);
+
+        for (Long productId : productIdList) {
+          futureList.add(
+              executor.submit(
+                  () -> {
+                    this.checkInsufficientCumulativeQtyInThread(
+                        mrpId, stockLocationIdList, productId);
+                    return null;
+                  }));
+        }
+
+        this.waitForThreads(futureList);
+
+        this.createDeferredProposalMrpLines(productIdList);
+        JPA.clear();
+      }
+    } finally {
+      executor.shutdownNow();
+      deferredProposalMap = null;
+    }
+  }
+
+  protected void checkInsufficientCumulativeQtyInThread(
+      Long mrpId, List<Long> stockLocationIdList, Long productId) throws AxelorException {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+    UnitOfWork unitOfWork = Beans.get(UnitOfWork.class);
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      unitOfWork.begin();
+      threadProductId.set(productId);
+      threadMrp.set(mrpRepository.find(mrpId));
+      threadStockLocationList.set(
+          stockLocationIdList.stream()
+              .map(stockLocationRepository::find)
+              .collect(Collectors.toList()));
+
+      this.checkInsufficientCumulativeQty(productRepository.find(productId), true);
+
+    } finally {
+      threadProductId.remove();
+      threadMrp.remove();
+      threadStockLocationList.remove();
+      unitOfWork.end();
+    }
+  }
+
+  /**
+   * Get the mrp being computed, loaded in the session of the current thread while computing in
+   * parallel.
+   *
+   * @return
+   */
+  protected Mrp getMrp() {
+
+    Mrp mrp = threadMrp.get();
+
+    return mrp != null ? mrp : this.mrp;
+  }
+
+  /**
+   * Get the stock locations of the mrp, loaded in the session of the current thread while computing
+   * in parallel.
+   *
+   * @return
+   */
+  protected List<StockLocation> getStockLocationList() {
+
+    List<StockLocation> stockLocationList = threadStockLocationList.get();
+
+    return stockLocationList != null ? stockLocationList : this.stockLocationList;
+  }
+
+  protected void waitForThreads(List<Future<Void>> futureList) throws AxelorException {
+
+    try {
+      for (Future<Void> future : futureList) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AxelorException) {
+        throw (AxelorException) e.getCause();
+      }
+      throw new AxelorException(e.getCause(), TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } finally {
+      for (Future<Void> future : futureList) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Create the proposals on other products requested while computing the given products, in the
+   * order of the products.
+   *
+   * @param productIdList
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void createDeferredProposalMrpLines(List<Long> productIdList)
+      throws AxelorException {
+
+    for (Long productId : productIdList) {
+
+      List<DeferredProposal> deferredProposalList = deferredProposalMap.remove(productId);
+
+      if (deferredProposalList == null) {
+        continue;
+      }
+
+      for (DeferredProposal deferredProposal : deferredProposalList) {
+        this.createProposalMrpLine(
+            mrpRepository.find(deferredProposal.mrpId),
+            productRepository.find(deferredProposal.productId),
+            mrpLineTypeRepository.find(deferredProposal.mrpLineTypeId),
+            deferredProposal.reorderQty,
+            stockLocationRepository.find(deferredProposal.stockLocationId),
+            deferredProposal.maturityDate,
+            deferredProposal.mrpLineOriginList,
+            deferredProposal.relatedToSelectName);
+      }
+    }
+  }
+
+  /**
+   * While computing products in parallel, a proposal on another product than the one of the
+   * current thread (a need of a manufacturing proposal) must not be written concurrently.
+   *
+   * @param product
+   * @return true if the proposal has to be deferred to the end of the level
+   */
+  protected boolean isDeferredProposal(Product product) {
+
+    Long productId = threadProductId.get();
+
+    return deferredProposalMap != null && productId != null && !productId.equals(product.getId());
+  }
+
+  /**
+   * Get the list of product ids for a level
+   *
+   * @param level
+   * @return
+   */
+  protected List<Long> getProductIdList(int level) {
+
+    List<Long> productIdList = Lists.newArrayList();
+
+    for (Long productId : this.productMap.keySet()) {
+
+      if (this.productMap.get(productId) == level) {
+        productIdList.add(productId);
+      }
+    }
+
+    return productIdList;
+  }
+
   /**
    * Get the list of product for a level
    *
@@ -266,7 +844,10 @@ public class MrpServiceImpl implements MrpService {
     List<MrpLine> mrpLineList =
         mrpLineRepository
             .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
+            .filter(
+                "self.mrp.id = ?1 AND self.product.id = ?2",
+                this.getMrp().getId(),
+                product.getId())
             .order("maturityDate")
             .order("mrpLineType.typeSelect")
             .order("mrpLineType.sequence")
@@ -370,11 +951,16 @@ public class MrpServiceImpl implements MrpService {
       startPeriodDate = maturityDate.minusDays(mrpFamily.getDayNb());
     }
 
+    if (mrpLineTimelineMap != null) {
+      return this.getMrpLineTimeline(product)
+          .findProposal(mrpLineType, stockLocation, startPeriodDate, maturityDate);
+    }
+
     return mrpLineRepository
         .all()
         .filter(
             "self.mrp.id = ?1 AND self.product = ?2 AND self.mrpLineType = ?3 AND self.stockLocation = ?4 AND self.maturityDate > ?5 AND self.maturityDate <= ?6",
-            mrp.getId(),
+            this.getMrp().getId(),
             product,
             mrpLineType,
             stockLocation,
@@ -395,6 +981,22 @@ public class MrpServiceImpl implements MrpService {
       String relatedToSelectName)
       throws AxelorException {
 
+    if (this.isDeferredProposal(product)) {
+      deferredProposalMap
+          .computeIfAbsent(threadProductId.get(), productId -> new ArrayList<>())
+          .add(
+              new DeferredProposal(
+                  mrp,
+                  product,
+                  mrpLineType,
+                  reorderQty,
+                  stockLocation,
+                  maturityDate,
+                  this.copyMrpLineOrigins(mrpLineOriginList),
+                  relatedToSelectName));
+      return;
+    }
+
     if (mrpLineType.getElementSelect() == MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL) {
       maturityDate = maturityDate.minusDays(product.getSupplierDeliveryTime());
       reorderQty = reorderQty.max(this.getSupplierCatalogMinQty(product));
@@ -413,6 +1015,9 @@ public class MrpServiceImpl implements MrpService {
       }
       mrpLine.setQty(mrpLine.getQty().add(reorderQty));
       mrpLine.setRelatedToSelectName(null);
+      if (mrpLineTimelineMap != null) {
+        this.getMrpLineTimeline(product).markDirty(mrpLine);
+      }
 
     } else {
       MrpLine createdmrpLine =
@@ -425,9 +1030,11 @@ public class MrpServiceImpl implements MrpService {
               BigDecimal.ZERO,
               stockLocation,
               null);
-      if (createdmrpLine != null) {
-        mrpLine = mrpLineRepository.save(createdmrpLine);
+      if (createdmrpLine == null) {
+        // the product is not in the MRP, as a component of a product out of the net change scope
+        return;
       }
+      mrpLine = this.saveMrpLine(createdmrpLine);
       mrpLine.setRelatedToSelectName(relatedToSelectName);
     }
 
@@ -522,7 +1129,10 @@ public class MrpServiceImpl implements MrpService {
     List<MrpLine> mrpLineList =
         mrpLineRepository
             .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
+            .filter(
+                "self.mrp.id = ?1 AND self.product.id = ?2",
+                this.getMrp().getId(),
+                product.getId())
             .order("maturityDate")
             .order("mrpLineType.typeSelect")
             .order("mrpLineType.sequence")
@@ -572,7 +1182,7 @@ public class MrpServiceImpl implements MrpService {
                 "self.product.id in (?1) AND self.purchaseOrder.stockLocation in (?2) AND self.receiptState != ?3 "
                     + "AND self.purchaseOrder.statusSelect IN (?4)",
                 this.productMap.keySet(),
-                this.stockLocationList,
+                this.getStockLocationList(),
                 IPurchaseOrder.STATE_RECEIVED,
                 statusList)
             .fetch();
@@ -652,7 +1262,7 @@ public class MrpServiceImpl implements MrpService {
                   "self.product.id in (?1) AND self.saleOrder.stockLocation in (?2) AND self.deliveryState != ?3 "
                       + "AND self.saleOrder.statusSelect IN (?4)",
                   this.productMap.keySet(),
-                  this.stockLocationList,
+                  this.getStockLocationList(),
                   SaleOrderLineRepository.DELIVERY_STATE_DELIVERED,
                   statusList)
               .fetch());
@@ -682,7 +1292,7 @@ public class MrpServiceImpl implements MrpService {
 
     SaleOrder saleOrder = saleOrderLine.getSaleOrder();
 
-    if (!this.stockLocationList.contains(saleOrder.getStockLocation())) {
+    if (!this.getStockLocationList().contains(saleOrder.getStockLocation())) {
       return;
     }
     if (!statusList.contains(saleOrder.getStatusSelect())) {
@@ -746,7 +1356,7 @@ public class MrpServiceImpl implements MrpService {
               .filter(
                   "self.product.id in (?1) AND self.stockLocation in (?2) AND self.forecastDate >= ?3",
                   this.productMap.keySet(),
-                  this.stockLocationList,
+                  this.getStockLocationList(),
                   today,
                   today)
               .fetch());
@@ -808,6 +1418,8 @@ public class MrpServiceImpl implements MrpService {
 
   public boolean isBeforeEndDate(LocalDate maturityDate) {
 
+    Mrp mrp = this.getMrp();
+
     if (maturityDate != null
         && (mrp.getEndDate() == null || !maturityDate.isAfter(mrp.getEndDate()))) {
 
@@ -824,7 +1436,7 @@ public class MrpServiceImpl implements MrpService {
 
     for (Long productId : this.productMap.keySet()) {
 
-      for (StockLocation stockLocation : this.stockLocationList) {
+      for (StockLocation stockLocation : this.getStockLocationList()) {
 
         this.createAvailableStockMrpLine(
             mrpRepository.find(mrp.getId()),
@@ -977,7 +1589,7 @@ public class MrpServiceImpl implements MrpService {
       StockLocation stockLocation,
       Model model) {
 
-    if (productMap != null && product != null) {
+    if (productMap != null && product != null && productMap.containsKey(product.getId())) {
       return mrpLineService.createMrpLine(
           mrp,
           product,
@@ -1003,6 +1615,54 @@ public class MrpServiceImpl implements MrpService {
     }
   }
 
+  protected List<MrpLineOrigin> copyMrpLineOrigins(List<MrpLineOrigin> mrpLineOriginList) {
+
+    List<MrpLineOrigin> copyMrpLineOriginList = new ArrayList<>();
+
+    if (mrpLineOriginList != null) {
+
+      for (MrpLineOrigin mrpLineOrigin : mrpLineOriginList) {
+
+        copyMrpLineOriginList.add(mrpLineService.copyMrpLineOrigin(mrpLineOrigin));
+      }
+    }
+
+    return copyMrpLineOriginList;
+  }
+
+  /** A proposal requested by a thread of the parallel calculation, kept with detached values. */
+  protected static class DeferredProposal {
+
+    protected final Long mrpId;
+    protected final Long productId;
+    protected final Long mrpLineTypeId;
+    protected final BigDecimal reorderQty;
+    protected final Long stockLocationId;
+    protected final LocalDate maturityDate;
+    protected final List<MrpLineOrigin> mrpLineOriginList;
+    protected final String relatedToSelectName;
+
+    protected DeferredProposal(
+        Mrp mrp,
+        Product product,
+        MrpLineType mrpLineType,
+        BigDecimal reorderQty,
+        StockLocation stockLocation,
+        LocalDate maturityDate,
+        List<MrpLineOrigin> mrpLineOriginList,
+        String relatedToSelectName) {
+
+      this.mrpId = mrp.getId();
+      this.productId = product.getId();
+      this.mrpLineTypeId = mrpLineType.getId();
+      this.reorderQty = reorderQty;
+      this.stockLocationId = stockLocation.getId();
+      this.maturityDate = maturityDate;
+      this.mrpLineOriginList = mrpLineOriginList;
+      this.relatedToSelectName = relatedToSelectName;
+    }
+  }
+
   @Override
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void generateProposals(Mrp mrp) throws AxelorException {
@@ -56,6 +56,22 @@ public class MrpController {
     }
   }
 
+  public void runNetChangeCalculation(ActionRequest request, ActionResponse response) {
+
+    Mrp mrp = request.getContext().asType(Mrp.class);
+    MrpService mrpService = mrpServiceProvider.get();
+    MrpRepository mrpRepository = mrpRepositoryProvider.get();
+    try {
+
+      mrpService.runNetChangeCalculation(mrpRepository.find(mrp.getId()));
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+      mrpService.reset(mrpRepository.find(mrp.getId()));
+    } finally {
+      response.setReload(true);
+    }
+  }
+
   public void generateAllProposals(ActionRequest request, ActionResponse response)
       throws AxelorException {
     Mrp mrp = request.getContext().asType(Mrp.class);
@@ -0,0 +1,92 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A cache of values built from records and shared by all the threads, dropped by {@link
+ * #invalidate()} when the records change.
+ *
+ * <p>A value built while the cache is invalidated is returned but not kept, as it may have been
+ * read from records being updated.
+ *
+ * @param <K> the key of the values, {@link Void} for a cache of a single value
+ * @param <V> the cached values
+ */
+public class VersionedCache<K, V> {
+
+  private static final Object SINGLE_VALUE_KEY = new Object();
+
+  private final Map<Object, V> valueMap = new ConcurrentHashMap<>();
+
+  private long version;
+
+  /**
+   * Get the value of a key, built by the loader if it is not in the cache.
+   *
+   * @param key
+   * @param loader
+   * @return the value
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    return get((Object) key, () -> loader.apply(key));
+  }
+
+  /**
+   * Get the value of a cache of a single value, built by the loader if it is not in the cache.
+   *
+   * @param loader
+   * @return the value
+   */
+  public V get(Supplier<? extends V> loader) {
+    return get(SINGLE_VALUE_KEY, loader);
+  }
+
+  private V get(Object key, Supplier<? extends V> loader) {
+
+    V value = valueMap.get(key);
+
+    if (value == null) {
+      long loadVersion;
+      synchronized (this) {
+        loadVersion = version;
+      }
+      value = loader.get();
+      synchronized (this) {
+        if (loadVersion == version) {
+          valueMap.put(key, value);
+        }
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * Drop all the values. To be run once the transaction updating the records is completed, with
+   * {@link TransactionTool#runAfterCompletion(Runnable)}.
+   */
+  public synchronized void invalidate() {
+    version++;
+    valueMap.clear();
+  }
+}
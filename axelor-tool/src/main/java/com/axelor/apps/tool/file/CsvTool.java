@@ -19,6 +19,7 @@ package com.axelor.apps.tool.file;
 
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -55,7 +56,7 @@ public final class CsvTool {
   public static CSVWriter setCsvFile(final String filePath, final String fileName, char separator)
       throws IOException {
 
-    java.io.Writer w = new FileWriter(filePath + File.separator + fileName);
+    java.io.Writer w = new BufferedWriter(new FileWriter(filePath + File.separator + fileName));
     return new CSVWriter(w, separator, CSVWriter.NO_QUOTE_CHARACTER, "\r\n");
   }
 
@@ -63,7 +64,7 @@ public final class CsvTool {
       final String filePath, final String fileName, char separator, char quoteChar)
       throws IOException {
 
-    java.io.Writer w = new FileWriter(filePath + File.separator + fileName);
+    java.io.Writer w = new BufferedWriter(new FileWriter(filePath + File.separator + fileName));
     return new CSVWriter(w, separator, quoteChar, "\r\n");
   }
 
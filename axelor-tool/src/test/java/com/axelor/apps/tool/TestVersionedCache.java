@@ -0,0 +1,62 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2018 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestVersionedCache {
+
+  @Test
+  public void testGet() {
+
+    VersionedCache<Long, String> cache = new VersionedCache<>();
+
+    Assert.assertEquals("1", cache.get(1L, String::valueOf));
+    Assert.assertEquals("1", cache.get(1L, id -> "other"));
+    Assert.assertEquals("2", cache.get(2L, String::valueOf));
+  }
+
+  @Test
+  public void testInvalidate() {
+
+    VersionedCache<Void, String> cache = new VersionedCache<>();
+
+    Assert.assertEquals("first", cache.get(() -> "first"));
+    Assert.assertEquals("first", cache.get(() -> "second"));
+
+    cache.invalidate();
+
+    Assert.assertEquals("second", cache.get(() -> "second"));
+  }
+
+  @Test
+  public void testInvalidateWhileLoading() {
+
+    VersionedCache<Void, String> cache = new VersionedCache<>();
+
+    Assert.assertEquals(
+        "stale",
+        cache.get(
+            () -> {
+              cache.invalidate();
+              return "stale";
+            }));
+    Assert.assertEquals("fresh", cache.get(() -> "fresh"));
+  }
+}